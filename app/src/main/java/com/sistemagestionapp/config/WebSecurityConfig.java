@@ -37,6 +37,8 @@ public class WebSecurityConfig {
                                 "/js/**",
                                 "/images/**"
                         ).permitAll()
+                        // Replicación entre nodos: la protege su propio token (sin token configurado, se rechaza todo)
+                        .requestMatchers("/blockchain/replicacion/**").permitAll()
                         // Cualquier otra ruta requiere usuario autenticado
                         .anyRequest().authenticated()
                 )
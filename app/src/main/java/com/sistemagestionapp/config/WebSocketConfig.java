@@ -1,6 +1,8 @@
 package com.sistemagestionapp.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.*;
 
@@ -18,6 +20,10 @@ import org.springframework.web.socket.config.annotation.*;
  * Además, defino el endpoint "/chat-websocket" con soporte para SockJS, que mejora la compatibilidad
  * con navegadores que no soportan WebSocket directamente.
  *
+ * Los canales de entrada y de salida tienen cada uno su pool de hilos, con el tamaño configurado en
+ * {@code websocket.*}. Para que un cliente que no lee no retenga a los demás, cada sesión tiene un
+ * límite de tiempo de envío y de bytes pendientes: si lo pasa, se cierra esa sesión.
+ *
  * Esta configuración permite que el chat en vivo funcione correctamente.
  *
  * @author David Tomé Arnaiz
@@ -26,6 +32,26 @@ import org.springframework.web.socket.config.annotation.*;
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private static final int NUCLEOS = Runtime.getRuntime().availableProcessors();
+
+    @Value("${websocket.entrada.hilos:0}")
+    private int hilosEntrada;
+
+    @Value("${websocket.entrada.cola:10000}")
+    private int colaEntrada;
+
+    @Value("${websocket.salida.hilos:0}")
+    private int hilosSalida;
+
+    @Value("${websocket.salida.cola:10000}")
+    private int colaSalida;
+
+    @Value("${websocket.envio.limite-ms:10000}")
+    private int limiteEnvioMs;
+
+    @Value("${websocket.envio.limite-bytes:524288}")
+    private int limiteEnvioBytes;
+
     /**
      * Aquí defino cómo va a funcionar el broker de mensajes.
      * El broker se encarga de gestionar el envío de mensajes a todos los usuarios conectados.
@@ -41,6 +67,43 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         config.setApplicationDestinationPrefixes("/app");
     }
 
+    /**
+     * Pool del canal de entrada: procesa los frames que mandan los clientes (CONNECT, SUBSCRIBE,
+     * SEND...). Por defecto, un hilo por núcleo, porque es trabajo de CPU.
+     */
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        int hilos = hilosEntrada > 0 ? hilosEntrada : NUCLEOS;
+        registration.taskExecutor().corePoolSize(hilos).maxPoolSize(hilos).queueCapacity(colaEntrada);
+    }
+
+    /**
+     * Pool del canal de salida: envía a los clientes lo que publica el broker y las confirmaciones.
+     */
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        int hilos = hilosSalida(hilosSalida);
+        registration.taskExecutor().corePoolSize(hilos).maxPoolSize(hilos).queueCapacity(colaSalida);
+    }
+
+    /**
+     * Hilos del canal de salida. Por defecto uno por núcleo y nunca menos de dos: un cliente
+     * que no lee deja un hilo bloqueado en su escritura hasta que pasa su límite de envío, y
+     * con un solo hilo nadie más podría comprobar ese límite ni enviar al resto mientras tanto.
+     */
+    static int hilosSalida(int configurados) {
+        return configurados > 0 ? configurados : Math.max(2, NUCLEOS);
+    }
+
+    /**
+     * Límites de envío por sesión. Si un cliente deja de leer, sus mensajes se acumulan en su
+     * sesión hasta estos límites y después se cierra; el resto de sesiones sigue recibiendo.
+     */
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(limiteEnvioMs).setSendBufferSizeLimit(limiteEnvioBytes);
+    }
+
     /**
      * En este método registro el endpoint que se usará para establecer la conexión WebSocket.
      * Uso SockJS para asegurar compatibilidad con navegadores que no soportan WebSocket.
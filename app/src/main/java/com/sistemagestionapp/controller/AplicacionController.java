@@ -1,29 +1,55 @@
 package com.sistemagestionapp.controller;
 
 import com.sistemagestionapp.model.Aplicacion;
+import com.sistemagestionapp.model.ControlDespliegue;
+import com.sistemagestionapp.model.EstadoControl;
 import com.sistemagestionapp.model.Lenguaje;
+import com.sistemagestionapp.model.PasoDespliegue;
 import com.sistemagestionapp.model.ProveedorCiCd;
 import com.sistemagestionapp.model.TipoBaseDatos;
 import com.sistemagestionapp.model.Usuario;
 import com.sistemagestionapp.service.AplicacionService;
+import com.sistemagestionapp.service.ArtefactoZip;
+import com.sistemagestionapp.service.CacheZipProyectoService;
+import com.sistemagestionapp.service.CompresorZipService;
+import com.sistemagestionapp.service.ControlDespliegueService;
+import com.sistemagestionapp.service.EspacioTemporalService;
+import com.sistemagestionapp.service.EstadoTrabajoZip;
 import com.sistemagestionapp.service.UsuarioService;
+import com.sistemagestionapp.service.ProyectoZipPreparado;
 import com.sistemagestionapp.service.ProyectoZipService;
-import jakarta.servlet.http.HttpServletResponse;
+import com.sistemagestionapp.service.TrabajoZip;
+import com.sistemagestionapp.service.TrabajoZipService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
 import java.security.Principal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Controlador que utilizo para gestionar las aplicaciones del usuario:
  * - Listado de aplicaciones.
  * - Formulario de creación y edición.
  * - Eliminación.
- * - Descarga de proyecto demo (ZIP).
+ * - Descarga de proyecto demo (ZIP), directa o mediante trabajos en segundo plano.
+ * - Exportación de todos los proyectos del usuario en un único ZIP.
+ * - Estado de los pasos de despliegue de cada aplicación.
  */
 @Controller
 @RequestMapping("/aplicaciones")
@@ -38,6 +64,21 @@ public class AplicacionController {
     @Autowired
     private ProyectoZipService proyectoZipService;
 
+    @Autowired
+    private CacheZipProyectoService cacheZipProyectoService;
+
+    @Autowired
+    private TrabajoZipService trabajoZipService;
+
+    @Autowired
+    private EspacioTemporalService espacioTemporalService;
+
+    @Autowired
+    private CompresorZipService compresorZipService;
+
+    @Autowired
+    private ControlDespliegueService controlDespliegueService;
+
     /**
      * Muestro el listado de aplicaciones del usuario autenticado.
      */
@@ -94,7 +135,8 @@ public class AplicacionController {
         Usuario propietario = usuarioService.obtenerPorCorreo(correo);
         aplicacion.setPropietario(propietario);
 
-        aplicacionService.guardar(aplicacion);
+        Aplicacion guardada = aplicacionService.guardar(aplicacion);
+        controlDespliegueService.inicializarPasos(guardada);
 
         // De momento ambos botones (Guardar / Guardar y generar ZIP) hacen lo mismo
         return "redirect:/aplicaciones";
@@ -102,24 +144,272 @@ public class AplicacionController {
 
     /**
      * Descargo el ZIP con el proyecto demo para esta aplicación.
+     *
+     * - El ETag es la clave de contenido del ZIP: si el navegador ya lo tiene, devuelvo 304
+     *   sin generar nada.
+     * - Con la caché activa sirvo el ZIP guardado en disco (se genera una sola vez por clave).
+     * - Sin caché, el ZIP se escribe directamente en la respuesta, sin fichero temporal.
+     * En ambos casos conozco el tamaño exacto y mando Content-Length.
+     *
+     * Admito descargas parciales (Accept-Ranges: bytes) para poder reanudarlas: con un solo
+     * rango en Range respondo 206 con ese trozo; si viene If-Range y no coincide con el ETag
+     * actual, el ZIP ha cambiado y mando el completo. Varios rangos o un Range mal formado
+     * los ignoro y mando el ZIP entero.
      */
     @GetMapping("/{id}/zip")
-    public void descargarZip(@PathVariable Long id, HttpServletResponse response) throws IOException {
+    public ResponseEntity<StreamingResponseBody> descargarZip(@PathVariable Long id, WebRequest webRequest) throws IOException {
         // 1) Busco la aplicación en BD
         Aplicacion aplicacion = aplicacionService.obtenerPorId(id);
 
-        // 2) Genero el ZIP temporal con el proyecto Java + app-config.properties
-        java.nio.file.Path zipPath = proyectoZipService.generarProyectoJava(aplicacion);
+        // 2) Preparo el ZIP (plantilla en memoria + app-config.properties)
+        ProyectoZipPreparado zip = proyectoZipService.prepararProyecto(aplicacion);
+        String etag = "\"" + zip.getClave() + "\"";
+
+        // 3) Si el cliente ya tiene esta versión, Spring responde 304 y no hace falta mandarla.
+        //    checkNotModified ya deja puesta la cabecera ETag en la respuesta.
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+
+        // 4) Con la caché activa mando el fichero de la caché, así que su tamaño es el que
+        //    anuncio en Content-Length y Content-Range (la caché ya descarta los que no miden
+        //    lo mismo que el ZIP preparado, que es lo que escribo si el fichero desaparece)
+        ArtefactoZip artefacto = cacheZipProyectoService.estaHabilitada() ? cacheZipProyectoService.obtener(zip) : null;
+        long tamano = artefacto != null ? artefacto.getTamano() : zip.getTamano();
+
+        // 5) Miro si me piden solo un trozo (descarga reanudada)
+        HttpRange rango = leerRango(webRequest, etag);
+        long inicio = 0;
+        long longitud = tamano;
+        if (rango != null) {
+            try {
+                inicio = rango.getRangeStart(tamano);
+                longitud = rango.getRangeEnd(tamano) - inicio + 1;
+            } catch (IllegalArgumentException e) {
+                longitud = 0;
+            }
+            if (inicio >= tamano || longitud <= 0) {
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes */" + tamano)
+                        .build();
+            }
+        }
+        long desde = inicio;
+        long bytes = longitud;
+        boolean parcial = rango != null;
+
+        // 6) El cuerpo se escribe en streaming fuera del hilo de la petición
+        StreamingResponseBody cuerpo;
+        if (artefacto != null) {
+            cuerpo = salida -> {
+                boolean enviado = parcial
+                        ? cacheZipProyectoService.enviar(artefacto, salida, desde, bytes)
+                        : cacheZipProyectoService.enviar(artefacto, salida);
+                if (!enviado) {
+                    zip.escribir(salida, desde, bytes);
+                }
+            };
+        } else {
+            cuerpo = parcial ? salida -> zip.escribir(salida, desde, bytes) : zip::escribir;
+        }
+
+        ResponseEntity.BodyBuilder respuesta = parcial
+                ? ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes " + inicio + "-" + (inicio + longitud - 1) + "/" + tamano)
+                : ResponseEntity.ok();
+        return respuesta
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .contentLength(longitud)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(zip.getNombreArchivo()).build().toString())
+                .body(cuerpo);
+    }
+
+    /**
+     * Devuelvo el único rango pedido en la cabecera Range, o null si hay que mandar el ZIP
+     * completo: no hay Range, está mal formado, pide varios rangos o el If-Range no
+     * coincide con el ETag actual (solo comparo ETags fuertes; una fecha nunca coincide).
+     */
+    private HttpRange leerRango(WebRequest webRequest, String etag) {
+        String cabecera = webRequest.getHeader(HttpHeaders.RANGE);
+        if (cabecera == null) {
+            return null;
+        }
+        String ifRange = webRequest.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !ifRange.trim().equals(etag)) {
+            return null;
+        }
+        try {
+            List<HttpRange> rangos = HttpRange.parseRanges(cabecera);
+            return rangos.size() == 1 ? rangos.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Descargo en un solo ZIP los proyectos de todas las aplicaciones del usuario, cada uno
+     * en su carpeta. Se escribe en streaming según se genera, así que no mando Content-Length.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportarZip(Principal principal) {
+        Usuario propietario = usuarioService.obtenerPorCorreo(principal.getName());
+        List<Aplicacion> aplicaciones = aplicacionService.listarPorPropietario(propietario);
+        if (aplicaciones.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No tienes aplicaciones que exportar");
+        }
+
+        StreamingResponseBody cuerpo = salida -> proyectoZipService.exportarProyectos(aplicaciones, salida);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .cacheControl(CacheControl.noStore())
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename("aplicaciones.zip").build().toString())
+                .body(cuerpo);
+    }
+
+    /**
+     * Encolo la generación del ZIP en segundo plano y devuelvo el id del trabajo al momento.
+     * El progreso se publica por STOMP en /topic/zip/{id}.
+     */
+    @PostMapping("/{id}/zip/trabajos")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> encolarZip(@PathVariable Long id, Principal principal) {
+        Aplicacion aplicacion = aplicacionService.obtenerPorId(id);
 
-        // 3) Preparo la respuesta HTTP para que el navegador lo descargue
-        response.setContentType("application/zip");
-        response.setHeader(
-                "Content-Disposition",
-                "attachment; filename=\"" + zipPath.getFileName().toString() + "\""
-        );
+        TrabajoZip trabajo;
+        try {
+            trabajo = trabajoZipService.encolar(aplicacion, principal.getName());
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+        }
+
+        Map<String, Object> respuesta = trabajo.resumen();
+        respuesta.put("destino", TrabajoZipService.DESTINO_PROGRESO + trabajo.getId());
+        return ResponseEntity.accepted().body(respuesta);
+    }
+
+    /**
+     * Consulto el estado de un trabajo de generación de ZIP.
+     */
+    @GetMapping("/zip/trabajos/{trabajoId}")
+    @ResponseBody
+    public Map<String, Object> estadoTrabajoZip(@PathVariable String trabajoId, Principal principal) {
+        return obtenerTrabajo(trabajoId, principal).resumen();
+    }
+
+    /**
+     * Descargo el ZIP de un trabajo ya completado.
+     */
+    @GetMapping("/zip/trabajos/{trabajoId}/descarga")
+    public ResponseEntity<StreamingResponseBody> descargarTrabajoZip(@PathVariable String trabajoId, Principal principal) {
+        TrabajoZip trabajo = obtenerTrabajo(trabajoId, principal);
+        if (trabajo.getEstado() != EstadoTrabajoZip.COMPLETADO) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "El trabajo todavía no ha terminado: " + trabajo.getEstado());
+        }
+        if (trabajo.getEspacio() != null && trabajo.getEspacio().estaLiberado()) {
+            throw new ResponseStatusException(HttpStatus.GONE, "El ZIP del trabajo ya se ha borrado");
+        }
+
+        ProyectoZipPreparado zip = trabajo.getZip();
+        StreamingResponseBody cuerpo = salida -> trabajoZipService.enviarResultado(trabajo, salida);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .contentLength(zip.getTamano())
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(zip.getNombreArchivo()).build().toString())
+                .body(cuerpo);
+    }
+
+    /**
+     * Métricas de la caché de ZIP, del espacio temporal en disco y de la compresión.
+     */
+    @GetMapping("/zip/metricas")
+    @ResponseBody
+    public Map<String, Object> metricasZip() {
+        Map<String, Object> cache = new LinkedHashMap<>();
+        cache.put("habilitada", cacheZipProyectoService.estaHabilitada());
+        cache.put("aciertos", cacheZipProyectoService.getAciertos());
+        cache.put("fallos", cacheZipProyectoService.getFallos());
+        cache.put("expulsiones", cacheZipProyectoService.getExpulsiones());
+        cache.put("bytesEnUso", cacheZipProyectoService.getBytesEnUso());
+        cache.put("maxBytes", cacheZipProyectoService.getMaxBytes());
+
+        Map<String, Object> temporal = new LinkedHashMap<>();
+        temporal.put("espaciosActivos", espacioTemporalService.getEspaciosActivos());
+        temporal.put("bytesEnUso", espacioTemporalService.getBytesEnUso());
+        temporal.put("cuotaBytes", espacioTemporalService.getCuotaBytes());
+        temporal.put("espaciosRecuperados", espacioTemporalService.getEspaciosRecuperados());
+        temporal.put("bytesRecuperados", espacioTemporalService.getBytesRecuperados());
+        temporal.put("esperasAgotadas", espacioTemporalService.getEsperasAgotadas());
+
+        Map<String, Object> metricas = new LinkedHashMap<>();
+        metricas.put("cache", cache);
+        metricas.put("temporal", temporal);
+        metricas.put("compresion", compresorZipService.getEstadisticas());
+        return metricas;
+    }
+
+    /**
+     * Consulto los pasos de despliegue de una aplicación del usuario.
+     */
+    @GetMapping("/{id}/despliegue")
+    @ResponseBody
+    public List<Map<String, Object>> pasosDespliegue(@PathVariable Long id, Principal principal) {
+        List<Map<String, Object>> pasos = new ArrayList<>();
+        for (ControlDespliegue control : controlDespliegueService.listar(obtenerPropia(id, principal))) {
+            pasos.add(resumen(control));
+        }
+        return pasos;
+    }
+
+    /**
+     * Apunto el resultado de un paso de despliegue (lo informa el pipeline al terminar el
+     * paso). El cambio de estado queda registrado en la cadena de bloques.
+     */
+    @PostMapping("/{id}/despliegue/{paso}")
+    @ResponseBody
+    public Map<String, Object> registrarPasoDespliegue(@PathVariable Long id,
+                                                       @PathVariable PasoDespliegue paso,
+                                                       @RequestParam EstadoControl estado,
+                                                       @RequestParam(required = false) String mensaje,
+                                                       Principal principal) {
+        Aplicacion aplicacion = obtenerPropia(id, principal);
+        return resumen(controlDespliegueService.registrarResultado(aplicacion, paso, estado, mensaje));
+    }
+
+    private Aplicacion obtenerPropia(Long id, Principal principal) {
+        Aplicacion aplicacion;
+        try {
+            aplicacion = aplicacionService.obtenerPorId(id);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
+        }
+        if (aplicacion.getPropietario() == null
+                || !aplicacion.getPropietario().getCorreo().equals(principal.getName())) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Aplicación no encontrada con id " + id);
+        }
+        return aplicacion;
+    }
+
+    private static Map<String, Object> resumen(ControlDespliegue control) {
+        Map<String, Object> resumen = new LinkedHashMap<>();
+        resumen.put("paso", control.getPaso());
+        resumen.put("estado", control.getEstado());
+        resumen.put("mensaje", control.getMensaje());
+        resumen.put("fechaEjecucion", control.getFechaEjecucion());
+        return resumen;
+    }
 
-        java.nio.file.Files.copy(zipPath, response.getOutputStream());
-        response.flushBuffer();
+    private TrabajoZip obtenerTrabajo(String trabajoId, Principal principal) {
+        try {
+            return trabajoZipService.obtener(trabajoId, principal.getName());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
+        }
     }
 
     /**
@@ -1,43 +1,149 @@
 package com.sistemagestionapp.controller;
 
 import com.sistemagestionapp.model.Bloque;
+import com.sistemagestionapp.model.PruebaInclusion;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sistemagestionapp.service.AuditoriaDespliegueService;
+import com.sistemagestionapp.service.BlockchainService;
+import com.sistemagestionapp.service.IndiceBloques;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Controlador de la funcionalidad Blockchain de la aplicación.
  * Aquí gestionamos la creación y visualización de bloques que simulan una cadena de bloques simple.
+ * La cadena la guarda {@link BlockchainService} en disco.
  */
 @Controller
 @RequestMapping("/blockchain")
 public class BlockchainController {
 
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    @Autowired
+    private BlockchainService blockchainService;
+
+    @Autowired
+    private AuditoriaDespliegueService auditoriaDespliegueService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${blockchain.vista.bloques:20}")
+    private int bloquesVista;
+
+    @Value("${blockchain.api.limite-maximo:500}")
+    private int limiteMaximo;
+
     /**
-     * Lista que representa nuestra cadena de bloques.
+     * Muestra la página de la cadena de bloques con una ventana de los bloques más recientes
+     * y una indicación de validez. Con "antesDe" se navega hacia bloques más antiguos.
+     * @param antesDe índice a partir del cual (sin incluirlo) se muestran bloques anteriores
+     * @param model Objeto para pasar atributos a la vista
+     * @return nombre de la plantilla HTML "blockchain"
      */
-    private final List<Bloque> blockchain = new ArrayList<>();
+    @GetMapping
+    public String verBlockchain(@RequestParam(required = false) Integer antesDe, Model model) {
+        int total = blockchainService.getTotalBloques();
+        int hasta = antesDe != null ? Math.max(0, Math.min(antesDe, total)) : total;
+        List<Bloque> ventana = new ArrayList<>(blockchainService.obtenerBloques(hasta - 1, bloquesVista, true));
+        Collections.reverse(ventana);
+
+        int desde = ventana.isEmpty() ? hasta : ventana.get(0).getIndice();
+        model.addAttribute("blockchain", ventana);
+        model.addAttribute("totalBloques", total);
+        model.addAttribute("anteriores", desde > 0 ? desde : null);
+        model.addAttribute("posteriores", hasta < total ? Math.min(total, hasta + bloquesVista) : null);
+        model.addAttribute("valida", blockchainService.esCadenaValida());
+        return "blockchain";
+    }
 
     /**
-     * Constructor que inicializa el primer bloque (bloque génesis) al arrancar la aplicación.
+     * Página de bloques en JSON con paginación por cursor (el índice del bloque).
+     * @param cursor primer bloque de la página; por defecto el génesis (asc) o el último (desc)
+     * @param limite bloques por página
+     * @param orden "asc" o "desc"
+     * @return bloques de la página, total y cursor de la siguiente página (null si no hay más)
      */
-    public BlockchainController() {
-        blockchain.add(new Bloque(0,"Bloque principal", "0"));
+    @GetMapping("/bloques")
+    @ResponseBody
+    public Map<String, Object> listarBloques(@RequestParam(required = false) Integer cursor,
+                                             @RequestParam(defaultValue = "50") int limite,
+                                             @RequestParam(defaultValue = "asc") String orden) {
+        boolean descendente = "desc".equalsIgnoreCase(orden);
+        if (!descendente && !"asc".equalsIgnoreCase(orden)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "El orden debe ser asc o desc");
+        }
+        if (limite < 1 || limite > limiteMaximo) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "El límite debe estar entre 1 y " + limiteMaximo);
+        }
+        int total = blockchainService.getTotalBloques();
+        int inicio = cursor != null ? cursor : (descendente ? total - 1 : 0);
+        List<Bloque> bloques = blockchainService.obtenerBloques(inicio, limite, descendente);
+
+        Integer siguiente = null;
+        if (!bloques.isEmpty()) {
+            int ultimo = bloques.get(bloques.size() - 1).getIndice();
+            if (descendente && ultimo > 0) {
+                siguiente = ultimo - 1;
+            } else if (!descendente && ultimo < total - 1) {
+                siguiente = ultimo + 1;
+            }
+        }
+
+        List<Map<String, Object>> contenido = new ArrayList<>(bloques.size());
+        for (Bloque bloque : bloques) {
+            contenido.add(resumen(bloque));
+        }
+        Map<String, Object> pagina = new LinkedHashMap<>();
+        pagina.put("bloques", contenido);
+        pagina.put("total", total);
+        pagina.put("siguiente", siguiente);
+        return pagina;
     }
 
     /**
-     * Muestra la página de la cadena de bloques con los bloques actuales y una indicación de validez.
-     * @param model Objeto para pasar atributos a la vista
-     * @return nombre de la plantilla HTML "blockchain"
+     * Cadena en NDJSON (un bloque JSON por línea), leída del almacén bloque a bloque según
+     * se escribe: no se monta la lista entera en memoria.
+     * @param desde primer bloque que se envía
+     * @return respuesta en streaming hasta el último bloque que había al empezar; si la cadena
+     * se trunca mientras se envía (cambio de rama), acaba en el último bloque que queda
      */
-    @GetMapping
-    public String verBlockchain(Model model) {
-        model.addAttribute("blockchain", blockchain);
-        model.addAttribute("valida", esCadenaValida());
-        return "blockchain";
+    @GetMapping("/bloques.ndjson")
+    public ResponseEntity<StreamingResponseBody> exportarNdjson(@RequestParam(defaultValue = "0") int desde) {
+        int hasta = blockchainService.getTotalBloques();
+        StreamingResponseBody cuerpo = salida -> {
+            for (int i = Math.max(0, desde); i < hasta; i++) {
+                Bloque bloque;
+                try {
+                    bloque = blockchainService.obtenerBloque(i);
+                } catch (IllegalArgumentException e) {
+                    // Ya no existe: termino la respuesta limpia en vez de cortarla a medias
+                    break;
+                }
+                salida.write(objectMapper.writeValueAsBytes(resumen(bloque)));
+                salida.write('\n');
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(NDJSON)
+                .cacheControl(CacheControl.noStore())
+                .body(cuerpo);
     }
 
     /**
@@ -47,30 +153,138 @@ public class BlockchainController {
      */
     @PostMapping("/agregar")
     public String agregarBloque(@RequestParam String datos) {
-        Bloque ultimo = blockchain.get(blockchain.size() - 1);
-        int nuevoIndice = blockchain.size();
-        Bloque nuevo = new Bloque(nuevoIndice, datos, ultimo.getHash());
-        blockchain.add(nuevo);
+        blockchainService.añadirBloque(datos);
         return "redirect:/blockchain";
     }
 
     /**
-     * Verifica si la cadena de bloques es válida comprobando los hashes.
-     * @return true si la cadena es válida, false en caso contrario
+     * Añade un bloque con un lote de entradas (array JSON de textos).
+     * @param entradas entradas del bloque
+     * @return el bloque creado
      */
-    public boolean esCadenaValida() {
-        for (int i = 1; i < blockchain.size(); i++) {
-            Bloque actual = blockchain.get(i);
-            Bloque anterior = blockchain.get(i - 1);
+    @PostMapping("/lote")
+    @ResponseBody
+    public Map<String, Object> agregarLote(@RequestBody List<String> entradas) {
+        Bloque bloque;
+        try {
+            bloque = blockchainService.añadirLote(entradas);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        return resumen(bloque);
+    }
 
-            if (!actual.getHash().equals(actual.calcularHash())) {
-                return false;
-            }
+    /**
+     * Prueba de inclusión de una entrada: con ella se comprueba que la entrada está en la
+     * cadena sin descargar el bloque ni recalcular la cadena.
+     * @param indice índice del bloque
+     * @param posicion posición de la entrada dentro del bloque
+     * @return entrada, camino de hashes hasta la raíz de Merkle y cabecera del bloque
+     */
+    @GetMapping("/{indice}/prueba/{posicion}")
+    @ResponseBody
+    public PruebaInclusion pruebaInclusion(@PathVariable int indice, @PathVariable int posicion) {
+        try {
+            return blockchainService.obtenerPruebaInclusion(indice, posicion);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
+        }
+    }
 
-            if (!actual.getHashAnterior().equals(anterior.getHash())) {
-                return false;
+    /**
+     * Busca un bloque por su hash usando el índice de hashes.
+     * @param hash hash del bloque en hexadecimal
+     * @return el bloque; 404 si no existe y 400 si el hash no es válido
+     */
+    @GetMapping("/hash/{hash}")
+    @ResponseBody
+    public Map<String, Object> buscarPorHash(@PathVariable String hash) {
+        Bloque bloque;
+        try {
+            bloque = blockchainService.buscarPorHash(hash);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        if (bloque == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No hay ningún bloque con ese hash");
+        }
+        return resumen(bloque);
+    }
+
+    /**
+     * Busca los bloques que contienen todas las palabras de la consulta, del más reciente al más antiguo.
+     * @param q palabras a buscar
+     * @param limite bloques que se devuelven como mucho
+     * @return los bloques encontrados y cuántos coinciden; si totalExacto es false, el total es una
+     * cota inferior (hay al menos {@code limite} y la búsqueda se ha parado ahí). Los bloques que
+     * desaparecen por un truncado mientras tanto no se devuelven
+     */
+    @GetMapping("/search")
+    @ResponseBody
+    public Map<String, Object> buscar(@RequestParam String q, @RequestParam(defaultValue = "20") int limite) {
+        if (limite < 1 || limite > limiteMaximo) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "El límite debe estar entre 1 y " + limiteMaximo);
+        }
+        IndiceBloques.Resultado resultado;
+        try {
+            resultado = blockchainService.buscar(q, limite);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        List<Map<String, Object>> bloques = new ArrayList<>(resultado.indices().size());
+        for (int indice : resultado.indices()) {
+            try {
+                bloques.add(resumen(blockchainService.obtenerBloque(indice)));
+            } catch (IllegalArgumentException e) {
+                // La cadena se ha truncado después de buscar (cambio de rama): el bloque ya no cuenta
             }
         }
-        return true;
+        Map<String, Object> respuesta = new LinkedHashMap<>();
+        respuesta.put("consulta", q);
+        respuesta.put("total", resultado.total());
+        respuesta.put("totalExacto", resultado.exacto());
+        respuesta.put("bloques", bloques);
+        return respuesta;
+    }
+
+    /**
+     * Estado de la validación de la cadena y cuánto tardaron las últimas comprobaciones.
+     */
+    @GetMapping("/validacion")
+    @ResponseBody
+    public Map<String, Object> estadoValidacion() {
+        return blockchainService.getEstadoValidacion();
+    }
+
+    /**
+     * Métricas del almacén de bloques, del secuenciador que los escribe, de los índices de búsqueda, del minado,
+     * del arranque desde el último punto de control y de la auditoría de despliegues.
+     */
+    @GetMapping("/metricas")
+    @ResponseBody
+    public Map<String, Object> metricas() {
+        Map<String, Object> metricas = new LinkedHashMap<>();
+        metricas.put("almacen", blockchainService.getEstadisticasAlmacen());
+        metricas.put("secuenciador", blockchainService.getEstadisticasSecuenciador());
+        metricas.put("indice", blockchainService.getEstadisticasIndice());
+        metricas.put("minado", blockchainService.getEstadisticasMinado());
+        metricas.put("puntoControl", blockchainService.getEstadisticasPuntoControl());
+        metricas.put("auditoria", auditoriaDespliegueService.getEstadisticas());
+        return metricas;
+    }
+
+    /**
+     * Bloque en JSON con los hashes en hexadecimal.
+     */
+    private static Map<String, Object> resumen(Bloque bloque) {
+        Map<String, Object> resumen = new LinkedHashMap<>();
+        resumen.put("indice", bloque.getIndice());
+        resumen.put("hash", bloque.getHash());
+        resumen.put("hashAnterior", bloque.getHashAnterior());
+        resumen.put("raizMerkle", bloque.getRaizMerkle());
+        resumen.put("dificultad", bloque.getDificultad());
+        resumen.put("nonce", bloque.getNonce());
+        resumen.put("entradas", bloque.getEntradas());
+        return resumen;
     }
-}
\ No newline at end of file
+}
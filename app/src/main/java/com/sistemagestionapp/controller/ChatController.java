@@ -1,9 +1,14 @@
 package com.sistemagestionapp.controller;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.socket.config.WebSocketMessageBrokerStats;
+
+import java.util.Map;
 
 /**
  * Controlador para gestionar la funcionalidad del chat en tiempo real.
@@ -14,6 +19,9 @@ import org.springframework.web.bind.annotation.GetMapping;
 @Controller
 public class ChatController {
 
+    @Autowired
+    private WebSocketMessageBrokerStats estadisticasWebSocket;
+
     /**
      * Este método se encarga de recibir mensajes del frontend enviados al canal "/app/mensaje".
      * Una vez recibido el mensaje, lo reenvía a todos los suscritos en "/topic/chat".
@@ -38,4 +46,21 @@ public class ChatController {
     public String verChat() {
         return "chat";
     }
+
+    /**
+     * Métricas de WebSocket/STOMP que lleva Spring: sesiones (también las cerradas por superar
+     * los límites de envío), frames STOMP y estado de los pools de los canales.
+     *
+     * @return las estadísticas en JSON.
+     */
+    @GetMapping("/chat/metricas")
+    @ResponseBody
+    public Map<String, Object> metricas() {
+        return Map.of(
+                "sesiones", estadisticasWebSocket.getWebSocketSessionStatsInfo(),
+                "stomp", estadisticasWebSocket.getStompSubProtocolStatsInfo(),
+                "canalEntrada", estadisticasWebSocket.getClientInboundExecutorStatsInfo(),
+                "canalSalida", estadisticasWebSocket.getClientOutboundExecutorStatsInfo(),
+                "programador", estadisticasWebSocket.getSockJsTaskSchedulerStatsInfo());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,94 @@
+package com.sistemagestionapp.controller;
+
+import com.sistemagestionapp.service.BlockchainService;
+import com.sistemagestionapp.service.ReplicacionCadenaService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rutas que usan los otros nodos para replicar la cadena de bloques. No llevan sesión de
+ * usuario: piden el token de replicación en la cabecera {@link ReplicacionCadenaService#CABECERA_TOKEN}
+ * y, si el nodo no tiene token configurado, no contestan a nadie.
+ */
+@Controller
+@RequestMapping("/blockchain/replicacion")
+public class ReplicacionController {
+
+    @Autowired
+    private BlockchainService blockchainService;
+
+    @Autowired
+    private ReplicacionCadenaService replicacionService;
+
+    @Value("${blockchain.replicacion.lote:512}")
+    private int loteMaximo;
+
+    /**
+     * Cabeza de la cadena (o de uno de sus prefijos): número de bloques y hash del último.
+     * @param bloques número de bloques del prefijo; por defecto la cadena entera
+     */
+    @GetMapping("/cabeza")
+    @ResponseBody
+    public Map<String, Object> cabeza(@RequestHeader(value = ReplicacionCadenaService.CABECERA_TOKEN, required = false) String token,
+                                      @RequestParam(required = false) Integer bloques) {
+        comprobarToken(token);
+        int total = blockchainService.getTotalBloques();
+        int prefijo = bloques != null ? bloques : total;
+        if (prefijo < 1 || prefijo > total) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "El prefijo debe tener entre 1 y " + total + " bloques");
+        }
+        Map<String, Object> cabeza = new LinkedHashMap<>();
+        cabeza.put("bloques", prefijo);
+        cabeza.put("hash", HexFormat.of().formatHex(blockchainService.obtenerHashCabeza(prefijo)));
+        return cabeza;
+    }
+
+    /**
+     * Bloques [desde, hasta) en binario: cada uno es su longitud (int) seguida del registro tal
+     * como está en disco. Si piden más de un lote, mando solo el primero y el nodo pide el resto.
+     */
+    @GetMapping("/bloques")
+    public ResponseEntity<StreamingResponseBody> bloques(@RequestHeader(value = ReplicacionCadenaService.CABECERA_TOKEN, required = false) String token,
+                                                         @RequestParam int desde,
+                                                         @RequestParam int hasta) {
+        comprobarToken(token);
+        int total = blockchainService.getTotalBloques();
+        if (desde < 0 || desde >= total || hasta <= desde) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Rango de bloques no válido");
+        }
+        int fin = Math.min(Math.min(hasta, total), desde + Math.max(1, loteMaximo));
+        StreamingResponseBody cuerpo = salida -> blockchainService.exportarBloques(desde, fin, salida);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .cacheControl(CacheControl.noStore())
+                .body(cuerpo);
+    }
+
+    /**
+     * Estado de la replicación con cada par configurado.
+     */
+    @GetMapping("/estado")
+    @ResponseBody
+    public Map<String, Object> estado(@RequestHeader(value = ReplicacionCadenaService.CABECERA_TOKEN, required = false) String token) {
+        comprobarToken(token);
+        return replicacionService.getEstado();
+    }
+
+    private void comprobarToken(String token) {
+        if (!replicacionService.tokenValido(token)) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Token de replicación no válido");
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.sistemagestionapp.model;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Árbol de Merkle de las entradas de un bloque.
+ *
+ * - Hoja: SHA-256(0x00 + entrada en UTF-8).
+ * - Nodo: SHA-256(0x01 + izquierdo + derecho).
+ * - Los niveles se forman emparejando nodos consecutivos; si un nivel tiene un número
+ *   impar de nodos, el último sube tal cual al siguiente (no lo duplico, para que dos
+ *   listas de entradas distintas no puedan dar la misma raíz).
+ *
+ * Guardo el árbol "aplanado": todas las hojas, luego el nivel siguiente y así hasta la
+ * raíz, que es el último nodo. Con n entradas hay menos de 2n nodos y la posición de
+ * cualquier nodo se calcula sin recorrer nada, así que una prueba de inclusión son
+ * log2(n) lecturas y verificarla son log2(n) hashes.
+ */
+public final class ArbolMerkle {
+
+    public static final int TAMANO_NODO = Bloque.TAMANO_HASH;
+
+    private static final byte PREFIJO_HOJA = 0x00;
+    private static final byte PREFIJO_NODO = 0x01;
+
+    private static final ThreadLocal<Calculadora> CALCULADORA = ThreadLocal.withInitial(Calculadora::new);
+
+    private ArbolMerkle() {
+    }
+
+    /**
+     * @return número de nodos del árbol de n entradas (todas sus hojas y niveles).
+     */
+    public static int totalNodos(int entradas) {
+        int total = 0;
+        for (int tamano = entradas; ; tamano = (tamano + 1) / 2) {
+            total += tamano;
+            if (tamano <= 1) {
+                return total;
+            }
+        }
+    }
+
+    /**
+     * Construyo el árbol completo, aplanado por niveles.
+     *
+     * @param entradas entradas del bloque (al menos una).
+     * @return nodos del árbol; la raíz son los últimos {@link #TAMANO_NODO} bytes.
+     */
+    public static byte[] construir(List<String> entradas) {
+        if (entradas.isEmpty()) {
+            throw new IllegalArgumentException("Un bloque debe tener al menos una entrada");
+        }
+        Calculadora calculadora = CALCULADORA.get();
+        byte[] nodos = new byte[totalNodos(entradas.size()) * TAMANO_NODO];
+        for (int i = 0; i < entradas.size(); i++) {
+            calculadora.hoja(entradas.get(i), nodos, i * TAMANO_NODO);
+        }
+        int base = 0;
+        for (int tamano = entradas.size(); tamano > 1; ) {
+            int siguiente = base + tamano;
+            for (int i = 0; i < tamano; i += 2) {
+                int destino = (siguiente + i / 2) * TAMANO_NODO;
+                if (i + 1 < tamano) {
+                    calculadora.nodo(nodos, (base + i) * TAMANO_NODO, nodos, (base + i + 1) * TAMANO_NODO, nodos, destino);
+                } else {
+                    System.arraycopy(nodos, (base + i) * TAMANO_NODO, nodos, destino, TAMANO_NODO);
+                }
+            }
+            base = siguiente;
+            tamano = (tamano + 1) / 2;
+        }
+        return nodos;
+    }
+
+    /**
+     * @return raíz de un árbol construido con {@link #construir(List)}.
+     */
+    public static byte[] raiz(byte[] nodos) {
+        return Arrays.copyOfRange(nodos, nodos.length - TAMANO_NODO, nodos.length);
+    }
+
+    /**
+     * Recalculo la raíz de las entradas y la comparo con la indicada. Trabajo sobre un
+     * buffer del hilo, así que validar un bloque no crea objetos.
+     */
+    public static boolean raizCoincide(List<String> entradas, byte[] raiz) {
+        if (entradas.isEmpty()) {
+            return false;
+        }
+        return CALCULADORA.get().raizCoincide(entradas, raiz);
+    }
+
+    /**
+     * Verifico una prueba de inclusión: parto de la hoja de la entrada y voy combinándola
+     * con los hermanos del camino hasta llegar (o no) a la raíz.
+     *
+     * @param entrada texto de la entrada.
+     * @param hermanos hashes de los hermanos, de la hoja hacia la raíz.
+     * @param hermanoIzquierdo para cada hermano, si va a la izquierda del nodo actual.
+     * @param raiz raíz de Merkle del bloque.
+     * @return true si la entrada está en el árbol con esa raíz.
+     */
+    public static boolean verificar(String entrada, List<byte[]> hermanos, List<Boolean> hermanoIzquierdo, byte[] raiz) {
+        if (hermanos.size() != hermanoIzquierdo.size()) {
+            return false;
+        }
+        Calculadora calculadora = CALCULADORA.get();
+        byte[] actual = new byte[TAMANO_NODO];
+        calculadora.hoja(entrada, actual, 0);
+        for (int i = 0; i < hermanos.size(); i++) {
+            byte[] hermano = hermanos.get(i);
+            if (hermano.length != TAMANO_NODO) {
+                return false;
+            }
+            if (hermanoIzquierdo.get(i)) {
+                calculadora.nodo(hermano, 0, actual, 0, actual, 0);
+            } else {
+                calculadora.nodo(actual, 0, hermano, 0, actual, 0);
+            }
+        }
+        return Arrays.equals(actual, raiz);
+    }
+
+    /**
+     * Compruebo que los lados de un camino son los de la hoja en esa posición: a cada nivel
+     * el hermano es el nodo vecino del par, y si el nodo es el último de un nivel impar sube
+     * sin hermano.
+     *
+     * @param posicion posición de la entrada.
+     * @param total número de entradas del bloque.
+     * @param hermanoIzquierdo lados del camino, de la hoja hacia la raíz.
+     * @return true si el camino corresponde a esa posición.
+     */
+    public static boolean caminoCoincide(int posicion, int total, List<Boolean> hermanoIzquierdo) {
+        if (posicion < 0 || posicion >= total) {
+            return false;
+        }
+        int paso = 0;
+        int actual = posicion;
+        for (int tamano = total; tamano > 1; tamano = (tamano + 1) / 2) {
+            int hermano = actual ^ 1;
+            if (hermano < tamano) {
+                if (paso >= hermanoIzquierdo.size() || hermanoIzquierdo.get(paso) != hermano < actual) {
+                    return false;
+                }
+                paso++;
+            }
+            actual >>= 1;
+        }
+        return paso == hermanoIzquierdo.size();
+    }
+
+    /**
+     * Digest y buffers de un hilo.
+     */
+    private static final class Calculadora {
+
+        private final MessageDigest digest;
+        private byte[] texto = new byte[256];
+        private byte[] nodos = new byte[16 * TAMANO_NODO];
+
+        private Calculadora() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 no disponible", e);
+            }
+        }
+
+        private void hoja(String entrada, byte[] destino, int posicion) {
+            digest.update(PREFIJO_HOJA);
+            int maximo = CodificadorUtf8.maximo(entrada);
+            if (texto.length < maximo) {
+                texto = new byte[Math.max(maximo, texto.length * 2)];
+            }
+            digest.update(texto, 0, CodificadorUtf8.codificar(entrada, texto));
+            terminar(destino, posicion);
+        }
+
+        private void nodo(byte[] izquierdo, int posIzquierdo, byte[] derecho, int posDerecho, byte[] destino, int posicion) {
+            digest.update(PREFIJO_NODO);
+            digest.update(izquierdo, posIzquierdo, TAMANO_NODO);
+            digest.update(derecho, posDerecho, TAMANO_NODO);
+            terminar(destino, posicion);
+        }
+
+        /**
+         * Calculo la raíz en el sitio: cada nivel se escribe sobre el principio del anterior.
+         */
+        private boolean raizCoincide(List<String> entradas, byte[] raiz) {
+            int tamano = entradas.size();
+            if (nodos.length < tamano * TAMANO_NODO) {
+                nodos = new byte[Math.max(tamano * TAMANO_NODO, nodos.length * 2)];
+            }
+            for (int i = 0; i < tamano; i++) {
+                hoja(entradas.get(i), nodos, i * TAMANO_NODO);
+            }
+            while (tamano > 1) {
+                for (int i = 0; i < tamano; i += 2) {
+                    int destino = (i / 2) * TAMANO_NODO;
+                    if (i + 1 < tamano) {
+                        nodo(nodos, i * TAMANO_NODO, nodos, (i + 1) * TAMANO_NODO, nodos, destino);
+                    } else {
+                        System.arraycopy(nodos, i * TAMANO_NODO, nodos, destino, TAMANO_NODO);
+                    }
+                }
+                tamano = (tamano + 1) / 2;
+            }
+            return Arrays.equals(nodos, 0, TAMANO_NODO, raiz, 0, raiz.length);
+        }
+
+        private void terminar(byte[] destino, int posicion) {
+            try {
+                digest.digest(destino, posicion, TAMANO_NODO);
+            } catch (DigestException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
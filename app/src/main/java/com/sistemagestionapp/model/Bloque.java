@@ -1,36 +1,182 @@
 package com.sistemagestionapp.model;
 
-import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
 
+/**
+ * Bloque de la cadena.
+ *
+ * Un bloque lleva un lote de entradas (al menos una) comprometidas con la raíz de un
+ * {@link ArbolMerkle}. El hash del bloque es el SHA-256 de una codificación binaria fija
+ * de su cabecera: índice (4 bytes, big endian) + hash anterior (32 bytes) + raíz de
+ * Merkle (32 bytes) + dificultad (1 byte) + nonce (8 bytes). Así se puede demostrar que
+ * una entrada está en un bloque sin enseñar el resto de entradas.
+ *
+ * La dificultad es la prueba de trabajo: el hash debe empezar por ese número de bits a
+ * cero, y el nonce es el valor que lo consigue (ver MineroBloques). Cada bloque guarda la
+ * suya dentro de la cabecera, así que no se puede bajar sin cambiar el hash, y cambiar la
+ * dificultad configurada no invalida los bloques que ya estaban. Con dificultad 0 no hay
+ * prueba de trabajo y el nonce es 0.
+ *
+ * Los hashes los guardo como arrays de 32 bytes; el texto hexadecimal que se ve en la
+ * página solo lo genero cuando alguien lo pide. Para calcular el hash uso un
+ * MessageDigest y un buffer por hilo, así que comprobar un bloque no crea objetos.
+ */
 public class Bloque {
 
+    public static final int TAMANO_HASH = 32;
+
+    /**
+     * Hash anterior del bloque génesis.
+     */
+    public static final byte[] HASH_CERO = new byte[TAMANO_HASH];
+
+    /**
+     * Bytes de la cabecera sobre la que se calcula el hash; el nonce son los 8 últimos.
+     */
+    public static final int TAMANO_CABECERA = 4 + TAMANO_HASH * 2 + 1 + 8;
+
+    /**
+     * Dificultad máxima en bits a cero (más no tiene sentido: no se encontraría nunca).
+     */
+    public static final int DIFICULTAD_MAXIMA = 64;
+
+    private static final ThreadLocal<Calculadora> CALCULADORA = ThreadLocal.withInitial(Calculadora::new);
+
     private int indice;
-    private String datos;
-    private String hashAnterior;
-    private String hash;
+    private List<String> entradas;
+    private byte[] hashAnterior;
+    private byte[] raizMerkle;
+    private int dificultad;
+    private long nonce;
+    private byte[] hash;
+
+    /** Árbol completo, solo si el bloque se ha creado aquí (para guardarlo sin recalcularlo). */
+    private byte[] arbol;
+
+    private String hashHex;
+    private String hashAnteriorHex;
+
+    public Bloque(int indice, String datos, byte[] hashAnterior) {
+        this(indice, List.of(datos), hashAnterior);
+    }
 
-    public Bloque(int indice, String datos, String hashAnterior) {
+    public Bloque(int indice, List<String> entradas, byte[] hashAnterior) {
+        this(indice, entradas, hashAnterior, 0);
+    }
+
+    /**
+     * Creo un bloque candidato con nonce 0. Si la dificultad es mayor que 0 hay que minarlo
+     * y quedarse con {@link #conNonce(long)} del nonce encontrado.
+     */
+    public Bloque(int indice, List<String> entradas, byte[] hashAnterior, int dificultad) {
+        this.indice = indice;
+        this.entradas = List.copyOf(entradas);
+        this.hashAnterior = comprobarHash(hashAnterior);
+        this.dificultad = comprobarDificultad(dificultad);
+        this.arbol = ArbolMerkle.construir(this.entradas);
+        this.raizMerkle = ArbolMerkle.raiz(arbol);
+        this.hash = calcularHash();
+    }
+
+    /**
+     * Reconstruyo un bloque leído del almacén con los hashes que tenía guardados, sin
+     * recalcularlos: así la validación de la cadena sigue detectando si alguien lo alteró.
+     */
+    public Bloque(int indice, List<String> entradas, byte[] hashAnterior, byte[] raizMerkle, int dificultad,
+                  long nonce, byte[] hash) {
         this.indice = indice;
-        this.datos = datos;
-        this.hashAnterior = hashAnterior;
+        this.entradas = List.copyOf(entradas);
+        this.hashAnterior = comprobarHash(hashAnterior);
+        this.raizMerkle = comprobarHash(raizMerkle);
+        this.dificultad = comprobarDificultad(dificultad);
+        this.nonce = nonce;
+        this.hash = comprobarHash(hash);
+    }
+
+    private Bloque(Bloque candidato, long nonce) {
+        this.indice = candidato.indice;
+        this.entradas = candidato.entradas;
+        this.hashAnterior = candidato.hashAnterior;
+        this.arbol = candidato.arbol;
+        this.raizMerkle = candidato.raizMerkle;
+        this.dificultad = candidato.dificultad;
+        this.nonce = nonce;
         this.hash = calcularHash();
     }
 
-    public String calcularHash() {
-        try {
-            String contenido = indice + datos + hashAnterior;
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hashBytes = digest.digest(contenido.getBytes(StandardCharsets.UTF_8));
-            StringBuilder sb = new StringBuilder();
-            for (byte b : hashBytes) {
-                sb.append(String.format("%02x", b));
+    /**
+     * @return el mismo bloque con otro nonce (y su hash recalculado), sin rehacer el árbol.
+     */
+    public Bloque conNonce(long nonce) {
+        return new Bloque(this, nonce);
+    }
+
+    /**
+     * Escribo la cabecera del bloque tal como entra en el hash. El minero la copia una vez
+     * y solo cambia los 8 bytes del nonce en cada intento.
+     *
+     * @param destino array de al menos {@link #TAMANO_CABECERA} bytes.
+     */
+    public void escribirCabecera(byte[] destino) {
+        escribirEntero(destino, 0, indice, 4);
+        System.arraycopy(hashAnterior, 0, destino, 4, TAMANO_HASH);
+        System.arraycopy(raizMerkle, 0, destino, 4 + TAMANO_HASH, TAMANO_HASH);
+        destino[4 + TAMANO_HASH * 2] = (byte) dificultad;
+        escribirEntero(destino, TAMANO_CABECERA - 8, nonce, 8);
+    }
+
+    /**
+     * Escribo un entero en big endian.
+     */
+    public static void escribirEntero(byte[] destino, int posicion, long valor, int bytes) {
+        for (int i = bytes - 1; i >= 0; i--) {
+            destino[posicion + i] = (byte) valor;
+            valor >>>= 8;
+        }
+    }
+
+    /**
+     * @return true si el hash empieza por al menos "dificultad" bits a cero.
+     */
+    public static boolean cumpleDificultad(byte[] hash, int dificultad) {
+        int bytesCompletos = dificultad >>> 3;
+        for (int i = 0; i < bytesCompletos; i++) {
+            if (hash[i] != 0) {
+                return false;
             }
-            return sb.toString();
-        } catch (NoSuchAlgorithmException e) {
-            return null;
         }
+        int resto = dificultad & 7;
+        return resto == 0 || (hash[bytesCompletos] & 0xFF) >>> (8 - resto) == 0;
+    }
+
+    /**
+     * @return hash calculado a partir del contenido del bloque (array nuevo).
+     */
+    public byte[] calcularHash() {
+        return CALCULADORA.get().calcular(this).clone();
+    }
+
+    /**
+     * @return true si el hash guardado es el que corresponde a la cabecera, cumple la
+     * dificultad que declara el propio bloque y la raíz de Merkle es la de las entradas. No
+     * crea objetos. Que esa dificultad no sea menor que la configurada lo comprueba
+     * {@code ValidadorCadena}.
+     */
+    public boolean tieneHashValido() {
+        return Arrays.equals(hash, CALCULADORA.get().calcular(this)) && cumpleDificultad(hash, dificultad)
+                && ArbolMerkle.raizCoincide(entradas, raizMerkle);
+    }
+
+    /**
+     * @return true si este bloque apunta al hash del bloque indicado.
+     */
+    public boolean enlazaCon(Bloque anterior) {
+        return Arrays.equals(hashAnterior, anterior.hash);
     }
 
     // Getters
@@ -38,15 +184,121 @@ public class Bloque {
         return indice;
     }
 
+    /**
+     * @return las entradas del bloque; si hay varias, una por línea.
+     */
     public String getDatos() {
-        return datos;
+        return entradas.size() == 1 ? entradas.get(0) : String.join("\n", entradas);
+    }
+
+    public List<String> getEntradas() {
+        return entradas;
     }
 
+    /**
+     * @return raíz de Merkle en hexadecimal (para la vista).
+     */
+    public String getRaizMerkle() {
+        return HexFormat.of().formatHex(raizMerkle);
+    }
+
+    public byte[] getRaizMerkleBytes() {
+        return raizMerkle;
+    }
+
+    /**
+     * @return bits a cero que debe tener el hash al principio (0 = sin prueba de trabajo).
+     */
+    public int getDificultad() {
+        return dificultad;
+    }
+
+    public long getNonce() {
+        return nonce;
+    }
+
+    /**
+     * @return nodos del árbol de Merkle si el bloque se construyó a partir de sus
+     * entradas, o null si se leyó del almacén.
+     */
+    public byte[] getArbolMerkle() {
+        return arbol;
+    }
+
+    /**
+     * @return hash anterior en hexadecimal (para la vista).
+     */
     public String getHashAnterior() {
-        return hashAnterior;
+        if (hashAnteriorHex == null) {
+            hashAnteriorHex = HexFormat.of().formatHex(hashAnterior);
+        }
+        return hashAnteriorHex;
     }
 
+    /**
+     * @return hash en hexadecimal (para la vista).
+     */
     public String getHash() {
+        if (hashHex == null) {
+            hashHex = HexFormat.of().formatHex(hash);
+        }
+        return hashHex;
+    }
+
+    /**
+     * @return los 32 bytes del hash anterior. No los copio: no hay que modificarlos.
+     */
+    public byte[] getHashAnteriorBytes() {
+        return hashAnterior;
+    }
+
+    /**
+     * @return los 32 bytes del hash. No los copio: no hay que modificarlos.
+     */
+    public byte[] getHashBytes() {
         return hash;
     }
-}
\ No newline at end of file
+
+    private static byte[] comprobarHash(byte[] valor) {
+        if (valor == null || valor.length != TAMANO_HASH) {
+            throw new IllegalArgumentException("Un hash de bloque debe tener " + TAMANO_HASH + " bytes");
+        }
+        return valor;
+    }
+
+    private static int comprobarDificultad(int dificultad) {
+        if (dificultad < 0 || dificultad > DIFICULTAD_MAXIMA) {
+            throw new IllegalArgumentException("La dificultad debe estar entre 0 y " + DIFICULTAD_MAXIMA);
+        }
+        return dificultad;
+    }
+
+    /**
+     * Digest y buffer de cabecera de un hilo.
+     */
+    private static final class Calculadora {
+
+        private final MessageDigest digest;
+        private final byte[] resultado = new byte[TAMANO_HASH];
+        private final byte[] cabecera = new byte[TAMANO_CABECERA];
+
+        private Calculadora() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 no disponible", e);
+            }
+        }
+
+        private byte[] calcular(Bloque bloque) {
+            bloque.escribirCabecera(cabecera);
+            digest.update(cabecera);
+            try {
+                digest.digest(resultado, 0, TAMANO_HASH);
+            } catch (DigestException e) {
+                throw new IllegalStateException(e);
+            }
+            return resultado;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.sistemagestionapp.model;
+
+/**
+ * Codificación UTF-8 sobre un buffer que ya tengo, para calcular hashes de texto sin crear
+ * un array por cada cadena como hace String.getBytes.
+ *
+ * Da los mismos bytes que String.getBytes(UTF_8): los sustitutos sueltos se cambian por '?'.
+ */
+public final class CodificadorUtf8 {
+
+    private CodificadorUtf8() {
+    }
+
+    /**
+     * @return bytes que puede ocupar como mucho el texto en UTF-8 (3 por char).
+     */
+    public static int maximo(String valor) {
+        return valor.length() * 3;
+    }
+
+    /**
+     * Codifico el texto al principio del buffer.
+     *
+     * @param destino buffer de al menos {@link #maximo(String)} bytes.
+     * @return bytes escritos.
+     */
+    public static int codificar(String valor, byte[] destino) {
+        byte[] b = destino;
+        int p = 0;
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            if (c < 0x80) {
+                b[p++] = (byte) c;
+            } else if (c < 0x800) {
+                b[p++] = (byte) (0xC0 | (c >> 6));
+                b[p++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < valor.length()
+                    && Character.isLowSurrogate(valor.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, valor.charAt(++i));
+                b[p++] = (byte) (0xF0 | (cp >> 18));
+                b[p++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                b[p++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                b[p++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                b[p++] = '?';
+            } else {
+                b[p++] = (byte) (0xE0 | (c >> 12));
+                b[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[p++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return p;
+    }
+}
@@ -0,0 +1,113 @@
+package com.sistemagestionapp.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Prueba de que una entrada está en un bloque de la cadena.
+ *
+ * Con la entrada y el camino de hermanos se recalcula la raíz de Merkle
+ * ({@link ArbolMerkle#verificar}); con el índice, el hash anterior y esa raíz se recalcula
+ * el hash del bloque. Si coincide con el que publica la cadena, la entrada está ahí, sin
+ * necesidad de descargar el resto del bloque ni de la cadena.
+ */
+public class PruebaInclusion {
+
+    private final int indiceBloque;
+    private final int posicion;
+    private final int totalEntradas;
+    private final String entrada;
+    private final byte[] hashAnterior;
+    private final byte[] raizMerkle;
+    private final int dificultad;
+    private final long nonce;
+    private final byte[] hashBloque;
+    private final List<byte[]> hermanos;
+    private final List<Boolean> hermanoIzquierdo;
+
+    public PruebaInclusion(int indiceBloque, int posicion, int totalEntradas, String entrada, byte[] hashAnterior,
+                           byte[] raizMerkle, int dificultad, long nonce, byte[] hashBloque, List<byte[]> hermanos,
+                           List<Boolean> hermanoIzquierdo) {
+        this.indiceBloque = indiceBloque;
+        this.posicion = posicion;
+        this.totalEntradas = totalEntradas;
+        this.entrada = entrada;
+        this.hashAnterior = hashAnterior;
+        this.raizMerkle = raizMerkle;
+        this.dificultad = dificultad;
+        this.nonce = nonce;
+        this.hashBloque = hashBloque;
+        this.hermanos = List.copyOf(hermanos);
+        this.hermanoIzquierdo = List.copyOf(hermanoIzquierdo);
+    }
+
+    /**
+     * @return true si el camino es el de la posición indicada, la entrada lleva a la raíz,
+     * la cabecera da el hash del bloque y el hash cumple la dificultad.
+     */
+    public boolean verificar() {
+        if (!ArbolMerkle.caminoCoincide(posicion, totalEntradas, hermanoIzquierdo)) {
+            return false;
+        }
+        if (!ArbolMerkle.verificar(entrada, hermanos, hermanoIzquierdo, raizMerkle)) {
+            return false;
+        }
+        Bloque cabecera = new Bloque(indiceBloque, List.of(entrada), hashAnterior, raizMerkle, dificultad, nonce, hashBloque);
+        return Arrays.equals(cabecera.calcularHash(), hashBloque) && Bloque.cumpleDificultad(hashBloque, dificultad);
+    }
+
+    public int getIndiceBloque() {
+        return indiceBloque;
+    }
+
+    public int getPosicion() {
+        return posicion;
+    }
+
+    public int getTotalEntradas() {
+        return totalEntradas;
+    }
+
+    public String getEntrada() {
+        return entrada;
+    }
+
+    public String getHashAnterior() {
+        return HexFormat.of().formatHex(hashAnterior);
+    }
+
+    public String getRaizMerkle() {
+        return HexFormat.of().formatHex(raizMerkle);
+    }
+
+    public int getDificultad() {
+        return dificultad;
+    }
+
+    public long getNonce() {
+        return nonce;
+    }
+
+    public String getHashBloque() {
+        return HexFormat.of().formatHex(hashBloque);
+    }
+
+    /**
+     * @return camino de la hoja a la raíz: hash de cada hermano y a qué lado va.
+     */
+    public List<Paso> getCamino() {
+        List<Paso> camino = new ArrayList<>(hermanos.size());
+        for (int i = 0; i < hermanos.size(); i++) {
+            camino.add(new Paso(HexFormat.of().formatHex(hermanos.get(i)), hermanoIzquierdo.get(i) ? "izquierda" : "derecha"));
+        }
+        return camino;
+    }
+
+    /**
+     * Un paso del camino: el hash del hermano y si va a la izquierda o a la derecha.
+     */
+    public record Paso(String hash, String lado) {
+    }
+}
@@ -0,0 +1,66 @@
+package com.sistemagestionapp.service;
+
+import java.nio.file.Path;
+
+/**
+ * ZIP de proyecto ya generado y guardado en la caché de disco.
+ *
+ * Llevo la cuenta de cuántas descargas lo están leyendo para que la caché no borre
+ * el fichero mientras alguien lo está enviando: si lo expulsa en ese momento, el borrado
+ * se hace cuando termina el último lector.
+ */
+public final class ArtefactoZip {
+
+    private final String clave;
+    private final Path ruta;
+    private final long tamano;
+
+    private int lectores;
+    private boolean expulsado;
+
+    ArtefactoZip(String clave, Path ruta, long tamano) {
+        this.clave = clave;
+        this.ruta = ruta;
+        this.tamano = tamano;
+    }
+
+    public String getClave() {
+        return clave;
+    }
+
+    public Path getRuta() {
+        return ruta;
+    }
+
+    public long getTamano() {
+        return tamano;
+    }
+
+    /**
+     * Registro un lector. Devuelvo false si el artefacto ya ha sido expulsado de la caché.
+     */
+    synchronized boolean adquirir() {
+        if (expulsado) {
+            return false;
+        }
+        lectores++;
+        return true;
+    }
+
+    /**
+     * Libero un lector. Devuelvo true si era el último y el artefacto está expulsado,
+     * es decir, si ya se puede borrar el fichero.
+     */
+    synchronized boolean liberar() {
+        lectores--;
+        return expulsado && lectores == 0;
+    }
+
+    /**
+     * Marco el artefacto como expulsado. Devuelvo true si nadie lo está leyendo.
+     */
+    synchronized boolean expulsar() {
+        expulsado = true;
+        return lectores == 0;
+    }
+}
@@ -0,0 +1,238 @@
+package com.sistemagestionapp.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sistemagestionapp.model.Bloque;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registro de auditoría de los despliegues en la cadena de bloques.
+ *
+ * Los cambios de estado de los pasos de despliegue ({@link EventoDespliegue}) los publica
+ * {@link ControlDespliegueService} y me llegan cuando se confirma la transacción. Se quedan en un búfer acotado en memoria: quien cambia el
+ * estado nunca espera al hash ni al disco. Un hilo escritor saca los eventos en lotes y
+ * cada lote va a un bloque, con una entrada por evento (así cada evento tiene su prueba de
+ * inclusión).
+ *
+ * Un lote se cierra cuando tiene el tamaño configurado o cuando el primero de sus eventos
+ * lleva esperando el intervalo configurado, lo que antes pase. Si el búfer se llena,
+ * descarto el evento y lo cuento antes que bloquear la transacción.
+ */
+@Service
+public class AuditoriaDespliegueService {
+
+    private final BlockchainService blockchainService;
+    private final ObjectMapper objectMapper;
+    private final boolean habilitada;
+    private final long intervaloNanos;
+    private final int tamanoLote;
+    private final BlockingQueue<EventoDespliegue> bufer;
+
+    private Thread hilo;
+    private volatile boolean activo = true;
+
+    private final LongAdder recibidos = new LongAdder();
+    private final LongAdder descartados = new LongAdder();
+    private final LongAdder registrados = new LongAdder();
+    private final LongAdder fallidos = new LongAdder();
+    private final LongAdder bloques = new LongAdder();
+    private final LongAdder reubicados = new LongAdder();
+    private final AtomicLong retrasoUltimoNanos = new AtomicLong();
+    private final AtomicLong retrasoMaximoNanos = new AtomicLong();
+    private volatile long primeroPendienteNanos;
+
+    public AuditoriaDespliegueService(BlockchainService blockchainService,
+                                      ObjectMapper objectMapper,
+                                      @Value("${auditoria.despliegue.habilitada:true}") boolean habilitada,
+                                      @Value("${auditoria.despliegue.intervalo-ms:1000}") long intervaloMs,
+                                      @Value("${auditoria.despliegue.tamano-lote:256}") int tamanoLote,
+                                      @Value("${auditoria.despliegue.capacidad:10000}") int capacidad,
+                                      @Value("${blockchain.bloque.max-entradas:1024}") int maxEntradas) {
+        this.blockchainService = blockchainService;
+        this.objectMapper = objectMapper;
+        this.habilitada = habilitada;
+        this.intervaloNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, intervaloMs));
+        this.tamanoLote = Math.max(1, Math.min(tamanoLote, maxEntradas));
+        this.bufer = new ArrayBlockingQueue<>(Math.max(1, capacidad));
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        if (!habilitada) {
+            return;
+        }
+        hilo = new Thread(this::ejecutar, "auditoria-despliegue");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    /**
+     * Dejo un evento en el búfer sin esperar. Me llega después del commit de la transacción
+     * que lo publicó (si se deshace, no llega) o al momento si no había transacción.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void registrar(EventoDespliegue evento) {
+        if (!habilitada) {
+            return;
+        }
+        recibidos.increment();
+        if (!bufer.offer(evento)) {
+            descartados.increment();
+        }
+    }
+
+    /**
+     * @return métricas de la auditoría: eventos recibidos, en el búfer, registrados y
+     * descartados, bloques escritos y retraso desde el cambio de estado hasta la cadena.
+     */
+    public Map<String, Object> getEstadisticas() {
+        long primero = primeroPendienteNanos;
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("habilitada", habilitada);
+        estadisticas.put("recibidos", recibidos.sum());
+        estadisticas.put("enBufer", bufer.size());
+        estadisticas.put("registrados", registrados.sum());
+        estadisticas.put("descartados", descartados.sum());
+        estadisticas.put("fallidos", fallidos.sum());
+        estadisticas.put("bloques", bloques.sum());
+        estadisticas.put("reubicados", reubicados.sum());
+        estadisticas.put("retrasoUltimoMs", retrasoUltimoNanos.get() / 1_000_000);
+        estadisticas.put("retrasoMaximoMs", retrasoMaximoNanos.get() / 1_000_000);
+        // Lo que lleva esperando el evento más antiguo que aún no está en la cadena
+        estadisticas.put("retrasoActualMs", primero == 0 ? 0 : (System.nanoTime() - primero) / 1_000_000);
+        return estadisticas;
+    }
+
+    /**
+     * Paro el hilo escritor después de escribir lo que quede en el búfer.
+     */
+    @PreDestroy
+    public void cerrar() {
+        activo = false;
+        if (hilo != null) {
+            hilo.interrupt();
+            try {
+                hilo.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void ejecutar() {
+        List<EventoDespliegue> lote = new ArrayList<>(tamanoLote);
+        while (activo || !bufer.isEmpty()) {
+            try {
+                llenar(lote);
+            } catch (InterruptedException e) {
+                // Me despiertan para cerrar: escribo lo que ya tenga y vacío el búfer sin esperar
+                bufer.drainTo(lote, tamanoLote - lote.size());
+            }
+            if (!lote.isEmpty()) {
+                escribir(lote);
+                lote.clear();
+            }
+        }
+    }
+
+    /**
+     * Espero al primer evento y luego sigo sacando hasta llenar el lote o agotar el
+     * intervalo contado desde que llegó el primero.
+     */
+    private void llenar(List<EventoDespliegue> lote) throws InterruptedException {
+        if (!activo) {
+            bufer.drainTo(lote, tamanoLote);
+            return;
+        }
+        EventoDespliegue primero = bufer.poll(intervaloNanos, TimeUnit.NANOSECONDS);
+        if (primero == null) {
+            return;
+        }
+        lote.add(primero);
+        primeroPendienteNanos = primero.capturado();
+        long limite = primero.capturado() + intervaloNanos;
+        while (lote.size() < tamanoLote) {
+            bufer.drainTo(lote, tamanoLote - lote.size());
+            long restante = limite - System.nanoTime();
+            if (lote.size() >= tamanoLote || restante <= 0) {
+                break;
+            }
+            EventoDespliegue siguiente = bufer.poll(restante, TimeUnit.NANOSECONDS);
+            if (siguiente == null) {
+                break;
+            }
+            lote.add(siguiente);
+        }
+    }
+
+    /**
+     * Escribo un lote como un bloque y espero a que esté guardado: así, si la cadena va
+     * lenta, los eventos esperan en el búfer (acotado) y no en la cola del secuenciador.
+     */
+    private void escribir(List<EventoDespliegue> lote) {
+        List<String> entradas = new ArrayList<>(lote.size());
+        for (EventoDespliegue evento : lote) {
+            entradas.add(entrada(evento));
+        }
+        try {
+            EnvioBloque envio = blockchainService.enviarLote(entradas);
+            Bloque bloque = envio.join();
+            // Si el bloque se descarta por la rama de otro nodo, el secuenciador reencola los
+            // eventos que la otra rama no tenga; aquí solo dejo constancia
+            envio.getReenvio().thenAccept(reenvio -> {
+                reubicados.add(lote.size());
+                System.out.println("🔀 [AUDITORIA] El bloque " + bloque.getIndice() + " con " + lote.size()
+                        + " eventos de despliegue se ha descartado al cambiar de rama; sus eventos vuelven a la cadena");
+            });
+            long ahora = System.nanoTime();
+            long retraso = ahora - lote.get(0).capturado();
+            retrasoUltimoNanos.set(retraso);
+            retrasoMaximoNanos.accumulateAndGet(retraso, Math::max);
+            registrados.add(lote.size());
+            bloques.increment();
+        } catch (CompletionException | IllegalArgumentException | IllegalStateException e) {
+            fallidos.add(lote.size());
+            System.out.println("⚠️ [AUDITORIA] No se han podido registrar " + lote.size()
+                    + " eventos de despliegue en la cadena: " + e.getMessage());
+        } finally {
+            EventoDespliegue siguiente = bufer.peek();
+            primeroPendienteNanos = siguiente != null ? siguiente.capturado() : 0;
+        }
+    }
+
+    /**
+     * @return el evento como entrada de bloque: JSON de una línea con los campos del cambio.
+     */
+    private String entrada(EventoDespliegue evento) {
+        Map<String, Object> campos = new LinkedHashMap<>();
+        campos.put("tipo", "despliegue");
+        campos.put("control", evento.control());
+        campos.put("aplicacion", evento.aplicacion());
+        campos.put("paso", evento.paso());
+        campos.put("anterior", evento.anterior());
+        campos.put("estado", evento.nuevo());
+        campos.put("mensaje", evento.mensaje());
+        campos.put("instante", evento.instante().toString());
+        try {
+            return objectMapper.writeValueAsString(campos);
+        } catch (JsonProcessingException e) {
+            return campos.toString();
+        }
+    }
+}
@@ -1,10 +1,29 @@
 package com.sistemagestionapp.service;
 
 import com.sistemagestionapp.model.Bloque;
+import com.sistemagestionapp.model.PruebaInclusion;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Esta clase la utilizo para gestionar una cadena de bloques (blockchain) simple.
@@ -13,41 +32,506 @@ import java.util.List;
  *
  * Cada bloque se enlaza con el anterior utilizando el hash del bloque anterior.
  *
+ * La cadena no vive en una lista en memoria: la guardo en un {@link RegistroBloques} en
+ * disco, así que sobrevive a los reinicios y a la sustitución del contenedor (siempre que
+ * la carpeta esté en un volumen persistente).
+ *
+ * Cada cierto tiempo guardo un {@link PuntoControlCadena} firmado con la cabeza de la cadena
+ * y los índices, para que al arrancar solo haya que leer y verificar los bloques posteriores.
+ *
  * @author David Tomé Arnáiz
  */
 @Service
 public class BlockchainService {
 
+    private final RegistroBloques registro;
+    private final int loteMaximo;
+    private final int maxEntradas;
+    private final VerificadorParaleloCadena verificador;
+    private final ValidadorCadena validador;
+    private final IndiceBloques indice = new IndiceBloques();
+    private final MineroBloques minero;
+    private final PuntoControlCadena puntoControl;
+    private final int minimoBloquesPuntoControl;
+    private SecuenciadorBloques secuenciador;
+
+    private volatile PuntoControlCadena.Recuperacion recuperacion;
+    private volatile long arranqueNanos;
+    private volatile int ultimoPuntoControl;
+    private volatile long ultimoPuntoControlNanos;
+
+    public BlockchainService(@Value("${blockchain.almacen.directorio:data/blockchain}") String directorio,
+                             @Value("${blockchain.almacen.tamano-segmento-bytes:67108864}") int tamanoSegmento,
+                             @Value("${blockchain.almacen.sincronizar-cada-bloques:64}") int sincronizarCada,
+                             @Value("${blockchain.secuenciador.lote-maximo:256}") int loteMaximo,
+                             @Value("${blockchain.validacion.paralelismo:0}") int paralelismoValidacion,
+                             @Value("${blockchain.validacion.tamano-tramo:4096}") int tamanoTramo,
+                             @Value("${blockchain.bloque.max-entradas:1024}") int maxEntradas,
+                             @Value("${blockchain.minado.dificultad:0}") int dificultad,
+                             @Value("${blockchain.minado.hilos:0}") int hilosMinado,
+                             @Value("${blockchain.punto-control.directorio:}") String directorioPuntoControl,
+                             @Value("${blockchain.punto-control.clave:}") String clavePuntoControl,
+                             @Value("${blockchain.punto-control.conservar:2}") int conservarPuntosControl,
+                             @Value("${blockchain.punto-control.minimo-bloques:1000}") int minimoBloquesPuntoControl) throws IOException {
+        this.registro = new RegistroBloques(Paths.get(directorio).toAbsolutePath(), tamanoSegmento, sincronizarCada);
+        this.loteMaximo = loteMaximo;
+        this.maxEntradas = maxEntradas;
+        this.verificador = new VerificadorParaleloCadena(registro, paralelismoValidacion, tamanoTramo, dificultad);
+        this.validador = new ValidadorCadena(registro, verificador, dificultad);
+        this.minero = new MineroBloques(dificultad, hilosMinado);
+        Path puntosControl = directorioPuntoControl.isBlank()
+                ? Paths.get(directorio, "puntos-control").toAbsolutePath()
+                : Paths.get(directorioPuntoControl).toAbsolutePath();
+        this.puntoControl = new PuntoControlCadena(puntosControl,
+                PuntoControlCadena.clave(clavePuntoControl, puntosControl), conservarPuntosControl);
+        this.minimoBloquesPuntoControl = Math.max(1, minimoBloquesPuntoControl);
+    }
+
     /**
-     * Aquí guardo toda la cadena de bloques. Uso una lista para mantener el orden de los bloques.
+     * Al arrancar recupero la cadena del disco partiendo del último punto de control: solo
+     * leo, indexo y verifico los bloques escritos después de él (los índices de los de antes
+     * se cargan en segundo plano). Si está vacía, añado el bloque génesis. Luego arranco el
+     * secuenciador, que es el único que escribe (y el que indexa) a partir de aquí.
      */
-    private final List<Bloque> blockchain = new ArrayList<>();
+    @PostConstruct
+    public void abrir() throws IOException {
+        long inicio = System.nanoTime();
+        recuperacion = puntoControl.recuperar(registro, indice);
+        ultimoPuntoControl = recuperacion.desdePuntoControl();
+        if (registro.getTotal() == 0) {
+            Bloque genesis = new Bloque(0, "Bloque principal", Bloque.HASH_CERO);
+            registro.anadir(genesis);
+            registro.sincronizar();
+            indice.indexar(genesis);
+        }
+        if (ultimoPuntoControl > 0) {
+            validador.partirDe(ultimoPuntoControl, registro.leer(ultimoPuntoControl - 1));
+        }
+        boolean valida = validador.validarIncremental();
+        secuenciador = new SecuenciadorBloques(registro, loteMaximo, minero, indice::indexar, this::alTruncar);
+        arranqueNanos = System.nanoTime() - inicio;
+        System.out.println("✅ [BLOCKCHAIN] Cadena recuperada: " + registro.getTotal() + " bloques en "
+                + registro.getSegmentos() + " segmentos, " + recuperacion.desdePuntoControl()
+                + " del punto de control" + (indice.estaCompleto() ? "" : " (su índice se carga en segundo plano)")
+                + " y " + recuperacion.reproducidos()
+                + " reproducidos" + (valida ? "" : " (cadena NO válida)") + " (" + arranqueNanos / 1_000_000 + " ms)");
+    }
 
     /**
-     * Cuando se instancia este servicio, añado automáticamente el bloque génesis a la cadena.
+     * Devuelvo una página de bloques a partir de un cursor (el índice de un bloque). Solo
+     * leo del registro los bloques de la página, así que el coste no depende del tamaño
+     * de la cadena.
+     *
+     * @param cursor índice del primer bloque de la página (incluido).
+     * @param limite bloques como mucho.
+     * @param descendente true para ir hacia bloques más antiguos (cursor, cursor - 1...).
+     * @return bloques de la página, en el orden pedido.
      */
-    public BlockchainService() {
-        blockchain.add(new Bloque(0, "Bloque", "0"));
+    public List<Bloque> obtenerBloques(int cursor, int limite, boolean descendente) {
+        int total = registro.getTotal();
+        List<Bloque> bloques = new ArrayList<>(Math.max(0, Math.min(limite, total)));
+        // Si la cadena se trunca mientras leo (cambio de rama), la página acaba en lo que quede
+        if (descendente) {
+            for (int i = Math.min(cursor, total - 1); i >= 0 && bloques.size() < limite; i--) {
+                Bloque bloque = leerSiExiste(i);
+                if (bloque != null) {
+                    bloques.add(bloque);
+                }
+            }
+        } else {
+            for (int i = Math.max(cursor, 0); i < total && bloques.size() < limite; i++) {
+                Bloque bloque = leerSiExiste(i);
+                if (bloque == null) {
+                    break;
+                }
+                bloques.add(bloque);
+            }
+        }
+        return bloques;
+    }
+
+    private Bloque leerSiExiste(int indice) {
+        try {
+            return registro.leer(indice);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Devuelvo un bloque por su índice, leyendo solo ese registro.
+     *
+     * @throws IllegalArgumentException si no existe.
+     */
+    public Bloque obtenerBloque(int indice) {
+        return registro.leer(indice);
     }
 
     /**
-     * Devuelvo la cadena completa de bloques.
+     * Busco un bloque por su hash en el índice, sin recorrer la cadena.
      *
-     * @return lista de objetos {@link Bloque} que forman la blockchain.
+     * @param hash hash del bloque en hexadecimal.
+     * @return el bloque, o null si no hay ninguno con ese hash.
+     * @throws IllegalArgumentException si el hash no son 64 caracteres hexadecimales.
      */
-    /*public List<Bloque> obtenerBlockchain() {
-        return blockchain;
-    }*/
+    public Bloque buscarPorHash(String hash) {
+        byte[] bytes;
+        try {
+            bytes = HexFormat.of().parseHex(hash);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("El hash debe estar en hexadecimal");
+        }
+        if (bytes.length != Bloque.TAMANO_HASH) {
+            throw new IllegalArgumentException("El hash debe tener " + Bloque.TAMANO_HASH * 2 + " caracteres");
+        }
+        int encontrado = indice.buscarHash(bytes, i -> Arrays.equals(registro.leer(i).getHashBytes(), bytes));
+        return encontrado < 0 ? null : registro.leer(encontrado);
+    }
 
     /**
-     * Añado un nuevo bloque a la cadena utilizando los datos que me pasan como argumento.
-     * El nuevo bloque se enlaza al último de la lista usando su hash.
+     * Busco los bloques cuyas entradas contienen todas las palabras de la consulta (sin
+     * distinguir mayúsculas), del más reciente al más antiguo.
+     *
+     * @param consulta palabras a buscar.
+     * @param limite bloques que devuelvo como mucho.
+     * @return índices de los bloques encontrados y total de coincidencias.
+     * @throws IllegalArgumentException si la consulta no tiene ninguna palabra indexable.
+     */
+    public IndiceBloques.Resultado buscar(String consulta, int limite) {
+        return indice.buscar(consulta == null ? "" : consulta, limite);
+    }
+
+    /**
+     * @return número de bloques de la cadena.
+     */
+    public int getTotalBloques() {
+        return registro.getTotal();
+    }
+
+    /**
+     * Encolo un bloque nuevo sin esperar a que se escriba. El secuenciador le asigna el
+     * índice y lo enlaza con el último bloque de la cadena.
      *
      * @param datos información que quiero almacenar en el nuevo bloque.
+     * @return futuro que se completa con el bloque ya guardado (y avisa si luego se descarta).
      */
-    /*public void añadirBloque(String datos) {
-        Bloque anterior = blockchain.get(blockchain.size() - 1);
-        Bloque nuevo = new Bloque(blockchain.size(), datos, anterior.getHash());
-        blockchain.add(nuevo);
-    }*/
-}
\ No newline at end of file
+    public EnvioBloque enviarBloque(String datos) {
+        return secuenciador.enviar(datos);
+    }
+
+    /**
+     * Encolo un bloque nuevo con un lote de entradas, comprometidas con su raíz de Merkle.
+     *
+     * @param entradas entradas del bloque (entre 1 y el máximo configurado).
+     * @return futuro que se completa con el bloque ya guardado (y avisa si luego se descarta).
+     * @throws IllegalArgumentException si el lote está vacío, tiene nulos o es demasiado grande.
+     */
+    public EnvioBloque enviarLote(List<String> entradas) {
+        if (entradas == null || entradas.isEmpty() || entradas.size() > maxEntradas) {
+            throw new IllegalArgumentException("Un bloque debe tener entre 1 y " + maxEntradas + " entradas");
+        }
+        if (entradas.contains(null)) {
+            throw new IllegalArgumentException("Las entradas del bloque no pueden ser nulas");
+        }
+        return secuenciador.enviar(entradas);
+    }
+
+    /**
+     * Añado un bloque con un lote de entradas y espero a que esté guardado.
+     *
+     * @see #enviarLote(List)
+     */
+    public Bloque añadirLote(List<String> entradas) {
+        return esperar(enviarLote(entradas));
+    }
+
+    /**
+     * @param bloques número de bloques del prefijo de la cadena.
+     * @return hash del último bloque de ese prefijo (el bloque bloques - 1).
+     * @throws IllegalArgumentException si la cadena no tiene tantos bloques.
+     */
+    public byte[] obtenerHashCabeza(int bloques) {
+        return registro.leer(bloques - 1).getHashBytes();
+    }
+
+    /**
+     * @return trabajo de los bloques [desde, hasta) de la cadena local.
+     * @see SecuenciadorBloques#trabajo
+     */
+    public BigInteger calcularTrabajo(int desde, int hasta) {
+        List<Bloque> bloques = new ArrayList<>(Math.max(0, hasta - desde));
+        for (int i = desde; i < hasta; i++) {
+            bloques.add(registro.leer(i));
+        }
+        return SecuenciadorBloques.trabajo(bloques);
+    }
+
+    /**
+     * Escribo los bloques [desde, hasta) tal como están en el registro, cada uno precedido
+     * de su longitud. Es el formato en el que se los mando a otros nodos.
+     */
+    public void exportarBloques(int desde, int hasta, OutputStream salida) throws IOException {
+        DataOutputStream datos = new DataOutputStream(salida);
+        for (int i = desde; i < hasta; i++) {
+            byte[] contenido = registro.leerCrudo(i);
+            datos.writeInt(contenido.length);
+            datos.write(contenido);
+        }
+        datos.flush();
+    }
+
+    /**
+     * Encolo bloques recibidos de otro nodo (ya comprobados) para que los escriba el
+     * secuenciador, descartando la rama local desde "desde" si la recibida es mejor.
+     *
+     * @see SecuenciadorBloques#replicar(int, List)
+     */
+    public CompletableFuture<Integer> replicar(int desde, List<Bloque> bloques) {
+        // Truncar el índice necesita los bloques del punto de control ya cargados
+        return indice.getCarga().thenCompose(cargado -> secuenciador.replicar(desde, bloques));
+    }
+
+    /**
+     * @return dificultad de la prueba de trabajo que exijo a los bloques nuevos.
+     */
+    public int getDificultad() {
+        return minero.getDificultad();
+    }
+
+    /**
+     * Devuelvo la prueba de inclusión de una entrada de un bloque.
+     *
+     * @param indice índice del bloque.
+     * @param posicion posición de la entrada dentro del bloque.
+     * @throws IllegalArgumentException si no existe el bloque o la entrada.
+     */
+    public PruebaInclusion obtenerPruebaInclusion(int indice, int posicion) {
+        return registro.pruebaInclusion(indice, posicion);
+    }
+
+    /**
+     * Añado un nuevo bloque a la cadena utilizando los datos que me pasan como argumento
+     * y espero a que esté guardado.
+     *
+     * @param datos información que quiero almacenar en el nuevo bloque.
+     * @return el bloque añadido.
+     */
+    public Bloque añadirBloque(String datos) {
+        return esperar(enviarBloque(datos));
+    }
+
+    private static Bloque esperar(CompletableFuture<Bloque> futuro) {
+        try {
+            return futuro.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            if (e.getCause() instanceof IOException causa) {
+                throw new UncheckedIOException("No se ha podido guardar el bloque", causa);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return métricas del almacén en disco: bloques, segmentos, bytes y sincronizaciones.
+     */
+    public Map<String, Object> getEstadisticasAlmacen() {
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("bloques", registro.getTotal());
+        estadisticas.put("segmentos", registro.getSegmentos());
+        estadisticas.put("bytes", registro.getBytes());
+        estadisticas.put("pendientesDeSincronizar", registro.getPendientes());
+        estadisticas.put("sincronizaciones", registro.getSincronizaciones());
+        estadisticas.put("bytesTruncados", registro.getBytesTruncados());
+        return estadisticas;
+    }
+
+    /**
+     * @return métricas del minado: dificultad, hilos, bloques minados, hashes por segundo y
+     * lo que tardó el último bloque.
+     */
+    public Map<String, Object> getEstadisticasMinado() {
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("dificultad", minero.getDificultad());
+        estadisticas.put("hilos", minero.getHilos());
+        estadisticas.put("bloques", minero.getBloques());
+        estadisticas.put("hashes", minero.getHashes());
+        estadisticas.put("hashesPorSegundo", minero.getHashesPorSegundo());
+        estadisticas.put("ultimoBloqueMs", minero.getUltimoMs());
+        return estadisticas;
+    }
+
+    /**
+     * @return métricas de los índices: bloques indexados, palabras distintas y apariciones.
+     */
+    public Map<String, Object> getEstadisticasIndice() {
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("bloques", indice.getBloques());
+        estadisticas.put("palabras", indice.getPalabras());
+        estadisticas.put("apariciones", indice.getApariciones());
+        estadisticas.put("capacidadHashes", indice.getCapacidadHashes());
+        return estadisticas;
+    }
+
+    /**
+     * @return métricas del secuenciador: bloques escritos, lotes, tamaño medio de lote y cola.
+     */
+    public Map<String, Object> getEstadisticasSecuenciador() {
+        long bloques = secuenciador.getBloques();
+        long lotes = secuenciador.getLotes();
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("bloques", bloques);
+        estadisticas.put("lotes", lotes);
+        estadisticas.put("bloquesPorLote", lotes == 0 ? 0.0 : (double) bloques / lotes);
+        estadisticas.put("fallidos", secuenciador.getFallidos());
+        estadisticas.put("enCola", secuenciador.getEnCola());
+        estadisticas.put("replicados", secuenciador.getReplicados());
+        estadisticas.put("descartados", secuenciador.getDescartados());
+        return estadisticas;
+    }
+
+    /**
+     * Verifico si la cadena de bloques es válida comprobando los hashes. Solo recalculo
+     * los bloques nuevos desde la última comprobación; el resto lo revisa
+     * {@link #revalidarCadena()} en segundo plano.
+     *
+     * @return true si la cadena es válida, false en caso contrario.
+     */
+    public boolean esCadenaValida() {
+        return validador.validarIncremental();
+    }
+
+    /**
+     * Vuelvo a comprobar la cadena entera para detectar bloques alterados en disco.
+     */
+    @Scheduled(initialDelayString = "${blockchain.validacion.retraso-inicial-ms:5000}",
+            fixedDelayString = "${blockchain.validacion.completa-ms:300000}")
+    public void revalidarCadena() {
+        int roto = validador.validarCompleta();
+        if (roto >= 0) {
+            System.out.println("❌ [BLOCKCHAIN] La validación completa ha encontrado el bloque " + roto + " alterado");
+        }
+    }
+
+    /**
+     * @return estado de la validación: si es válida, hasta dónde está verificada y tiempos.
+     */
+    public Map<String, Object> getEstadoValidacion() {
+        return validador.getEstado();
+    }
+
+    /**
+     * Guardo un punto de control si hay bastantes bloques nuevos desde el anterior. Solo lo
+     * hago con la cadena válida: los bloques que recoge no se vuelven a verificar al arrancar.
+     */
+    @Scheduled(initialDelayString = "${blockchain.punto-control.cada-ms:60000}",
+            fixedDelayString = "${blockchain.punto-control.cada-ms:60000}")
+    public void guardarPuntoControl() {
+        if (indice.getBloques() - ultimoPuntoControl < minimoBloquesPuntoControl) {
+            return;
+        }
+        guardarPuntoControlAhora();
+    }
+
+    /**
+     * Capturo el punto de control en el hilo del secuenciador, con la cadena quieta: valido
+     * lo nuevo y vuelco solo hasta el último bloque verificado, aunque el índice ya tenga
+     * alguno más. El fichero lo escribo después, fuera de ese hilo.
+     */
+    private void guardarPuntoControlAhora() {
+        guardarPuntoControlAhora(false);
+    }
+
+    /**
+     * @param parado true si el secuenciador ya está parado (al cerrar): entonces nadie
+     *               escribe y capturo desde este hilo.
+     */
+    private void guardarPuntoControlAhora(boolean parado) {
+        if (!indice.estaCompleto()) {
+            return;
+        }
+        long inicio = System.nanoTime();
+        try {
+            PuntoControlCadena.Captura captura = parado ? capturarPuntoControl()
+                    : secuenciador.enSecuencia(this::capturarPuntoControl).get();
+            int bloques = captura != null ? puntoControl.escribir(captura) : 0;
+            if (bloques > 0) {
+                ultimoPuntoControl = bloques;
+                ultimoPuntoControlNanos = System.nanoTime() - inicio;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | IOException | RuntimeException e) {
+            Throwable causa = e instanceof ExecutionException ? e.getCause() : e;
+            System.out.println("⚠️ [BLOCKCHAIN] No se ha podido guardar el punto de control: " + causa.getMessage());
+        }
+    }
+
+    /**
+     * @return lo que va en el punto de control, o null si la cadena no es válida o no hay
+     * bloques verificados nuevos.
+     */
+    private PuntoControlCadena.Captura capturarPuntoControl() throws IOException {
+        if (!validador.validarIncremental()) {
+            return null;
+        }
+        int hasta = Math.min(validador.getVerificados(), indice.getBloques());
+        return hasta > ultimoPuntoControl ? puntoControl.capturar(registro, indice, hasta) : null;
+    }
+
+    /**
+     * Lo llama el secuenciador cuando descarta el final de la cadena por la rama de otro
+     * nodo: dejo los índices, la validación y los puntos de control como si esos bloques
+     * no se hubieran escrito nunca.
+     */
+    private void alTruncar(int nuevoTotal) {
+        indice.truncar(nuevoTotal);
+        validador.truncar(nuevoTotal);
+        if (ultimoPuntoControl > nuevoTotal) {
+            ultimoPuntoControl = 0;
+        }
+        try {
+            puntoControl.descartarDesde(nuevoTotal);
+        } catch (IOException e) {
+            System.out.println("⚠️ [BLOCKCHAIN] No se han podido borrar los puntos de control descartados: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return métricas del arranque y de los puntos de control.
+     */
+    public Map<String, Object> getEstadisticasPuntoControl() {
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        PuntoControlCadena.Recuperacion actual = recuperacion;
+        estadisticas.put("arranqueMs", arranqueNanos / 1_000_000);
+        estadisticas.put("recuperacionMs", actual != null ? actual.nanos() / 1_000_000 : null);
+        estadisticas.put("bloquesDelPuntoControl", actual != null ? actual.desdePuntoControl() : null);
+        estadisticas.put("bloquesReproducidos", actual != null ? actual.reproducidos() : null);
+        estadisticas.put("ultimoPuntoControl", ultimoPuntoControl);
+        estadisticas.put("ultimoPuntoControlMs", ultimoPuntoControlNanos / 1_000_000);
+        return estadisticas;
+    }
+
+    /**
+     * Fuerzo a disco los bloques pendientes. Con esto acoto lo que se puede perder en una
+     * caída al intervalo configurado, sin hacer un fsync por cada bloque.
+     */
+    @Scheduled(fixedDelayString = "${blockchain.almacen.sincronizar-ms:200}")
+    public void sincronizar() {
+        registro.sincronizar();
+    }
+
+    @PreDestroy
+    public void cerrar() throws IOException {
+        minero.cerrar();
+        if (secuenciador != null) {
+            secuenciador.close();
+            // Con un punto de control al cerrar, el siguiente arranque no reproduce nada
+            guardarPuntoControlAhora(true);
+        }
+        verificador.cerrar();
+        registro.close();
+    }
+}
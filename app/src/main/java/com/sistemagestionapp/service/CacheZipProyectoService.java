@@ -0,0 +1,367 @@
+package com.sistemagestionapp.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Caché en disco de los ZIP de proyecto ya generados, indexada por la clave de contenido
+ * de {@link ProyectoZipPreparado}.
+ *
+ * - Tiene un presupuesto máximo de bytes en disco; cuando se supera expulso los ZIP
+ *   usados hace más tiempo (LRU).
+ * - Si llegan varias peticiones a la vez para la misma clave, solo una genera el ZIP
+ *   y el resto esperan a su resultado.
+ * - Al arrancar vuelvo a indexar los ZIP que ya estaban en el directorio.
+ *
+ * Cada generación va a un fichero propio ({@code <clave>~<único>.zip}): un artefacto
+ * expulsado que todavía se está enviando se borra al terminar su último lector, y si
+ * entretanto se ha vuelto a generar la misma clave, ese borrado no puede llevarse el
+ * fichero nuevo.
+ */
+@Service
+public class CacheZipProyectoService {
+
+    private static final String EXTENSION = ".zip";
+    private static final String EXTENSION_TEMPORAL = ".zip.tmp";
+    /** Separa la clave de la parte única del nombre del fichero (la clave es hexadecimal). */
+    private static final char SEPARADOR_GENERACION = '~';
+
+    private final boolean habilitada;
+    private final Path directorio;
+    private final long maxBytes;
+
+    /** Orden de acceso: el primero es el menos usado recientemente. Protegido por {@code this}. */
+    private final LinkedHashMap<String, ArtefactoZip> artefactos = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytesEnUso;
+
+    /** Generaciones en curso, para que cada clave se genere una sola vez a la vez. */
+    private final Map<String, CompletableFuture<ArtefactoZip>> enCurso = new ConcurrentHashMap<>();
+
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    private final AtomicLong expulsiones = new AtomicLong();
+
+    public CacheZipProyectoService(@Value("${zip.cache.habilitada:true}") boolean habilitada,
+                                   @Value("${zip.cache.directorio:${java.io.tmpdir}/tfg-zip-cache}") String directorio,
+                                   @Value("${zip.cache.max-bytes:268435456}") long maxBytes) {
+        this.habilitada = habilitada;
+        this.directorio = Paths.get(directorio).toAbsolutePath();
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Creo el directorio de la caché e indexo lo que hubiera de ejecuciones anteriores.
+     */
+    @PostConstruct
+    public void inicializar() throws IOException {
+        if (!habilitada) {
+            return;
+        }
+        Files.createDirectories(directorio);
+
+        List<Path> existentes;
+        try (Stream<Path> ficheros = Files.list(directorio)) {
+            existentes = ficheros.toList();
+        }
+
+        List<Path> zips = new ArrayList<>();
+        for (Path fichero : existentes) {
+            String nombre = fichero.getFileName().toString();
+            if (nombre.endsWith(EXTENSION_TEMPORAL)) {
+                // Restos de una generación interrumpida
+                Files.deleteIfExists(fichero);
+            } else if (nombre.endsWith(EXTENSION)) {
+                zips.add(fichero);
+            }
+        }
+
+        // Los más antiguos primero, para que sean los primeros en expulsarse
+        zips.sort(Comparator.comparingLong(CacheZipProyectoService::fechaModificacion));
+        for (Path zip : zips) {
+            String nombre = zip.getFileName().toString();
+            String clave = nombre.substring(0, nombre.length() - EXTENSION.length());
+            int separador = clave.indexOf(SEPARADOR_GENERACION);
+            if (separador >= 0) {
+                clave = clave.substring(0, separador);
+            }
+            registrar(new ArtefactoZip(clave, zip, Files.size(zip)));
+        }
+
+        System.out.println("✅ [CACHE-ZIP] Caché en " + directorio + ": " + zips.size() + " ZIP indexados");
+    }
+
+    public boolean estaHabilitada() {
+        return habilitada;
+    }
+
+    /**
+     * Devuelvo el ZIP de la caché para esta clave, generándolo si no está.
+     *
+     * @param zip ZIP preparado (solo se escribe si no estaba en caché).
+     * @return artefacto en disco.
+     * @throws IOException si falla la generación.
+     */
+    public ArtefactoZip obtener(ProyectoZipPreparado zip) throws IOException {
+        return obtener(zip, ProgresoZip.NINGUNO);
+    }
+
+    /**
+     * Igual que {@link #obtener(ProyectoZipPreparado)}, avisando del progreso si me toca generarlo.
+     */
+    public ArtefactoZip obtener(ProyectoZipPreparado zip, ProgresoZip progreso) throws IOException {
+        String clave = zip.getClave();
+
+        ArtefactoZip existente = buscar(clave, zip.getTamano());
+        if (existente != null) {
+            aciertos.incrementAndGet();
+            return existente;
+        }
+
+        CompletableFuture<ArtefactoZip> propia = new CompletableFuture<>();
+        CompletableFuture<ArtefactoZip> ajena = enCurso.putIfAbsent(clave, propia);
+        if (ajena != null) {
+            // Otra petición ya lo está generando: espero a su resultado
+            aciertos.incrementAndGet();
+            return esperar(ajena);
+        }
+
+        try {
+            // Puede que otra generación haya terminado entre buscar() y putIfAbsent()
+            ArtefactoZip artefacto = buscar(clave, zip.getTamano());
+            if (artefacto == null) {
+                fallos.incrementAndGet();
+                artefacto = generar(zip, progreso);
+            }
+            propia.complete(artefacto);
+            return artefacto;
+        } catch (IOException | RuntimeException e) {
+            propia.completeExceptionally(e);
+            throw e;
+        } finally {
+            enCurso.remove(clave, propia);
+        }
+    }
+
+    /**
+     * Envío el contenido del artefacto al stream. Si mientras tanto ha sido expulsado
+     * o su fichero ya no existe devuelvo false, y quien me llama puede escribir el ZIP
+     * desde memoria (es idéntico byte a byte).
+     */
+    public boolean enviar(ArtefactoZip artefacto, OutputStream salida) throws IOException {
+        if (!artefacto.adquirir()) {
+            return false;
+        }
+        try {
+            Files.copy(artefacto.getRuta(), salida);
+            return true;
+        } catch (NoSuchFileException e) {
+            // Alguien ha borrado el fichero por fuera: lo olvido
+            olvidar(artefacto);
+            return false;
+        } finally {
+            if (artefacto.liberar()) {
+                borrar(artefacto.getRuta());
+            }
+        }
+    }
+
+    /**
+     * Envío solo un trozo del artefacto (para peticiones con Range). Leo del fichero con
+     * {@link FileChannel#transferTo}, así que reanudar una descarga solo cuesta los bytes
+     * que faltan. Igual que {@link #enviar(ArtefactoZip, OutputStream)}, devuelvo false si
+     * el artefacto ya no está.
+     *
+     * @param inicio primer byte que envío.
+     * @param longitud número de bytes que envío.
+     */
+    public boolean enviar(ArtefactoZip artefacto, OutputStream salida, long inicio, long longitud) throws IOException {
+        if (!artefacto.adquirir()) {
+            return false;
+        }
+        try (FileChannel canal = FileChannel.open(artefacto.getRuta(), StandardOpenOption.READ)) {
+            WritableByteChannel destino = Channels.newChannel(salida);
+            long enviados = 0;
+            while (enviados < longitud) {
+                long n = canal.transferTo(inicio + enviados, longitud - enviados, destino);
+                if (n <= 0) {
+                    throw new IOException("El artefacto " + artefacto.getClave() + " es más corto de lo esperado");
+                }
+                enviados += n;
+            }
+            salida.flush();
+            return true;
+        } catch (NoSuchFileException e) {
+            olvidar(artefacto);
+            return false;
+        } finally {
+            if (artefacto.liberar()) {
+                borrar(artefacto.getRuta());
+            }
+        }
+    }
+
+    public long getAciertos() {
+        return aciertos.get();
+    }
+
+    public long getFallos() {
+        return fallos.get();
+    }
+
+    public long getExpulsiones() {
+        return expulsiones.get();
+    }
+
+    public synchronized long getBytesEnUso() {
+        return bytesEnUso;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Busco el artefacto de una clave. Si el fichero no mide lo que debe (por ejemplo, quedó
+     * de una versión anterior con otra forma de calcular la clave), lo descarto y devuelvo
+     * null para que se vuelva a generar: nunca sirvo un ZIP con otro tamaño que el anunciado.
+     */
+    private ArtefactoZip buscar(String clave, long tamano) {
+        ArtefactoZip artefacto;
+        synchronized (this) {
+            artefacto = artefactos.get(clave);
+            if (artefacto == null || artefacto.getTamano() == tamano) {
+                return artefacto;
+            }
+            artefactos.remove(clave);
+            bytesEnUso -= artefacto.getTamano();
+        }
+        if (artefacto.expulsar()) {
+            borrar(artefacto.getRuta());
+        }
+        System.out.println("⚠️ [CACHE-ZIP] Descarto " + artefacto.getRuta() + ": mide " + artefacto.getTamano()
+                + " bytes y el ZIP de esa clave mide " + tamano);
+        return null;
+    }
+
+    private ArtefactoZip generar(ProyectoZipPreparado zip, ProgresoZip progreso) throws IOException {
+        Path temporal = directorio.resolve(zip.getClave() + EXTENSION_TEMPORAL);
+        // Reservo un nombre que no ha usado ninguna generación anterior de la clave
+        Path destino = Files.createTempFile(directorio, zip.getClave() + SEPARADOR_GENERACION, EXTENSION);
+
+        try {
+            try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(temporal))) {
+                zip.escribir(os, progreso);
+            }
+            Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporal);
+            Files.deleteIfExists(destino);
+            throw e;
+        }
+
+        ArtefactoZip artefacto = new ArtefactoZip(zip.getClave(), destino, zip.getTamano());
+        registrar(artefacto);
+        return artefacto;
+    }
+
+    /**
+     * Añado el artefacto al índice y expulso los menos usados hasta volver al presupuesto.
+     * El recién añadido nunca se expulsa, aunque por sí solo supere el presupuesto. Si ya
+     * había otro artefacto con la misma clave (un fichero repetido de otra ejecución), lo
+     * sustituye y su fichero se borra cuando nadie lo lea.
+     */
+    private void registrar(ArtefactoZip nuevo) {
+        List<Path> aBorrar = new ArrayList<>();
+        synchronized (this) {
+            ArtefactoZip anterior = artefactos.put(nuevo.getClave(), nuevo);
+            if (anterior != null) {
+                bytesEnUso -= anterior.getTamano();
+                if (anterior.expulsar()) {
+                    aBorrar.add(anterior.getRuta());
+                }
+            }
+            bytesEnUso += nuevo.getTamano();
+
+            Iterator<ArtefactoZip> it = artefactos.values().iterator();
+            while (bytesEnUso > maxBytes && it.hasNext()) {
+                ArtefactoZip candidato = it.next();
+                if (candidato == nuevo) {
+                    continue;
+                }
+                it.remove();
+                bytesEnUso -= candidato.getTamano();
+                expulsiones.incrementAndGet();
+                if (candidato.expulsar()) {
+                    aBorrar.add(candidato.getRuta());
+                }
+            }
+        }
+        aBorrar.forEach(CacheZipProyectoService::borrar);
+    }
+
+    private synchronized void olvidar(ArtefactoZip artefacto) {
+        if (artefactos.remove(artefacto.getClave(), artefacto)) {
+            bytesEnUso -= artefacto.getTamano();
+        }
+        artefacto.expulsar();
+    }
+
+    private static ArtefactoZip esperar(CompletableFuture<ArtefactoZip> futuro) throws IOException {
+        try {
+            return futuro.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrumpido esperando la generación del ZIP");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IOException("Error generando el ZIP", e.getCause());
+        }
+    }
+
+    private static void borrar(Path ruta) {
+        try {
+            Files.deleteIfExists(ruta);
+        } catch (IOException e) {
+            System.out.println("⚠️ [CACHE-ZIP] No se ha podido borrar " + ruta + ": " + e.getMessage());
+        }
+    }
+
+    private static long fechaModificacion(Path ruta) {
+        try {
+            return Files.getLastModifiedTime(ruta).toMillis();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+}
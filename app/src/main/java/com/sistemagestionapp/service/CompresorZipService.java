@@ -0,0 +1,190 @@
+package com.sistemagestionapp.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.ZipEntry;
+
+/**
+ * Servicio que comprime los ficheros de una plantilla en {@link EntradaZip}.
+ *
+ * Puedo hacerlo en serie (en el hilo que me llama) o en paralelo, repartiendo los
+ * ficheros en un ForkJoinPool acotado. En paralelo cada fichero se lee y se comprime
+ * por separado, y al final devuelvo las entradas en el mismo orden en que me llegaron,
+ * así que el ZIP resultante es idéntico en los dos modos.
+ *
+ * En modo {@link Modo#AUTOMATICO} solo paso a paralelo si el total de bytes supera
+ * el umbral configurado: para plantillas pequeñas no compensa repartir el trabajo.
+ *
+ * El nivel de cada entrada (o guardarla sin comprimir) lo decide la {@link PoliticaCompresion}.
+ * Voy sumando bytes antes y después y el tiempo empleado para poder ver qué se consigue.
+ */
+@Service
+public class CompresorZipService {
+
+    /**
+     * Cómo quiero comprimir un conjunto de ficheros.
+     */
+    public enum Modo {
+        AUTOMATICO,
+        SERIE,
+        PARALELO
+    }
+
+    private final ForkJoinPool pool;
+    private final long umbralParaleloBytes;
+    private final PoliticaCompresion politica;
+
+    private final LongAdder totalEntradas = new LongAdder();
+    private final LongAdder entradasSinComprimir = new LongAdder();
+    private final LongAdder bytesOriginales = new LongAdder();
+    private final LongAdder bytesComprimidos = new LongAdder();
+    private final LongAdder nanosCompresion = new LongAdder();
+
+    public CompresorZipService(@Value("${zip.compresion.paralelismo:0}") int paralelismo,
+                               @Value("${zip.compresion.umbral-paralelo-bytes:1048576}") long umbralParaleloBytes,
+                               PoliticaCompresion politica) {
+        int hilos = paralelismo > 0 ? paralelismo : Runtime.getRuntime().availableProcessors();
+        this.pool = new ForkJoinPool(hilos);
+        this.umbralParaleloBytes = umbralParaleloBytes;
+        this.politica = politica;
+    }
+
+    /**
+     * Comprimo los ficheros indicados; el modo lo decido según el tamaño total.
+     *
+     * @param raiz carpeta respecto a la que calculo el nombre de cada entrada.
+     * @param ficheros ficheros a comprimir, en el orden en que quiero las entradas.
+     * @return entradas comprimidas, en el mismo orden.
+     * @throws IOException si no puedo leer algún fichero.
+     */
+    public List<EntradaZip> comprimir(Path raiz, List<Path> ficheros) throws IOException {
+        return comprimir(raiz, ficheros, Modo.AUTOMATICO);
+    }
+
+    /**
+     * Comprimo los ficheros indicados con el modo pedido.
+     */
+    public List<EntradaZip> comprimir(Path raiz, List<Path> ficheros, Modo modo) throws IOException {
+        boolean paralelo = switch (modo) {
+            case SERIE -> false;
+            case PARALELO -> true;
+            case AUTOMATICO -> ficheros.size() > 1 && tamanoTotal(ficheros) >= umbralParaleloBytes;
+        };
+        return paralelo ? comprimirEnParalelo(raiz, ficheros) : comprimirEnSerie(raiz, ficheros);
+    }
+
+    /**
+     * Comprimo un contenido que ya tengo en memoria (por ejemplo la configuración generada)
+     * aplicando la política.
+     */
+    public EntradaZip comprimir(String nombre, byte[] contenido, long ultimaModificacion) {
+        long inicio = System.nanoTime();
+        EntradaZip entrada = EntradaZip.comprimir(nombre, contenido, ultimaModificacion,
+                politica.nivelPara(nombre, contenido.length));
+
+        totalEntradas.increment();
+        if (entrada.getMetodo() == ZipEntry.STORED) {
+            entradasSinComprimir.increment();
+        }
+        bytesOriginales.add(entrada.getTamano());
+        bytesComprimidos.add(entrada.getTamanoComprimido());
+        nanosCompresion.add(System.nanoTime() - inicio);
+        return entrada;
+    }
+
+    /**
+     * @return huella de la política de compresión (ver {@link PoliticaCompresion#getHuella()}).
+     */
+    public String getHuellaPolitica() {
+        return politica.getHuella();
+    }
+
+    public int getParalelismo() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Resumen de lo comprimido desde que arrancó la aplicación.
+     */
+    public Map<String, Object> getEstadisticas() {
+        long originales = bytesOriginales.sum();
+        long comprimidos = bytesComprimidos.sum();
+
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("entradas", totalEntradas.sum());
+        estadisticas.put("entradasSinComprimir", entradasSinComprimir.sum());
+        estadisticas.put("bytesOriginales", originales);
+        estadisticas.put("bytesComprimidos", comprimidos);
+        estadisticas.put("ratio", originales == 0 ? 1.0 : (double) comprimidos / originales);
+        estadisticas.put("milisegundos", TimeUnit.NANOSECONDS.toMillis(nanosCompresion.sum()));
+        return estadisticas;
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        pool.shutdown();
+    }
+
+    private List<EntradaZip> comprimirEnSerie(Path raiz, List<Path> ficheros) throws IOException {
+        List<EntradaZip> entradas = new ArrayList<>(ficheros.size());
+        for (Path fichero : ficheros) {
+            entradas.add(comprimirFichero(raiz, fichero));
+        }
+        return entradas;
+    }
+
+    private List<EntradaZip> comprimirEnParalelo(Path raiz, List<Path> ficheros) throws IOException {
+        List<Callable<EntradaZip>> tareas = new ArrayList<>(ficheros.size());
+        for (Path fichero : ficheros) {
+            tareas.add(() -> comprimirFichero(raiz, fichero));
+        }
+
+        // invokeAll devuelve los futuros en el mismo orden que las tareas
+        List<Future<EntradaZip>> futuros = pool.invokeAll(tareas);
+        List<EntradaZip> entradas = new ArrayList<>(futuros.size());
+        for (Future<EntradaZip> futuro : futuros) {
+            try {
+                entradas.add(futuro.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Compresión interrumpida", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException io) {
+                    throw io;
+                }
+                throw new IOException("Error comprimiendo la plantilla", e.getCause());
+            }
+        }
+        return entradas;
+    }
+
+    private EntradaZip comprimirFichero(Path raiz, Path fichero) throws IOException {
+        String nombre = raiz.relativize(fichero).toString().replace("\\", "/");
+        byte[] contenido = Files.readAllBytes(fichero);
+        long modificado = Files.getLastModifiedTime(fichero).toMillis();
+        return comprimir(nombre, contenido, modificado);
+    }
+
+    private static long tamanoTotal(List<Path> ficheros) throws IOException {
+        long total = 0;
+        for (Path fichero : ficheros) {
+            total += Files.size(fichero);
+        }
+        return total;
+    }
+}
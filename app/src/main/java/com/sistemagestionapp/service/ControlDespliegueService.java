@@ -0,0 +1,123 @@
+package com.sistemagestionapp.service;
+
+import com.sistemagestionapp.model.Aplicacion;
+import com.sistemagestionapp.model.ControlDespliegue;
+import com.sistemagestionapp.model.EstadoControl;
+import com.sistemagestionapp.model.PasoDespliegue;
+import com.sistemagestionapp.repository.ControlDespliegueRepository;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Servicio de los pasos de despliegue de cada aplicación ({@link ControlDespliegue}).
+ * Lo uso para:
+ *  - Crear los pasos en PENDIENTE al guardar una aplicación.
+ *  - Apuntar el resultado de un paso (OK/KO) cuando lo informa el pipeline.
+ *  - Listar los pasos de una aplicación.
+ *
+ * Cada cambio de estado lo publico como {@link EventoDespliegue}; la
+ * {@link AuditoriaDespliegueService} solo lo recibe si la transacción se confirma, y
+ * entonces acaba en la cadena de bloques.
+ */
+@Service
+public class ControlDespliegueService {
+
+    private final ControlDespliegueRepository controlDespliegueRepository;
+    private final ApplicationEventPublisher eventos;
+
+    public ControlDespliegueService(ControlDespliegueRepository controlDespliegueRepository,
+                                    ApplicationEventPublisher eventos) {
+        this.controlDespliegueRepository = controlDespliegueRepository;
+        this.eventos = eventos;
+    }
+
+    /**
+     * Creo en PENDIENTE los pasos que la aplicación todavía no tenga. Los que ya existen no
+     * los toco, así que se puede llamar cada vez que se guarda la aplicación.
+     *
+     * @param aplicacion aplicación ya persistida.
+     * @return pasos de la aplicación, en el orden de {@link PasoDespliegue}.
+     */
+    @Transactional
+    public List<ControlDespliegue> inicializarPasos(Aplicacion aplicacion) {
+        Map<PasoDespliegue, ControlDespliegue> pasos = porPaso(aplicacion);
+        for (PasoDespliegue paso : PasoDespliegue.values()) {
+            if (!pasos.containsKey(paso)) {
+                ControlDespliegue control = new ControlDespliegue();
+                control.setAplicacion(aplicacion);
+                control.setPaso(paso);
+                control.setEstado(EstadoControl.PENDIENTE);
+                ControlDespliegue guardado = controlDespliegueRepository.save(control);
+                publicarCambio(guardado, null);
+                pasos.put(paso, guardado);
+            }
+        }
+        return List.copyOf(pasos.values());
+    }
+
+    /**
+     * Apunto el resultado de un paso. Si el paso no existía lo creo.
+     *
+     * @param aplicacion aplicación del paso.
+     * @param paso paso que ha terminado.
+     * @param estado estado nuevo del paso.
+     * @param mensaje detalle del resultado (puede ser null).
+     * @return control guardado.
+     */
+    @Transactional
+    public ControlDespliegue registrarResultado(Aplicacion aplicacion, PasoDespliegue paso,
+                                                EstadoControl estado, String mensaje) {
+        ControlDespliegue control = controlDespliegueRepository.findByAplicacionAndPaso(aplicacion, paso)
+                .orElseGet(() -> {
+                    ControlDespliegue nuevo = new ControlDespliegue();
+                    nuevo.setAplicacion(aplicacion);
+                    nuevo.setPaso(paso);
+                    return nuevo;
+                });
+        // El estado anterior es el de la base de datos: si la transacción se deshace, la
+        // entidad se descarta y el cambio no se ha publicado
+        EstadoControl anterior = control.getId() != null ? control.getEstado() : null;
+        control.setEstado(estado);
+        control.setMensaje(mensaje);
+        control.setFechaEjecucion(LocalDateTime.now());
+        ControlDespliegue guardado = controlDespliegueRepository.save(control);
+        publicarCambio(guardado, anterior);
+        return guardado;
+    }
+
+    /**
+     * @return pasos de la aplicación, en el orden de {@link PasoDespliegue}.
+     */
+    @Transactional(readOnly = true)
+    public List<ControlDespliegue> listar(Aplicacion aplicacion) {
+        return List.copyOf(porPaso(aplicacion).values());
+    }
+
+    /**
+     * Publico el cambio de estado de un control ya guardado, si lo ha habido.
+     */
+    private void publicarCambio(ControlDespliegue control, EstadoControl anterior) {
+        if (control.getEstado() == anterior) {
+            return;
+        }
+        Aplicacion aplicacion = control.getAplicacion();
+        eventos.publishEvent(new EventoDespliegue(control.getId(), aplicacion != null ? aplicacion.getId() : null,
+                control.getPaso(), anterior, control.getEstado(), control.getMensaje(),
+                Instant.now(), System.nanoTime()));
+    }
+
+    private Map<PasoDespliegue, ControlDespliegue> porPaso(Aplicacion aplicacion) {
+        Map<PasoDespliegue, ControlDespliegue> pasos = new EnumMap<>(PasoDespliegue.class);
+        for (ControlDespliegue control : controlDespliegueRepository.findByAplicacion(aplicacion)) {
+            pasos.put(control.getPaso(), control);
+        }
+        return pasos;
+    }
+}
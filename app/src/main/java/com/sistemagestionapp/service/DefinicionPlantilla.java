@@ -0,0 +1,57 @@
+package com.sistemagestionapp.service;
+
+import com.sistemagestionapp.model.Lenguaje;
+
+import java.util.Set;
+
+/**
+ * Describe una plantilla de proyecto: de qué carpeta del repo sale, dónde dejo el
+ * fichero de configuración generado y qué carpetas no quiero meter en el ZIP
+ * (compilados, cachés, bases de datos locales...).
+ */
+public final class DefinicionPlantilla {
+
+    private final Lenguaje lenguaje;
+    private final String carpeta;
+    private final String rutaConfiguracion;
+    private final Set<String> carpetasIgnoradas;
+
+    public DefinicionPlantilla(Lenguaje lenguaje, String carpeta, String rutaConfiguracion, Set<String> carpetasIgnoradas) {
+        this.lenguaje = lenguaje;
+        this.carpeta = carpeta;
+        this.rutaConfiguracion = rutaConfiguracion;
+        this.carpetasIgnoradas = Set.copyOf(carpetasIgnoradas);
+    }
+
+    /**
+     * @return true si la ruta relativa (con "/") debe ir en el ZIP: no es el fichero de
+     * configuración (lo genero yo) ni cuelga de ninguna carpeta ignorada, esté al nivel que esté.
+     */
+    public boolean incluye(String ruta) {
+        if (ruta.equals(rutaConfiguracion)) {
+            return false;
+        }
+        for (String segmento : ruta.split("/")) {
+            if (carpetasIgnoradas.contains(segmento)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Lenguaje getLenguaje() {
+        return lenguaje;
+    }
+
+    public String getCarpeta() {
+        return carpeta;
+    }
+
+    public String getRutaConfiguracion() {
+        return rutaConfiguracion;
+    }
+
+    public Set<String> getCarpetasIgnoradas() {
+        return carpetasIgnoradas;
+    }
+}
@@ -0,0 +1,184 @@
+package com.sistemagestionapp.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Entrada de un ZIP que ya tengo comprimida en memoria, con su CRC y sus tamaños calculados.
+ *
+ * La uso para montar los ZIP de proyecto sin volver a comprimir nada en cada petición:
+ * el {@link EscritorZip} copia directamente los bytes comprimidos a la salida.
+ *
+ * Es inmutable, así que la puedo compartir entre hilos y entre peticiones sin copiarla.
+ *
+ * Guardo también un resumen de los bytes comprimidos: con {@link #resumir(MessageDigest)}
+ * entra en las claves de contenido junto con todo lo que va en las cabeceras, así que dos
+ * entradas con el mismo resumen se escriben exactamente igual en el ZIP.
+ */
+public final class EntradaZip {
+
+    private final String nombre;
+    private final byte[] nombreUtf8;
+    private final int metodo;
+    private final long crc;
+    private final long tamano;
+    private final byte[] datosComprimidos;
+    private final long ultimaModificacion;
+    private final int fechaDos;
+    private final byte[] resumenDatos;
+
+    private EntradaZip(String nombre, int metodo, long crc, long tamano, byte[] datosComprimidos, long ultimaModificacion) {
+        this.nombre = nombre;
+        this.nombreUtf8 = nombre.getBytes(StandardCharsets.UTF_8);
+        this.metodo = metodo;
+        this.crc = crc;
+        this.tamano = tamano;
+        this.datosComprimidos = datosComprimidos;
+        this.ultimaModificacion = ultimaModificacion;
+        this.fechaDos = aFechaDos(ultimaModificacion);
+        this.resumenDatos = sha256(datosComprimidos);
+    }
+
+    /**
+     * Comprimo un contenido con DEFLATE y calculo su CRC. Si al comprimir no gano nada,
+     * guardo la entrada sin comprimir (STORED) para no gastar CPU al descomprimir.
+     *
+     * @param nombre ruta de la entrada dentro del ZIP (con "/" como separador).
+     * @param contenido bytes originales del fichero.
+     * @param ultimaModificacion fecha de modificación en milisegundos desde epoch.
+     * @return entrada lista para escribir.
+     */
+    public static EntradaZip comprimir(String nombre, byte[] contenido, long ultimaModificacion) {
+        return comprimir(nombre, contenido, ultimaModificacion, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Igual que {@link #comprimir(String, byte[], long)} pero con el nivel de DEFLATE indicado.
+     * Con nivel {@link PoliticaCompresion#SIN_COMPRIMIR} ni lo intento: solo calculo el CRC y
+     * la guardo tal cual.
+     */
+    public static EntradaZip comprimir(String nombre, byte[] contenido, long ultimaModificacion, int nivel) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(contenido);
+
+        if (nivel == PoliticaCompresion.SIN_COMPRIMIR) {
+            return new EntradaZip(nombre, ZipEntry.STORED, crc32.getValue(), contenido.length, contenido.clone(), ultimaModificacion);
+        }
+
+        byte[] comprimido = deflactar(contenido, nivel);
+
+        if (comprimido.length >= contenido.length) {
+            return new EntradaZip(nombre, ZipEntry.STORED, crc32.getValue(), contenido.length, contenido.clone(), ultimaModificacion);
+        }
+        return new EntradaZip(nombre, ZipEntry.DEFLATED, crc32.getValue(), contenido.length, comprimido, ultimaModificacion);
+    }
+
+    static byte[] deflactar(byte[] contenido, int nivel) {
+        // nowrap=true: el formato ZIP guarda DEFLATE "crudo", sin cabecera zlib
+        Deflater deflater = new Deflater(nivel, true);
+        try {
+            deflater.setInput(contenido);
+            deflater.finish();
+
+            ByteArrayOutputStream salida = new ByteArrayOutputStream(Math.max(64, contenido.length / 2));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                salida.write(buffer, 0, n);
+            }
+            return salida.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] sha256(byte[] datos) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(datos);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    /**
+     * Añado al resumen todo lo que decide cómo queda la entrada en el ZIP: nombre, método,
+     * fecha DOS, CRC, tamaños y el resumen de los bytes comprimidos.
+     */
+    void resumir(MessageDigest digest) {
+        digest.update(nombreUtf8);
+        digest.update((byte) 0);
+        StringBuilder campos = new StringBuilder(64)
+                .append(metodo).append(':')
+                .append(Integer.toHexString(fechaDos)).append(':')
+                .append(Long.toHexString(crc)).append(':')
+                .append(Long.toHexString(tamano)).append(':')
+                .append(Integer.toHexString(datosComprimidos.length)).append(':');
+        digest.update(campos.toString().getBytes(StandardCharsets.US_ASCII));
+        digest.update(resumenDatos);
+        digest.update((byte) '\n');
+    }
+
+    /**
+     * Convierto una fecha Java al formato fecha/hora de MS-DOS que usa la cabecera ZIP
+     * (hora en los 16 bits bajos, fecha en los 16 altos).
+     */
+    static int aFechaDos(long millis) {
+        LocalDateTime fecha = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        if (fecha.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return ((fecha.getYear() - 1980) << 25)
+                | (fecha.getMonthValue() << 21)
+                | (fecha.getDayOfMonth() << 16)
+                | (fecha.getHour() << 11)
+                | (fecha.getMinute() << 5)
+                | (fecha.getSecond() >> 1);
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    byte[] getNombreUtf8() {
+        return nombreUtf8;
+    }
+
+    public int getMetodo() {
+        return metodo;
+    }
+
+    public long getCrc() {
+        return crc;
+    }
+
+    public long getTamano() {
+        return tamano;
+    }
+
+    public long getTamanoComprimido() {
+        return datosComprimidos.length;
+    }
+
+    /**
+     * @return fecha de modificación del fichero original, en milisegundos desde epoch.
+     */
+    public long getUltimaModificacion() {
+        return ultimaModificacion;
+    }
+
+    byte[] getDatosComprimidos() {
+        return datosComprimidos;
+    }
+
+    int getFechaDos() {
+        return fechaDos;
+    }
+}
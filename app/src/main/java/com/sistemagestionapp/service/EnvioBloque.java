@@ -0,0 +1,49 @@
+package com.sistemagestionapp.service;
+
+import com.sistemagestionapp.model.Bloque;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Lo que devuelve el {@link SecuenciadorBloques} al encolar entradas: se completa con el bloque
+ * cuando está escrito en el registro.
+ *
+ * Un bloque escrito todavía se puede descartar si la cadena cambia a la rama de otro nodo. En
+ * ese caso {@link #getReenvio()} se completa con el envío que lleva ahora sus entradas: uno
+ * nuevo, encolado detrás de la rama ganadora, o uno ya completado con el bloque de esa rama
+ * que las contiene si el otro nodo ya las tenía. El reenvío también puede descartarse, así
+ * que quien quiera seguir sus entradas tiene que seguir la cadena de reenvíos.
+ *
+ * El secuenciador solo recuerda los envíos de los últimos bloques
+ * ({@link SecuenciadorBloques#RECIENTES}): si se descarta uno más antiguo sus entradas se
+ * vuelven a encolar igual, pero no se avisa.
+ */
+public final class EnvioBloque extends CompletableFuture<Bloque> {
+
+    private final CompletableFuture<EnvioBloque> reenvio = new CompletableFuture<>();
+
+    /**
+     * @return futuro que se completa si el bloque se descarta, con el envío que lleva ahora
+     * sus entradas. Si el bloque no se descarta nunca, no se completa.
+     */
+    public CompletableFuture<EnvioBloque> getReenvio() {
+        return reenvio;
+    }
+
+    /**
+     * @return true si el bloque de este envío se ha descartado.
+     */
+    public boolean estaDescartado() {
+        return reenvio.isDone();
+    }
+
+    void descartar(EnvioBloque nuevo) {
+        reenvio.complete(nuevo);
+    }
+
+    static EnvioBloque escrito(Bloque bloque) {
+        EnvioBloque envio = new EnvioBloque();
+        envio.complete(bloque);
+        return envio;
+    }
+}
@@ -0,0 +1,315 @@
+package com.sistemagestionapp.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Escritor de ficheros ZIP que trabaja con entradas ya comprimidas ({@link EntradaZip}).
+ *
+ * {@link java.util.zip.ZipOutputStream} siempre vuelve a comprimir lo que le paso, así que
+ * escribo yo mismo las cabeceras locales, el directorio central y el registro final.
+ * Como conozco de antemano el CRC y los tamaños de cada entrada, no necesito descriptores
+ * de datos y el tamaño final del ZIP se puede calcular sin escribir nada.
+ *
+ * Del directorio central solo guardo lo imprescindible de cada entrada (nombre, CRC,
+ * tamaños y posición), no sus datos, así que puedo escribir muchos proyectos seguidos
+ * sin retener en memoria lo que ya he mandado.
+ *
+ * Uso ZIP64 solo cuando hace falta, igual que {@link java.util.zip.ZipOutputStream}: en las
+ * entradas de más de 4 GB, en las que empiezan pasados los 4 GB y en el registro final si hay
+ * más de 65535 entradas o el directorio central queda pasados los 4 GB. Así una exportación
+ * grande no se rompe a mitad de la respuesta y los ZIP normales no cambian.
+ */
+public class EscritorZip {
+
+    private static final int FIRMA_CABECERA_LOCAL = 0x04034b50;
+    private static final int FIRMA_DIRECTORIO_CENTRAL = 0x02014b50;
+    private static final int FIRMA_FIN_DIRECTORIO = 0x06054b50;
+    private static final int FIRMA_FIN_DIRECTORIO_ZIP64 = 0x06064b50;
+    private static final int FIRMA_LOCALIZADOR_ZIP64 = 0x07064b50;
+
+    private static final int TAMANO_CABECERA_LOCAL = 30;
+    private static final int TAMANO_CABECERA_CENTRAL = 46;
+    private static final int TAMANO_FIN_DIRECTORIO = 22;
+    private static final int TAMANO_FIN_DIRECTORIO_ZIP64 = 56;
+    private static final int TAMANO_LOCALIZADOR_ZIP64 = 20;
+    /** Cabecera del campo extra ZIP64: identificador y longitud. */
+    private static final int TAMANO_CABECERA_EXTRA = 4;
+
+    private static final int VERSION_ZIP = 20;
+    private static final int VERSION_ZIP64 = 45;
+    /** Bit 11: los nombres de las entradas van en UTF-8. */
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int ID_EXTRA_ZIP64 = 0x0001;
+
+    /** A partir de aquí el valor no cabe en el campo de 32 (o 16) bits y va en el de ZIP64. */
+    private static final long LIMITE_32_BITS = 0xFFFFFFFFL;
+    private static final int LIMITE_ENTRADAS = 0xFFFF;
+
+    private final OutputStream salida;
+    private final List<EntradaEscrita> escritas = new ArrayList<>();
+    private final byte[] cabecera = new byte[TAMANO_CABECERA_CENTRAL + TAMANO_CABECERA_EXTRA + 3 * 8];
+    private long posicion;
+    private boolean finalizado;
+
+    public EscritorZip(OutputStream salida) {
+        this.salida = salida;
+    }
+
+    /**
+     * Escribo una entrada: cabecera local seguida de los bytes ya comprimidos.
+     */
+    public void escribir(EntradaZip entrada) throws IOException {
+        escribir(entrada, null);
+    }
+
+    /**
+     * Escribo una entrada dentro de una carpeta del ZIP (por ejemplo "mi-app/"), sin tocar
+     * sus bytes comprimidos: solo cambia el nombre en las cabeceras.
+     *
+     * @param entrada entrada ya comprimida.
+     * @param prefijo carpeta que antepongo al nombre (con "/" final), o null para ninguna.
+     */
+    public void escribir(EntradaZip entrada, String prefijo) throws IOException {
+        if (finalizado) {
+            throw new IllegalStateException("El ZIP ya está finalizado");
+        }
+
+        byte[] nombre = nombreConPrefijo(entrada, prefijo);
+        int metodo = entrada.getMetodo();
+        // En la cabecera local, si una entrada es ZIP64 van los dos tamaños en el extra
+        boolean zip64 = esGrande(entrada);
+
+        int p = 0;
+        p = int32(cabecera, p, FIRMA_CABECERA_LOCAL);
+        p = int16(cabecera, p, zip64 ? VERSION_ZIP64 : VERSION_ZIP);
+        p = int16(cabecera, p, FLAG_UTF8);
+        p = int16(cabecera, p, metodo);
+        p = int32(cabecera, p, entrada.getFechaDos());
+        p = int32(cabecera, p, (int) entrada.getCrc());
+        p = int32(cabecera, p, zip64 ? (int) LIMITE_32_BITS : (int) entrada.getTamanoComprimido());
+        p = int32(cabecera, p, zip64 ? (int) LIMITE_32_BITS : (int) entrada.getTamano());
+        p = int16(cabecera, p, nombre.length);
+        p = int16(cabecera, p, zip64 ? TAMANO_CABECERA_EXTRA + 16 : 0);
+
+        salida.write(cabecera, 0, p);
+        salida.write(nombre);
+        int extra = 0;
+        if (zip64) {
+            extra = int16(cabecera, extra, ID_EXTRA_ZIP64);
+            extra = int16(cabecera, extra, 16);
+            extra = int64(cabecera, extra, entrada.getTamano());
+            extra = int64(cabecera, extra, entrada.getTamanoComprimido());
+            salida.write(cabecera, 0, extra);
+        }
+        salida.write(entrada.getDatosComprimidos());
+
+        escritas.add(new EntradaEscrita(entrada, nombre, posicion));
+        posicion += p + nombre.length + extra + entrada.getTamanoComprimido();
+    }
+
+    /**
+     * Escribo el directorio central y el registro de fin de directorio.
+     * No cierro el stream de salida: eso es responsabilidad de quien me lo ha pasado.
+     */
+    public void finalizar() throws IOException {
+        if (finalizado) {
+            return;
+        }
+        finalizado = true;
+
+        long inicioDirectorio = posicion;
+        for (EntradaEscrita escrita : escritas) {
+            byte[] nombre = escrita.nombre;
+            // En el directorio central solo van en el extra los valores que no caben
+            boolean tamanoGrande = escrita.tamano >= LIMITE_32_BITS;
+            boolean comprimidoGrande = escrita.tamanoComprimido >= LIMITE_32_BITS;
+            boolean desplazamientoGrande = escrita.desplazamiento >= LIMITE_32_BITS;
+            int extra = extraCentral(escrita.tamano, escrita.tamanoComprimido, escrita.desplazamiento);
+            int version = extra > 0 ? VERSION_ZIP64 : VERSION_ZIP;
+
+            int p = 0;
+            p = int32(cabecera, p, FIRMA_DIRECTORIO_CENTRAL);
+            p = int16(cabecera, p, version);
+            p = int16(cabecera, p, version);
+            p = int16(cabecera, p, FLAG_UTF8);
+            p = int16(cabecera, p, escrita.metodo);
+            p = int32(cabecera, p, escrita.fechaDos);
+            p = int32(cabecera, p, escrita.crc);
+            p = int32(cabecera, p, (int) Math.min(escrita.tamanoComprimido, LIMITE_32_BITS));
+            p = int32(cabecera, p, (int) Math.min(escrita.tamano, LIMITE_32_BITS));
+            p = int16(cabecera, p, nombre.length);
+            p = int16(cabecera, p, extra);
+            p = int16(cabecera, p, 0);  // comentario
+            p = int16(cabecera, p, 0);  // disco de inicio
+            p = int16(cabecera, p, 0);  // atributos internos
+            p = int32(cabecera, p, 0);  // atributos externos
+            p = int32(cabecera, p, (int) Math.min(escrita.desplazamiento, LIMITE_32_BITS));
+
+            salida.write(cabecera, 0, p);
+            salida.write(nombre);
+            if (extra > 0) {
+                int e = 0;
+                e = int16(cabecera, e, ID_EXTRA_ZIP64);
+                e = int16(cabecera, e, extra - TAMANO_CABECERA_EXTRA);
+                // El orden lo fija el formato: tamaño, comprimido, desplazamiento
+                if (tamanoGrande) {
+                    e = int64(cabecera, e, escrita.tamano);
+                }
+                if (comprimidoGrande) {
+                    e = int64(cabecera, e, escrita.tamanoComprimido);
+                }
+                if (desplazamientoGrande) {
+                    e = int64(cabecera, e, escrita.desplazamiento);
+                }
+                salida.write(cabecera, 0, e);
+            }
+            posicion += p + nombre.length + extra;
+        }
+
+        long tamanoDirectorio = posicion - inicioDirectorio;
+        int entradas = escritas.size();
+        if (necesitaFinZip64(entradas, tamanoDirectorio, inicioDirectorio)) {
+            long inicioFinZip64 = posicion;
+
+            int p = 0;
+            p = int32(cabecera, p, FIRMA_FIN_DIRECTORIO_ZIP64);
+            p = int64(cabecera, p, TAMANO_FIN_DIRECTORIO_ZIP64 - 12);  // lo que queda del registro
+            p = int16(cabecera, p, VERSION_ZIP64);
+            p = int16(cabecera, p, VERSION_ZIP64);
+            p = int32(cabecera, p, 0);  // este disco
+            p = int32(cabecera, p, 0);  // disco del directorio central
+            p = int64(cabecera, p, entradas);
+            p = int64(cabecera, p, entradas);
+            p = int64(cabecera, p, tamanoDirectorio);
+            p = int64(cabecera, p, inicioDirectorio);
+            salida.write(cabecera, 0, p);
+            posicion += p;
+
+            p = 0;
+            p = int32(cabecera, p, FIRMA_LOCALIZADOR_ZIP64);
+            p = int32(cabecera, p, 0);
+            p = int64(cabecera, p, inicioFinZip64);
+            p = int32(cabecera, p, 1);  // discos en total
+            salida.write(cabecera, 0, p);
+            posicion += p;
+        }
+
+        int p = 0;
+        p = int32(cabecera, p, FIRMA_FIN_DIRECTORIO);
+        p = int16(cabecera, p, 0);
+        p = int16(cabecera, p, 0);
+        p = int16(cabecera, p, Math.min(entradas, LIMITE_ENTRADAS));
+        p = int16(cabecera, p, Math.min(entradas, LIMITE_ENTRADAS));
+        p = int32(cabecera, p, (int) Math.min(tamanoDirectorio, LIMITE_32_BITS));
+        p = int32(cabecera, p, (int) Math.min(inicioDirectorio, LIMITE_32_BITS));
+        p = int16(cabecera, p, 0);
+
+        salida.write(cabecera, 0, p);
+        posicion += p;
+        salida.flush();
+    }
+
+    /**
+     * @return bytes escritos hasta ahora.
+     */
+    public long getPosicion() {
+        return posicion;
+    }
+
+    /**
+     * Calculo el tamaño exacto que tendrá un ZIP con estas entradas, sin escribirlo. Tengo en
+     * cuenta los registros ZIP64, que dependen de dónde cae cada entrada.
+     */
+    public static long calcularTamano(Collection<EntradaZip> entradas) {
+        long posicion = 0;
+        long tamanoDirectorio = 0;
+        for (EntradaZip entrada : entradas) {
+            int nombre = entrada.getNombreUtf8().length;
+            tamanoDirectorio += TAMANO_CABECERA_CENTRAL + nombre
+                    + extraCentral(entrada.getTamano(), entrada.getTamanoComprimido(), posicion);
+            posicion += TAMANO_CABECERA_LOCAL + nombre + (esGrande(entrada) ? TAMANO_CABECERA_EXTRA + 16 : 0)
+                    + entrada.getTamanoComprimido();
+        }
+        long total = posicion + tamanoDirectorio + TAMANO_FIN_DIRECTORIO;
+        if (necesitaFinZip64(entradas.size(), tamanoDirectorio, posicion)) {
+            total += TAMANO_FIN_DIRECTORIO_ZIP64 + TAMANO_LOCALIZADOR_ZIP64;
+        }
+        return total;
+    }
+
+    private static boolean esGrande(EntradaZip entrada) {
+        return entrada.getTamano() >= LIMITE_32_BITS || entrada.getTamanoComprimido() >= LIMITE_32_BITS;
+    }
+
+    /**
+     * @return bytes del extra ZIP64 de una entrada en el directorio central (0 si no lo necesita).
+     */
+    private static int extraCentral(long tamano, long tamanoComprimido, long desplazamiento) {
+        int campos = (tamano >= LIMITE_32_BITS ? 1 : 0) + (tamanoComprimido >= LIMITE_32_BITS ? 1 : 0)
+                + (desplazamiento >= LIMITE_32_BITS ? 1 : 0);
+        return campos == 0 ? 0 : TAMANO_CABECERA_EXTRA + 8 * campos;
+    }
+
+    private static boolean necesitaFinZip64(int entradas, long tamanoDirectorio, long inicioDirectorio) {
+        return entradas >= LIMITE_ENTRADAS || tamanoDirectorio >= LIMITE_32_BITS || inicioDirectorio >= LIMITE_32_BITS;
+    }
+
+    private static byte[] nombreConPrefijo(EntradaZip entrada, String prefijo) {
+        byte[] nombre = entrada.getNombreUtf8();
+        if (prefijo == null || prefijo.isEmpty()) {
+            return nombre;
+        }
+        byte[] carpeta = prefijo.getBytes(StandardCharsets.UTF_8);
+        byte[] completo = Arrays.copyOf(carpeta, carpeta.length + nombre.length);
+        System.arraycopy(nombre, 0, completo, carpeta.length, nombre.length);
+        return completo;
+    }
+
+    private static int int16(byte[] b, int p, int valor) {
+        b[p] = (byte) valor;
+        b[p + 1] = (byte) (valor >>> 8);
+        return p + 2;
+    }
+
+    private static int int32(byte[] b, int p, int valor) {
+        b[p] = (byte) valor;
+        b[p + 1] = (byte) (valor >>> 8);
+        b[p + 2] = (byte) (valor >>> 16);
+        b[p + 3] = (byte) (valor >>> 24);
+        return p + 4;
+    }
+
+    private static int int64(byte[] b, int p, long valor) {
+        int32(b, p, (int) valor);
+        return int32(b, p + 4, (int) (valor >>> 32));
+    }
+
+    /**
+     * Lo que necesito de una entrada ya escrita para su registro en el directorio central.
+     */
+    private static final class EntradaEscrita {
+        private final byte[] nombre;
+        private final int metodo;
+        private final int fechaDos;
+        private final int crc;
+        private final long tamanoComprimido;
+        private final long tamano;
+        private final long desplazamiento;
+
+        private EntradaEscrita(EntradaZip entrada, byte[] nombre, long desplazamiento) {
+            this.nombre = nombre;
+            this.metodo = entrada.getMetodo();
+            this.fechaDos = entrada.getFechaDos();
+            this.crc = (int) entrada.getCrc();
+            this.tamanoComprimido = entrada.getTamanoComprimido();
+            this.tamano = entrada.getTamano();
+            this.desplazamiento = desplazamiento;
+        }
+    }
+}
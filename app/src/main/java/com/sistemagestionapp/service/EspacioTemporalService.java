@@ -0,0 +1,323 @@
+package com.sistemagestionapp.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Servicio que gestiona el espacio temporal en disco que usa la generación de ZIP.
+ *
+ * - Presta carpetas ({@link EspacioTrabajo}) con un tiempo de préstamo.
+ * - Controla una cuota total de bytes: si no hay sitio, quien pide espacio espera
+ *   (hasta un máximo) a que se libere, en lugar de llenar el disco.
+ * - Un recolector periódico borra las carpetas cuyo préstamo ha vencido.
+ * - Cada instancia trabaja en su propia subcarpeta de la base (instancia-pid-uuid) y tiene
+ *   bloqueado un fichero dentro mientras vive. Al arrancar solo borro las subcarpetas de
+ *   instancias que ya no tienen ese bloqueo, así que varias instancias (o varios procesos)
+ *   pueden compartir la misma base sin borrarse el trabajo.
+ * - Expongo bytes en uso y lo recuperado para poder monitorizarlo.
+ */
+@Service
+public class EspacioTemporalService {
+
+    private static final String PREFIJO_INSTANCIA = "instancia-";
+    private static final String FICHERO_BLOQUEO = "instancia.lock";
+
+    private final Path base;
+    private final Path instancia;
+    private final long cuotaBytes;
+    private final Duration prestamoPorDefecto;
+    private final long esperaMaximaMs;
+
+    private final Set<EspacioTrabajo> activos = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock cerrojo = new ReentrantLock();
+    private final Condition hayEspacio = cerrojo.newCondition();
+    private long bytesReservados;
+    private FileChannel canalBloqueo;
+    private FileLock bloqueo;
+
+    private final AtomicLong espaciosRecuperados = new AtomicLong();
+    private final AtomicLong bytesRecuperados = new AtomicLong();
+    private final AtomicLong esperasAgotadas = new AtomicLong();
+
+    public EspacioTemporalService(@Value("${zip.temporal.directorio:${java.io.tmpdir}/tfg-espacio}") String base,
+                                  @Value("${zip.temporal.cuota-bytes:536870912}") long cuotaBytes,
+                                  @Value("${zip.temporal.prestamo-minutos:15}") long prestamoMinutos,
+                                  @Value("${zip.temporal.espera-maxima-ms:10000}") long esperaMaximaMs) {
+        this.base = Paths.get(base).toAbsolutePath();
+        this.instancia = this.base.resolve(PREFIJO_INSTANCIA + ProcessHandle.current().pid() + "-" + UUID.randomUUID());
+        this.cuotaBytes = cuotaBytes;
+        this.prestamoPorDefecto = Duration.ofMinutes(prestamoMinutos);
+        this.esperaMaximaMs = esperaMaximaMs;
+    }
+
+    /**
+     * Creo la subcarpeta de esta instancia, la bloqueo y borro las de instancias que ya no
+     * están vivas.
+     */
+    @PostConstruct
+    public void inicializar() throws IOException {
+        Files.createDirectories(instancia);
+        canalBloqueo = FileChannel.open(instancia.resolve(FICHERO_BLOQUEO), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        bloqueo = canalBloqueo.tryLock();
+        if (bloqueo == null) {
+            canalBloqueo.close();
+            throw new IOException("No se ha podido bloquear el espacio temporal " + instancia);
+        }
+
+        List<Path> otras;
+        try (Stream<Path> ficheros = Files.list(base)) {
+            otras = ficheros
+                    .filter(p -> p.getFileName().toString().startsWith(PREFIJO_INSTANCIA) && !p.equals(instancia))
+                    .toList();
+        }
+        int borradas = 0;
+        for (Path otra : otras) {
+            if (!abandonada(otra)) {
+                continue;
+            }
+            long tamano = borrarArbol(otra);
+            espaciosRecuperados.incrementAndGet();
+            bytesRecuperados.addAndGet(tamano);
+            borradas++;
+        }
+        if (borradas > 0) {
+            System.out.println("🧹 [ESPACIO] Borrados los espacios temporales de " + borradas + " instancias anteriores");
+        }
+    }
+
+    /**
+     * Al parar borro la subcarpeta de esta instancia y suelto el bloqueo.
+     */
+    @PreDestroy
+    public void cerrar() throws IOException {
+        if (canalBloqueo == null) {
+            return;
+        }
+        bloqueo.release();
+        canalBloqueo.close();
+        borrarArbol(instancia);
+    }
+
+    /**
+     * @return true si la subcarpeta es de una instancia que ya no está viva: puedo coger su
+     * bloqueo (o no tiene fichero de bloqueo, porque se cayó antes de crearlo).
+     */
+    private static boolean abandonada(Path otra) {
+        Path fichero = otra.resolve(FICHERO_BLOQUEO);
+        if (!Files.isDirectory(otra)) {
+            return false;
+        }
+        if (!Files.exists(fichero)) {
+            return true;
+        }
+        try (FileChannel canal = FileChannel.open(fichero, StandardOpenOption.WRITE)) {
+            FileLock suyo = canal.tryLock();
+            if (suyo == null) {
+                return false;
+            }
+            suyo.release();
+            return true;
+        } catch (OverlappingFileLockException e) {
+            // La tiene bloqueada otra instancia de esta misma JVM
+            return false;
+        } catch (IOException e) {
+            System.out.println("⚠️ [ESPACIO] No se ha podido comprobar " + otra + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Pido una carpeta temporal con el préstamo por defecto.
+     *
+     * @see #reservar(String, long, Duration)
+     */
+    public EspacioTrabajo reservar(String prefijo, long bytesEstimados) throws IOException {
+        return reservar(prefijo, bytesEstimados, prestamoPorDefecto);
+    }
+
+    /**
+     * Pido una carpeta temporal. Si la cuota no da para los bytes estimados, espero a que
+     * se libere espacio como mucho el tiempo configurado.
+     *
+     * @param prefijo prefijo del nombre de la carpeta.
+     * @param bytesEstimados bytes que espero escribir en ella.
+     * @param prestamo tiempo tras el cual el recolector puede borrarla.
+     * @return espacio prestado; hay que cerrarlo al terminar.
+     * @throws IllegalStateException si no hay sitio tras esperar el máximo.
+     * @throws IOException si no puedo crear la carpeta.
+     */
+    public EspacioTrabajo reservar(String prefijo, long bytesEstimados, Duration prestamo) throws IOException {
+        if (bytesEstimados > cuotaBytes) {
+            throw new IllegalStateException("Se piden " + bytesEstimados + " bytes y la cuota total es de " + cuotaBytes);
+        }
+
+        cerrojo.lock();
+        try {
+            long restanteNanos = TimeUnit.MILLISECONDS.toNanos(esperaMaximaMs);
+            while (bytesReservados + bytesEstimados > cuotaBytes) {
+                if (restanteNanos <= 0) {
+                    esperasAgotadas.incrementAndGet();
+                    throw new IllegalStateException("No hay espacio temporal disponible, inténtalo más tarde");
+                }
+                restanteNanos = hayEspacio.awaitNanos(restanteNanos);
+            }
+            bytesReservados += bytesEstimados;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrumpido esperando espacio temporal", e);
+        } finally {
+            cerrojo.unlock();
+        }
+
+        try {
+            Path directorio = Files.createTempDirectory(instancia, prefijo);
+            EspacioTrabajo espacio = new EspacioTrabajo(this, directorio, bytesEstimados, Instant.now().plus(prestamo));
+            activos.add(espacio);
+            return espacio;
+        } catch (IOException | RuntimeException e) {
+            devolverCuota(bytesEstimados);
+            throw e;
+        }
+    }
+
+    /**
+     * Recolector: libero los espacios cuyo préstamo ha vencido.
+     */
+    @Scheduled(fixedDelayString = "${zip.temporal.recolector-ms:60000}")
+    public void recolectarVencidos() {
+        Instant ahora = Instant.now();
+        List<EspacioTrabajo> vencidos = new ArrayList<>();
+        for (EspacioTrabajo espacio : activos) {
+            if (espacio.getVence().isBefore(ahora)) {
+                vencidos.add(espacio);
+            }
+        }
+        for (EspacioTrabajo espacio : vencidos) {
+            liberar(espacio, true);
+        }
+        if (!vencidos.isEmpty()) {
+            System.out.println("🧹 [ESPACIO] Recuperados " + vencidos.size() + " espacios temporales vencidos");
+        }
+    }
+
+    public long getBytesEnUso() {
+        cerrojo.lock();
+        try {
+            return bytesReservados;
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    public long getCuotaBytes() {
+        return cuotaBytes;
+    }
+
+    public int getEspaciosActivos() {
+        return activos.size();
+    }
+
+    public long getEspaciosRecuperados() {
+        return espaciosRecuperados.get();
+    }
+
+    public long getBytesRecuperados() {
+        return bytesRecuperados.get();
+    }
+
+    public long getEsperasAgotadas() {
+        return esperasAgotadas.get();
+    }
+
+    public Path getDirectorioInstancia() {
+        return instancia;
+    }
+
+    /**
+     * Libero un espacio. Si alguien está leyendo de él, lo borra el último lector al
+     * terminar ({@link EspacioTrabajo#soltar()}).
+     */
+    void liberar(EspacioTrabajo espacio, boolean porVencimiento) {
+        if (!espacio.marcarLiberado(porVencimiento)) {
+            return;
+        }
+        activos.remove(espacio);
+        borrarSiSePuede(espacio);
+    }
+
+    void borrarSiSePuede(EspacioTrabajo espacio) {
+        if (!espacio.marcarBorrado()) {
+            return;
+        }
+        long tamano = borrarArbol(espacio.getDirectorio());
+        devolverCuota(espacio.getBytesReservados());
+        if (espacio.isPorVencimiento()) {
+            espaciosRecuperados.incrementAndGet();
+            bytesRecuperados.addAndGet(tamano);
+        }
+    }
+
+    private void devolverCuota(long bytes) {
+        cerrojo.lock();
+        try {
+            bytesReservados -= bytes;
+            hayEspacio.signalAll();
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    /**
+     * Borro una carpeta con todo su contenido y devuelvo los bytes que ocupaba.
+     */
+    private static long borrarArbol(Path raiz) {
+        long total = 0;
+        if (!Files.exists(raiz)) {
+            return 0;
+        }
+        List<Path> rutas;
+        try (Stream<Path> recorrido = Files.walk(raiz)) {
+            rutas = recorrido.sorted(Comparator.reverseOrder()).toList();
+        } catch (IOException e) {
+            System.out.println("⚠️ [ESPACIO] No se ha podido recorrer " + raiz + ": " + e.getMessage());
+            return 0;
+        }
+        for (Path ruta : rutas) {
+            try {
+                if (Files.isRegularFile(ruta)) {
+                    total += Files.size(ruta);
+                }
+                Files.deleteIfExists(ruta);
+            } catch (IOException e) {
+                System.out.println("⚠️ [ESPACIO] No se ha podido borrar " + ruta + ": " + e.getMessage());
+            }
+        }
+        return total;
+    }
+}
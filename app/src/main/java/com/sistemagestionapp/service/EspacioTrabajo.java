@@ -0,0 +1,114 @@
+package com.sistemagestionapp.service;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Carpeta temporal prestada por {@link EspacioTemporalService} durante un tiempo limitado.
+ *
+ * Quien la pide la cierra al terminar; si se olvida, el recolector la borra cuando
+ * vence el préstamo. Se puede renovar si el trabajo tarda más de lo previsto.
+ *
+ * Como en {@link ArtefactoZip}, llevo la cuenta de quién está leyendo lo que hay dentro
+ * (una descarga): si se libera en ese momento, la carpeta se borra cuando termina el último.
+ */
+public final class EspacioTrabajo implements Closeable {
+
+    private final EspacioTemporalService gestor;
+    private final Path directorio;
+    private final long bytesReservados;
+    private volatile Instant vence;
+    private volatile boolean liberado;
+    private boolean porVencimiento;
+    private int lectores;
+    private boolean borrado;
+
+    EspacioTrabajo(EspacioTemporalService gestor, Path directorio, long bytesReservados, Instant vence) {
+        this.gestor = gestor;
+        this.directorio = directorio;
+        this.bytesReservados = bytesReservados;
+        this.vence = vence;
+    }
+
+    public Path getDirectorio() {
+        return directorio;
+    }
+
+    public long getBytesReservados() {
+        return bytesReservados;
+    }
+
+    public Instant getVence() {
+        return vence;
+    }
+
+    public boolean estaLiberado() {
+        return liberado;
+    }
+
+    /**
+     * Alargo el préstamo desde ahora.
+     */
+    public void renovar(Duration duracion) {
+        this.vence = Instant.now().plus(duracion);
+    }
+
+    /**
+     * Devuelvo el espacio: borro la carpeta y libero la cuota reservada.
+     */
+    @Override
+    public void close() {
+        gestor.liberar(this, false);
+    }
+
+    /**
+     * Registro un lector. Devuelvo false si el espacio ya se ha liberado.
+     */
+    synchronized boolean adquirir() {
+        if (liberado) {
+            return false;
+        }
+        lectores++;
+        return true;
+    }
+
+    /**
+     * Libero un lector; si era el último y el espacio está liberado, lo borro ahora.
+     */
+    void soltar() {
+        synchronized (this) {
+            lectores--;
+        }
+        gestor.borrarSiSePuede(this);
+    }
+
+    /**
+     * Marco el espacio como liberado. Devuelvo false si ya lo estaba.
+     */
+    synchronized boolean marcarLiberado(boolean porVencimiento) {
+        if (liberado) {
+            return false;
+        }
+        liberado = true;
+        this.porVencimiento = porVencimiento;
+        return true;
+    }
+
+    /**
+     * Marco el espacio como borrado si está liberado y nadie lo lee. Devuelvo true solo a
+     * quien tiene que borrarlo (una vez).
+     */
+    synchronized boolean marcarBorrado() {
+        if (!liberado || lectores > 0 || borrado) {
+            return false;
+        }
+        borrado = true;
+        return true;
+    }
+
+    synchronized boolean isPorVencimiento() {
+        return porVencimiento;
+    }
+}
@@ -0,0 +1,11 @@
+package com.sistemagestionapp.service;
+
+/**
+ * Estados por los que pasa un trabajo de generación de ZIP.
+ */
+public enum EstadoTrabajoZip {
+    EN_COLA,
+    EN_CURSO,
+    COMPLETADO,
+    ERROR
+}
@@ -0,0 +1,23 @@
+package com.sistemagestionapp.service;
+
+import com.sistemagestionapp.model.EstadoControl;
+import com.sistemagestionapp.model.PasoDespliegue;
+
+import java.time.Instant;
+
+/**
+ * Cambio de estado de un paso de despliegue ({@link com.sistemagestionapp.model.ControlDespliegue}),
+ * tal como lo guardo en la cadena de bloques.
+ *
+ * @param control id del control de despliegue.
+ * @param aplicacion id de la aplicación.
+ * @param paso paso del despliegue.
+ * @param anterior estado que tenía (null si el control se acaba de crear).
+ * @param nuevo estado que tiene ahora.
+ * @param mensaje mensaje del control en ese momento.
+ * @param instante cuándo se guardó el cambio.
+ * @param capturado System.nanoTime() al capturarlo, para medir el retraso hasta la cadena.
+ */
+public record EventoDespliegue(Long control, Long aplicacion, PasoDespliegue paso, EstadoControl anterior,
+                               EstadoControl nuevo, String mensaje, Instant instante, long capturado) {
+}
@@ -0,0 +1,190 @@
+package com.sistemagestionapp.service;
+
+import com.sistemagestionapp.model.ArbolMerkle;
+import com.sistemagestionapp.model.Bloque;
+import com.sistemagestionapp.model.PruebaInclusion;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Formato binario con el que guardo un {@link Bloque} en el registro de bloques.
+ *
+ * Contenido (big endian):
+ * - versión del formato (1 byte)
+ * - índice (int)
+ * - hash anterior y hash (32 bytes cada uno)
+ * - dificultad (1 byte) y nonce (long) de la prueba de trabajo
+ * - número de entradas n (int)
+ * - nodos del {@link ArbolMerkle} aplanado por niveles (32 bytes cada uno; la raíz es el último)
+ * - posición de cada entrada dentro del contenido (n int)
+ * - entradas: longitud (int) seguida de sus bytes UTF-8
+ *
+ * Guardo el árbol entero y la tabla de posiciones para que una prueba de inclusión se
+ * pueda sacar leyendo solo log2(n) nodos y la entrada pedida, sin decodificar el bloque.
+ *
+ * La cabecera del registro (longitud y checksum) la pone {@link RegistroBloques}; aquí
+ * solo traduzco el bloque a bytes y al revés.
+ */
+final class FormatoBloque {
+
+    /**
+     * Versión 4: lotes de entradas con árbol de Merkle y prueba de trabajo. Las versiones
+     * anteriores no se pueden leer, porque sus hashes se calculaban de otra forma.
+     */
+    static final byte VERSION = 4;
+
+    private static final int POSICION_DIFICULTAD = 1 + 4 + Bloque.TAMANO_HASH * 2;
+    private static final int POSICION_ENTRADAS = POSICION_DIFICULTAD + 1 + 8;
+    private static final int TAMANO_CABECERA = POSICION_ENTRADAS + 4;
+    /** Bytes de un bloque con una sola entrada vacía: ninguno ocupa menos. */
+    static final int TAMANO_MINIMO = TAMANO_CABECERA + Bloque.TAMANO_HASH + 4 + 4;
+
+    private FormatoBloque() {
+    }
+
+    /**
+     * @return bytes del bloque en el formato del registro.
+     */
+    static byte[] codificar(Bloque bloque) {
+        List<String> entradas = bloque.getEntradas();
+        int n = entradas.size();
+        byte[] arbol = bloque.getArbolMerkle() != null ? bloque.getArbolMerkle() : ArbolMerkle.construir(entradas);
+
+        byte[][] textos = new byte[n][];
+        int tamanoTextos = 0;
+        for (int i = 0; i < n; i++) {
+            textos[i] = entradas.get(i).getBytes(StandardCharsets.UTF_8);
+            tamanoTextos += 4 + textos[i].length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(TAMANO_CABECERA + arbol.length + 4 * n + tamanoTextos);
+        buffer.put(VERSION);
+        buffer.putInt(bloque.getIndice());
+        buffer.put(bloque.getHashAnteriorBytes());
+        buffer.put(bloque.getHashBytes());
+        buffer.put((byte) bloque.getDificultad());
+        buffer.putLong(bloque.getNonce());
+        buffer.putInt(n);
+        buffer.put(arbol);
+        int posicion = buffer.position() + 4 * n;
+        for (byte[] texto : textos) {
+            buffer.putInt(posicion);
+            posicion += 4 + texto.length;
+        }
+        for (byte[] texto : textos) {
+            buffer.putInt(texto.length).put(texto);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Leo un bloque de un buffer sin moverlo (uso posiciones absolutas, así varios hilos
+     * pueden leer a la vez del mismo fichero mapeado).
+     *
+     * @param buffer buffer con el registro.
+     * @param inicio posición donde empieza el contenido del bloque.
+     * @param longitud bytes del contenido.
+     * @throws IllegalStateException si el contenido no tiene el formato esperado.
+     */
+    static Bloque decodificar(ByteBuffer buffer, int inicio, int longitud) {
+        int n = comprobar(buffer, inicio, longitud);
+        int p = inicio + 1;
+        int indice = buffer.getInt(p);
+        p += 4;
+        byte[] hashAnterior = new byte[Bloque.TAMANO_HASH];
+        buffer.get(p, hashAnterior);
+        p += Bloque.TAMANO_HASH;
+        byte[] hash = new byte[Bloque.TAMANO_HASH];
+        buffer.get(p, hash);
+        int dificultad = buffer.get(inicio + POSICION_DIFICULTAD) & 0xFF;
+        long nonce = buffer.getLong(inicio + POSICION_DIFICULTAD + 1);
+
+        int inicioArbol = inicio + TAMANO_CABECERA;
+        byte[] raiz = new byte[ArbolMerkle.TAMANO_NODO];
+        buffer.get(inicioArbol + (ArbolMerkle.totalNodos(n) - 1) * ArbolMerkle.TAMANO_NODO, raiz);
+
+        List<String> entradas = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            entradas.add(leerEntrada(buffer, inicio, longitud, n, i));
+        }
+        return new Bloque(indice, entradas, hashAnterior, raiz, dificultad, nonce, hash);
+    }
+
+    /**
+     * Saco la prueba de inclusión de una entrada leyendo solo los nodos del camino.
+     *
+     * @param posicion posición de la entrada dentro del bloque.
+     * @throws IllegalArgumentException si el bloque no tiene esa entrada.
+     */
+    static PruebaInclusion prueba(ByteBuffer buffer, int inicio, int longitud, int posicion) {
+        int n = comprobar(buffer, inicio, longitud);
+        if (posicion < 0 || posicion >= n) {
+            throw new IllegalArgumentException("El bloque tiene " + n + " entradas y se ha pedido la " + posicion);
+        }
+        int indice = buffer.getInt(inicio + 1);
+        byte[] hashAnterior = new byte[Bloque.TAMANO_HASH];
+        buffer.get(inicio + 5, hashAnterior);
+        byte[] hash = new byte[Bloque.TAMANO_HASH];
+        buffer.get(inicio + 5 + Bloque.TAMANO_HASH, hash);
+        int dificultad = buffer.get(inicio + POSICION_DIFICULTAD) & 0xFF;
+        long nonce = buffer.getLong(inicio + POSICION_DIFICULTAD + 1);
+
+        int inicioArbol = inicio + TAMANO_CABECERA;
+        List<byte[]> hermanos = new ArrayList<>();
+        List<Boolean> izquierdos = new ArrayList<>();
+        int base = 0;
+        int actual = posicion;
+        for (int tamano = n; tamano > 1; tamano = (tamano + 1) / 2) {
+            int hermano = actual ^ 1;
+            if (hermano < tamano) {
+                byte[] nodo = new byte[ArbolMerkle.TAMANO_NODO];
+                buffer.get(inicioArbol + (base + hermano) * ArbolMerkle.TAMANO_NODO, nodo);
+                hermanos.add(nodo);
+                izquierdos.add(hermano < actual);
+            }
+            base += tamano;
+            actual >>= 1;
+        }
+        byte[] raiz = new byte[ArbolMerkle.TAMANO_NODO];
+        buffer.get(inicioArbol + base * ArbolMerkle.TAMANO_NODO, raiz);
+
+        String entrada = leerEntrada(buffer, inicio, longitud, n, posicion);
+        return new PruebaInclusion(indice, posicion, n, entrada, hashAnterior, raiz, dificultad, nonce, hash, hermanos,
+                izquierdos);
+    }
+
+    /**
+     * Compruebo la versión y que la cabecera, el árbol y la tabla de posiciones caben.
+     *
+     * @return número de entradas.
+     */
+    private static int comprobar(ByteBuffer buffer, int inicio, int longitud) {
+        if (longitud < TAMANO_CABECERA || buffer.get(inicio) != VERSION) {
+            throw new IllegalStateException("Registro de bloque con formato desconocido en la posición " + inicio
+                    + " (versión " + (longitud > 0 ? buffer.get(inicio) : -1) + ", esperada " + VERSION + ")");
+        }
+        int n = buffer.getInt(inicio + POSICION_ENTRADAS);
+        if (n < 1 || (long) TAMANO_CABECERA + (long) ArbolMerkle.totalNodos(n) * ArbolMerkle.TAMANO_NODO + 4L * n > longitud) {
+            throw new IllegalStateException("Registro de bloque truncado en la posición " + inicio);
+        }
+        return n;
+    }
+
+    private static String leerEntrada(ByteBuffer buffer, int inicio, int longitud, int n, int posicion) {
+        int tabla = inicio + TAMANO_CABECERA + ArbolMerkle.totalNodos(n) * ArbolMerkle.TAMANO_NODO;
+        int p = buffer.getInt(tabla + 4 * posicion);
+        if (p < 0 || p > longitud - 4) {
+            throw new IllegalStateException("Registro de bloque truncado en la posición " + inicio);
+        }
+        int tamano = buffer.getInt(inicio + p);
+        if (tamano < 0 || tamano > longitud - p - 4) {
+            throw new IllegalStateException("Registro de bloque truncado en la posición " + inicio);
+        }
+        byte[] texto = new byte[tamano];
+        buffer.get(inicio + p + 4, texto);
+        return new String(texto, StandardCharsets.UTF_8);
+    }
+}
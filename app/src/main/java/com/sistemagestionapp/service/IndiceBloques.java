@@ -0,0 +1,580 @@
+package com.sistemagestionapp.service;
+
+import com.sistemagestionapp.model.Bloque;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * Índices en memoria de la cadena para buscar bloques sin recorrerla.
+ *
+ * - Hash → índice: tabla de direccionamiento abierto sobre dos arrays primitivos. La clave
+ *   son los primeros 8 bytes del hash (un long) y el valor el índice del bloque, así que
+ *   ocupa unos 12 bytes por bloque y no crea un objeto por entrada. Como dos hashes pueden
+ *   compartir esos 8 bytes, quien busca confirma el hash completo leyendo el bloque.
+ * - Índice invertido: para cada palabra de las entradas, la lista de bloques donde
+ *   aparece. Los bloques se indexan en orden, así que cada lista queda ordenada sin hacer
+ *   nada y la intersección de varias palabras se hace con búsquedas binarias.
+ *
+ * Solo escribe el hilo del secuenciador ({@link #indexar(Bloque)}); las búsquedas van en
+ * paralelo bajo el cerrojo de lectura.
+ *
+ * Los dos índices se pueden volcar a un punto de control ({@link #guardar(DataOutput, int)})
+ * y recuperar de él al arrancar, sin volver a leer los bloques que recoge. Para no esperar a
+ * esa carga al arrancar, el índice puede empezar con los bloques del punto de control
+ * reservados ({@link #reservar(int)}): indexo los de detrás mientras otro hilo carga los
+ * reservados, y al terminar ({@link #completar(IndiceBloques)}) junto las dos partes. Las
+ * búsquedas esperan a que esté completo.
+ */
+public class IndiceBloques {
+
+    private static final long LIBRE = 0L;
+    private static final int LONGITUD_MINIMA_TOKEN = 2;
+    private static final int LONGITUD_MAXIMA_TOKEN = 64;
+
+    private final ReentrantReadWriteLock cerrojo = new ReentrantReadWriteLock();
+
+    /** Claves de la tabla de hashes (0 = hueco libre; un prefijo 0 real se guarda como 1). */
+    private long[] claves = new long[1024];
+    private int[] valores = new int[1024];
+    private int ocupados;
+
+    private Map<String, Apariciones> tokens = new HashMap<>();
+    private long apariciones;
+    private int bloques;
+
+    /** Carga de los bloques reservados; completada si no hay ninguno pendiente. */
+    private volatile CompletableFuture<Void> carga = CompletableFuture.completedFuture(null);
+    /** Bloques reservados: los índices en memoria solo tienen los de [reservados, bloques). */
+    private int reservados;
+
+    /**
+     * Añado un bloque a los dos índices. Los bloques deben llegar en orden de índice.
+     */
+    public void indexar(Bloque bloque) {
+        cerrojo.writeLock().lock();
+        try {
+            if (bloque.getIndice() != bloques) {
+                throw new IllegalStateException("Se esperaba indexar el bloque " + bloques
+                        + " y ha llegado el " + bloque.getIndice());
+            }
+            if ((ocupados + 1) * 4 > claves.length * 3) {
+                crecer();
+            }
+            insertar(clave(bloque.getHashBytes()), bloque.getIndice());
+
+            for (String token : tokens(bloque.getEntradas())) {
+                if (tokens.computeIfAbsent(token, t -> new Apariciones()).anadir(bloque.getIndice())) {
+                    apariciones++;
+                }
+            }
+            bloques++;
+        } finally {
+            cerrojo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Busco el bloque con este hash.
+     *
+     * @param hash hash completo (32 bytes).
+     * @param tieneHash comprueba si el bloque de un índice candidato tiene de verdad ese hash.
+     * @return índice del bloque, o -1 si no hay ninguno.
+     */
+    public int buscarHash(byte[] hash, IntPredicate tieneHash) {
+        long clave = clave(hash);
+        esperarCarga();
+        cerrojo.readLock().lock();
+        try {
+            int mascara = claves.length - 1;
+            for (int i = posicion(clave, mascara); claves[i] != LIBRE; i = (i + 1) & mascara) {
+                if (claves[i] == clave && tieneHash.test(valores[i])) {
+                    return valores[i];
+                }
+            }
+            return -1;
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    /**
+     * Busco los bloques que contienen todas las palabras de la consulta.
+     *
+     * @param consulta texto libre; se separa en palabras igual que las entradas.
+     * @param limite bloques que devuelvo como mucho. Dejo de buscar en cuanto los tengo, así
+     *               que una consulta con una palabra muy común no recorre toda su lista.
+     * @return índices de los bloques, del más reciente al más antiguo, y cuántos coinciden: el
+     * total exacto si he llegado al final, o una cota inferior (hay al menos {@code limite}).
+     */
+    public Resultado buscar(String consulta, int limite) {
+        Set<String> palabras = tokens(List.of(consulta));
+        if (palabras.isEmpty()) {
+            throw new IllegalArgumentException("La búsqueda debe tener al menos una palabra de "
+                    + LONGITUD_MINIMA_TOKEN + " caracteres");
+        }
+        esperarCarga();
+        cerrojo.readLock().lock();
+        try {
+            List<Apariciones> listas = new ArrayList<>(palabras.size());
+            for (String palabra : palabras) {
+                Apariciones lista = tokens.get(palabra);
+                if (lista == null) {
+                    return new Resultado(List.of(), 0, true);
+                }
+                listas.add(lista);
+            }
+            // Recorro la lista más corta y busco cada bloque en las demás
+            listas.sort((a, b) -> Integer.compare(a.tamano, b.tamano));
+            Apariciones menor = listas.get(0);
+            List<Integer> indices = new ArrayList<>(Math.min(limite, menor.tamano));
+            int i = menor.tamano - 1;
+            for (; i >= 0 && indices.size() < limite; i--) {
+                int bloque = menor.bloques[i];
+                boolean enTodas = true;
+                for (int j = 1; j < listas.size() && enTodas; j++) {
+                    enTodas = listas.get(j).contiene(bloque);
+                }
+                if (enTodas) {
+                    indices.add(bloque);
+                }
+            }
+            // Si me he parado antes del final puede haber más coincidencias sin contar
+            return new Resultado(indices, indices.size(), i < 0);
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    /**
+     * Quito de los índices los bloques a partir de uno (cuando la cadena se trunca al
+     * cambiar a la rama de otro nodo). Recorre los índices enteros, pero solo pasa con las
+     * bifurcaciones.
+     *
+     * @param nuevoTotal bloques que se conservan.
+     */
+    public void truncar(int nuevoTotal) {
+        esperarCarga();
+        cerrojo.writeLock().lock();
+        try {
+            if (nuevoTotal >= bloques) {
+                return;
+            }
+            long[] clavesAnteriores = claves;
+            int[] valoresAnteriores = valores;
+            claves = new long[clavesAnteriores.length];
+            valores = new int[clavesAnteriores.length];
+            ocupados = 0;
+            for (int i = 0; i < clavesAnteriores.length; i++) {
+                if (clavesAnteriores[i] != LIBRE && valoresAnteriores[i] < nuevoTotal) {
+                    insertar(clavesAnteriores[i], valoresAnteriores[i]);
+                }
+            }
+
+            Iterator<Apariciones> listas = tokens.values().iterator();
+            while (listas.hasNext()) {
+                Apariciones lista = listas.next();
+                while (lista.tamano > 0 && lista.bloques[lista.tamano - 1] >= nuevoTotal) {
+                    lista.tamano--;
+                    apariciones--;
+                }
+                if (lista.tamano == 0) {
+                    listas.remove();
+                }
+            }
+            bloques = nuevoTotal;
+        } finally {
+            cerrojo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Vuelco los dos índices con solo los bloques [0, hasta), aunque ya haya indexados otros
+     * detrás. Quien llama debe escribir en memoria: mientras dura tengo el cerrojo de
+     * lectura y el secuenciador no puede indexar.
+     *
+     * @param hasta bloques que recoge el volcado (como mucho, los indexados).
+     * @return número de bloques que recoge el volcado.
+     */
+    public int guardar(DataOutput salida, int hasta) throws IOException {
+        esperarCarga();
+        cerrojo.readLock().lock();
+        try {
+            if (hasta < 0 || hasta > bloques) {
+                throw new IllegalArgumentException("Solo hay " + bloques + " bloques indexados");
+            }
+            long aparicionesHasta = 0;
+            int palabrasHasta = 0;
+            for (Apariciones lista : tokens.values()) {
+                int tamano = lista.tamanoHasta(hasta);
+                aparicionesHasta += tamano;
+                if (tamano > 0) {
+                    palabrasHasta++;
+                }
+            }
+            salida.writeInt(hasta);
+            salida.writeLong(aparicionesHasta);
+            salida.writeInt(claves.length);
+            salida.writeInt(hasta);
+            for (int i = 0; i < claves.length; i++) {
+                if (claves[i] != LIBRE && valores[i] < hasta) {
+                    salida.writeLong(claves[i]);
+                    salida.writeInt(valores[i]);
+                }
+            }
+            salida.writeInt(palabrasHasta);
+            for (Map.Entry<String, Apariciones> token : tokens.entrySet()) {
+                Apariciones lista = token.getValue();
+                int tamano = lista.tamanoHasta(hasta);
+                if (tamano == 0) {
+                    continue;
+                }
+                byte[] texto = token.getKey().getBytes(StandardCharsets.UTF_8);
+                salida.writeShort(texto.length);
+                salida.write(texto);
+                salida.writeInt(tamano);
+                for (int i = 0; i < tamano; i++) {
+                    salida.writeInt(lista.bloques[i]);
+                }
+            }
+            return hasta;
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    /**
+     * Cargo los índices de un volcado de {@link #guardar(DataOutput, int)}. Solo se puede hacer
+     * con el índice vacío; si el volcado está mal, el índice se queda como estaba.
+     *
+     * @return número de bloques que recoge el volcado (el siguiente que hay que indexar).
+     * @throws IOException si el volcado no se puede leer o no es coherente.
+     */
+    public int restaurar(ByteBuffer entrada) throws IOException {
+        try {
+            return restaurarVolcado(entrada);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("El volcado del índice está incompleto", e);
+        }
+    }
+
+    private int restaurarVolcado(ByteBuffer entrada) throws IOException {
+        int nuevosBloques = entrada.getInt();
+        long nuevasApariciones = entrada.getLong();
+        int capacidad = entrada.getInt();
+        int nuevosOcupados = entrada.getInt();
+        if (nuevosBloques < 0 || capacidad < 1 || Integer.bitCount(capacidad) != 1
+                || nuevosOcupados != nuevosBloques || nuevosOcupados * 4L > capacidad * 3L) {
+            throw new IOException("El volcado del índice no es coherente");
+        }
+        long[] nuevasClaves = new long[capacidad];
+        int[] nuevosValores = new int[capacidad];
+        int mascara = capacidad - 1;
+        for (int n = 0; n < nuevosOcupados; n++) {
+            long clave = entrada.getLong();
+            int valor = entrada.getInt();
+            if (clave == LIBRE || valor < 0 || valor >= nuevosBloques) {
+                throw new IOException("El volcado del índice no es coherente");
+            }
+            int i = posicion(clave, mascara);
+            while (nuevasClaves[i] != LIBRE) {
+                i = (i + 1) & mascara;
+            }
+            nuevasClaves[i] = clave;
+            nuevosValores[i] = valor;
+        }
+        int palabras = entrada.getInt();
+        if (palabras < 0) {
+            throw new IOException("El volcado del índice no es coherente");
+        }
+        Map<String, Apariciones> nuevosTokens = new HashMap<>(Math.max(16, (int) (palabras / 0.75f) + 1));
+        for (int n = 0; n < palabras; n++) {
+            byte[] texto = new byte[Short.toUnsignedInt(entrada.getShort())];
+            entrada.get(texto);
+            String token = new String(texto, StandardCharsets.UTF_8);
+            int tamano = entrada.getInt();
+            if (tamano < 1 || tamano > nuevosBloques) {
+                throw new IOException("El volcado del índice no es coherente");
+            }
+            Apariciones lista = new Apariciones();
+            lista.bloques = new int[tamano];
+            for (int i = 0; i < tamano; i++) {
+                lista.bloques[i] = entrada.getInt();
+            }
+            lista.tamano = tamano;
+            nuevosTokens.put(token, lista);
+        }
+
+        cerrojo.writeLock().lock();
+        try {
+            if (bloques != 0) {
+                throw new IllegalStateException("Solo se puede restaurar un índice vacío");
+            }
+            claves = nuevasClaves;
+            valores = nuevosValores;
+            ocupados = nuevosOcupados;
+            tokens.putAll(nuevosTokens);
+            apariciones = nuevasApariciones;
+            bloques = nuevosBloques;
+            return nuevosBloques;
+        } finally {
+            cerrojo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reservo los bloques [0, bloques) para cargarlos en otro hilo: a partir de aquí puedo
+     * indexar los siguientes, y las búsquedas esperan hasta {@link #completar} o
+     * {@link #fallar}. Solo se puede hacer con el índice vacío.
+     */
+    public void reservar(int bloques) {
+        cerrojo.writeLock().lock();
+        try {
+            if (this.bloques != 0) {
+                throw new IllegalStateException("Solo se puede reservar en un índice vacío");
+            }
+            this.bloques = bloques;
+            this.reservados = bloques;
+            this.carga = new CompletableFuture<>();
+        } finally {
+            cerrojo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Junto los bloques reservados, ya indexados en otro índice, con los que he indexado
+     * mientras tanto. Como estos van todos detrás, basta con añadirlos a los de la base:
+     * cuesta lo que los bloques indexados desde que reservé, no lo que la cadena.
+     *
+     * @param base índice con exactamente los bloques reservados.
+     */
+    public void completar(IndiceBloques base) {
+        cerrojo.writeLock().lock();
+        try {
+            if (carga.isDone() || base.bloques != reservados) {
+                throw new IllegalStateException("El índice cargado no tiene los " + reservados + " bloques reservados");
+            }
+            long[] clavesNuevas = claves;
+            int[] valoresNuevos = valores;
+            claves = base.claves;
+            valores = base.valores;
+            ocupados = base.ocupados;
+            for (int i = 0; i < clavesNuevas.length; i++) {
+                if (clavesNuevas[i] != LIBRE) {
+                    if ((ocupados + 1) * 4 > claves.length * 3) {
+                        crecer();
+                    }
+                    insertar(clavesNuevas[i], valoresNuevos[i]);
+                }
+            }
+            for (Map.Entry<String, Apariciones> token : tokens.entrySet()) {
+                Apariciones nueva = token.getValue();
+                Apariciones lista = base.tokens.get(token.getKey());
+                if (lista == null) {
+                    base.tokens.put(token.getKey(), nueva);
+                } else {
+                    for (int i = 0; i < nueva.tamano; i++) {
+                        lista.anadir(nueva.bloques[i]);
+                    }
+                }
+            }
+            tokens = base.tokens;
+            apariciones += base.apariciones;
+            reservados = 0;
+            carga.complete(null);
+        } finally {
+            cerrojo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * No se han podido cargar los bloques reservados: las búsquedas fallarán.
+     */
+    public void fallar(Throwable causa) {
+        carga.completeExceptionally(causa);
+    }
+
+    /**
+     * @return carga de los bloques reservados (completada si no hay ninguna pendiente).
+     */
+    public CompletableFuture<Void> getCarga() {
+        return carga;
+    }
+
+    /**
+     * @return true si el índice tiene todos los bloques, sin ninguno reservado pendiente.
+     */
+    public boolean estaCompleto() {
+        CompletableFuture<Void> actual = carga;
+        return actual.isDone() && !actual.isCompletedExceptionally();
+    }
+
+    private void esperarCarga() {
+        try {
+            carga.join();
+        } catch (CompletionException | CancellationException e) {
+            throw new IllegalStateException("El índice de búsqueda no se ha podido cargar", e.getCause());
+        }
+    }
+
+    public int getBloques() {
+        cerrojo.readLock().lock();
+        try {
+            return bloques;
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    public int getPalabras() {
+        cerrojo.readLock().lock();
+        try {
+            return tokens.size();
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    public long getApariciones() {
+        cerrojo.readLock().lock();
+        try {
+            return apariciones;
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    public int getCapacidadHashes() {
+        cerrojo.readLock().lock();
+        try {
+            return claves.length;
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    /**
+     * Separo el texto en palabras: letras y dígitos, en minúsculas, sin repetir. Descarto
+     * las muy cortas y recorto las muy largas para que el índice no crezca sin control.
+     */
+    static Set<String> tokens(List<String> textos) {
+        Set<String> resultado = new LinkedHashSet<>();
+        StringBuilder actual = new StringBuilder();
+        for (String texto : textos) {
+            for (int i = 0; i <= texto.length(); i++) {
+                int c = i < texto.length() ? texto.codePointAt(i) : ' ';
+                if (Character.isLetterOrDigit(c)) {
+                    if (actual.length() < LONGITUD_MAXIMA_TOKEN) {
+                        actual.appendCodePoint(Character.toLowerCase(c));
+                    }
+                    if (Character.isSupplementaryCodePoint(c)) {
+                        i++;
+                    }
+                } else if (!actual.isEmpty()) {
+                    if (actual.length() >= LONGITUD_MINIMA_TOKEN) {
+                        resultado.add(actual.toString());
+                    }
+                    actual.setLength(0);
+                }
+            }
+        }
+        return resultado;
+    }
+
+    private static long clave(byte[] hash) {
+        long clave = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            clave = (clave << 8) | (hash[i] & 0xFF);
+        }
+        return clave == LIBRE ? 1L : clave;
+    }
+
+    /**
+     * Los hashes ya están repartidos uniformemente, así que uso sus bits altos tal cual.
+     */
+    private static int posicion(long clave, int mascara) {
+        return (int) (clave ^ (clave >>> 32)) & mascara;
+    }
+
+    private void insertar(long clave, int valor) {
+        int mascara = claves.length - 1;
+        int i = posicion(clave, mascara);
+        while (claves[i] != LIBRE) {
+            i = (i + 1) & mascara;
+        }
+        claves[i] = clave;
+        valores[i] = valor;
+        ocupados++;
+    }
+
+    private void crecer() {
+        long[] clavesAnteriores = claves;
+        int[] valoresAnteriores = valores;
+        claves = new long[clavesAnteriores.length * 2];
+        valores = new int[clavesAnteriores.length * 2];
+        ocupados = 0;
+        for (int i = 0; i < clavesAnteriores.length; i++) {
+            if (clavesAnteriores[i] != LIBRE) {
+                insertar(clavesAnteriores[i], valoresAnteriores[i]);
+            }
+        }
+    }
+
+    /**
+     * Bloques en los que aparece una palabra, en orden creciente.
+     */
+    private static final class Apariciones {
+
+        private int[] bloques = new int[4];
+        private int tamano;
+
+        /**
+         * @return false si el bloque ya estaba (la palabra sale varias veces en él).
+         */
+        private boolean anadir(int bloque) {
+            if (tamano > 0 && bloques[tamano - 1] == bloque) {
+                return false;
+            }
+            if (tamano == bloques.length) {
+                bloques = Arrays.copyOf(bloques, tamano * 2);
+            }
+            bloques[tamano++] = bloque;
+            return true;
+        }
+
+        private boolean contiene(int bloque) {
+            return Arrays.binarySearch(bloques, 0, tamano, bloque) >= 0;
+        }
+
+        /**
+         * @return cuántos de los bloques de la lista son menores que "hasta".
+         */
+        private int tamanoHasta(int hasta) {
+            int posicion = Arrays.binarySearch(bloques, 0, tamano, hasta);
+            return posicion >= 0 ? posicion : -posicion - 1;
+        }
+    }
+
+    /**
+     * Resultado de una búsqueda: índices devueltos y total de bloques que coinciden. Si
+     * {@code exacto} es false, el total es una cota inferior: hay al menos ese número.
+     */
+    public record Resultado(List<Integer> indices, int total, boolean exacto) {
+    }
+}
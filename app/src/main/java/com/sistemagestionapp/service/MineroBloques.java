@@ -0,0 +1,193 @@
+package com.sistemagestionapp.service;
+
+import com.sistemagestionapp.model.Bloque;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prueba de trabajo de los bloques nuevos.
+ *
+ * Para minar un bloque reparto el espacio de nonces (los 2^64 valores de un long) en
+ * tantos tramos como hilos tiene el pool y cada hilo prueba los de su tramo. Cada hilo
+ * copia la cabecera una vez y en cada intento solo reescribe los 8 bytes del nonce, así
+ * que un intento es un SHA-256 sin crear objetos. El primero que encuentra un hash con
+ * los bits a cero que pide la dificultad lo publica y los demás lo ven en cuanto vuelven
+ * a mirar (cada pocos miles de intentos) y paran.
+ *
+ * Lo llama el hilo del secuenciador, nunca el de una petición: la petición recibe su
+ * bloque cuando el futuro se completa.
+ */
+public class MineroBloques {
+
+    /** Intentos entre dos comprobaciones de si otro hilo ya ha encontrado el nonce. */
+    private static final int INTENTOS_POR_COMPROBACION = 4096;
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    });
+
+    private final int dificultad;
+    private final int hilos;
+    private final ExecutorService pool;
+    private volatile boolean activo = true;
+
+    private final LongAdder bloques = new LongAdder();
+    private final LongAdder hashes = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private volatile long ultimoMs;
+
+    /**
+     * @param dificultad bits a cero que debe tener el hash de cada bloque (0 = sin prueba de trabajo).
+     * @param hilos hilos del pool de minado (0 = núcleos disponibles).
+     */
+    public MineroBloques(int dificultad, int hilos) {
+        if (dificultad < 0 || dificultad > Bloque.DIFICULTAD_MAXIMA) {
+            throw new IllegalArgumentException("La dificultad debe estar entre 0 y " + Bloque.DIFICULTAD_MAXIMA);
+        }
+        this.dificultad = dificultad;
+        this.hilos = hilos > 0 ? hilos : Runtime.getRuntime().availableProcessors();
+        if (dificultad == 0) {
+            this.pool = null;
+        } else {
+            AtomicInteger numero = new AtomicInteger();
+            this.pool = Executors.newFixedThreadPool(this.hilos, tarea -> {
+                Thread hilo = new Thread(tarea, "blockchain-minero-" + numero.incrementAndGet());
+                hilo.setDaemon(true);
+                return hilo;
+            });
+        }
+    }
+
+    /**
+     * Busco un nonce para el bloque con el que su hash cumpla la dificultad.
+     *
+     * @param candidato bloque creado con la dificultad de este minero y nonce 0.
+     * @return el bloque con el nonce encontrado (el mismo candidato si la dificultad es 0).
+     * @throws IllegalStateException si el minero se para mientras mina.
+     */
+    public Bloque minar(Bloque candidato) {
+        if (dificultad == 0) {
+            return candidato;
+        }
+        if (!activo) {
+            throw new IllegalStateException("El minero de bloques está parado");
+        }
+        long inicio = System.nanoTime();
+        byte[] cabecera = new byte[Bloque.TAMANO_CABECERA];
+        candidato.escribirCabecera(cabecera);
+
+        AtomicReference<Long> solucion = new AtomicReference<>();
+        long tamanoTramo = Long.divideUnsigned(-1L, hilos);
+        List<Future<?>> tareas = new ArrayList<>(hilos);
+        for (int i = 0; i < hilos; i++) {
+            long desde = tamanoTramo * i;
+            long cantidad = i == hilos - 1 ? -1L - desde : tamanoTramo;
+            tareas.add(pool.submit(() -> buscar(cabecera.clone(), desde, cantidad, solucion)));
+        }
+        try {
+            for (Future<?> tarea : tareas) {
+                tarea.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            solucion.compareAndSet(null, Long.MIN_VALUE);
+            throw new IllegalStateException("Minado interrumpido", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Error minando el bloque " + candidato.getIndice(), e.getCause());
+        }
+        if (solucion.get() == null || !activo) {
+            throw new IllegalStateException("No se ha encontrado un nonce para el bloque " + candidato.getIndice());
+        }
+
+        long duracion = System.nanoTime() - inicio;
+        bloques.increment();
+        nanos.add(duracion);
+        ultimoMs = TimeUnit.NANOSECONDS.toMillis(duracion);
+        return candidato.conNonce(solucion.get());
+    }
+
+    /**
+     * Pruebo los nonces de un tramo hasta encontrar uno válido o ver que otro hilo ya lo
+     * ha encontrado.
+     */
+    private void buscar(byte[] cabecera, long desde, long cantidad, AtomicReference<Long> solucion) {
+        MessageDigest digest = DIGEST.get();
+        byte[] hash = new byte[Bloque.TAMANO_HASH];
+        int posicionNonce = Bloque.TAMANO_CABECERA - 8;
+        long intentos = 0;
+        try {
+            while (Long.compareUnsigned(intentos, cantidad) < 0) {
+                if (intentos % INTENTOS_POR_COMPROBACION == 0 && (solucion.get() != null || !activo)) {
+                    return;
+                }
+                long nonce = desde + intentos;
+                Bloque.escribirEntero(cabecera, posicionNonce, nonce, 8);
+                digest.update(cabecera);
+                digest.digest(hash, 0, Bloque.TAMANO_HASH);
+                intentos++;
+                if (Bloque.cumpleDificultad(hash, dificultad)) {
+                    solucion.compareAndSet(null, nonce);
+                    return;
+                }
+            }
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            hashes.add(intentos);
+        }
+    }
+
+    public int getDificultad() {
+        return dificultad;
+    }
+
+    public int getHilos() {
+        return hilos;
+    }
+
+    public long getBloques() {
+        return bloques.sum();
+    }
+
+    public long getHashes() {
+        return hashes.sum();
+    }
+
+    /**
+     * @return hashes por segundo mientras se ha estado minando.
+     */
+    public double getHashesPorSegundo() {
+        long tiempo = nanos.sum();
+        return tiempo == 0 ? 0.0 : hashes.sum() / (tiempo / 1e9);
+    }
+
+    public long getUltimoMs() {
+        return ultimoMs;
+    }
+
+    /**
+     * Paro el pool; si había un bloque a medias, sus hilos lo dejan en la siguiente comprobación.
+     */
+    public void cerrar() {
+        activo = false;
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.sistemagestionapp.service;
+
+import com.sistemagestionapp.model.Aplicacion;
+import com.sistemagestionapp.model.Lenguaje;
+import com.sistemagestionapp.model.ProveedorCiCd;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Servicio que genera los ficheros de CI/CD (GitHub Actions, GitLab CI) que van dentro
+ * del ZIP del proyecto.
+ *
+ * Uso las mismas plantillas Jinja de templates-ci, pero sin Python: las compilo una vez
+ * al arrancar con {@link PlantillaCi} y en cada descarga solo las relleno con los datos
+ * de la {@link Aplicacion} (proveedor, repositorio Git y clave de Sonar).
+ *
+ * Los valores que el generador en Python pedía por consola los fijo con sus mismos
+ * valores por defecto (rama main, ejecutar en PR en GitHub, despliegue con tag...).
+ */
+@Service
+public class PipelineCiService {
+
+    /**
+     * Plantilla y ruta dentro del ZIP de cada proveedor.
+     */
+    private static final Map<ProveedorCiCd, String[]> FICHEROS = new EnumMap<>(ProveedorCiCd.class);
+
+    static {
+        FICHEROS.put(ProveedorCiCd.GITHUB, new String[]{"github_ci.yml.j2", ".github/workflows/ci.yml"});
+        FICHEROS.put(ProveedorCiCd.GITLAB, new String[]{"gitlab_ci.yml.j2", ".gitlab-ci.yml"});
+    }
+
+    private final String directorioConfigurado;
+    private final CompresorZipService compresorZipService;
+
+    private final Map<String, PlantillaCi> plantillas = new HashMap<>();
+    private String version = "sin-plantillas";
+
+    public PipelineCiService(@Value("${ci.plantillas.directorio:}") String directorioConfigurado,
+                             CompresorZipService compresorZipService) {
+        this.directorioConfigurado = directorioConfigurado;
+        this.compresorZipService = compresorZipService;
+    }
+
+    /**
+     * Compilo todas las plantillas *.j2 al arrancar. Si la carpeta no está, no rompo el
+     * arranque: los ZIP saldrán sin ficheros de CI.
+     */
+    @PostConstruct
+    public void compilar() throws IOException {
+        Path directorio = resolverDirectorio();
+        if (!Files.isDirectory(directorio)) {
+            System.out.println("⚠️ [CI] No se ha encontrado la carpeta de plantillas de CI: " + directorio);
+            return;
+        }
+
+        List<Path> ficheros;
+        try (Stream<Path> listado = Files.list(directorio)) {
+            ficheros = listado.filter(p -> p.getFileName().toString().endsWith(".j2")).sorted().toList();
+        }
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Path fichero : ficheros) {
+                String nombre = fichero.getFileName().toString();
+                String fuente = Files.readString(fichero, StandardCharsets.UTF_8);
+                plantillas.put(nombre, PlantillaCi.compilar(nombre, fuente));
+
+                digest.update(nombre.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(fuente.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            version = HexFormat.of().formatHex(digest.digest(), 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+        System.out.println("✅ [CI] " + plantillas.size() + " plantillas de CI compiladas, versión " + version);
+    }
+
+    /**
+     * Genero las entradas de CI para el ZIP de una aplicación.
+     *
+     * Solo las genero para proyectos Java: las plantillas compilan y prueban con Maven.
+     *
+     * @param aplicacion aplicación de la que saco proveedor, repositorio y Sonar.
+     * @param ultimaModificacion fecha que pongo a las entradas (la de la plantilla del proyecto).
+     * @return entradas ya comprimidas; vacía si no hay proveedor o plantilla.
+     */
+    public List<EntradaZip> generarEntradas(Aplicacion aplicacion, long ultimaModificacion) {
+        List<EntradaZip> entradas = new ArrayList<>(1);
+        if (aplicacion.getLenguaje() == Lenguaje.PYTHON || aplicacion.getProveedorCiCd() == null) {
+            return entradas;
+        }
+
+        String[] fichero = FICHEROS.get(aplicacion.getProveedorCiCd());
+        PlantillaCi plantilla = fichero != null ? plantillas.get(fichero[0]) : null;
+        if (plantilla == null) {
+            return entradas;
+        }
+
+        String contenido = plantilla.renderizar(variables(aplicacion));
+        entradas.add(compresorZipService.comprimir(fichero[1], contenido.getBytes(StandardCharsets.UTF_8), ultimaModificacion));
+        return entradas;
+    }
+
+    /**
+     * @return resumen de las plantillas compiladas; cambia si se edita alguna.
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Monto el mismo diccionario "config" que el generador en Python. También dejo sus
+     * claves en la raíz, que es como las usa el Jenkinsfile.
+     */
+    private Map<String, Object> variables(Aplicacion aplicacion) {
+        boolean usarSonar = noVacio(aplicacion.getSonarProjectKey());
+        boolean usarAws = noVacio(aplicacion.getNombreImagenEcr());
+
+        Map<String, Object> secretosAws = new LinkedHashMap<>();
+        if (usarAws) {
+            secretosAws.put("access_key", "AWS_ACCESS_KEY_ID");
+            secretosAws.put("secret_key", "AWS_SECRET_ACCESS_KEY");
+            secretosAws.put("region", "AWS_REGION");
+            secretosAws.put("ecr_registry", "AWS_ECR_URL");
+            secretosAws.put("ecr_repo", "ECR_REPOSITORY");
+            secretosAws.put("ec2_host", "EC2_HOST");
+            secretosAws.put("ec2_user", "EC2_USUARIO");
+            secretosAws.put("ec2_key", "EC2_LLAVE_SSH");
+        }
+
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("project_name", nombreProyecto(aplicacion));
+        config.put("branches", List.of("main"));
+        // Igual que el generador: en GitHub se ejecuta también en PR; en GitLab no activaba los MR
+        boolean github = aplicacion.getProveedorCiCd() == ProveedorCiCd.GITHUB;
+        config.put("run_on_pr", github);
+        config.put("run_on_mr", false);
+        config.put("use_node", false);
+        config.put("use_sonar", usarSonar);
+        config.put("fail_on_sonar", false);
+        config.put("use_aws", usarAws);
+        config.put("deploy_mode", usarAws ? "tag" : "none");
+        config.put("aws_secrets", secretosAws);
+        config.put("ci_platform", aplicacion.getProveedorCiCd().name().toLowerCase());
+        config.put("repository", aplicacion.getRepositorioGit() != null ? aplicacion.getRepositorioGit() : "");
+        config.put("sonar_project_key", aplicacion.getSonarProjectKey() != null ? aplicacion.getSonarProjectKey() : "");
+
+        Map<String, Object> variables = new HashMap<>(config);
+        variables.put("config", config);
+        return variables;
+    }
+
+    /**
+     * Nombre del proyecto en el workflow: el del repositorio Git si lo hay
+     * (https://github.com/usuario/mi-repo.git → mi-repo) y si no, el de la aplicación.
+     */
+    private String nombreProyecto(Aplicacion aplicacion) {
+        String repositorio = aplicacion.getRepositorioGit();
+        if (noVacio(repositorio)) {
+            String limpio = repositorio.strip().replaceAll("/+$", "");
+            if (limpio.endsWith(".git")) {
+                limpio = limpio.substring(0, limpio.length() - 4);
+            }
+            String nombre = limpio.substring(Math.max(limpio.lastIndexOf('/'), limpio.lastIndexOf(':')) + 1);
+            if (!nombre.isBlank()) {
+                return nombre;
+            }
+        }
+        return noVacio(aplicacion.getNombre()) ? aplicacion.getNombre().strip() : "mi-proyecto";
+    }
+
+    private static boolean noVacio(String valor) {
+        return valor != null && !valor.isBlank();
+    }
+
+    /**
+     * Si no me indican la carpeta, uso templates-ci/templates en la raíz del repo
+     * (estoy en el módulo "app", así que es el padre).
+     */
+    private Path resolverDirectorio() {
+        if (noVacio(directorioConfigurado)) {
+            return Paths.get(directorioConfigurado).toAbsolutePath();
+        }
+        Path dirActual = Paths.get("").toAbsolutePath();
+        Path raizRepo = dirActual.getParent() != null ? dirActual.getParent() : dirActual;
+        return raizRepo.resolve("templates-ci").resolve("templates");
+    }
+}
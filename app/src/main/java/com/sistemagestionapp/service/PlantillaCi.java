@@ -0,0 +1,590 @@
+package com.sistemagestionapp.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Plantilla de CI (los *.j2 de templates-ci) compilada a un árbol de nodos.
+ *
+ * Entiendo el subconjunto de Jinja que usan esas plantillas:
+ *  - {{ expresion }} para pintar valores.
+ *  - {% if %} / {% elif %} / {% else %} / {% endif %}.
+ *  - {% for x in lista %} / {% endfor %}.
+ *  - {% set nombre = expresion %}.
+ *  - {% raw %} ... {% endraw %} y comentarios {# ... #}.
+ *  - Expresiones con nombres (config.deploy_mode), textos, true/false, ==, !=, not, and, or.
+ *
+ * Respeto los espacios igual que Jinja con su configuración por defecto (sin trim_blocks
+ * ni lstrip_blocks, y quitando el salto de línea final), para que el resultado sea el mismo
+ * que daba el generador en Python. También acepto los guiones {%- -%} para recortar espacios.
+ *
+ * Se compila una vez y se puede renderizar desde varios hilos a la vez.
+ */
+public final class PlantillaCi {
+
+    private final String nombre;
+    private final List<Nodo> nodos;
+
+    private PlantillaCi(String nombre, List<Nodo> nodos) {
+        this.nombre = nombre;
+        this.nodos = nodos;
+    }
+
+    /**
+     * Compilo el texto de una plantilla.
+     *
+     * @param nombre nombre de la plantilla (solo para los mensajes de error).
+     * @param fuente contenido de la plantilla.
+     * @return plantilla lista para renderizar.
+     * @throws IllegalArgumentException si la plantilla tiene una sintaxis que no entiendo.
+     */
+    public static PlantillaCi compilar(String nombre, String fuente) {
+        if (fuente.endsWith("\n")) {
+            fuente = fuente.substring(0, fuente.length() - 1);
+        }
+        Analizador analizador = new Analizador(nombre, trocear(nombre, fuente));
+        List<Nodo> nodos = analizador.bloque(Set.of());
+        if (analizador.quedan()) {
+            throw analizador.error("etiqueta inesperada '" + analizador.actual().contenido + "'");
+        }
+        return new PlantillaCi(nombre, nodos);
+    }
+
+    /**
+     * Renderizo la plantilla con las variables indicadas. Los mapas anidados se recorren
+     * con puntos (config.project_name).
+     */
+    public String renderizar(Map<String, Object> variables) {
+        StringBuilder salida = new StringBuilder(4096);
+        Map<String, Object> ambito = new HashMap<>(variables);
+        for (Nodo nodo : nodos) {
+            nodo.renderizar(ambito, salida);
+        }
+        return salida.toString();
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    // ------------------------------------------------------------------ troceado
+
+    private enum TipoTrozo { TEXTO, VARIABLE, ETIQUETA }
+
+    private static final class Trozo {
+        private final TipoTrozo tipo;
+        private final String contenido;
+        private final int linea;
+
+        private Trozo(TipoTrozo tipo, String contenido, int linea) {
+            this.tipo = tipo;
+            this.contenido = contenido;
+            this.linea = linea;
+        }
+    }
+
+    /**
+     * Parto la fuente en texto, {{ }} y {% %}. Quito los comentarios, copio tal cual el
+     * contenido de los bloques raw y aplico los recortes de espacios de los guiones.
+     */
+    private static List<Trozo> trocear(String nombre, String fuente) {
+        List<Trozo> trozos = new ArrayList<>();
+        StringBuilder texto = new StringBuilder();
+        int pos = 0;
+        int linea = 1;
+        boolean recortarSiguiente = false;
+
+        while (pos < fuente.length()) {
+            int inicio = siguienteApertura(fuente, pos);
+            int finTexto = inicio < 0 ? fuente.length() : inicio;
+            String segmento = fuente.substring(pos, finTexto);
+            texto.append(recortarSiguiente ? segmento.stripLeading() : segmento);
+            if (inicio < 0) {
+                break;
+            }
+
+            char tipo = fuente.charAt(inicio + 1);
+            String cierre = tipo == '{' ? "}}" : tipo == '%' ? "%}" : "#}";
+            int fin = fuente.indexOf(cierre, inicio + 2);
+            if (fin < 0) {
+                throw new IllegalArgumentException(nombre + ":" + linea + ": falta el cierre " + cierre);
+            }
+
+            String interior = fuente.substring(inicio + 2, fin);
+            boolean recortarAntes = interior.startsWith("-");
+            boolean recortarDespues = interior.endsWith("-");
+            if (recortarAntes) {
+                interior = interior.substring(1);
+            }
+            if (recortarDespues) {
+                interior = interior.substring(0, interior.length() - 1);
+            }
+            interior = interior.strip();
+
+            if (recortarAntes) {
+                quitarEspaciosFinales(texto);
+            }
+            linea += contarLineas(fuente, pos, inicio);
+            pos = fin + 2;
+
+            if (tipo == '#') {
+                // Comentario: no pinto nada
+            } else if (tipo == '%' && interior.equals("raw")) {
+                int finRaw = buscarEndraw(fuente, pos);
+                if (finRaw < 0) {
+                    throw new IllegalArgumentException(nombre + ":" + linea + ": falta {% endraw %}");
+                }
+                texto.append(fuente, pos, finRaw);
+                pos = fuente.indexOf("%}", finRaw) + 2;
+            } else {
+                agregarTexto(trozos, texto, linea);
+                trozos.add(new Trozo(tipo == '{' ? TipoTrozo.VARIABLE : TipoTrozo.ETIQUETA, interior, linea));
+            }
+            linea += contarLineas(fuente, inicio, pos);
+            recortarSiguiente = recortarDespues;
+        }
+
+        agregarTexto(trozos, texto, linea);
+        return trozos;
+    }
+
+    private static int siguienteApertura(String fuente, int desde) {
+        int pos = fuente.indexOf('{', desde);
+        while (pos >= 0 && pos + 1 < fuente.length()) {
+            char siguiente = fuente.charAt(pos + 1);
+            if (siguiente == '{' || siguiente == '%' || siguiente == '#') {
+                return pos;
+            }
+            pos = fuente.indexOf('{', pos + 1);
+        }
+        return -1;
+    }
+
+    private static int buscarEndraw(String fuente, int desde) {
+        int pos = fuente.indexOf("{%", desde);
+        while (pos >= 0) {
+            int fin = fuente.indexOf("%}", pos);
+            if (fin < 0) {
+                return -1;
+            }
+            String interior = fuente.substring(pos + 2, fin).replace("-", "").strip();
+            if (interior.equals("endraw")) {
+                return pos;
+            }
+            pos = fuente.indexOf("{%", pos + 2);
+        }
+        return -1;
+    }
+
+    private static void agregarTexto(List<Trozo> trozos, StringBuilder texto, int linea) {
+        if (texto.length() > 0) {
+            trozos.add(new Trozo(TipoTrozo.TEXTO, texto.toString(), linea));
+            texto.setLength(0);
+        }
+    }
+
+    private static void quitarEspaciosFinales(StringBuilder texto) {
+        int fin = texto.length();
+        while (fin > 0 && Character.isWhitespace(texto.charAt(fin - 1))) {
+            fin--;
+        }
+        texto.setLength(fin);
+    }
+
+    private static int contarLineas(String fuente, int desde, int hasta) {
+        int lineas = 0;
+        for (int i = desde; i < hasta; i++) {
+            if (fuente.charAt(i) == '\n') {
+                lineas++;
+            }
+        }
+        return lineas;
+    }
+
+    // ------------------------------------------------------------------ análisis
+
+    /**
+     * Convierte la lista de trozos en el árbol de nodos.
+     */
+    private static final class Analizador {
+        private final String nombre;
+        private final List<Trozo> trozos;
+        private int pos;
+
+        private Analizador(String nombre, List<Trozo> trozos) {
+            this.nombre = nombre;
+            this.trozos = trozos;
+        }
+
+        private boolean quedan() {
+            return pos < trozos.size();
+        }
+
+        private Trozo actual() {
+            return trozos.get(pos);
+        }
+
+        /**
+         * Leo nodos hasta encontrar una etiqueta cuya palabra inicial esté entre las de cierre
+         * (que dejo sin consumir).
+         */
+        private List<Nodo> bloque(Set<String> cierres) {
+            List<Nodo> nodos = new ArrayList<>();
+            while (quedan()) {
+                Trozo trozo = actual();
+                switch (trozo.tipo) {
+                    case TEXTO -> {
+                        nodos.add(new NodoTexto(trozo.contenido));
+                        pos++;
+                    }
+                    case VARIABLE -> {
+                        nodos.add(new NodoVariable(expresion(trozo)));
+                        pos++;
+                    }
+                    case ETIQUETA -> {
+                        String palabra = primeraPalabra(trozo.contenido);
+                        if (cierres.contains(palabra)) {
+                            return nodos;
+                        }
+                        nodos.add(etiqueta(trozo, palabra));
+                    }
+                }
+            }
+            if (!cierres.isEmpty()) {
+                throw new IllegalArgumentException(nombre + ": falta alguna de las etiquetas " + cierres);
+            }
+            return nodos;
+        }
+
+        private Nodo etiqueta(Trozo trozo, String palabra) {
+            String resto = trozo.contenido.substring(palabra.length()).strip();
+            switch (palabra) {
+                case "if" -> {
+                    pos++;
+                    List<Expresion> condiciones = new ArrayList<>();
+                    List<List<Nodo>> cuerpos = new ArrayList<>();
+                    condiciones.add(new Lector(nombre, trozo.linea, resto).expresionCompleta());
+                    cuerpos.add(bloque(Set.of("elif", "else", "endif")));
+                    List<Nodo> cuerpoElse = List.of();
+                    while (true) {
+                        Trozo cierre = actual();
+                        String tipo = primeraPalabra(cierre.contenido);
+                        pos++;
+                        if (tipo.equals("elif")) {
+                            condiciones.add(new Lector(nombre, cierre.linea, cierre.contenido.substring(4).strip()).expresionCompleta());
+                            cuerpos.add(bloque(Set.of("elif", "else", "endif")));
+                        } else if (tipo.equals("else")) {
+                            cuerpoElse = bloque(Set.of("endif"));
+                            pos++;
+                            break;
+                        } else {
+                            break;
+                        }
+                    }
+                    return new NodoSi(condiciones, cuerpos, cuerpoElse);
+                }
+                case "for" -> {
+                    pos++;
+                    int in = resto.indexOf(" in ");
+                    if (in < 0) {
+                        throw error("se esperaba 'for x in lista'");
+                    }
+                    String variable = resto.substring(0, in).strip();
+                    Expresion lista = new Lector(nombre, trozo.linea, resto.substring(in + 4).strip()).expresionCompleta();
+                    List<Nodo> cuerpo = bloque(Set.of("endfor"));
+                    pos++;
+                    return new NodoPara(variable, lista, cuerpo);
+                }
+                case "set" -> {
+                    pos++;
+                    int igual = resto.indexOf('=');
+                    if (igual < 0) {
+                        throw error("se esperaba 'set nombre = valor'");
+                    }
+                    String variable = resto.substring(0, igual).strip();
+                    Expresion valor = new Lector(nombre, trozo.linea, resto.substring(igual + 1).strip()).expresionCompleta();
+                    return new NodoAsignar(variable, valor);
+                }
+                default -> throw error("etiqueta no soportada '" + palabra + "'");
+            }
+        }
+
+        private Expresion expresion(Trozo trozo) {
+            return new Lector(nombre, trozo.linea, trozo.contenido).expresionCompleta();
+        }
+
+        private IllegalArgumentException error(String mensaje) {
+            int linea = quedan() ? actual().linea : -1;
+            return new IllegalArgumentException(nombre + ":" + linea + ": " + mensaje);
+        }
+
+        private static String primeraPalabra(String contenido) {
+            int espacio = 0;
+            while (espacio < contenido.length() && !Character.isWhitespace(contenido.charAt(espacio))) {
+                espacio++;
+            }
+            return contenido.substring(0, espacio);
+        }
+    }
+
+    /**
+     * Lector de expresiones por descenso recursivo: or → and → not → comparación → valor.
+     */
+    private static final class Lector {
+        private final String nombre;
+        private final int linea;
+        private final String texto;
+        private int pos;
+
+        private Lector(String nombre, int linea, String texto) {
+            this.nombre = nombre;
+            this.linea = linea;
+            this.texto = texto;
+        }
+
+        private Expresion expresionCompleta() {
+            Expresion expresion = or();
+            saltarEspacios();
+            if (pos < texto.length()) {
+                throw error("sobra '" + texto.substring(pos) + "'");
+            }
+            return expresion;
+        }
+
+        private Expresion or() {
+            Expresion izquierda = and();
+            while (palabra("or")) {
+                Expresion a = izquierda;
+                Expresion b = and();
+                izquierda = ambito -> esCierto(a.evaluar(ambito)) || esCierto(b.evaluar(ambito));
+            }
+            return izquierda;
+        }
+
+        private Expresion and() {
+            Expresion izquierda = not();
+            while (palabra("and")) {
+                Expresion a = izquierda;
+                Expresion b = not();
+                izquierda = ambito -> esCierto(a.evaluar(ambito)) && esCierto(b.evaluar(ambito));
+            }
+            return izquierda;
+        }
+
+        private Expresion not() {
+            if (palabra("not")) {
+                Expresion negada = not();
+                return ambito -> !esCierto(negada.evaluar(ambito));
+            }
+            return comparacion();
+        }
+
+        private Expresion comparacion() {
+            Expresion izquierda = valor();
+            saltarEspacios();
+            if (texto.startsWith("==", pos) || texto.startsWith("!=", pos)) {
+                boolean igual = texto.charAt(pos) == '=';
+                pos += 2;
+                Expresion derecha = valor();
+                return ambito -> {
+                    boolean iguales = Objects.equals(
+                            normalizar(izquierda.evaluar(ambito)), normalizar(derecha.evaluar(ambito)));
+                    return igual == iguales;
+                };
+            }
+            return izquierda;
+        }
+
+        private Expresion valor() {
+            saltarEspacios();
+            if (pos >= texto.length()) {
+                throw error("falta un valor");
+            }
+            char c = texto.charAt(pos);
+            if (c == '\'' || c == '"') {
+                int fin = texto.indexOf(c, pos + 1);
+                if (fin < 0) {
+                    throw error("texto sin cerrar");
+                }
+                String literal = texto.substring(pos + 1, fin);
+                pos = fin + 1;
+                return ambito -> literal;
+            }
+            if (c == '(') {
+                pos++;
+                Expresion interior = or();
+                saltarEspacios();
+                if (pos >= texto.length() || texto.charAt(pos) != ')') {
+                    throw error("falta ')'");
+                }
+                pos++;
+                return interior;
+            }
+
+            int inicio = pos;
+            while (pos < texto.length() && (Character.isLetterOrDigit(texto.charAt(pos))
+                    || texto.charAt(pos) == '_' || texto.charAt(pos) == '.')) {
+                pos++;
+            }
+            String ruta = texto.substring(inicio, pos);
+            if (ruta.isEmpty()) {
+                throw error("carácter inesperado '" + c + "'");
+            }
+            switch (ruta) {
+                case "true", "True" -> {
+                    return ambito -> Boolean.TRUE;
+                }
+                case "false", "False" -> {
+                    return ambito -> Boolean.FALSE;
+                }
+                case "none", "None" -> {
+                    return ambito -> null;
+                }
+                default -> {
+                    String[] partes = ruta.split("\\.");
+                    return ambito -> buscar(ambito, partes);
+                }
+            }
+        }
+
+        private boolean palabra(String palabra) {
+            saltarEspacios();
+            int fin = pos + palabra.length();
+            if (texto.startsWith(palabra, pos)
+                    && (fin == texto.length() || !Character.isLetterOrDigit(texto.charAt(fin)) && texto.charAt(fin) != '_')) {
+                pos = fin;
+                return true;
+            }
+            return false;
+        }
+
+        private void saltarEspacios() {
+            while (pos < texto.length() && Character.isWhitespace(texto.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private IllegalArgumentException error(String mensaje) {
+            return new IllegalArgumentException(nombre + ":" + linea + ": " + mensaje + " en '" + texto + "'");
+        }
+    }
+
+    // ------------------------------------------------------------------ evaluación
+
+    @FunctionalInterface
+    private interface Expresion {
+        Object evaluar(Map<String, Object> ambito);
+    }
+
+    private interface Nodo {
+        void renderizar(Map<String, Object> ambito, StringBuilder salida);
+    }
+
+    private record NodoTexto(String texto) implements Nodo {
+        @Override
+        public void renderizar(Map<String, Object> ambito, StringBuilder salida) {
+            salida.append(texto);
+        }
+    }
+
+    private record NodoVariable(Expresion expresion) implements Nodo {
+        @Override
+        public void renderizar(Map<String, Object> ambito, StringBuilder salida) {
+            salida.append(comoTexto(expresion.evaluar(ambito)));
+        }
+    }
+
+    private record NodoSi(List<Expresion> condiciones, List<List<Nodo>> cuerpos, List<Nodo> cuerpoElse) implements Nodo {
+        @Override
+        public void renderizar(Map<String, Object> ambito, StringBuilder salida) {
+            for (int i = 0; i < condiciones.size(); i++) {
+                if (esCierto(condiciones.get(i).evaluar(ambito))) {
+                    renderizarTodos(cuerpos.get(i), ambito, salida);
+                    return;
+                }
+            }
+            renderizarTodos(cuerpoElse, ambito, salida);
+        }
+    }
+
+    private record NodoPara(String variable, Expresion lista, List<Nodo> cuerpo) implements Nodo {
+        @Override
+        public void renderizar(Map<String, Object> ambito, StringBuilder salida) {
+            Object valor = lista.evaluar(ambito);
+            if (!(valor instanceof Collection<?> elementos)) {
+                return;
+            }
+            // Como en Jinja, lo que se asigna dentro del bucle no sale de él
+            Map<String, Object> interior = new HashMap<>(ambito);
+            for (Object elemento : elementos) {
+                interior.put(variable, elemento);
+                renderizarTodos(cuerpo, interior, salida);
+            }
+        }
+    }
+
+    private record NodoAsignar(String variable, Expresion valor) implements Nodo {
+        @Override
+        public void renderizar(Map<String, Object> ambito, StringBuilder salida) {
+            ambito.put(variable, valor.evaluar(ambito));
+        }
+    }
+
+    private static void renderizarTodos(List<Nodo> nodos, Map<String, Object> ambito, StringBuilder salida) {
+        for (Nodo nodo : nodos) {
+            nodo.renderizar(ambito, salida);
+        }
+    }
+
+    private static Object buscar(Map<String, Object> ambito, String[] partes) {
+        Object actual = ambito.get(partes[0]);
+        for (int i = 1; i < partes.length && actual != null; i++) {
+            actual = actual instanceof Map<?, ?> mapa ? mapa.get(partes[i]) : null;
+        }
+        return actual;
+    }
+
+    private static boolean esCierto(Object valor) {
+        if (valor == null) {
+            return false;
+        }
+        if (valor instanceof Boolean b) {
+            return b;
+        }
+        if (valor instanceof CharSequence texto) {
+            return texto.length() > 0;
+        }
+        if (valor instanceof Collection<?> coleccion) {
+            return !coleccion.isEmpty();
+        }
+        if (valor instanceof Map<?, ?> mapa) {
+            return !mapa.isEmpty();
+        }
+        if (valor instanceof Number numero) {
+            return numero.doubleValue() != 0;
+        }
+        return true;
+    }
+
+    private static Object normalizar(Object valor) {
+        return valor instanceof CharSequence texto ? texto.toString() : valor;
+    }
+
+    /**
+     * Pinto los valores como Python: None vacío y los booleanos con mayúscula.
+     */
+    private static String comoTexto(Object valor) {
+        if (valor == null) {
+            return "";
+        }
+        if (valor instanceof Boolean b) {
+            return b ? "True" : "False";
+        }
+        return valor.toString();
+    }
+}
@@ -0,0 +1,152 @@
+package com.sistemagestionapp.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Foto en memoria de una carpeta de plantilla (por ejemplo demo-java o demo-python).
+ *
+ * Al cargarla leo todos los ficheros una sola vez, los comprimo y me guardo las
+ * {@link EntradaZip} resultantes ordenadas por ruta. A partir de ahí cada descarga
+ * solo tiene que copiar esos bytes al ZIP, sin tocar el disco ni volver a comprimir.
+ *
+ * La versión es un resumen SHA-256 de cómo queda cada entrada en el ZIP (nombre, método,
+ * fecha, CRC, tamaños y bytes comprimidos): si cambia el contenido, la fecha o la forma
+ * de comprimir algún fichero, cambia la versión.
+ *
+ * Es inmutable: cuando cambia algún fichero creo una plantilla nueva con
+ * {@link #actualizar(Set, CompresorZipService)}, reutilizando las entradas que no han cambiado.
+ */
+public final class PlantillaProyecto {
+
+    private final Path raiz;
+    private final DefinicionPlantilla definicion;
+    private final List<EntradaZip> entradas;
+    private final String version;
+    private final long ultimaModificacion;
+
+    private PlantillaProyecto(Path raiz, DefinicionPlantilla definicion, List<EntradaZip> entradas) {
+        this.raiz = raiz;
+        this.definicion = definicion;
+        this.entradas = Collections.unmodifiableList(new ArrayList<>(entradas));
+        this.version = calcularVersion(entradas);
+
+        long masReciente = 0;
+        for (EntradaZip entrada : entradas) {
+            masReciente = Math.max(masReciente, entrada.getUltimaModificacion());
+        }
+        this.ultimaModificacion = masReciente;
+    }
+
+    /**
+     * Cargo la plantilla desde disco quedándome solo con las rutas que acepta su definición
+     * (sin carpetas ignoradas ni el fichero de configuración que genero yo en cada descarga).
+     *
+     * @param raiz carpeta raíz de la plantilla.
+     * @param definicion definición con las rutas que no quiero incluir.
+     * @param compresor servicio con el que comprimo los ficheros (en serie o en paralelo).
+     * @return plantilla cargada.
+     * @throws IOException si no puedo leer algún fichero.
+     */
+    public static PlantillaProyecto cargar(Path raiz, DefinicionPlantilla definicion, CompresorZipService compresor) throws IOException {
+        List<Path> ficheros = listarFicheros(raiz, raiz, definicion);
+        return new PlantillaProyecto(raiz, definicion, compresor.comprimir(raiz, ficheros));
+    }
+
+    /**
+     * Creo una versión nueva de la plantilla volviendo a leer y comprimir solo las rutas
+     * que han cambiado. Si una ruta es una carpeta, recargo todo lo que cuelga de ella;
+     * si ya no existe, quito sus entradas.
+     *
+     * @param cambiadas rutas relativas (con "/") que han cambiado en disco.
+     * @param compresor servicio con el que comprimo los ficheros cambiados.
+     * @return plantilla nueva; esta no se modifica.
+     * @throws IOException si no puedo leer algún fichero.
+     */
+    public PlantillaProyecto actualizar(Set<String> cambiadas, CompresorZipService compresor) throws IOException {
+        TreeMap<String, EntradaZip> porNombre = new TreeMap<>();
+        for (EntradaZip entrada : entradas) {
+            porNombre.put(entrada.getNombre(), entrada);
+        }
+
+        Set<Path> aComprimir = new LinkedHashSet<>();
+        for (String ruta : cambiadas) {
+            // Quito la entrada y, si era una carpeta, todo lo que colgaba de ella ('0' va justo después de '/')
+            porNombre.remove(ruta);
+            porNombre.subMap(ruta + "/", ruta + "0").clear();
+
+            Path actual = raiz.resolve(ruta);
+            if (Files.isDirectory(actual)) {
+                aComprimir.addAll(listarFicheros(raiz, actual, definicion));
+            } else if (Files.isRegularFile(actual) && definicion.incluye(nombre(raiz, actual))) {
+                aComprimir.add(actual);
+            }
+        }
+
+        for (EntradaZip entrada : compresor.comprimir(raiz, new ArrayList<>(aComprimir))) {
+            porNombre.put(entrada.getNombre(), entrada);
+        }
+        return new PlantillaProyecto(raiz, definicion, new ArrayList<>(porNombre.values()));
+    }
+
+    private static List<Path> listarFicheros(Path raiz, Path desde, DefinicionPlantilla definicion) throws IOException {
+        try (Stream<Path> recorrido = Files.walk(desde)) {
+            return recorrido
+                    .filter(Files::isRegularFile)
+                    .filter(p -> definicion.incluye(nombre(raiz, p)))
+                    .sorted(Comparator.comparing(p -> nombre(raiz, p)))
+                    .toList();
+        }
+    }
+
+    private static String nombre(Path raiz, Path fichero) {
+        return raiz.relativize(fichero).toString().replace("\\", "/");
+    }
+
+    private static String calcularVersion(List<EntradaZip> entradas) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (EntradaZip entrada : entradas) {
+                entrada.resumir(digest);
+            }
+            return HexFormat.of().formatHex(digest.digest(), 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    public Path getRaiz() {
+        return raiz;
+    }
+
+    public DefinicionPlantilla getDefinicion() {
+        return definicion;
+    }
+
+    public List<EntradaZip> getEntradas() {
+        return entradas;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * @return fecha de modificación más reciente de los ficheros de la plantilla (milisegundos).
+     */
+    public long getUltimaModificacion() {
+        return ultimaModificacion;
+    }
+}
@@ -0,0 +1,194 @@
+package com.sistemagestionapp.service;
+
+import com.sistemagestionapp.model.Lenguaje;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Servicio que mantiene en memoria, ya comprimidas, las plantillas de proyecto de cada
+ * lenguaje (demo-java para JAVA y demo-python para PYTHON).
+ *
+ * El registro está indexado por {@link Lenguaje}: elegir la plantilla de una descarga es
+ * una consulta a un EnumMap y una lectura volatile, sin recorrer el disco. Añadir un
+ * lenguaje nuevo es añadir su {@link DefinicionPlantilla}.
+ *
+ * Intento cargarlas al arrancar la aplicación; si alguna no está disponible (por ejemplo,
+ * en un entorno sin su carpeta) no rompo el arranque y la vuelvo a intentar en la primera
+ * descarga que la pida.
+ *
+ * Si la vigilancia está activa, un {@link VigilanteCarpeta} por plantilla me avisa de los
+ * ficheros que cambian: recomprimo solo esos y cambio la plantilla de golpe por la nueva
+ * versión. Las descargas leen siempre la referencia actual sin bloquearse; las que ya
+ * estaban en curso terminan con la versión que tenían.
+ */
+@Service
+public class PlantillaProyectoService {
+
+    /**
+     * Ruta del fichero de configuración que genero en cada descarga del proyecto Java. Si la
+     * plantilla trae uno propio lo excluyo para no duplicar la entrada en el ZIP.
+     */
+    public static final String RUTA_CONFIGURACION_JAVA = "src/main/resources/app-config.properties";
+
+    /**
+     * En el proyecto Python la configuración va en la raíz, junto a config.py.
+     */
+    public static final String RUTA_CONFIGURACION_PYTHON = "app-config.properties";
+
+    private final CompresorZipService compresorZipService;
+    private final boolean vigilar;
+    private final long esperaVigilanciaMs;
+
+    private final Map<Lenguaje, Registro> registros = new EnumMap<>(Lenguaje.class);
+
+    public PlantillaProyectoService(CompresorZipService compresorZipService,
+                                    @Value("${plantillas.vigilar:true}") boolean vigilar,
+                                    @Value("${plantillas.vigilar.espera-ms:300}") long esperaVigilanciaMs) {
+        this.compresorZipService = compresorZipService;
+        this.vigilar = vigilar;
+        this.esperaVigilanciaMs = esperaVigilanciaMs;
+
+        registrar(new DefinicionPlantilla(Lenguaje.JAVA, "demo-java", RUTA_CONFIGURACION_JAVA,
+                Set.of("target")));
+        registrar(new DefinicionPlantilla(Lenguaje.PYTHON, "demo-python", RUTA_CONFIGURACION_PYTHON,
+                Set.of("instance", "__pycache__", ".venv", "venv", ".pytest_cache")));
+    }
+
+    /**
+     * Precargo todas las plantillas cuando la aplicación ya está arrancada y empiezo a vigilarlas.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void precargar() {
+        for (Registro registro : registros.values()) {
+            String carpeta = registro.definicion.getCarpeta();
+            try {
+                PlantillaProyecto plantilla = obtener(registro);
+                System.out.println("✅ [PLANTILLA] " + carpeta + " cargada en memoria: "
+                        + plantilla.getEntradas().size() + " ficheros, versión " + plantilla.getVersion());
+                if (vigilar) {
+                    iniciarVigilancia(registro, plantilla.getRaiz());
+                }
+            } catch (IOException | IllegalStateException e) {
+                System.out.println("⚠️ [PLANTILLA] No se ha podido precargar " + carpeta + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Devuelvo la plantilla del lenguaje indicado, cargándola la primera vez que se pide.
+     * Si el lenguaje es null uso la de Java, que es la que se servía siempre.
+     *
+     * @param lenguaje lenguaje de la aplicación.
+     * @return plantilla en memoria.
+     * @throws IOException si no puedo leer la carpeta de la plantilla.
+     * @throws IllegalArgumentException si no hay plantilla para ese lenguaje.
+     */
+    public PlantillaProyecto obtenerPlantilla(Lenguaje lenguaje) throws IOException {
+        Registro registro = registros.get(lenguaje != null ? lenguaje : Lenguaje.JAVA);
+        if (registro == null) {
+            throw new IllegalArgumentException("No hay plantilla de proyecto para el lenguaje " + lenguaje);
+        }
+        return obtener(registro);
+    }
+
+    @PreDestroy
+    public void detenerVigilancia() throws IOException {
+        for (Registro registro : registros.values()) {
+            synchronized (registro) {
+                if (registro.vigilante != null) {
+                    registro.vigilante.close();
+                    registro.vigilante = null;
+                }
+            }
+        }
+    }
+
+    private void registrar(DefinicionPlantilla definicion) {
+        registros.put(definicion.getLenguaje(), new Registro(definicion));
+    }
+
+    private PlantillaProyecto obtener(Registro registro) throws IOException {
+        PlantillaProyecto actual = registro.plantilla;
+        if (actual != null) {
+            return actual;
+        }
+        synchronized (registro) {
+            if (registro.plantilla == null) {
+                registro.plantilla = PlantillaProyecto.cargar(resolverRaiz(registro.definicion), registro.definicion, compresorZipService);
+            }
+            return registro.plantilla;
+        }
+    }
+
+    private void iniciarVigilancia(Registro registro, Path raiz) throws IOException {
+        synchronized (registro) {
+            if (registro.vigilante != null) {
+                return;
+            }
+            registro.vigilante = new VigilanteCarpeta(raiz,
+                    ruta -> !registro.definicion.incluye(ruta),
+                    (rutas, recargaCompleta) -> aplicarCambios(registro, rutas, recargaCompleta),
+                    esperaVigilanciaMs);
+            registro.vigilante.iniciar();
+        }
+        System.out.println("👀 [PLANTILLA] Vigilando cambios en " + raiz);
+    }
+
+    /**
+     * Creo la versión nueva de la plantilla y la publico. Solo la escribe el hilo del
+     * vigilante de esa plantilla; quien lee nunca espera por esto.
+     */
+    private void aplicarCambios(Registro registro, Set<String> rutas, boolean recargaCompleta) throws IOException {
+        PlantillaProyecto anterior = registro.plantilla;
+        PlantillaProyecto nueva = (recargaCompleta || anterior == null)
+                ? PlantillaProyecto.cargar(resolverRaiz(registro.definicion), registro.definicion, compresorZipService)
+                : anterior.actualizar(rutas, compresorZipService);
+
+        registro.plantilla = nueva;
+        if (anterior == null || !anterior.getVersion().equals(nueva.getVersion())) {
+            System.out.println("🔄 [PLANTILLA] " + registro.definicion.getCarpeta() + " actualizada a la versión " + nueva.getVersion()
+                    + " (" + (recargaCompleta ? "recarga completa" : rutas.size() + " rutas cambiadas") + ")");
+        }
+    }
+
+    /**
+     * Estoy en el módulo "app", así que las carpetas de plantilla cuelgan de la raíz del repo (el padre).
+     */
+    private Path resolverRaiz(DefinicionPlantilla definicion) {
+        Path dirActual = Paths.get("").toAbsolutePath();
+        Path raizRepo = dirActual.getParent();
+        if (raizRepo == null) {
+            throw new IllegalStateException("No se ha podido resolver la raíz del repositorio (parent de " + dirActual + ")");
+        }
+
+        Path origen = raizRepo.resolve(definicion.getCarpeta());
+        if (!Files.isDirectory(origen)) {
+            throw new IllegalStateException("No se ha encontrado la carpeta " + definicion.getCarpeta() + " en: " + origen);
+        }
+        return origen;
+    }
+
+    /**
+     * Estado de una plantilla del registro: la versión publicada y su vigilante.
+     */
+    private static final class Registro {
+        private final DefinicionPlantilla definicion;
+        private volatile PlantillaProyecto plantilla;
+        private VigilanteCarpeta vigilante;
+
+        private Registro(DefinicionPlantilla definicion) {
+            this.definicion = definicion;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.sistemagestionapp.service;
+
+/**
+ * Decide cómo se comprime cada entrada de los ZIP de proyecto.
+ *
+ * La implementación por defecto es {@link PoliticaCompresionPorTipo}, configurable por
+ * propiedades; si hace falta otra, basta con declarar otro bean que implemente esta interfaz.
+ */
+@FunctionalInterface
+public interface PoliticaCompresion {
+
+    /** Nivel que indica que la entrada se guarda tal cual (STORED), sin pasar por DEFLATE. */
+    int SIN_COMPRIMIR = 0;
+
+    /**
+     * @param nombre ruta de la entrada dentro del ZIP (con "/").
+     * @param tamano tamaño original en bytes.
+     * @return nivel de DEFLATE (1-9, o -1 para el nivel por defecto de zlib), o
+     *         {@link #SIN_COMPRIMIR} para guardarla sin comprimir.
+     */
+    int nivelPara(String nombre, long tamano);
+
+    /**
+     * Huella de la configuración de la política. Entra en la clave de contenido de los ZIP,
+     * así que tiene que cambiar siempre que cambie algún nivel que pueda devolver.
+     *
+     * @return texto que identifica la política y su configuración.
+     */
+    default String getHuella() {
+        return getClass().getName();
+    }
+}
@@ -0,0 +1,116 @@
+package com.sistemagestionapp.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+
+/**
+ * Política de compresión por extensión y tamaño, configurable en application.properties.
+ *
+ * - Los tipos que ya vienen comprimidos (jar, png, pdf...) los guardo sin comprimir:
+ *   DEFLATE no gana nada con ellos y solo gasta CPU.
+ * - Los ficheros muy pequeños también los guardo tal cual.
+ * - Cada extensión puede tener su nivel; el resto usa el nivel por defecto.
+ * - A partir de cierto tamaño uso otro nivel (normalmente más rápido).
+ *
+ * Así cada despliegue puede elegir entre gastar más CPU o más ancho de banda.
+ */
+@Component
+public class PoliticaCompresionPorTipo implements PoliticaCompresion {
+
+    private static final String SIN_COMPRIMIR_POR_DEFECTO =
+            "jar,war,ear,zip,gz,tgz,bz2,xz,7z,png,jpg,jpeg,gif,webp,ico,pdf,woff,woff2,mp3,mp4";
+
+    private final Set<String> extensionesSinComprimir;
+    private final Map<String, Integer> nivelesPorExtension;
+    private final int nivelPorDefecto;
+    private final long umbralPequenoBytes;
+    private final long umbralGrandeBytes;
+    private final int nivelGrandes;
+
+    public PoliticaCompresionPorTipo(@Value("${zip.politica.sin-comprimir:" + SIN_COMPRIMIR_POR_DEFECTO + "}") String sinComprimir,
+                                     @Value("${zip.politica.niveles:}") String niveles,
+                                     @Value("${zip.politica.nivel-por-defecto:-1}") int nivelPorDefecto,
+                                     @Value("${zip.politica.umbral-pequeno-bytes:64}") long umbralPequenoBytes,
+                                     @Value("${zip.politica.umbral-grande-bytes:1048576}") long umbralGrandeBytes,
+                                     @Value("${zip.politica.nivel-grandes:1}") int nivelGrandes) {
+        this.extensionesSinComprimir = Set.of(trocear(sinComprimir));
+        this.nivelesPorExtension = leerNiveles(niveles);
+        this.nivelPorDefecto = validarNivel(nivelPorDefecto);
+        this.umbralPequenoBytes = umbralPequenoBytes;
+        this.umbralGrandeBytes = umbralGrandeBytes;
+        this.nivelGrandes = validarNivel(nivelGrandes);
+    }
+
+    /**
+     * Política con los valores por defecto, para usarla fuera de Spring.
+     */
+    public static PoliticaCompresionPorTipo porDefecto() {
+        return new PoliticaCompresionPorTipo(SIN_COMPRIMIR_POR_DEFECTO, "", Deflater.DEFAULT_COMPRESSION, 64, 1048576, 1);
+    }
+
+    @Override
+    public int nivelPara(String nombre, long tamano) {
+        String extension = extension(nombre);
+        if (extensionesSinComprimir.contains(extension) || tamano < umbralPequenoBytes) {
+            return SIN_COMPRIMIR;
+        }
+        Integer nivel = nivelesPorExtension.get(extension);
+        if (nivel != null) {
+            return nivel;
+        }
+        return tamano >= umbralGrandeBytes ? nivelGrandes : nivelPorDefecto;
+    }
+
+    /**
+     * @return la configuración completa, con las extensiones y niveles ordenados para que
+     * no dependa del orden en que estén escritos en las propiedades.
+     */
+    @Override
+    public String getHuella() {
+        return "por-tipo;sin-comprimir=" + new TreeSet<>(extensionesSinComprimir)
+                + ";niveles=" + new TreeMap<>(nivelesPorExtension)
+                + ";por-defecto=" + nivelPorDefecto
+                + ";pequeno=" + umbralPequenoBytes
+                + ";grande=" + umbralGrandeBytes + ":" + nivelGrandes;
+    }
+
+    private static String extension(String nombre) {
+        int barra = nombre.lastIndexOf('/');
+        int punto = nombre.lastIndexOf('.');
+        return punto > barra ? nombre.substring(punto + 1).toLowerCase(Locale.ROOT) : "";
+    }
+
+    /**
+     * Leo "js=9,css=9,java=6" como mapa extensión → nivel.
+     */
+    private static Map<String, Integer> leerNiveles(String niveles) {
+        Map<String, Integer> mapa = new HashMap<>();
+        for (String par : trocear(niveles)) {
+            int igual = par.indexOf('=');
+            if (igual <= 0) {
+                throw new IllegalArgumentException("Nivel de compresión mal escrito (se espera ext=nivel): " + par);
+            }
+            mapa.put(par.substring(0, igual).strip(), validarNivel(Integer.parseInt(par.substring(igual + 1).strip())));
+        }
+        return Map.copyOf(mapa);
+    }
+
+    private static String[] trocear(String lista) {
+        return lista.isBlank() ? new String[0] : lista.toLowerCase(Locale.ROOT).replace(" ", "").split(",");
+    }
+
+    private static int validarNivel(int nivel) {
+        if (nivel < Deflater.DEFAULT_COMPRESSION || nivel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Nivel de compresión fuera de rango (-1..9): " + nivel);
+        }
+        return nivel;
+    }
+}
@@ -0,0 +1,22 @@
+package com.sistemagestionapp.service;
+
+/**
+ * Aviso de progreso mientras escribo un ZIP de proyecto.
+ * Lo uso para ir informando de cuántas entradas y bytes llevo escritos.
+ */
+@FunctionalInterface
+public interface ProgresoZip {
+
+    /** Implementación que no hace nada, para cuando nadie escucha el progreso. */
+    ProgresoZip NINGUNO = (entradas, totalEntradas, bytes, totalBytes) -> { };
+
+    /**
+     * Se llama después de escribir cada entrada.
+     *
+     * @param entradas entradas escritas hasta ahora.
+     * @param totalEntradas entradas que tiene el ZIP.
+     * @param bytes bytes (comprimidos) escritos hasta ahora.
+     * @param totalBytes tamaño final del ZIP.
+     */
+    void entradaEscrita(int entradas, int totalEntradas, long bytes, long totalBytes);
+}
@@ -0,0 +1,83 @@
+package com.sistemagestionapp.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * ZIP de proyecto listo para enviarse: ya tengo todas sus entradas comprimidas, así que
+ * conozco su tamaño exacto antes de escribir el primer byte.
+ *
+ * Lo uso para poder mandar la cabecera Content-Length y después volcar el ZIP
+ * directamente a la respuesta HTTP, sin pasar por un fichero temporal.
+ *
+ * La clave identifica el contenido: resume cada entrada tal como se escribe (nombre,
+ * método, fecha, CRC, tamaños y bytes comprimidos) y la política de compresión, así que
+ * dos ZIP con la misma clave son idénticos byte a byte.
+ */
+public final class ProyectoZipPreparado {
+
+    private final String clave;
+    private final String nombreArchivo;
+    private final List<EntradaZip> entradas;
+    private final long tamano;
+
+    public ProyectoZipPreparado(String clave, String nombreArchivo, List<EntradaZip> entradas) {
+        this.clave = clave;
+        this.nombreArchivo = nombreArchivo;
+        this.entradas = List.copyOf(entradas);
+        this.tamano = EscritorZip.calcularTamano(this.entradas);
+    }
+
+    /**
+     * Escribo el ZIP completo en el stream. No cierro el stream.
+     */
+    public void escribir(OutputStream salida) throws IOException {
+        escribir(salida, ProgresoZip.NINGUNO);
+    }
+
+    /**
+     * Escribo el ZIP completo avisando del progreso después de cada entrada. No cierro el stream.
+     */
+    public void escribir(OutputStream salida, ProgresoZip progreso) throws IOException {
+        EscritorZip escritor = new EscritorZip(salida);
+        int escritas = 0;
+        for (EntradaZip entrada : entradas) {
+            escritor.escribir(entrada);
+            progreso.entradaEscrita(++escritas, entradas.size(), escritor.getPosicion(), tamano);
+        }
+        escritor.finalizar();
+    }
+
+    /**
+     * Escribo solo los bytes [inicio, inicio + longitud) del ZIP (para peticiones con Range).
+     * Genero el ZIP desde memoria y descarto lo que queda fuera de la ventana. No cierro el stream.
+     */
+    public void escribir(OutputStream salida, long inicio, long longitud) throws IOException {
+        VentanaOutputStream ventana = new VentanaOutputStream(salida, inicio, longitud);
+        escribir(ventana);
+        ventana.flush();
+    }
+
+    /**
+     * @return clave de contenido del ZIP (la uso como ETag y como clave de caché).
+     */
+    public String getClave() {
+        return clave;
+    }
+
+    public String getNombreArchivo() {
+        return nombreArchivo;
+    }
+
+    public List<EntradaZip> getEntradas() {
+        return entradas;
+    }
+
+    /**
+     * @return tamaño exacto en bytes del ZIP que produce {@link #escribir(OutputStream)}.
+     */
+    public long getTamano() {
+        return tamano;
+    }
+}
@@ -1,126 +1,195 @@
 package com.sistemagestionapp.service;
 
 import com.sistemagestionapp.model.Aplicacion;
+import com.sistemagestionapp.model.Lenguaje;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.*;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
- * Servicio que utilizo para generar un ZIP con un proyecto Java de ejemplo
- * (la carpeta demo-java) a partir de los datos de una {@link Aplicacion}.
+ * Servicio que utilizo para generar un ZIP con un proyecto de ejemplo (demo-java o
+ * demo-python, según el lenguaje) a partir de los datos de una {@link Aplicacion}.
  *
- * Ahora:
- *  - Copio la carpeta demo-java a un directorio temporal, ignorando target/.
- *  - Creo un fichero app-config.properties con los datos básicos de la aplicación.
- *  - Comprimo la carpeta en un fichero .zip.
- *
- * Más adelante:
- *  - Podré elegir plantillas distintas según el lenguaje (JAVA / PYTHON).
+ *  - Las plantillas las tengo ya comprimidas en memoria ({@link PlantillaProyectoService}).
+ *  - En cada petición solo genero app-config.properties con los datos de la aplicación
+ *    y los ficheros de CI de su proveedor ({@link PipelineCiService}).
+ *  - Escribo el ZIP copiando las entradas ya comprimidas y añadiendo la configuración.
  */
 @Service
 public class ProyectoZipService {
 
+    private final PlantillaProyectoService plantillaProyectoService;
+    private final PipelineCiService pipelineCiService;
+    private final CompresorZipService compresorZipService;
+
+    public ProyectoZipService(PlantillaProyectoService plantillaProyectoService,
+                              PipelineCiService pipelineCiService,
+                              CompresorZipService compresorZipService) {
+        this.plantillaProyectoService = plantillaProyectoService;
+        this.pipelineCiService = pipelineCiService;
+        this.compresorZipService = compresorZipService;
+    }
+
     /**
-     * Genero un ZIP con el proyecto demo-java personalizado con la configuración
-     * de la aplicación.
+     * Escribo el ZIP del proyecto directamente en el stream indicado, sin pasar por disco.
+     * No cierro el stream.
      *
      * @param aplicacion aplicación que estoy usando como base.
-     * @return ruta del fichero ZIP generado en el sistema de ficheros.
+     * @param salida stream donde escribo el ZIP.
      * @throws IOException si hay cualquier problema de lectura/escritura.
      */
-    public Path generarProyectoJava(Aplicacion aplicacion) throws IOException {
-        System.out.println("⚙️ [ZIP] Iniciando generación del ZIP para aplicación: " + aplicacion.getNombre());
+    public void escribirProyecto(Aplicacion aplicacion, OutputStream salida) throws IOException {
+        prepararProyecto(aplicacion).escribir(salida);
+    }
 
-        // Estoy en el módulo "app". La raíz del repo es el padre.
-        Path dirActual = Paths.get("").toAbsolutePath();
-        System.out.println("📁 Directorio actual (módulo app): " + dirActual);
+    /**
+     * Preparo el ZIP del proyecto sin escribirlo: junto las entradas de la plantilla con la
+     * configuración de la aplicación, de forma que ya conozco el tamaño final.
+     * La plantilla la elijo por el lenguaje de la aplicación.
+     *
+     * @param aplicacion aplicación que estoy usando como base.
+     * @return ZIP listo para volcar en cualquier stream.
+     * @throws IOException si no puedo cargar la plantilla.
+     */
+    public ProyectoZipPreparado prepararProyecto(Aplicacion aplicacion) throws IOException {
+        return prepararProyecto(aplicacion, plantillaProyectoService.obtenerPlantilla(aplicacion.getLenguaje()));
+    }
 
-        Path raizRepo = dirActual.getParent();
-        if (raizRepo == null) {
-            throw new IllegalStateException("No se ha podido resolver la raíz del repositorio (parent de " + dirActual + ")");
-        }
+    /**
+     * Exporto en un único ZIP los proyectos de varias aplicaciones, cada uno en su carpeta.
+     *
+     * Las entradas de la plantilla ya están comprimidas y se comparten entre todos los
+     * proyectos: por cada aplicación solo genero su configuración y sus ficheros de CI.
+     * Preparo y escribo los proyectos de uno en uno, así que la memoria no crece con el
+     * número de aplicaciones (más allá del directorio central, que son unos bytes por fichero).
+     * Uso la misma versión de cada plantilla para toda la exportación. No cierro el stream.
+     *
+     * @param aplicaciones aplicaciones a exportar.
+     * @param salida stream donde escribo el ZIP.
+     * @throws IOException si hay cualquier problema de lectura/escritura.
+     */
+    public void exportarProyectos(List<Aplicacion> aplicaciones, OutputStream salida) throws IOException {
+        Map<Lenguaje, PlantillaProyecto> plantillas = new EnumMap<>(Lenguaje.class);
+        Set<String> carpetas = new HashSet<>();
+        EscritorZip escritor = new EscritorZip(salida);
+
+        for (Aplicacion aplicacion : aplicaciones) {
+            Lenguaje lenguaje = aplicacion.getLenguaje() != null ? aplicacion.getLenguaje() : Lenguaje.JAVA;
+            PlantillaProyecto plantilla = plantillas.get(lenguaje);
+            if (plantilla == null) {
+                plantilla = plantillaProyectoService.obtenerPlantilla(lenguaje);
+                plantillas.put(lenguaje, plantilla);
+            }
 
-        Path origenDemoJava = raizRepo.resolve("demo-java");
-        System.out.println("📁 Buscando carpeta demo-java en: " + origenDemoJava);
+            ProyectoZipPreparado zip = prepararProyecto(aplicacion, plantilla);
+
+            // Carpeta con el nombre del ZIP; si ya está cogida, añado el id y, si aun así
+            // choca (otra aplicación puede llamarse literalmente "nombre-id"), un contador
+            String base = zip.getNombreArchivo().substring(0, zip.getNombreArchivo().length() - ".zip".length());
+            String carpeta = base;
+            if (!carpetas.add(carpeta)) {
+                base = base + "-" + aplicacion.getId();
+                carpeta = base;
+                for (int n = 2; !carpetas.add(carpeta); n++) {
+                    carpeta = base + "-" + n;
+                }
+            }
 
-        if (!Files.exists(origenDemoJava) || !Files.isDirectory(origenDemoJava)) {
-            throw new IllegalStateException("No se ha encontrado la carpeta demo-java en: " + origenDemoJava);
+            for (EntradaZip entrada : zip.getEntradas()) {
+                escritor.escribir(entrada, carpeta + "/");
+            }
         }
+        escritor.finalizar();
+        System.out.println("📦 [ZIP] Exportados " + aplicaciones.size() + " proyectos (" + escritor.getPosicion() + " bytes)");
+    }
 
-        // Directorio temporal donde montaré el proyecto antes de comprimirlo
-        Path tempDir = Files.createTempDirectory("tfg-demojava-");
-        System.out.println("📂 Directorio temporal de trabajo: " + tempDir);
-
-        // Nombre de carpeta/zip basado en el nombre de la aplicación
-        String nombreSanitizado = (aplicacion.getNombre() == null || aplicacion.getNombre().isBlank())
-                ? "demo-java-proyecto"
-                : aplicacion.getNombre().toLowerCase().replaceAll("[^a-z0-9\\-]", "-");
-
-        // Carpeta raíz del proyecto dentro del directorio temporal
-        Path carpetaProyecto = tempDir.resolve(nombreSanitizado);
+    private ProyectoZipPreparado prepararProyecto(Aplicacion aplicacion, PlantillaProyecto plantilla) {
+        String configuracion = renderizarConfiguracion(aplicacion);
+        String nombreArchivo = nombreArchivoZip(aplicacion);
 
-        // 1) Copio demo-java dentro de carpetaProyecto (ignorando target/)
-        System.out.println("📦 Copiando contenido de demo-java a: " + carpetaProyecto);
-        copiarCarpeta(origenDemoJava, carpetaProyecto);
-        System.out.println("✅ Copia de demo-java completada");
+        List<EntradaZip> generadas = pipelineCiService.generarEntradas(aplicacion, plantilla.getUltimaModificacion());
+        generadas.add(crearEntradaConfiguracion(configuracion, plantilla));
 
-        // 2) Creo un fichero de configuración con los datos de la Aplicacion
-        crearFicheroConfiguracion(carpetaProyecto, aplicacion);
+        // Si la plantilla ya trae alguno de los ficheros que genero, gana el generado
+        Set<String> nombresGenerados = new HashSet<>();
+        for (EntradaZip generada : generadas) {
+            nombresGenerados.add(generada.getNombre());
+        }
 
-        // 3) Comprimir carpetaProyecto en un zip
-        Path zipPath = tempDir.resolve(nombreSanitizado + ".zip");
-        System.out.println("🗜️  Comprimiendo carpeta en ZIP: " + zipPath);
-        comprimirCarpetaEnZip(carpetaProyecto, zipPath);
-        System.out.println("✅ ZIP generado correctamente en: " + zipPath);
+        List<EntradaZip> entradas = new ArrayList<>(plantilla.getEntradas().size() + generadas.size());
+        for (EntradaZip entrada : plantilla.getEntradas()) {
+            if (!nombresGenerados.contains(entrada.getNombre())) {
+                entradas.add(entrada);
+            }
+        }
+        entradas.addAll(generadas);
 
-        return zipPath;
+        String clave = calcularClave(plantilla, nombreArchivo, entradas);
+        return new ProyectoZipPreparado(clave, nombreArchivo, entradas);
     }
 
     /**
-     * Copio recursivamente una carpeta de origen a destino, ignorando la carpeta target/.
+     * Nombre del fichero ZIP basado en el nombre de la aplicación.
      */
-    private void copiarCarpeta(Path origen, Path destino) throws IOException {
-        Path targetDir = origen.resolve("target");
-
-        Files.walk(origen).forEach(sourcePath -> {
-            try {
-                // Ignoro todo lo que cuelga de target/
-                if (sourcePath.startsWith(targetDir)) {
-                    return;
-                }
+    public String nombreArchivoZip(Aplicacion aplicacion) {
+        String porDefecto = aplicacion.getLenguaje() == Lenguaje.PYTHON ? "demo-python-proyecto" : "demo-java-proyecto";
+        String nombreSanitizado = (aplicacion.getNombre() == null || aplicacion.getNombre().isBlank())
+                ? porDefecto
+                : aplicacion.getNombre().toLowerCase().replaceAll("[^a-z0-9\\-]", "-");
+        return nombreSanitizado + ".zip";
+    }
 
-                Path relative = origen.relativize(sourcePath);
-                Path targetPath = destino.resolve(relative);
+    /**
+     * Creo la entrada app-config.properties (en la ruta que marca la plantilla) con los
+     * datos más importantes de la Aplicacion.
+     *
+     * Le pongo la fecha de la plantilla (y no la actual) para que el ZIP solo dependa
+     * de la plantilla y de la configuración, y así sea siempre el mismo para la misma clave.
+     */
+    private EntradaZip crearEntradaConfiguracion(String configuracion, PlantillaProyecto plantilla) {
+        byte[] contenido = configuracion.getBytes(StandardCharsets.UTF_8);
+        return compresorZipService.comprimir(plantilla.getDefinicion().getRutaConfiguracion(), contenido, plantilla.getUltimaModificacion());
+    }
 
-                if (Files.isDirectory(sourcePath)) {
-                    Files.createDirectories(targetPath);
-                } else {
-                    Files.createDirectories(targetPath.getParent());
-                    Files.copy(sourcePath, targetPath, StandardCopyOption.REPLACE_EXISTING);
-                }
-            } catch (IOException e) {
-                throw new RuntimeException("Error copiando fichero: " + sourcePath, e);
+    /**
+     * Clave de contenido del ZIP: resumen SHA-256 de todo lo que influye en sus bytes. Entra
+     * cada entrada tal como se escribe (nombre, método, fecha, CRC, tamaños y resumen de los
+     * bytes comprimidos) y la huella de la política de compresión, así que si cambia la
+     * política o el nivel de alguna entrada la clave cambia y no sirvo un ZIP viejo de la caché.
+     */
+    private String calcularClave(PlantillaProyecto plantilla, String nombreArchivo, List<EntradaZip> entradas) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(plantilla.getDefinicion().getLenguaje().name().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(compresorZipService.getHuellaPolitica().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(nombreArchivo.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            for (EntradaZip entrada : entradas) {
+                entrada.resumir(digest);
             }
-        });
+            return HexFormat.of().formatHex(digest.digest(), 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
     }
 
     /**
-     * Creo un fichero app-config.properties dentro de src/main/resources
-     * con los datos más importantes de la Aplicacion.
+     * Genero el contenido de app-config.properties a partir de la Aplicacion.
      */
-    private void crearFicheroConfiguracion(Path carpetaProyecto, Aplicacion aplicacion) throws IOException {
-        Path resourcesDir = carpetaProyecto.resolve("src/main/resources");
-        Files.createDirectories(resourcesDir);
-
-        Path configFile = resourcesDir.resolve("app-config.properties");
-        System.out.println("📝 [CONFIG] Generando app-config.properties en: " + configFile.toAbsolutePath());
-
+    String renderizarConfiguracion(Aplicacion aplicacion) {
         StringBuilder sb = new StringBuilder();
         sb.append("# Configuración generada por el Sistema de Gestión de Aplicaciones\n");
         sb.append("# Esta información viene de la tabla APLICACION de la app principal\n\n");
@@ -143,44 +212,7 @@ public class ProyectoZipService {
                 .append("\n");
         sb.append("app.despliegue.nombreImagenEcr=").append(s(aplicacion.getNombreImagenEcr())).append("\n");
 
-        Files.writeString(
-                configFile,
-                sb.toString(),
-                StandardCharsets.UTF_8,
-                StandardOpenOption.CREATE,
-                StandardOpenOption.TRUNCATE_EXISTING
-        );
-
-        System.out.println("✅ [CONFIG] app-config.properties creado correctamente");
-    }
-
-    /**
-     * Comprime una carpeta completa en un fichero ZIP.
-     */
-    private void comprimirCarpetaEnZip(Path carpeta, Path zipDestino) throws IOException {
-        try (OutputStream fos = Files.newOutputStream(zipDestino);
-             ZipOutputStream zos = new ZipOutputStream(fos)) {
-
-            Files.walk(carpeta).forEach(path -> {
-                try {
-                    if (Files.isDirectory(path)) {
-                        return; // no añado entradas para directorios
-                    }
-
-                    Path relative = carpeta.relativize(path);
-                    ZipEntry entry = new ZipEntry(relative.toString().replace("\\", "/"));
-                    zos.putNextEntry(entry);
-
-                    try (InputStream is = Files.newInputStream(path)) {
-                        is.transferTo(zos);
-                    }
-
-                    zos.closeEntry();
-                } catch (IOException e) {
-                    throw new RuntimeException("Error comprimiendo fichero: " + path, e);
-                }
-            });
-        }
+        return sb.toString();
     }
 
     private String s(String value) {
@@ -190,4 +222,4 @@ public class ProyectoZipService {
     private String enumStr(Enum<?> e) {
         return e == null ? "" : e.name();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,385 @@
+package com.sistemagestionapp.service;
+
+import com.sistemagestionapp.model.Bloque;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Puntos de control de la cadena de bloques, para no reconstruirla entera al arrancar.
+ *
+ * Cada punto de control es un fichero (punto-control-00000000000000001234.pc, con el número
+ * de bloques que recoge) con:
+ * - una cabecera de tamaño fijo: el número de bloques, el hash del último, el tamaño y la
+ *   firma HMAC-SHA256 del volcado de los índices, y la firma de la propia cabecera
+ * - el volcado de los índices de búsqueda ({@link IndiceBloques#guardar})
+ *
+ * Al arrancar solo leo y compruebo la cabecera del más reciente que sea válido, abro el
+ * registro con sus bloques ({@link RegistroBloques#abrir(RegistroBloques.BloquesConocidos)},
+ * que toma las posiciones de los índices de cada segmento) e indexo los bloques escritos
+ * después. El volcado de los índices lo compruebo y lo cargo en segundo plano
+ * ({@link IndiceBloques#reservar(int)}); si su firma no cuadra, reconstruyo esa parte del
+ * índice desde el registro. Así el arranque cuesta lo mismo con cualquier longitud de
+ * cadena: solo depende de los bloques escritos después del punto de control.
+ *
+ * Solo guardo puntos de control de bloques ya verificados y forzados a disco, así que la
+ * validación de arranque también empieza ahí. La firma de la cabecera evita que un fichero
+ * alterado o a medias haga saltarse la verificación: si no cuadra, lo ignoro y pruebo con el
+ * anterior o recorro la cadena entera.
+ */
+public class PuntoControlCadena {
+
+    private static final String PREFIJO = "punto-control-";
+    private static final String EXTENSION = ".pc";
+    private static final String FICHERO_CLAVE = "clave";
+    private static final int MAGICO = 0x50434243;
+    private static final byte VERSION = 2;
+    private static final String ALGORITMO = "HmacSHA256";
+    private static final int TAMANO_FIRMA = 32;
+    /** Mágico, versión, bloques, hash del último, tamaño y firma del volcado, y firma de todo eso. */
+    private static final int TAMANO_CABECERA = 4 + 1 + 4 + Bloque.TAMANO_HASH + 4 + TAMANO_FIRMA + TAMANO_FIRMA;
+
+    private final Path directorio;
+    private final SecretKeySpec clave;
+    private final int conservar;
+    /** Veces que se han descartado puntos de control por truncar la cadena. */
+    private volatile int descartes;
+
+    /**
+     * @param directorio carpeta de los puntos de control.
+     * @param clave clave con la que firmo (ver {@link #clave(String, Path)}).
+     * @param conservar puntos de control que dejo en disco (al menos 1).
+     */
+    public PuntoControlCadena(Path directorio, byte[] clave, int conservar) {
+        if (clave == null || clave.length == 0) {
+            throw new IllegalArgumentException("La clave de los puntos de control no puede estar vacía");
+        }
+        this.directorio = directorio;
+        this.clave = new SecretKeySpec(clave, ALGORITMO);
+        this.conservar = Math.max(1, conservar);
+    }
+
+    /**
+     * Saco la clave de firma. Si está configurada uso esa; si no, genero una aleatoria y la
+     * guardo en la carpeta de los puntos de control para los siguientes arranques.
+     */
+    public static byte[] clave(String configurada, Path directorio) throws IOException {
+        if (configurada != null && !configurada.isBlank()) {
+            return configurada.getBytes(StandardCharsets.UTF_8);
+        }
+        Path fichero = directorio.resolve(FICHERO_CLAVE);
+        if (Files.exists(fichero)) {
+            return Files.readAllBytes(fichero);
+        }
+        Files.createDirectories(directorio);
+        byte[] generada = new byte[32];
+        new SecureRandom().nextBytes(generada);
+        Path temporal = directorio.resolve(FICHERO_CLAVE + ".tmp");
+        Files.write(temporal, generada);
+        Files.move(temporal, fichero, StandardCopyOption.ATOMIC_MOVE);
+        return generada;
+    }
+
+    /**
+     * Recupero el estado de la cadena: abro el registro con los bloques del punto de control
+     * más reciente que sea válido e indexo solo los de detrás. Los índices de los bloques del
+     * punto de control los carga en segundo plano el hilo blockchain-indice; hasta que
+     * termina, las búsquedas esperan ({@link IndiceBloques#getCarga()}). Si no hay ningún
+     * punto de control que cuadre con el registro, lo recorro e indexo entero.
+     *
+     * @param registro registro sin abrir.
+     * @param indice índice vacío.
+     */
+    public Recuperacion recuperar(RegistroBloques registro, IndiceBloques indice) throws IOException {
+        long inicio = System.nanoTime();
+        Instantanea instantanea = leerMasReciente();
+        boolean usado = registro.abrir(instantanea != null
+                ? new RegistroBloques.BloquesConocidos(instantanea.bloques(), instantanea.hashUltimo()) : null);
+
+        int desde = 0;
+        if (usado) {
+            desde = instantanea.bloques();
+            indice.reservar(desde);
+            Thread hilo = new Thread(() -> cargarIndice(instantanea, registro, indice), "blockchain-indice");
+            hilo.setDaemon(true);
+            hilo.start();
+        }
+        int total = registro.getTotal();
+        for (int i = desde; i < total; i++) {
+            indice.indexar(registro.leer(i));
+        }
+        return new Recuperacion(desde, total - desde, System.nanoTime() - inicio);
+    }
+
+    /**
+     * Cargo los índices de los bloques del punto de control: del volcado si su firma es
+     * correcta o, si no, leyendo esos bloques del registro.
+     */
+    private void cargarIndice(Instantanea instantanea, RegistroBloques registro, IndiceBloques indice) {
+        try {
+            IndiceBloques base = new IndiceBloques();
+            try {
+                if (base.restaurar(ByteBuffer.wrap(leerVolcado(instantanea))) != instantanea.bloques()) {
+                    throw new IOException("el volcado no recoge los bloques del punto de control");
+                }
+            } catch (IOException | RuntimeException e) {
+                System.out.println("⚠️ [BLOCKCHAIN] No se ha podido restaurar el índice del punto de control ("
+                        + e.getMessage() + "): lo reconstruyo desde el registro");
+                base = new IndiceBloques();
+                for (int i = 0; i < instantanea.bloques(); i++) {
+                    base.indexar(registro.leer(i));
+                }
+            }
+            indice.completar(base);
+        } catch (RuntimeException e) {
+            System.out.println("❌ [BLOCKCHAIN] No se ha podido cargar el índice de búsqueda: " + e.getMessage());
+            indice.fallar(e);
+        }
+    }
+
+    /**
+     * Guardo un punto de control de los bloques [0, hasta). Es {@link #capturar} seguido de
+     * {@link #escribir}, para quien sabe que nadie escribe en la cadena mientras tanto.
+     *
+     * @return bloques que recoge, o 0 si no había nada nuevo que guardar.
+     */
+    public int guardar(RegistroBloques registro, IndiceBloques indice, int hasta) throws IOException {
+        return escribir(capturar(registro, indice, hasta));
+    }
+
+    /**
+     * Saco en memoria lo que va en un punto de control de los bloques [0, hasta): fuerzo a
+     * disco el registro (los bloques tienen que estar en disco antes que el punto de
+     * control), vuelco los índices solo hasta ese bloque y copio su hash. Quien llama debe
+     * haber comprobado que esos bloques están verificados y asegurar que la cadena no cambia
+     * mientras tanto (el servicio lo hace en el hilo del secuenciador).
+     *
+     * @param hasta bloques que recoge; el índice debe tener al menos esos.
+     */
+    public Captura capturar(RegistroBloques registro, IndiceBloques indice, int hasta) throws IOException {
+        int descartesAntes = descartes;
+        registro.sincronizar();
+        ByteArrayOutputStream volcado = new ByteArrayOutputStream();
+        indice.guardar(new DataOutputStream(volcado), hasta);
+        return new Captura(hasta, registro.leer(hasta - 1).getHashBytes(), volcado.toByteArray(), descartesAntes);
+    }
+
+    /**
+     * Escribo en disco un punto de control capturado. Si desde que se capturó se ha
+     * truncado la cadena, ya no la describe y no lo escribo.
+     *
+     * @return bloques que recoge, o 0 si no lo he escrito.
+     */
+    public synchronized int escribir(Captura captura) throws IOException {
+        int bloques = captura.bloques();
+        if (bloques <= 0 || captura.descartes() != descartes) {
+            return 0;
+        }
+        Files.createDirectories(directorio);
+        Path destino = directorio.resolve(nombre(bloques));
+        if (Files.exists(destino)) {
+            return 0;
+        }
+
+        Mac mac = nuevoMac();
+        byte[] firmaVolcado = mac.doFinal(captura.volcado());
+        ByteBuffer cabecera = ByteBuffer.allocate(TAMANO_CABECERA);
+        cabecera.putInt(MAGICO).put(VERSION).putInt(bloques).put(captura.hashUltimo())
+                .putInt(captura.volcado().length).put(firmaVolcado);
+        mac.update(cabecera.array(), 0, cabecera.position());
+        cabecera.put(mac.doFinal());
+
+        Path temporal = directorio.resolve(nombre(bloques) + ".tmp");
+        try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            canal.write(new ByteBuffer[]{cabecera.flip(), ByteBuffer.wrap(captura.volcado())});
+            canal.force(true);
+        }
+        Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        borrarAntiguos();
+        return bloques;
+    }
+
+    /**
+     * Borro los puntos de control que recogen más bloques de los que quedan en la cadena
+     * (después de truncarla): ya no describen el registro. Si se estaba guardando uno,
+     * espero a que termine para borrarlo también.
+     */
+    public synchronized void descartarDesde(int nuevoTotal) throws IOException {
+        descartes++;
+        for (Path fichero : listar()) {
+            if (bloquesDe(fichero) > nuevoTotal) {
+                Files.deleteIfExists(fichero);
+            }
+        }
+    }
+
+    /**
+     * Leo los puntos de control del más reciente al más antiguo y me quedo con el primero
+     * cuya firma y formato son correctos.
+     */
+    private Instantanea leerMasReciente() throws IOException {
+        for (Path fichero : listar()) {
+            try {
+                return leer(fichero);
+            } catch (IOException | RuntimeException e) {
+                System.out.println("⚠️ [BLOCKCHAIN] Descarto el punto de control " + fichero.getFileName()
+                        + ": " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Leo y compruebo solo la cabecera del punto de control, que mide lo mismo con
+     * cualquier longitud de cadena.
+     */
+    private Instantanea leer(Path fichero) throws IOException {
+        ByteBuffer cabecera = ByteBuffer.allocate(TAMANO_CABECERA);
+        long tamanoFichero;
+        try (FileChannel canal = FileChannel.open(fichero, StandardOpenOption.READ)) {
+            tamanoFichero = canal.size();
+            while (cabecera.hasRemaining() && canal.read(cabecera) >= 0) {
+                // Sigo hasta llenar la cabecera o llegar al final
+            }
+        }
+        if (cabecera.hasRemaining()) {
+            throw new IOException("el fichero está incompleto");
+        }
+        int firmado = TAMANO_CABECERA - TAMANO_FIRMA;
+        Mac mac = nuevoMac();
+        mac.update(cabecera.array(), 0, firmado);
+        if (!MessageDigest.isEqual(mac.doFinal(), Arrays.copyOfRange(cabecera.array(), firmado, TAMANO_CABECERA))) {
+            throw new IOException("la firma no es válida");
+        }
+
+        cabecera.flip();
+        if (cabecera.getInt() != MAGICO || cabecera.get() != VERSION) {
+            throw new IOException("formato desconocido");
+        }
+        int bloques = cabecera.getInt();
+        if (bloques <= 0 || bloques != bloquesDe(fichero)) {
+            throw new IOException("el número de bloques no coincide");
+        }
+        byte[] hashUltimo = new byte[Bloque.TAMANO_HASH];
+        cabecera.get(hashUltimo);
+        int tamanoVolcado = cabecera.getInt();
+        if (tamanoVolcado < 0 || TAMANO_CABECERA + (long) tamanoVolcado != tamanoFichero) {
+            throw new IOException("el volcado del índice no cabe en el fichero");
+        }
+        byte[] firmaVolcado = new byte[TAMANO_FIRMA];
+        cabecera.get(firmaVolcado);
+        return new Instantanea(fichero, bloques, hashUltimo, tamanoVolcado, firmaVolcado);
+    }
+
+    /**
+     * Leo el volcado de los índices de un punto de control y compruebo su firma.
+     */
+    private byte[] leerVolcado(Instantanea instantanea) throws IOException {
+        byte[] volcado = new byte[instantanea.tamanoVolcado()];
+        try (FileChannel canal = FileChannel.open(instantanea.fichero(), StandardOpenOption.READ)) {
+            ByteBuffer destino = ByteBuffer.wrap(volcado);
+            long posicion = TAMANO_CABECERA;
+            while (destino.hasRemaining()) {
+                int leidos = canal.read(destino, posicion);
+                if (leidos < 0) {
+                    throw new IOException("el volcado del índice está incompleto");
+                }
+                posicion += leidos;
+            }
+        }
+        if (!MessageDigest.isEqual(nuevoMac().doFinal(volcado), instantanea.firmaVolcado())) {
+            throw new IOException("la firma del volcado del índice no es válida");
+        }
+        return volcado;
+    }
+
+    private void borrarAntiguos() throws IOException {
+        List<Path> ficheros = listar();
+        for (int i = conservar; i < ficheros.size(); i++) {
+            Files.deleteIfExists(ficheros.get(i));
+        }
+    }
+
+    /**
+     * @return puntos de control en disco, del más reciente al más antiguo.
+     */
+    private List<Path> listar() throws IOException {
+        if (!Files.isDirectory(directorio)) {
+            return List.of();
+        }
+        try (Stream<Path> listado = Files.list(directorio)) {
+            return listado
+                    .filter(p -> bloquesDe(p) > 0)
+                    .sorted(Comparator.comparingLong(PuntoControlCadena::bloquesDe).reversed())
+                    .toList();
+        }
+    }
+
+    private Mac nuevoMac() throws IOException {
+        try {
+            Mac mac = Mac.getInstance(ALGORITMO);
+            mac.init(clave);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("No se puede firmar con " + ALGORITMO, e);
+        }
+    }
+
+    private static String nombre(int bloques) {
+        return String.format("%s%020d%s", PREFIJO, bloques, EXTENSION);
+    }
+
+    private static long bloquesDe(Path fichero) {
+        String nombre = fichero.getFileName().toString();
+        if (!nombre.startsWith(PREFIJO) || !nombre.endsWith(EXTENSION)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(nombre.substring(PREFIJO.length(), nombre.length() - EXTENSION.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Resultado de la recuperación al arrancar.
+     *
+     * @param desdePuntoControl bloques que venían del punto de control (0 si no se usó).
+     * @param reproducidos bloques que he tenido que leer e indexar.
+     * @param nanos lo que ha tardado.
+     */
+    public record Recuperacion(int desdePuntoControl, int reproducidos, long nanos) {
+    }
+
+    /**
+     * Lo que va en un punto de control, capturado en memoria para escribirlo después.
+     *
+     * @param bloques bloques que recoge.
+     * @param hashUltimo hash del último de ellos.
+     * @param volcado volcado de los índices hasta ese bloque.
+     * @param descartes descartes que llevaba al capturarlo (si cambia, la cadena se ha truncado).
+     */
+    public record Captura(int bloques, byte[] hashUltimo, byte[] volcado, int descartes) {
+    }
+
+    private record Instantanea(Path fichero, int bloques, byte[] hashUltimo, int tamanoVolcado, byte[] firmaVolcado) {
+    }
+}
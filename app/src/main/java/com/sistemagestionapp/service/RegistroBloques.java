@@ -0,0 +1,644 @@
+package com.sistemagestionapp.service;
+
+import com.sistemagestionapp.model.Bloque;
+import com.sistemagestionapp.model.PruebaInclusion;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.StampedLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Registro persistente de la cadena de bloques: ficheros de solo añadir, divididos en
+ * segmentos de tamaño fijo y mapeados en memoria.
+ *
+ * Cada bloque es un registro con cabecera de 8 bytes (longitud del contenido y su CRC32C)
+ * seguida del contenido en {@link FormatoBloque}. Cada segmento se llama con el índice de
+ * su primer bloque (segmento-00000000000000000000.log) y lo que queda sin escribir está a
+ * cero, así que una longitud 0 marca el final.
+ *
+ * - Cada segmento tiene al lado su índice de posiciones (segmento-...idx), también mapeado:
+ *   el desplazamiento de cada uno de sus bloques (4 bytes por bloque). Lo escribo al añadir
+ *   y lo fuerzo a disco junto con el segmento, así que no guardo posiciones en el heap.
+ * - Al abrir recorro los segmentos comprobando el CRC de cada registro y reescribo su índice
+ *   de posiciones. Si el último registro quedó a medias por una caída, lo corto ahí y pongo
+ *   a cero el resto. Si me dicen cuántos bloques recoge un punto de control, me fío de los
+ *   índices de posiciones hasta ahí y solo recorro los registros de detrás: abrir cuesta lo
+ *   mismo con cualquier longitud de cadena.
+ * - Leer el bloque N es buscar su segmento, ir a su posición y decodificar solo ese registro
+ *   (o solo la parte que haga falta, como el camino de una prueba de inclusión). Compruebo
+ *   que el registro es el del bloque N, así que un índice de posiciones roto no hace leer
+ *   otro bloque.
+ * - Las escrituras no hacen fsync una a una: fuerzo a disco cada cierto número de bloques
+ *   o cuando me llaman a {@link #sincronizar()} (el servicio lo hace periódicamente).
+ *
+ * Hay un único escritor (los métodos que escriben son synchronized) y los lectores no se
+ * bloquean: leen con posiciones absolutas y solo ven bloques ya publicados. Lo único que
+ * cambia bytes ya publicados es {@link #truncar(int)}, así que las lecturas son optimistas
+ * ({@link StampedLock}): si un truncado ha empezado mientras leían, repiten la lectura con
+ * el cerrojo de lectura y ven la cadena ya truncada.
+ */
+public class RegistroBloques implements Closeable {
+
+    private static final String PREFIJO = "segmento-";
+    private static final String EXTENSION = ".log";
+    private static final String EXTENSION_POSICIONES = ".idx";
+    private static final int CABECERA = 8;
+    /** Lo que ocupa como mínimo un registro: con esto dimensiono el índice de posiciones. */
+    private static final int REGISTRO_MINIMO = CABECERA + FormatoBloque.TAMANO_MINIMO;
+
+    private final Path directorio;
+    private final int tamanoSegmento;
+    private final int sincronizarCada;
+
+    private final List<Segmento> segmentos = new CopyOnWriteArrayList<>();
+    /** Lo toma en escritura solo {@link #truncar(int)}; los lectores lo validan. */
+    private final StampedLock truncado = new StampedLock();
+    private volatile int total;
+    private volatile boolean cerrado;
+
+    private int pendientes;
+    private int inicioSinSincronizar = -1;
+    private int primerBloqueSinSincronizar = -1;
+
+    private final AtomicLong sincronizaciones = new AtomicLong();
+    private final AtomicLong bytesTruncados = new AtomicLong();
+
+    /**
+     * @param directorio carpeta de los segmentos.
+     * @param tamanoSegmento bytes de cada segmento (como máximo 2 GB, lo que admite un mapeo).
+     * @param sincronizarCada número de bloques tras los que fuerzo a disco (1 = cada bloque).
+     */
+    public RegistroBloques(Path directorio, int tamanoSegmento, int sincronizarCada) {
+        if (tamanoSegmento < 1024) {
+            throw new IllegalArgumentException("El tamaño de segmento debe ser de al menos 1024 bytes");
+        }
+        this.directorio = directorio;
+        this.tamanoSegmento = tamanoSegmento;
+        this.sincronizarCada = Math.max(1, sincronizarCada);
+    }
+
+    /**
+     * Abro los segmentos existentes y reconstruyo sus índices de posiciones recorriéndolos
+     * enteros.
+     *
+     * @see #abrir(BloquesConocidos)
+     */
+    public void abrir() throws IOException {
+        abrir(null);
+    }
+
+    /**
+     * Abro los segmentos existentes y reconstruyo sus índices de posiciones. Lo que haya
+     * detrás del primer registro roto se descarta: el resto del segmento se pone a cero y
+     * los segmentos posteriores se renombran a .descartado para poder revisarlos.
+     *
+     * Con los bloques que recoge un punto de control no vuelvo a leer ni a comprobar el CRC
+     * de esos bloques: tomo sus posiciones de los índices de cada segmento, compruebo que el
+     * último tiene el hash esperado y recorro solo lo escrito después. Si algo no cuadra,
+     * recorro el registro entero como si no hubiera punto de control.
+     *
+     * @param conocidos bloques que recoge un punto de control (o null).
+     * @return true si he usado los bloques conocidos.
+     */
+    public synchronized boolean abrir(BloquesConocidos conocidos) throws IOException {
+        Files.createDirectories(directorio);
+        List<Path> ficheros;
+        try (Stream<Path> listado = Files.list(directorio)) {
+            ficheros = listado
+                    .filter(p -> {
+                        String nombre = p.getFileName().toString();
+                        return nombre.startsWith(PREFIJO) && nombre.endsWith(EXTENSION);
+                    })
+                    .sorted()
+                    .toList();
+        }
+
+        if (conocidos != null && conocidos.total() > 0) {
+            int abiertos = abrirConocidos(ficheros, conocidos);
+            if (abiertos >= 0) {
+                abrirRestantes(ficheros.subList(abiertos, ficheros.size()), false);
+                return true;
+            }
+            System.out.println("⚠️ [BLOCKCHAIN] El punto de control no coincide con los segmentos: recorro el registro entero");
+            descartarEstado();
+        }
+        abrirRestantes(ficheros, false);
+        return false;
+    }
+
+    /**
+     * Abro los segmentos que recoge el punto de control y sigo recorriendo el último desde
+     * detrás de su último bloque conocido. Solo leo dos posiciones por segmento: los
+     * bloques de cada uno van del índice de su nombre al del siguiente.
+     *
+     * @return número de segmentos abiertos, o -1 si el punto de control no coincide.
+     */
+    private int abrirConocidos(List<Path> ficheros, BloquesConocidos conocidos) throws IOException {
+        int conocidosTotal = conocidos.total();
+        int ultimoSegmento = -1;
+        while (ultimoSegmento + 1 < ficheros.size() && primerIndice(ficheros.get(ultimoSegmento + 1)) < conocidosTotal) {
+            ultimoSegmento++;
+        }
+        if (ultimoSegmento < 0 || primerIndice(ficheros.get(0)) != 0) {
+            return -1;
+        }
+        for (int s = 0; s <= ultimoSegmento; s++) {
+            int primero = (int) primerIndice(ficheros.get(s));
+            int hasta = s < ultimoSegmento ? (int) primerIndice(ficheros.get(s + 1)) : conocidosTotal;
+            Segmento segmento = Segmento.abrir(ficheros.get(s), tamanoSegmento, primero);
+            segmentos.add(segmento);
+            int bloques = hasta - primero;
+            if (bloques <= 0 || bloques > segmento.maxBloques() || segmento.posicion(primero) != 0) {
+                return -1;
+            }
+            int desplazamiento = segmento.posicion(hasta - 1);
+            if (desplazamiento < 0 || desplazamiento > segmento.capacidad() - CABECERA) {
+                return -1;
+            }
+            int longitud = segmento.buffer.getInt(desplazamiento);
+            if (longitud <= 0 || longitud > segmento.capacidad() - desplazamiento - CABECERA) {
+                return -1;
+            }
+            segmento.escritos = desplazamiento + CABECERA + longitud;
+        }
+
+        total = conocidosTotal;
+        try {
+            if (!Arrays.equals(leer(conocidosTotal - 1).getHashBytes(), conocidos.hashUltimo())) {
+                return -1;
+            }
+        } catch (RuntimeException e) {
+            return -1;
+        }
+
+        Segmento ultimo = segmentos.get(ultimoSegmento);
+        boolean valido = recorrer(ultimo, ultimo.escritos);
+        if (!valido) {
+            abrirRestantes(ficheros.subList(ultimoSegmento + 1, ficheros.size()), true);
+            return ficheros.size();
+        }
+        return ultimoSegmento + 1;
+    }
+
+    /**
+     * Vuelvo al estado de antes de abrir para poder recorrer el registro desde cero.
+     */
+    private void descartarEstado() throws IOException {
+        total = 0;
+        for (Segmento segmento : segmentos) {
+            segmento.cerrar();
+        }
+        segmentos.clear();
+    }
+
+    /**
+     * Abro y recorro los segmentos indicados, a continuación de los que ya están abiertos.
+     *
+     * @param roto true si ya se ha encontrado un registro roto (entonces se descartan todos).
+     */
+    private void abrirRestantes(List<Path> ficheros, boolean roto) throws IOException {
+        for (Path fichero : ficheros) {
+            if (roto || primerIndice(fichero) != total) {
+                roto = true;
+                Files.move(fichero, fichero.resolveSibling(fichero.getFileName() + ".descartado"),
+                        StandardCopyOption.REPLACE_EXISTING);
+                Files.deleteIfExists(posicionesDe(fichero));
+                System.out.println("⚠️ [BLOCKCHAIN] Segmento descartado tras un registro roto: " + fichero.getFileName());
+                continue;
+            }
+            Segmento segmento = Segmento.abrir(fichero, tamanoSegmento, total);
+            segmentos.add(segmento);
+            roto = !recorrer(segmento, 0);
+        }
+    }
+
+    /**
+     * Añado un bloque al final del registro.
+     *
+     * @param bloque bloque cuyo índice debe ser el siguiente de la cadena.
+     * @throws IllegalArgumentException si el índice no es el siguiente o el bloque no cabe en un segmento.
+     */
+    public synchronized void anadir(Bloque bloque) throws IOException {
+        comprobarAbierto();
+        if (bloque.getIndice() != total) {
+            throw new IllegalArgumentException("Se esperaba el bloque " + total + " y ha llegado el " + bloque.getIndice());
+        }
+        byte[] contenido = FormatoBloque.codificar(bloque);
+        int necesario = CABECERA + contenido.length;
+        if (necesario > tamanoSegmento) {
+            throw new IllegalArgumentException("El bloque ocupa " + necesario + " bytes y el segmento " + tamanoSegmento);
+        }
+
+        Segmento actual = segmentos.isEmpty() ? null : segmentos.get(segmentos.size() - 1);
+        if (actual == null || actual.capacidad() - actual.escritos < necesario) {
+            sincronizar();
+            Path fichero = directorio.resolve(nombreSegmento(total));
+            actual = Segmento.abrir(fichero, tamanoSegmento, total);
+            segmentos.add(actual);
+        }
+
+        int posicion = actual.escritos;
+        CRC32C crc = new CRC32C();
+        crc.update(contenido);
+        // La longitud va la última: hasta que no está escrita el registro no existe
+        actual.buffer.put(posicion + CABECERA, contenido);
+        actual.buffer.putInt(posicion + 4, (int) crc.getValue());
+        actual.buffer.putInt(posicion, contenido.length);
+        actual.escritos += necesario;
+        if (inicioSinSincronizar < 0) {
+            inicioSinSincronizar = posicion;
+            primerBloqueSinSincronizar = total;
+        }
+
+        publicar(actual, posicion);
+
+        if (++pendientes >= sincronizarCada) {
+            sincronizar();
+        }
+    }
+
+    /**
+     * Leo un bloque por su índice sin recorrer la cadena.
+     *
+     * @throws IllegalArgumentException si no existe ese bloque.
+     */
+    public Bloque leer(int indice) {
+        return leerRegistro(indice, FormatoBloque::decodificar);
+    }
+
+    /**
+     * Copio el contenido de un registro tal como está en disco (en {@link FormatoBloque}),
+     * sin decodificarlo. Es lo que mando a otros nodos al replicar.
+     *
+     * @throws IllegalArgumentException si no existe ese bloque.
+     */
+    public byte[] leerCrudo(int indice) {
+        return leerRegistro(indice, (buffer, inicio, longitud) -> {
+            byte[] contenido = new byte[longitud];
+            buffer.get(inicio, contenido);
+            return contenido;
+        });
+    }
+
+    /**
+     * Saco la prueba de inclusión de una entrada de un bloque leyendo solo su camino en
+     * el árbol de Merkle, sin decodificar el bloque entero.
+     *
+     * @throws IllegalArgumentException si no existe el bloque o la entrada.
+     */
+    public PruebaInclusion pruebaInclusion(int indice, int posicion) {
+        return leerRegistro(indice, (buffer, inicio, longitud) -> FormatoBloque.prueba(buffer, inicio, longitud, posicion));
+    }
+
+    private <T> T leerRegistro(int indice, LectorRegistro<T> lector) {
+        long sello = truncado.tryOptimisticRead();
+        if (sello != 0) {
+            try {
+                T leido = leerRegistroSinCerrojo(indice, lector);
+                if (truncado.validate(sello)) {
+                    return leido;
+                }
+            } catch (RuntimeException e) {
+                // Con bytes a medio borrar puede fallar de cualquier forma: solo vale si no ha habido truncado
+                if (truncado.validate(sello)) {
+                    throw e;
+                }
+            }
+        }
+        sello = truncado.readLock();
+        try {
+            return leerRegistroSinCerrojo(indice, lector);
+        } finally {
+            truncado.unlockRead(sello);
+        }
+    }
+
+    private <T> T leerRegistroSinCerrojo(int indice, LectorRegistro<T> lector) {
+        comprobarAbierto();
+        int publicados = total;
+        if (indice < 0 || indice >= publicados) {
+            throw new IllegalArgumentException("No existe el bloque " + indice);
+        }
+        Segmento segmento = segmentoDe(indice);
+        int desplazamiento = segmento.posicion(indice);
+        int longitud = desplazamiento >= 0 && desplazamiento <= segmento.capacidad() - CABECERA
+                ? segmento.buffer.getInt(desplazamiento) : -1;
+        if (longitud < FormatoBloque.TAMANO_MINIMO || longitud > segmento.capacidad() - desplazamiento - CABECERA
+                || segmento.buffer.getInt(desplazamiento + CABECERA + 1) != indice) {
+            throw new IllegalStateException("El registro del bloque " + indice + " no está en la posición de su índice");
+        }
+        return lector.leer(segmento.buffer, desplazamiento + CABECERA, longitud);
+    }
+
+    /**
+     * @return el segmento que contiene el bloque: el último cuyo primer bloque no es mayor
+     * (casi siempre el último segmento, así que lo miro antes de buscar por bisección).
+     */
+    private Segmento segmentoDe(int indice) {
+        List<Segmento> actuales = segmentos;
+        int alto = actuales.size() - 1;
+        if (actuales.get(alto).primero <= indice) {
+            return actuales.get(alto);
+        }
+        int bajo = 0;
+        while (bajo < alto) {
+            int medio = (bajo + alto + 1) >>> 1;
+            if (actuales.get(medio).primero <= indice) {
+                bajo = medio;
+            } else {
+                alto = medio - 1;
+            }
+        }
+        return actuales.get(bajo);
+    }
+
+    /**
+     * Fuerzo a disco lo escrito desde la última sincronización.
+     */
+    public synchronized void sincronizar() {
+        if (cerrado || inicioSinSincronizar < 0 || segmentos.isEmpty()) {
+            return;
+        }
+        Segmento actual = segmentos.get(segmentos.size() - 1);
+        actual.buffer.force(inicioSinSincronizar, actual.escritos - inicioSinSincronizar);
+        int desdePosicion = (primerBloqueSinSincronizar - actual.primero) * Integer.BYTES;
+        actual.posiciones.force(desdePosicion, (total - actual.primero) * Integer.BYTES - desdePosicion);
+        inicioSinSincronizar = -1;
+        primerBloqueSinSincronizar = -1;
+        pendientes = 0;
+        sincronizaciones.incrementAndGet();
+    }
+
+    /**
+     * Descarto los bloques a partir de uno (al cambiar a la rama de otro nodo). Lo hago con
+     * el cerrojo de truncado en escritura: un lector que estuviera leyendo uno de ellos vuelve
+     * a intentarlo al terminar y ve que ya no existe.
+     *
+     * @param nuevoTotal bloques que se conservan (al menos el génesis).
+     * @throws IllegalArgumentException si se pide quitar el génesis.
+     */
+    public synchronized void truncar(int nuevoTotal) throws IOException {
+        comprobarAbierto();
+        if (nuevoTotal < 1) {
+            throw new IllegalArgumentException("No se puede descartar el bloque génesis");
+        }
+        if (nuevoTotal >= total) {
+            return;
+        }
+        sincronizar();
+        long sello = truncado.writeLock();
+        try {
+            Segmento segmento = segmentoDe(nuevoTotal);
+            int desplazamiento = segmento.posicion(nuevoTotal);
+            total = nuevoTotal;
+
+            while (segmentos.get(segmentos.size() - 1) != segmento) {
+                Segmento sobrante = segmentos.remove(segmentos.size() - 1);
+                sobrante.cerrar();
+                Files.deleteIfExists(sobrante.fichero);
+                Files.deleteIfExists(posicionesDe(sobrante.fichero));
+            }
+            int cortados = segmento.escritos - desplazamiento;
+            byte[] ceros = new byte[Math.min(cortados, 64 * 1024)];
+            for (int p = desplazamiento; p < segmento.escritos; p += ceros.length) {
+                segmento.buffer.put(p, ceros, 0, Math.min(ceros.length, segmento.escritos - p));
+            }
+            segmento.buffer.force(desplazamiento, cortados);
+            segmento.escritos = desplazamiento;
+        } finally {
+            truncado.unlockWrite(sello);
+        }
+    }
+
+    /**
+     * @return número de bloques en el registro.
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * @return bloques escritos que todavía no se han forzado a disco.
+     */
+    public synchronized int getPendientes() {
+        return pendientes;
+    }
+
+    public int getSegmentos() {
+        return segmentos.size();
+    }
+
+    public long getBytes() {
+        long bytes = 0;
+        for (Segmento segmento : segmentos) {
+            bytes += segmento.escritos;
+        }
+        return bytes;
+    }
+
+    public long getSincronizaciones() {
+        return sincronizaciones.get();
+    }
+
+    public long getBytesTruncados() {
+        return bytesTruncados.get();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (cerrado) {
+            return;
+        }
+        sincronizar();
+        cerrado = true;
+        for (Segmento segmento : segmentos) {
+            segmento.cerrar();
+        }
+    }
+
+    /**
+     * Recorro un segmento validando sus registros y apunto su posición en el índice del
+     * segmento. Al terminar fuerzo a disco ese índice.
+     *
+     * @param desde posición del primer registro que hay que recorrer.
+     * @return false si he encontrado un registro roto (y he cortado el segmento ahí).
+     */
+    private boolean recorrer(Segmento segmento, int desde) {
+        int primerRecorrido = total;
+        MappedByteBuffer buffer = segmento.buffer;
+        int capacidad = segmento.capacidad();
+        int posicion = desde;
+        boolean valido = true;
+        CRC32C crc = new CRC32C();
+
+        while (posicion + CABECERA <= capacidad) {
+            int longitud = buffer.getInt(posicion);
+            if (longitud == 0) {
+                break;
+            }
+            int inicio = posicion + CABECERA;
+            if (longitud < 0 || longitud > capacidad - inicio) {
+                valido = false;
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.slice(inicio, longitud));
+            if ((int) crc.getValue() != buffer.getInt(posicion + 4) || longitud < FormatoBloque.TAMANO_MINIMO
+                    || buffer.getInt(inicio + 1) != total || total - segmento.primero >= segmento.maxBloques()) {
+                valido = false;
+                break;
+            }
+            publicar(segmento, posicion);
+            posicion = inicio + longitud;
+        }
+        segmento.escritos = posicion;
+        if (total > primerRecorrido) {
+            int desdePosicion = (primerRecorrido - segmento.primero) * Integer.BYTES;
+            segmento.posiciones.force(desdePosicion, (total - primerRecorrido) * Integer.BYTES);
+        }
+
+        if (!valido) {
+            int cortados = capacidad - posicion;
+            byte[] ceros = new byte[Math.min(cortados, 64 * 1024)];
+            for (int p = posicion; p < capacidad; p += ceros.length) {
+                buffer.put(p, ceros, 0, Math.min(ceros.length, capacidad - p));
+            }
+            buffer.force(posicion, cortados);
+            bytesTruncados.addAndGet(cortados);
+            System.out.println("⚠️ [BLOCKCHAIN] Registro incompleto en " + segmento.fichero.getFileName()
+                    + " (posición " + posicion + "): la cadena se recupera hasta el bloque " + (total - 1));
+        }
+        return valido;
+    }
+
+    /**
+     * Apunto la posición del siguiente bloque en el índice de su segmento y lo publico.
+     */
+    private void publicar(Segmento segmento, int desplazamiento) {
+        segmento.posiciones.putInt((total - segmento.primero) * Integer.BYTES, desplazamiento);
+        total = total + 1;
+    }
+
+    private void comprobarAbierto() {
+        if (cerrado) {
+            throw new IllegalStateException("El registro de bloques está cerrado");
+        }
+    }
+
+    private static String nombreSegmento(int primerIndice) {
+        return String.format("%s%020d%s", PREFIJO, primerIndice, EXTENSION);
+    }
+
+    private static Path posicionesDe(Path segmento) {
+        String nombre = segmento.getFileName().toString();
+        return segmento.resolveSibling(nombre.substring(0, nombre.length() - EXTENSION.length()) + EXTENSION_POSICIONES);
+    }
+
+    private static long primerIndice(Path fichero) {
+        String nombre = fichero.getFileName().toString();
+        try {
+            return Long.parseLong(nombre.substring(PREFIJO.length(), nombre.length() - EXTENSION.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Lo que un punto de control sabe del registro: cuántos bloques recoge y el hash del
+     * último de ellos.
+     */
+    public record BloquesConocidos(int total, byte[] hashUltimo) {
+    }
+
+    /**
+     * Lee algo del contenido de un registro sin mover el buffer.
+     */
+    @FunctionalInterface
+    private interface LectorRegistro<T> {
+        T leer(ByteBuffer buffer, int inicio, int longitud);
+    }
+
+    /**
+     * Un fichero de segmento mapeado en memoria, hasta dónde está escrito y su índice de
+     * posiciones (el desplazamiento de cada bloque, empezando por el primero del segmento).
+     */
+    private static final class Segmento {
+        private final Path fichero;
+        private final int primero;
+        private final FileChannel canal;
+        private final MappedByteBuffer buffer;
+        private final FileChannel canalPosiciones;
+        private final MappedByteBuffer posiciones;
+        private int escritos;
+
+        private Segmento(Path fichero, int primero, FileChannel canal, MappedByteBuffer buffer,
+                         FileChannel canalPosiciones, MappedByteBuffer posiciones) {
+            this.fichero = fichero;
+            this.primero = primero;
+            this.canal = canal;
+            this.buffer = buffer;
+            this.canalPosiciones = canalPosiciones;
+            this.posiciones = posiciones;
+        }
+
+        /**
+         * Abro (o creo) el segmento y su índice de posiciones. Si el fichero es más pequeño
+         * que el tamaño de segmento lo amplío; si es más grande (se creó con otra
+         * configuración) lo respeto. El índice tiene sitio para tantos bloques como
+         * registros mínimos caben en el segmento.
+         */
+        private static Segmento abrir(Path fichero, int tamanoSegmento, int primero) throws IOException {
+            FileChannel canal = FileChannel.open(fichero, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            FileChannel canalPosiciones = null;
+            try {
+                long tamano = Math.min(Integer.MAX_VALUE, Math.max(canal.size(), tamanoSegmento));
+                MappedByteBuffer buffer = canal.map(FileChannel.MapMode.READ_WRITE, 0, tamano);
+                canalPosiciones = FileChannel.open(posicionesDe(fichero), StandardOpenOption.CREATE,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+                long tamanoPosiciones = (tamano / REGISTRO_MINIMO + 1) * Integer.BYTES;
+                MappedByteBuffer posiciones = canalPosiciones.map(FileChannel.MapMode.READ_WRITE, 0, tamanoPosiciones);
+                return new Segmento(fichero, primero, canal, buffer, canalPosiciones, posiciones);
+            } catch (IOException | RuntimeException e) {
+                canal.close();
+                if (canalPosiciones != null) {
+                    canalPosiciones.close();
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * @return desplazamiento del bloque dentro del segmento.
+         */
+        private int posicion(int indice) {
+            return posiciones.getInt((indice - primero) * Integer.BYTES);
+        }
+
+        private int maxBloques() {
+            return posiciones.capacity() / Integer.BYTES;
+        }
+
+        private int capacidad() {
+            return buffer.capacity();
+        }
+
+        private void cerrar() throws IOException {
+            canal.close();
+            canalPosiciones.close();
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package com.sistemagestionapp.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sistemagestionapp.model.Bloque;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replicación de la cadena de bloques entre varias instancias de la aplicación.
+ *
+ * Cada nodo tiene su propio registro y, cada cierto tiempo, pregunta a sus pares (por URL)
+ * por la cabeza de su cadena. Solo se queda con la rama de un par si es mejor que la suya
+ * según {@link SecuenciadorBloques#esMejor} (más trabajo, y en empate el hash menor), así
+ * que todos acaban en la misma rama:
+ * - Si las cabezas no coinciden, busco el último bloque común comparando hashes por
+ *   bisección (log2(n) peticiones). Si la cadena del par es un prefijo de la mía, no hay
+ *   nada que traer.
+ * - Si mi cadena es un prefijo de la suya, traigo solo los bloques que me faltan en lotes
+ *   binarios (el registro tal cual, sin JSON) y los voy añadiendo.
+ * - Si hay bifurcación, traigo la rama del par entera desde el bloque común (con un límite),
+ *   comparo su trabajo con el de la mía desde ahí y, si gana, la cambio por la mía de una
+ *   vez; las entradas que solo estaban en mi rama se vuelven a encolar. Mientras la
+ *   bifurcación dura, el nodo con la rama mejor descarga la del otro en cada ronda sin
+ *   quedársela, hasta que el otro cambia a la suya.
+ *
+ * Compruebo cada bloque recibido (hash, raíz de Merkle, enlace y dificultad mínima) en
+ * este hilo, antes de pasárselo al secuenciador, que es el único que escribe.
+ *
+ * Los nodos se autentican con un token compartido: sin token configurado las rutas de
+ * replicación rechazan todas las peticiones, y configurar pares sin token impide arrancar.
+ */
+@Service
+public class ReplicacionCadenaService {
+
+    /** Cabecera con el token compartido entre los nodos. */
+    public static final String CABECERA_TOKEN = "X-Replicacion-Token";
+
+    private final BlockchainService blockchainService;
+    private final ObjectMapper objectMapper;
+    private final List<String> pares;
+    private final int lote;
+    private final int maxBifurcacion;
+    private final String token;
+    private final Duration timeout;
+    private final HttpClient cliente;
+
+    private final Map<String, EstadoPar> estados = new ConcurrentHashMap<>();
+    private final AtomicLong bloquesRecibidos = new AtomicLong();
+    private final AtomicLong bytesRecibidos = new AtomicLong();
+    private final AtomicLong bifurcaciones = new AtomicLong();
+
+    public ReplicacionCadenaService(BlockchainService blockchainService,
+                                    ObjectMapper objectMapper,
+                                    @Value("${blockchain.replicacion.pares:}") List<String> pares,
+                                    @Value("${blockchain.replicacion.lote:512}") int lote,
+                                    @Value("${blockchain.replicacion.max-bifurcacion:10000}") int maxBifurcacion,
+                                    @Value("${blockchain.replicacion.token:}") String token,
+                                    @Value("${blockchain.replicacion.timeout-ms:5000}") long timeoutMs) {
+        this.blockchainService = blockchainService;
+        this.objectMapper = objectMapper;
+        this.pares = pares.stream()
+                .map(String::trim)
+                .filter(par -> !par.isEmpty())
+                .map(par -> par.endsWith("/") ? par.substring(0, par.length() - 1) : par)
+                .toList();
+        if (!this.pares.isEmpty() && token.isBlank()) {
+            throw new IllegalStateException("Hay pares de replicación configurados pero no blockchain.replicacion.token:"
+                    + " las rutas de replicación no se abren sin token");
+        }
+        this.lote = Math.max(1, lote);
+        this.maxBifurcacion = Math.max(1, maxBifurcacion);
+        this.token = token;
+        this.timeout = Duration.ofMillis(timeoutMs);
+        this.cliente = HttpClient.newBuilder().connectTimeout(timeout).build();
+        for (String par : this.pares) {
+            estados.put(par, new EstadoPar());
+        }
+    }
+
+    /**
+     * Me pongo al día con cada par. Un par caído no impide sincronizar con los demás.
+     */
+    @Scheduled(initialDelayString = "${blockchain.replicacion.cada-ms:2000}",
+            fixedDelayString = "${blockchain.replicacion.cada-ms:2000}")
+    public void sincronizarPares() {
+        for (String par : pares) {
+            EstadoPar estado = estados.get(par);
+            try {
+                int recibidos = sincronizar(par);
+                estado.exito(recibidos);
+            } catch (IOException | RuntimeException e) {
+                estado.error(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Traigo de un par los bloques que me faltan si su rama es mejor que la mía.
+     *
+     * @param par URL base del par (http://host:puerto).
+     * @return bloques recibidos y escritos.
+     */
+    public int sincronizar(String par) throws IOException, InterruptedException {
+        Cabeza remota = cabeza(par, null);
+        int local = blockchainService.getTotalBloques();
+        byte[] hashLocal = blockchainService.obtenerHashCabeza(local);
+        if (remota.bloques() == local && Arrays.equals(remota.hash(), hashLocal)) {
+            return 0;
+        }
+
+        int comun = puntoComun(par, Math.min(local, remota.bloques()));
+        if (comun == remota.bloques()) {
+            // Su cadena es un prefijo de la mía: tengo todo lo suyo y más trabajo
+            return 0;
+        }
+        if (comun == local) {
+            return anadir(par, comun, remota.bloques());
+        }
+        if (remota.bloques() - comun > maxBifurcacion) {
+            throw new IllegalStateException("La rama de " + par + " se separa " + (remota.bloques() - comun)
+                    + " bloques de la local y el máximo es " + maxBifurcacion);
+        }
+        List<Bloque> rama = descargar(par, comun, remota.bloques(), blockchainService.obtenerBloque(comun - 1));
+        if (!SecuenciadorBloques.esMejor(SecuenciadorBloques.trabajo(rama), remota.hash(),
+                blockchainService.calcularTrabajo(comun, local), hashLocal)) {
+            return 0;
+        }
+        esperar(blockchainService.replicar(comun, rama));
+        bifurcaciones.incrementAndGet();
+        System.out.println("🔀 [BLOCKCHAIN] Cambio a la rama de " + par + ": descarto " + (local - comun)
+                + " bloques locales desde el " + comun + " y recibo " + rama.size());
+        return rama.size();
+    }
+
+    /**
+     * @return estado de la replicación: pares, última sincronización y errores, y totales.
+     */
+    public Map<String, Object> getEstado() {
+        Map<String, Object> porPar = new LinkedHashMap<>();
+        for (String par : pares) {
+            porPar.put(par, estados.get(par).resumen());
+        }
+        Map<String, Object> estado = new LinkedHashMap<>();
+        estado.put("pares", porPar);
+        estado.put("bloquesRecibidos", bloquesRecibidos.get());
+        estado.put("bytesRecibidos", bytesRecibidos.get());
+        estado.put("bifurcaciones", bifurcaciones.get());
+        return estado;
+    }
+
+    /**
+     * @return true si el token recibido es el configurado. Sin token configurado no acepto
+     * ninguno: las rutas de replicación no piden sesión y darían la cadena entera a cualquiera.
+     */
+    public boolean tokenValido(String recibido) {
+        if (token.isBlank()) {
+            return false;
+        }
+        return recibido != null && MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+                recibido.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Mi cadena es un prefijo de la del par: traigo lo que falta por lotes y lo añado según
+     * llega, así no tengo en memoria más de un lote.
+     */
+    private int anadir(String par, int desde, int hasta) throws IOException, InterruptedException {
+        Bloque anterior = blockchainService.obtenerBloque(desde - 1);
+        int recibidos = 0;
+        for (int inicio = desde; inicio < hasta; ) {
+            List<Bloque> bloques = descargar(par, inicio, Math.min(hasta, inicio + lote), anterior);
+            esperar(blockchainService.replicar(inicio, bloques));
+            anterior = bloques.get(bloques.size() - 1);
+            inicio += bloques.size();
+            recibidos += bloques.size();
+        }
+        return recibidos;
+    }
+
+    /**
+     * Busco cuántos bloques iniciales comparto con el par. Como cada bloque enlaza con el
+     * anterior, si comparto el bloque k también comparto todos los de antes: basta con una
+     * bisección sobre el hash de cabeza de cada prefijo.
+     *
+     * @param maximo bloques que pueden ser comunes como mucho.
+     * @return número de bloques comunes (al menos 1, el génesis).
+     */
+    private int puntoComun(String par, int maximo) throws IOException, InterruptedException {
+        if (mismoPrefijo(par, maximo)) {
+            return maximo;
+        }
+        if (!mismoPrefijo(par, 1)) {
+            throw new IllegalStateException("El par " + par + " tiene otro bloque génesis");
+        }
+        // El prefijo de "bajo" bloques es común y el de "alto" no
+        int bajo = 1;
+        int alto = maximo;
+        while (alto - bajo > 1) {
+            int medio = (bajo + alto) >>> 1;
+            if (mismoPrefijo(par, medio)) {
+                bajo = medio;
+            } else {
+                alto = medio;
+            }
+        }
+        return bajo;
+    }
+
+    private boolean mismoPrefijo(String par, int bloques) throws IOException, InterruptedException {
+        return Arrays.equals(cabeza(par, bloques).hash(), blockchainService.obtenerHashCabeza(bloques));
+    }
+
+    /**
+     * Traigo los bloques [desde, hasta) del par, en los lotes que me quiera dar, y los
+     * compruebo uno a uno enlazándolos con el anterior.
+     */
+    private List<Bloque> descargar(String par, int desde, int hasta, Bloque anterior)
+            throws IOException, InterruptedException {
+        int dificultad = blockchainService.getDificultad();
+        List<Bloque> bloques = new ArrayList<>(hasta - desde);
+        while (desde + bloques.size() < hasta) {
+            int inicio = desde + bloques.size();
+            int fin = Math.min(hasta, inicio + lote);
+            byte[] cuerpo = pedir(par, "/blockchain/replicacion/bloques?desde=" + inicio + "&hasta=" + fin,
+                    HttpResponse.BodyHandlers.ofByteArray());
+            bytesRecibidos.addAndGet(cuerpo.length);
+            ByteBuffer buffer = ByteBuffer.wrap(cuerpo);
+            int antes = bloques.size();
+            while (buffer.remaining() >= 4) {
+                int longitud = buffer.getInt();
+                if (longitud <= 0 || longitud > buffer.remaining()) {
+                    throw new IOException("Lote de bloques truncado desde " + par);
+                }
+                Bloque bloque = FormatoBloque.decodificar(buffer, buffer.position(), longitud);
+                buffer.position(buffer.position() + longitud);
+                int esperado = desde + bloques.size();
+                if (bloque.getIndice() != esperado || !ValidadorCadena.esValido(bloque, anterior, dificultad)) {
+                    throw new IllegalStateException("El bloque " + esperado + " recibido de " + par + " no es válido");
+                }
+                bloques.add(bloque);
+                anterior = bloque;
+            }
+            if (bloques.size() == antes) {
+                throw new IOException("El par " + par + " no ha enviado los bloques desde el " + inicio);
+            }
+        }
+        bloquesRecibidos.addAndGet(bloques.size());
+        return bloques;
+    }
+
+    /**
+     * Pido la cabeza de la cadena del par o, si indico un número de bloques, la de ese prefijo.
+     */
+    private Cabeza cabeza(String par, Integer bloques) throws IOException, InterruptedException {
+        String ruta = "/blockchain/replicacion/cabeza" + (bloques != null ? "?bloques=" + bloques : "");
+        JsonNode json = objectMapper.readTree(pedir(par, ruta, HttpResponse.BodyHandlers.ofByteArray()));
+        return new Cabeza(json.path("bloques").asInt(), HexFormat.of().parseHex(json.path("hash").asText()));
+    }
+
+    private <T> T pedir(String par, String ruta, HttpResponse.BodyHandler<T> manejador)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder peticion = HttpRequest.newBuilder(URI.create(par + ruta)).timeout(timeout).GET();
+        if (!token.isBlank()) {
+            peticion.header(CABECERA_TOKEN, token);
+        }
+        HttpResponse<T> respuesta = cliente.send(peticion.build(), manejador);
+        if (respuesta.statusCode() != 200) {
+            throw new IOException("El par " + par + " ha respondido " + respuesta.statusCode() + " a " + ruta);
+        }
+        return respuesta.body();
+    }
+
+    private static void esperar(CompletableFuture<Integer> futuro) {
+        try {
+            futuro.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw e;
+        }
+    }
+
+    private record Cabeza(int bloques, byte[] hash) {
+    }
+
+    /**
+     * Lo último que ha pasado al sincronizar con un par.
+     */
+    private static final class EstadoPar {
+        private volatile Instant ultimaSincronizacion;
+        private volatile Instant ultimoError;
+        private volatile String error;
+        private final AtomicLong recibidos = new AtomicLong();
+        private final AtomicLong errores = new AtomicLong();
+
+        private void exito(int bloques) {
+            ultimaSincronizacion = Instant.now();
+            recibidos.addAndGet(bloques);
+            error = null;
+        }
+
+        private void error(Exception e) {
+            ultimoError = Instant.now();
+            error = e.getMessage();
+            errores.incrementAndGet();
+        }
+
+        private Map<String, Object> resumen() {
+            Map<String, Object> resumen = new LinkedHashMap<>();
+            resumen.put("ultimaSincronizacion", ultimaSincronizacion != null ? ultimaSincronizacion.toString() : null);
+            resumen.put("bloquesRecibidos", recibidos.get());
+            resumen.put("errores", errores.get());
+            resumen.put("ultimoError", ultimoError != null ? ultimoError.toString() : null);
+            resumen.put("error", error);
+            return resumen;
+        }
+    }
+}
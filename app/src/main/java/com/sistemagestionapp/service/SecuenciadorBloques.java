@@ -0,0 +1,446 @@
+package com.sistemagestionapp.service;
+
+import com.sistemagestionapp.model.Bloque;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Único escritor de la cadena de bloques.
+ *
+ * Los hilos de las peticiones no tocan la cadena: dejan sus entradas en una cola sin bloqueos
+ * y reciben un {@link EnvioBloque} con su bloque. Un solo hilo saca de la cola todo
+ * lo que haya (hasta un máximo por lote), asigna los índices, enlaza cada bloque con el
+ * hash del anterior, lo mina si hay prueba de trabajo ({@link MineroBloques}), los escribe
+ * en el {@link RegistroBloques} y completa los futuros.
+ *
+ * Así no hay carreras al leer "el último bloque" y, cuantas más peticiones llegan a la
+ * vez, más grandes son los lotes: el coste de despertar al hilo y de coger el cerrojo
+ * del registro se reparte entre todos los bloques del lote.
+ *
+ * Los bloques que llegan de otros nodos ({@link #replicar(int, List)}) también los escribe
+ * este hilo, antes que las peticiones pendientes. Si vienen de otra rama, la regla para
+ * quedarse con una es la misma en todos los nodos ({@link #esMejor}): gana la de más trabajo.
+ * De los bloques locales que se descartan vuelvo a encolar solo las entradas que no están
+ * ya en la rama ganadora, y aviso a quien las envió con {@link EnvioBloque#getReenvio()}.
+ *
+ * Quien necesite ver la cadena quieta (el punto de control) puede ejecutar una tarea en este
+ * hilo con {@link #enSecuencia(Callable)}: mientras dura no se escribe ni se trunca nada.
+ */
+public class SecuenciadorBloques implements Closeable {
+
+    /** Bloques más recientes cuyo envío recuerdo para avisar si se descartan. */
+    static final int RECIENTES = 4096;
+
+    private final RegistroBloques registro;
+    private final int loteMaximo;
+    private final MineroBloques minero;
+    private final Consumer<Bloque> alEscribir;
+    private final IntConsumer alTruncar;
+
+    private final ConcurrentLinkedQueue<Peticion> cola = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Replica> replicas = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Tarea<?>> tareas = new ConcurrentLinkedQueue<>();
+    private final Thread hilo;
+    private volatile boolean activo = true;
+    private volatile boolean dormido;
+
+    /** Hash del último bloque escrito; solo lo usa el hilo del secuenciador. */
+    private byte[] hashCabeza;
+    /** Envíos de los últimos bloques, por índice módulo {@link #RECIENTES}; solo los usa el hilo del secuenciador. */
+    private final EnvioBloque[] recientes = new EnvioBloque[RECIENTES];
+
+    private final LongAdder bloques = new LongAdder();
+    private final LongAdder lotes = new LongAdder();
+    private final LongAdder fallidos = new LongAdder();
+    private final LongAdder replicados = new LongAdder();
+    private final LongAdder descartados = new LongAdder();
+
+    /**
+     * @param registro registro ya abierto y con al menos el bloque génesis.
+     * @param loteMaximo bloques que escribo como mucho de una vez.
+     * @param minero minero con el que saco la prueba de trabajo de cada bloque.
+     * @param alEscribir lo llamo desde el hilo del secuenciador con cada bloque ya escrito,
+     *                   en orden y antes de completar su futuro.
+     * @param alTruncar lo llamo desde el hilo del secuenciador con los bloques que quedan
+     *                  cuando descarto el final de la cadena por la rama de otro nodo.
+     */
+    public SecuenciadorBloques(RegistroBloques registro, int loteMaximo, MineroBloques minero,
+                               Consumer<Bloque> alEscribir, IntConsumer alTruncar) {
+        if (registro.getTotal() == 0) {
+            throw new IllegalStateException("El registro debe tener al menos el bloque génesis");
+        }
+        this.registro = registro;
+        this.loteMaximo = Math.max(1, loteMaximo);
+        this.minero = minero;
+        this.alEscribir = alEscribir;
+        this.alTruncar = alTruncar;
+        this.hashCabeza = registro.leer(registro.getTotal() - 1).getHashBytes();
+        this.hilo = new Thread(this::ejecutar, "blockchain-secuenciador");
+        this.hilo.setDaemon(true);
+        this.hilo.start();
+    }
+
+    /**
+     * Encolo unos datos para un bloque nuevo con una sola entrada.
+     *
+     * @return futuro que se completa con el bloque ya escrito en el registro.
+     */
+    public EnvioBloque enviar(String datos) {
+        if (datos == null) {
+            throw new IllegalArgumentException("Los datos del bloque no pueden ser nulos");
+        }
+        return enviar(List.of(datos));
+    }
+
+    /**
+     * Encolo un lote de entradas que irán juntas en un bloque nuevo.
+     *
+     * @param entradas entradas del bloque, al menos una y sin nulos.
+     * @return futuro que se completa con el bloque ya escrito en el registro.
+     */
+    public EnvioBloque enviar(List<String> entradas) {
+        if (entradas == null || entradas.isEmpty()) {
+            throw new IllegalArgumentException("Un bloque debe tener al menos una entrada");
+        }
+        List<String> copia = List.copyOf(entradas);
+        EnvioBloque futuro = new EnvioBloque();
+        encolar(cola, new Peticion(copia, futuro), futuro);
+        return futuro;
+    }
+
+    /**
+     * Encolo bloques recibidos de otro nodo. Tienen que venir ya comprobados (hash, raíz de
+     * Merkle y enlaces entre ellos); aquí solo compruebo que enlazan con la cadena local y
+     * que la rama resultante es mejor que la actual.
+     *
+     * @param desde índice del primer bloque; si es menor que el total, descarto la cadena
+     *              local a partir de ahí.
+     * @param bloques bloques consecutivos a partir de "desde".
+     * @return futuro que se completa con el total de bloques tras escribirlos, o falla con
+     * {@link IllegalStateException} si no enlazan o la rama no es mejor.
+     */
+    public CompletableFuture<Integer> replicar(int desde, List<Bloque> bloques) {
+        if (bloques == null || bloques.isEmpty()) {
+            throw new IllegalArgumentException("Hay que replicar al menos un bloque");
+        }
+        CompletableFuture<Integer> futuro = new CompletableFuture<>();
+        encolar(replicas, new Replica(desde, List.copyOf(bloques), futuro), futuro);
+        return futuro;
+    }
+
+    /**
+     * Ejecuto una tarea en el hilo del secuenciador, entre dos lotes: mientras dura no se
+     * escribe ni se trunca ningún bloque. Tiene que ser corta, porque para las escrituras.
+     *
+     * @return futuro con el resultado de la tarea.
+     */
+    public <T> CompletableFuture<T> enSecuencia(Callable<T> tarea) {
+        CompletableFuture<T> futuro = new CompletableFuture<>();
+        encolar(tareas, new Tarea<>(tarea, futuro), futuro);
+        return futuro;
+    }
+
+    /**
+     * Dejo algo en una de las colas y despierto al hilo. Si me paran justo entre que miro si
+     * estoy activo y lo encolo, puede que el hilo y {@link #close()} ya hayan vaciado la cola:
+     * por eso vuelvo a mirar después de encolar y, si ya no estoy activo y lo saco yo de la
+     * cola, lo fallo aquí. Si no lo saco yo, es que lo ha cogido el hilo o close(), y ellos lo
+     * completan.
+     */
+    private <T> void encolar(Queue<T> destino, T elemento, CompletableFuture<?> futuro) {
+        if (!activo) {
+            futuro.completeExceptionally(new IllegalStateException("El secuenciador de bloques está parado"));
+            return;
+        }
+        destino.offer(elemento);
+        if (!activo && destino.remove(elemento)) {
+            futuro.completeExceptionally(new IllegalStateException("El secuenciador de bloques está parado"));
+            return;
+        }
+        if (dormido) {
+            LockSupport.unpark(hilo);
+        }
+    }
+
+    /**
+     * Regla para elegir entre dos ramas que salen del mismo bloque, igual en todos los nodos:
+     * gana la de más trabajo ({@link #trabajo}) y, si empatan, la de hash de cabeza menor
+     * (comparado como número sin signo). Con la misma dificultad en todos los bloques es
+     * quedarse con la más larga; con dificultades distintas, unos pocos bloques difíciles
+     * pesan más que muchos fáciles.
+     *
+     * @return true si la rama (trabajo, hash) es mejor que la (otroTrabajo, otroHash).
+     */
+    public static boolean esMejor(BigInteger trabajo, byte[] hash, BigInteger otroTrabajo, byte[] otroHash) {
+        int comparacion = trabajo.compareTo(otroTrabajo);
+        return comparacion > 0 || (comparacion == 0 && Arrays.compareUnsigned(hash, otroHash) < 0);
+    }
+
+    /**
+     * @return trabajo de unos bloques: la suma de 2^dificultad de cada uno, los hashes que
+     * hay que probar de media para minarlos.
+     */
+    public static BigInteger trabajo(Collection<Bloque> bloques) {
+        BigInteger total = BigInteger.ZERO;
+        for (Bloque bloque : bloques) {
+            total = total.add(BigInteger.ONE.shiftLeft(bloque.getDificultad()));
+        }
+        return total;
+    }
+
+    public long getBloques() {
+        return bloques.sum();
+    }
+
+    public long getLotes() {
+        return lotes.sum();
+    }
+
+    public long getFallidos() {
+        return fallidos.sum();
+    }
+
+    public int getEnCola() {
+        return cola.size();
+    }
+
+    public long getReplicados() {
+        return replicados.sum();
+    }
+
+    /**
+     * @return bloques locales descartados al cambiar a la rama de otro nodo.
+     */
+    public long getDescartados() {
+        return descartados.sum();
+    }
+
+    /**
+     * Dejo de aceptar datos, escribo lo que ya estaba en la cola y paro el hilo.
+     */
+    @Override
+    public void close() {
+        activo = false;
+        LockSupport.unpark(hilo);
+        try {
+            hilo.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Peticion resto;
+        while ((resto = cola.poll()) != null) {
+            resto.futuro.completeExceptionally(new IllegalStateException("El secuenciador de bloques está parado"));
+        }
+        Replica replica;
+        while ((replica = replicas.poll()) != null) {
+            replica.futuro.completeExceptionally(new IllegalStateException("El secuenciador de bloques está parado"));
+        }
+        Tarea<?> tarea;
+        while ((tarea = tareas.poll()) != null) {
+            tarea.futuro.completeExceptionally(new IllegalStateException("El secuenciador de bloques está parado"));
+        }
+    }
+
+    private void ejecutar() {
+        List<Peticion> lote = new ArrayList<>(loteMaximo);
+        while (activo || !cola.isEmpty()) {
+            Tarea<?> tarea;
+            while ((tarea = tareas.poll()) != null) {
+                tarea.ejecutar();
+            }
+            Replica replica;
+            while ((replica = replicas.poll()) != null) {
+                aplicar(replica);
+            }
+            Peticion peticion;
+            while (lote.size() < loteMaximo && (peticion = cola.poll()) != null) {
+                lote.add(peticion);
+            }
+            if (lote.isEmpty()) {
+                esperar();
+                continue;
+            }
+            escribir(lote);
+            lote.clear();
+        }
+    }
+
+    /**
+     * Duermo hasta que alguien encole algo. Vuelvo a mirar la cola después de marcarme
+     * dormido para no perder un aviso que llegue justo entre medias.
+     */
+    private void esperar() {
+        dormido = true;
+        if (cola.isEmpty() && replicas.isEmpty() && tareas.isEmpty() && activo) {
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        dormido = false;
+    }
+
+    private void escribir(List<Peticion> lote) {
+        List<Bloque> escritos = new ArrayList<>(lote.size());
+        for (Peticion peticion : lote) {
+            try {
+                Bloque bloque = minero.minar(
+                        new Bloque(registro.getTotal(), peticion.entradas, hashCabeza, minero.getDificultad()));
+                registro.anadir(bloque);
+                hashCabeza = bloque.getHashBytes();
+                recientes[bloque.getIndice() % RECIENTES] = peticion.futuro;
+                alEscribir.accept(bloque);
+                escritos.add(bloque);
+            } catch (Exception e) {
+                fallidos.increment();
+                escritos.add(null);
+                peticion.futuro.completeExceptionally(e);
+            }
+        }
+        lotes.increment();
+        // Completo los futuros cuando todo el lote está en el registro
+        for (int i = 0; i < lote.size(); i++) {
+            Bloque bloque = escritos.get(i);
+            if (bloque != null) {
+                bloques.increment();
+                lote.get(i).futuro.complete(bloque);
+            }
+        }
+    }
+
+    private void aplicar(Replica replica) {
+        try {
+            replica.futuro.complete(escribirReplica(replica.desde, replica.bloques));
+        } catch (Exception e) {
+            replica.futuro.completeExceptionally(e);
+        }
+    }
+
+    private int escribirReplica(int desde, List<Bloque> bloques) throws IOException {
+        int total = registro.getTotal();
+        if (desde < 1 || desde > total || bloques.get(0).getIndice() != desde
+                || !bloques.get(0).enlazaCon(registro.leer(desde - 1))) {
+            throw new IllegalStateException("Los bloques recibidos no enlazan con la cadena local en el bloque " + desde);
+        }
+        // Las dos ramas comparten todo lo anterior a "desde": basta con comparar lo que cambia
+        List<Bloque> locales = new ArrayList<>(total - desde);
+        List<EnvioBloque> envios = new ArrayList<>(total - desde);
+        for (int i = desde; i < total; i++) {
+            Bloque local = registro.leer(i);
+            EnvioBloque envio = recientes[i % RECIENTES];
+            Bloque escrito = envio != null ? envio.getNow(null) : null;
+            locales.add(local);
+            envios.add(escrito != null && Arrays.equals(escrito.getHashBytes(), local.getHashBytes()) ? envio : null);
+        }
+        Bloque cabeza = bloques.get(bloques.size() - 1);
+        if (!esMejor(trabajo(bloques), cabeza.getHashBytes(), trabajo(locales), hashCabeza)) {
+            throw new IllegalStateException("La rama recibida no es mejor que la local");
+        }
+
+        if (!locales.isEmpty()) {
+            registro.truncar(desde);
+            hashCabeza = registro.leer(desde - 1).getHashBytes();
+            alTruncar.accept(desde);
+            descartados.add(locales.size());
+        }
+        int escritos = 0;
+        try {
+            for (Bloque bloque : bloques) {
+                registro.anadir(bloque);
+                hashCabeza = bloque.getHashBytes();
+                recientes[bloque.getIndice() % RECIENTES] = null;
+                alEscribir.accept(bloque);
+                replicados.increment();
+                escritos++;
+            }
+        } finally {
+            reencolar(locales, envios, bloques.subList(0, escritos));
+        }
+        return registro.getTotal();
+    }
+
+    /**
+     * Vuelvo a encolar, detrás de la rama nueva, las entradas de los bloques descartados que
+     * no están en ella (contando repetidas: si una entrada estaba dos veces y la rama nueva la
+     * tiene una, se reencola una). Aviso a quien envió cada bloque descartado con el envío
+     * que lleva ahora sus entradas.
+     *
+     * @param envios envío de cada bloque descartado, o null si no lo recuerdo.
+     */
+    private void reencolar(List<Bloque> descartadosLocales, List<EnvioBloque> envios, List<Bloque> nuevos) {
+        Map<String, Integer> pendientes = new HashMap<>();
+        Map<String, Bloque> donde = new HashMap<>();
+        for (Bloque nuevo : nuevos) {
+            for (String entrada : nuevo.getEntradas()) {
+                pendientes.merge(entrada, 1, Integer::sum);
+                donde.putIfAbsent(entrada, nuevo);
+            }
+        }
+        for (int d = 0; d < descartadosLocales.size(); d++) {
+            Bloque descartado = descartadosLocales.get(d);
+            List<String> restantes = new ArrayList<>();
+            Bloque yaIncluido = null;
+            for (String entrada : descartado.getEntradas()) {
+                Integer veces = pendientes.get(entrada);
+                if (veces == null) {
+                    restantes.add(entrada);
+                    continue;
+                }
+                if (veces == 1) {
+                    pendientes.remove(entrada);
+                } else {
+                    pendientes.put(entrada, veces - 1);
+                }
+                if (yaIncluido == null) {
+                    yaIncluido = donde.get(entrada);
+                }
+            }
+
+            EnvioBloque reenvio;
+            if (restantes.isEmpty()) {
+                reenvio = EnvioBloque.escrito(yaIncluido);
+                int posicion = yaIncluido.getIndice() % RECIENTES;
+                if (recientes[posicion] == null) {
+                    recientes[posicion] = reenvio;
+                }
+            } else {
+                reenvio = new EnvioBloque();
+                cola.offer(new Peticion(restantes, reenvio));
+            }
+            if (envios.get(d) != null) {
+                envios.get(d).descartar(reenvio);
+            }
+        }
+    }
+
+    private record Peticion(List<String> entradas, EnvioBloque futuro) {
+    }
+
+    private record Replica(int desde, List<Bloque> bloques, CompletableFuture<Integer> futuro) {
+    }
+
+    private record Tarea<T>(Callable<T> tarea, CompletableFuture<T> futuro) {
+
+        private void ejecutar() {
+            try {
+                futuro.complete(tarea.call());
+            } catch (Exception e) {
+                futuro.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.sistemagestionapp.service;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Trabajo de generación de un ZIP de proyecto que se ejecuta en segundo plano.
+ *
+ * Los campos de progreso los escribe el hilo que genera el ZIP y los leen las peticiones
+ * de consulta, por eso son volatile.
+ */
+public class TrabajoZip {
+
+    private final String id;
+    private final Long aplicacionId;
+    private final String propietario;
+    private final Instant creado = Instant.now();
+
+    private volatile EstadoTrabajoZip estado = EstadoTrabajoZip.EN_COLA;
+    private volatile int entradasEscritas;
+    private volatile int totalEntradas;
+    private volatile long bytesEscritos;
+    private volatile long totalBytes;
+    private volatile String mensajeError;
+    private volatile Instant terminado;
+
+    private volatile ProyectoZipPreparado zip;
+    private volatile ArtefactoZip artefacto;
+    private volatile EspacioTrabajo espacio;
+    private volatile Path ficheroTemporal;
+
+    TrabajoZip(String id, Long aplicacionId, String propietario) {
+        this.id = id;
+        this.aplicacionId = aplicacionId;
+        this.propietario = propietario;
+    }
+
+    /**
+     * Resumen del estado que mando por STOMP y devuelvo en la API.
+     */
+    public Map<String, Object> resumen() {
+        Map<String, Object> resumen = new LinkedHashMap<>();
+        resumen.put("id", id);
+        resumen.put("aplicacionId", aplicacionId);
+        resumen.put("estado", estado.name());
+        resumen.put("entradasEscritas", entradasEscritas);
+        resumen.put("totalEntradas", totalEntradas);
+        resumen.put("bytesEscritos", bytesEscritos);
+        resumen.put("totalBytes", totalBytes);
+        if (mensajeError != null) {
+            resumen.put("error", mensajeError);
+        }
+        return resumen;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Long getAplicacionId() {
+        return aplicacionId;
+    }
+
+    public String getPropietario() {
+        return propietario;
+    }
+
+    public Instant getCreado() {
+        return creado;
+    }
+
+    public EstadoTrabajoZip getEstado() {
+        return estado;
+    }
+
+    public Instant getTerminado() {
+        return terminado;
+    }
+
+    public ProyectoZipPreparado getZip() {
+        return zip;
+    }
+
+    public ArtefactoZip getArtefacto() {
+        return artefacto;
+    }
+
+    public EspacioTrabajo getEspacio() {
+        return espacio;
+    }
+
+    public Path getFicheroTemporal() {
+        return ficheroTemporal;
+    }
+
+    void empezar(ProyectoZipPreparado zip) {
+        this.zip = zip;
+        this.totalEntradas = zip.getEntradas().size();
+        this.totalBytes = zip.getTamano();
+        this.estado = EstadoTrabajoZip.EN_CURSO;
+    }
+
+    void progreso(int entradasEscritas, long bytesEscritos) {
+        this.entradasEscritas = entradasEscritas;
+        this.bytesEscritos = bytesEscritos;
+    }
+
+    void completar(ArtefactoZip artefacto, EspacioTrabajo espacio, Path ficheroTemporal) {
+        this.artefacto = artefacto;
+        this.espacio = espacio;
+        this.ficheroTemporal = ficheroTemporal;
+        this.entradasEscritas = totalEntradas;
+        this.bytesEscritos = totalBytes;
+        this.terminado = Instant.now();
+        this.estado = EstadoTrabajoZip.COMPLETADO;
+    }
+
+    void fallar(String mensajeError) {
+        this.mensajeError = mensajeError;
+        this.terminado = Instant.now();
+        this.estado = EstadoTrabajoZip.ERROR;
+    }
+}
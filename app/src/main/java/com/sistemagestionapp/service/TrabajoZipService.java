@@ -0,0 +1,207 @@
+package com.sistemagestionapp.service;
+
+import com.sistemagestionapp.model.Aplicacion;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Servicio que genera los ZIP de proyecto en segundo plano.
+ *
+ * - Al encolar un trabajo devuelvo su id al momento, sin bloquear el hilo de Tomcat.
+ * - Los trabajos se ejecutan en un pool acotado (hilos y tamaño de cola configurables);
+ *   si la cola está llena rechazo el trabajo en lugar de acumularlo.
+ * - El progreso lo publico por STOMP en /topic/zip/{id}, con el broker de {@code WebSocketConfig}.
+ * - El ZIP terminado se descarga después con el id del trabajo.
+ */
+@Service
+public class TrabajoZipService {
+
+    public static final String DESTINO_PROGRESO = "/topic/zip/";
+
+    /** Como mucho mando un mensaje de progreso cada 100 ms por trabajo. */
+    private static final long INTERVALO_PROGRESO_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final ProyectoZipService proyectoZipService;
+    private final CacheZipProyectoService cacheZipProyectoService;
+    private final EspacioTemporalService espacioTemporalService;
+    private final SimpMessagingTemplate mensajeria;
+    private final ThreadPoolExecutor executor;
+    private final Duration retencion;
+
+    private final Map<String, TrabajoZip> trabajos = new ConcurrentHashMap<>();
+
+    public TrabajoZipService(ProyectoZipService proyectoZipService,
+                             CacheZipProyectoService cacheZipProyectoService,
+                             EspacioTemporalService espacioTemporalService,
+                             SimpMessagingTemplate mensajeria,
+                             @Value("${zip.trabajos.concurrencia:2}") int concurrencia,
+                             @Value("${zip.trabajos.cola:50}") int cola,
+                             @Value("${zip.trabajos.retencion-minutos:30}") long retencionMinutos) {
+        this.proyectoZipService = proyectoZipService;
+        this.cacheZipProyectoService = cacheZipProyectoService;
+        this.espacioTemporalService = espacioTemporalService;
+        this.mensajeria = mensajeria;
+        this.retencion = Duration.ofMinutes(retencionMinutos);
+
+        AtomicInteger contador = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(concurrencia, concurrencia, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(cola),
+                r -> {
+                    Thread hilo = new Thread(r, "zip-trabajo-" + contador.incrementAndGet());
+                    hilo.setDaemon(true);
+                    return hilo;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Encolo la generación del ZIP de una aplicación.
+     *
+     * @param aplicacion aplicación de la que genero el proyecto.
+     * @param propietario correo del usuario que lo pide (solo él podrá descargarlo).
+     * @return trabajo creado, todavía en cola.
+     * @throws IllegalStateException si la cola de trabajos está llena.
+     */
+    public TrabajoZip encolar(Aplicacion aplicacion, String propietario) {
+        purgarTerminados();
+
+        TrabajoZip trabajo = new TrabajoZip(UUID.randomUUID().toString(), aplicacion.getId(), propietario);
+        trabajos.put(trabajo.getId(), trabajo);
+        try {
+            executor.execute(() -> ejecutar(trabajo, aplicacion));
+        } catch (RejectedExecutionException e) {
+            trabajos.remove(trabajo.getId());
+            throw new IllegalStateException("La cola de generación de ZIP está llena, inténtalo más tarde");
+        }
+        return trabajo;
+    }
+
+    /**
+     * Devuelvo un trabajo del usuario indicado.
+     *
+     * @throws IllegalArgumentException si no existe o es de otro usuario.
+     */
+    public TrabajoZip obtener(String id, String propietario) {
+        TrabajoZip trabajo = trabajos.get(id);
+        if (trabajo == null || !trabajo.getPropietario().equals(propietario)) {
+            throw new IllegalArgumentException("Trabajo de ZIP no encontrado: " + id);
+        }
+        return trabajo;
+    }
+
+    /**
+     * Envío el ZIP de un trabajo completado al stream. No cierro el stream.
+     */
+    public void enviarResultado(TrabajoZip trabajo, OutputStream salida) throws IOException {
+        if (trabajo.getEstado() != EstadoTrabajoZip.COMPLETADO) {
+            throw new IllegalStateException("El trabajo " + trabajo.getId() + " todavía no ha terminado");
+        }
+        if (trabajo.getArtefacto() != null) {
+            if (!cacheZipProyectoService.enviar(trabajo.getArtefacto(), salida)) {
+                trabajo.getZip().escribir(salida);
+            }
+        } else {
+            // Mientras copio tengo el espacio adquirido: si se purga o vence, se borra al terminar
+            EspacioTrabajo espacio = trabajo.getEspacio();
+            if (!espacio.adquirir()) {
+                throw new IllegalStateException("El ZIP del trabajo " + trabajo.getId() + " ya se ha borrado");
+            }
+            try {
+                Files.copy(trabajo.getFicheroTemporal(), salida);
+            } finally {
+                espacio.soltar();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        executor.shutdownNow();
+    }
+
+    private void ejecutar(TrabajoZip trabajo, Aplicacion aplicacion) {
+        try {
+            ProyectoZipPreparado zip = proyectoZipService.prepararProyecto(aplicacion);
+            trabajo.empezar(zip);
+            publicar(trabajo);
+
+            long[] ultimoAviso = {System.nanoTime()};
+            ProgresoZip progreso = (entradas, totalEntradas, bytes, totalBytes) -> {
+                trabajo.progreso(entradas, bytes);
+                long ahora = System.nanoTime();
+                if (ahora - ultimoAviso[0] >= INTERVALO_PROGRESO_NANOS) {
+                    ultimoAviso[0] = ahora;
+                    publicar(trabajo);
+                }
+            };
+
+            if (cacheZipProyectoService.estaHabilitada()) {
+                trabajo.completar(cacheZipProyectoService.obtener(zip, progreso), null, null);
+            } else {
+                // El préstamo dura lo mismo que la retención (desde que termina): si nadie purga el trabajo, lo borra el recolector
+                EspacioTrabajo espacio = espacioTemporalService.reservar("trabajo-zip-", zip.getTamano(), retencion);
+                Path temporal = espacio.getDirectorio().resolve(zip.getNombreArchivo());
+                try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(temporal))) {
+                    zip.escribir(os, progreso);
+                } catch (IOException | RuntimeException e) {
+                    espacio.close();
+                    throw e;
+                }
+                espacio.renovar(retencion);
+                trabajo.completar(null, espacio, temporal);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("❌ [ZIP-TRABAJO] Error en el trabajo " + trabajo.getId() + ": " + e.getMessage());
+            trabajo.fallar(e.getMessage());
+        }
+        publicar(trabajo);
+    }
+
+    private void publicar(TrabajoZip trabajo) {
+        mensajeria.convertAndSend(DESTINO_PROGRESO + trabajo.getId(), trabajo.resumen());
+    }
+
+    /**
+     * Olvido los trabajos terminados hace más tiempo que la retención configurada. Lo hago
+     * también periódicamente para que un nodo sin trabajos nuevos no los guarde para siempre.
+     */
+    @Scheduled(fixedDelayString = "${zip.trabajos.purga-ms:60000}")
+    public void purgarTerminados() {
+        Instant limite = Instant.now().minus(retencion);
+        int purgados = 0;
+        Iterator<TrabajoZip> it = trabajos.values().iterator();
+        while (it.hasNext()) {
+            TrabajoZip trabajo = it.next();
+            if (trabajo.getTerminado() != null && trabajo.getTerminado().isBefore(limite)) {
+                it.remove();
+                purgados++;
+                if (trabajo.getEspacio() != null) {
+                    trabajo.getEspacio().close();
+                }
+            }
+        }
+        if (purgados > 0) {
+            System.out.println("🧹 [ZIP-TRABAJO] Purgados " + purgados + " trabajos terminados");
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.sistemagestionapp.service;
+
+import com.sistemagestionapp.model.Bloque;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Valida la cadena de bloques sin recalcular todos los hashes en cada petición.
+ *
+ * Recuerdo hasta qué bloque tengo la cadena verificada (la marca de agua): en la ruta de
+ * la petición solo compruebo los bloques añadidos desde entonces. Como los bloques ya
+ * escritos pueden alterarse en disco, la validación completa se sigue haciendo, pero en
+ * segundo plano; su resultado es el que manda (si encuentra un bloque roto, la cadena
+ * deja de ser válida aunque la marca de agua estuviera más adelante).
+ *
+ * El génesis no se comprueba contra su hash, igual que en la validación original: solo
+ * se comprueba que el bloque 1 enlaza con él.
+ *
+ * Cada bloque declara su dificultad y su hash se comprueba contra ella, así que además exijo
+ * que no sea menor que la configurada ({@code blockchain.minado.dificultad}): si no, bastaría
+ * con reescribir un bloque con dificultad 0 para saltarse la prueba de trabajo.
+ */
+public class ValidadorCadena {
+
+    private final RegistroBloques registro;
+    private final VerificadorParaleloCadena verificador;
+    private final int dificultadMinima;
+
+    /** Bloques verificados desde el principio: [0, verificados) es válido. */
+    private int verificados;
+    private Bloque ultimoVerificado;
+    private volatile int primerRoto = -1;
+    /** Veces que se ha truncado la cadena: una validación completa de antes ya no vale. */
+    private int truncados;
+
+    private volatile long ultimaIncrementalBloques;
+    private volatile long ultimaIncrementalNanos;
+    private volatile Instant ultimaCompleta;
+    private volatile long ultimaCompletaBloques;
+    private volatile long ultimaCompletaNanos;
+    private final AtomicLong validacionesIncrementales = new AtomicLong();
+    private final AtomicLong validacionesCompletas = new AtomicLong();
+
+    /**
+     * @param dificultadMinima bits a cero que exijo, como mínimo, a cada bloque salvo el génesis.
+     */
+    public ValidadorCadena(RegistroBloques registro, VerificadorParaleloCadena verificador, int dificultadMinima) {
+        this.registro = registro;
+        this.verificador = verificador;
+        this.dificultadMinima = dificultadMinima;
+    }
+
+    /**
+     * Compruebo solo los bloques que hay por encima de la marca de agua.
+     *
+     * @return true si la cadena es válida hasta el último bloque publicado.
+     */
+    public synchronized boolean validarIncremental() {
+        if (primerRoto >= 0) {
+            return false;
+        }
+        long inicio = System.nanoTime();
+        int total = registro.getTotal();
+        int desde = verificados;
+        Bloque anterior = ultimoVerificado;
+        for (int i = verificados; i < total; i++) {
+            Bloque actual = registro.leer(i);
+            if (i > 0 && !esValido(actual, anterior, dificultadMinima)) {
+                primerRoto = i;
+                break;
+            }
+            anterior = actual;
+            verificados = i + 1;
+            ultimoVerificado = actual;
+        }
+        ultimaIncrementalBloques = verificados - desde;
+        ultimaIncrementalNanos = System.nanoTime() - inicio;
+        validacionesIncrementales.incrementAndGet();
+        return primerRoto < 0;
+    }
+
+    /**
+     * Pongo la marca de agua en un punto de control: sus bloques ya se verificaron cuando
+     * se guardó, así que al arrancar solo compruebo los de detrás. La validación completa
+     * en segundo plano sigue revisando la cadena entera.
+     *
+     * @param bloques bloques que recoge el punto de control.
+     * @param ultimo último de esos bloques.
+     */
+    public synchronized void partirDe(int bloques, Bloque ultimo) {
+        if (verificados == 0 && primerRoto < 0) {
+            verificados = bloques;
+            ultimoVerificado = ultimo;
+        }
+    }
+
+    /**
+     * Bajo la marca de agua cuando la cadena se trunca: los bloques que vengan a partir de
+     * ahí son nuevos y hay que comprobarlos.
+     *
+     * @param nuevoTotal bloques que se conservan.
+     */
+    public synchronized void truncar(int nuevoTotal) {
+        if (verificados > nuevoTotal) {
+            verificados = nuevoTotal;
+            ultimoVerificado = nuevoTotal > 0 ? registro.leer(nuevoTotal - 1) : null;
+        }
+        if (primerRoto >= nuevoTotal) {
+            primerRoto = -1;
+        }
+        truncados++;
+    }
+
+    /**
+     * Recalculo la cadena entera, desde el génesis, repartiéndola entre los hilos del
+     * {@link VerificadorParaleloCadena}. No bloqueo la ruta de las peticiones mientras
+     * tanto: solo cojo el cerrojo para dejar el resultado.
+     *
+     * @return índice del primer bloque roto, o -1 si la cadena es válida.
+     */
+    public int validarCompleta() {
+        long inicio = System.nanoTime();
+        int generacion;
+        synchronized (this) {
+            generacion = truncados;
+        }
+        int total = registro.getTotal();
+        int roto = verificador.verificar(total);
+        long nanos = System.nanoTime() - inicio;
+
+        synchronized (this) {
+            if (generacion != truncados) {
+                // La cadena ha cambiado de rama mientras tanto: la siguiente la revisará
+                return -1;
+            }
+            primerRoto = roto;
+            if (roto >= 0) {
+                verificados = roto;
+                ultimoVerificado = roto > 0 ? registro.leer(roto - 1) : null;
+            } else if (total > verificados) {
+                verificados = total;
+                ultimoVerificado = registro.leer(total - 1);
+            }
+        }
+        ultimaCompleta = Instant.now();
+        ultimaCompletaBloques = total;
+        ultimaCompletaNanos = nanos;
+        validacionesCompletas.incrementAndGet();
+        return roto;
+    }
+
+    /**
+     * @return true si el bloque declara al menos la dificultad mínima y tiene el hash que le
+     * corresponde.
+     */
+    static boolean tieneHashValido(Bloque bloque, int dificultadMinima) {
+        return bloque.getDificultad() >= dificultadMinima && bloque.tieneHashValido();
+    }
+
+    /**
+     * @return true si el bloque tiene un hash válido con la dificultad mínima y enlaza con el
+     * anterior.
+     */
+    static boolean esValido(Bloque actual, Bloque anterior, int dificultadMinima) {
+        return tieneHashValido(actual, dificultadMinima) && actual.enlazaCon(anterior);
+    }
+
+    public int getPrimerRoto() {
+        return primerRoto;
+    }
+
+    public synchronized int getVerificados() {
+        return verificados;
+    }
+
+    /**
+     * @return estado de la validación y lo que tardaron la última incremental y la última completa.
+     */
+    public Map<String, Object> getEstado() {
+        Map<String, Object> incremental = new LinkedHashMap<>();
+        incremental.put("ejecuciones", validacionesIncrementales.get());
+        incremental.put("ultimaBloques", ultimaIncrementalBloques);
+        incremental.put("ultimaMicrosegundos", ultimaIncrementalNanos / 1_000);
+
+        Map<String, Object> completa = new LinkedHashMap<>();
+        completa.put("ejecuciones", validacionesCompletas.get());
+        completa.put("ultima", ultimaCompleta != null ? ultimaCompleta.toString() : null);
+        completa.put("ultimaBloques", ultimaCompletaBloques);
+        completa.put("ultimaMilisegundos", ultimaCompletaNanos / 1_000_000);
+        completa.put("hilos", verificador.getParalelismo());
+
+        Map<String, Object> estado = new LinkedHashMap<>();
+        estado.put("valida", primerRoto < 0);
+        estado.put("primerBloqueRoto", primerRoto >= 0 ? primerRoto : null);
+        estado.put("bloques", registro.getTotal());
+        estado.put("verificados", getVerificados());
+        estado.put("incremental", incremental);
+        estado.put("completa", completa);
+        return estado;
+    }
+}
@@ -0,0 +1,47 @@
+package com.sistemagestionapp.service;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Stream que solo deja pasar una ventana de bytes [inicio, inicio + longitud) de lo que
+ * se escribe en él y descarta el resto. Lo uso para servir un rango de un ZIP que
+ * genero desde memoria.
+ */
+class VentanaOutputStream extends FilterOutputStream {
+
+    private final long inicio;
+    private final long fin;
+    private long posicion;
+
+    VentanaOutputStream(OutputStream salida, long inicio, long longitud) {
+        super(salida);
+        this.inicio = inicio;
+        this.fin = inicio + longitud;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (posicion >= inicio && posicion < fin) {
+            out.write(b);
+        }
+        posicion++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        long desde = Math.max(posicion, inicio);
+        long hasta = Math.min(posicion + len, fin);
+        if (desde < hasta) {
+            out.write(b, off + (int) (desde - posicion), (int) (hasta - desde));
+        }
+        posicion += len;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // No cierro el stream de debajo: es de quien me ha creado
+        flush();
+    }
+}
@@ -0,0 +1,151 @@
+package com.sistemagestionapp.service;
+
+import com.sistemagestionapp.model.Bloque;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Verificación completa de la cadena repartida en un ForkJoinPool.
+ *
+ * Divido la cadena en tramos de bloques consecutivos. Cada tramo recalcula el hash de sus
+ * bloques y comprueba los enlaces de dentro del tramo; además devuelve el hash anterior de
+ * su primer bloque y el hash del último. Al juntar dos tramos vecinos compruebo la frontera
+ * (el primero del derecho debe apuntar al último del izquierdo), así que no se pierde
+ * ningún enlace.
+ *
+ * El resultado es el índice del primer bloque roto, el mismo que daría el recorrido en
+ * serie. En cuanto un tramo encuentra uno, los tramos que empiezan más adelante ya no
+ * hacen falta y no se calculan.
+ */
+public class VerificadorParaleloCadena {
+
+    private final RegistroBloques registro;
+    private final ForkJoinPool pool;
+    private final int tamanoTramo;
+    private final int dificultadMinima;
+
+    /**
+     * @param registro registro del que leo los bloques.
+     * @param paralelismo hilos del pool (0 = núcleos disponibles).
+     * @param tamanoTramo bloques que verifica cada tarea sin dividirse más.
+     * @param dificultadMinima bits a cero que exijo, como mínimo, a cada bloque salvo el génesis.
+     */
+    public VerificadorParaleloCadena(RegistroBloques registro, int paralelismo, int tamanoTramo, int dificultadMinima) {
+        this.registro = registro;
+        this.pool = new ForkJoinPool(paralelismo > 0 ? paralelismo : Runtime.getRuntime().availableProcessors());
+        this.tamanoTramo = Math.max(1, tamanoTramo);
+        this.dificultadMinima = dificultadMinima;
+    }
+
+    /**
+     * Verifico los bloques [0, total).
+     *
+     * @return índice del primer bloque roto, o -1 si la cadena es válida.
+     */
+    public int verificar(int total) {
+        if (total <= 1) {
+            return -1;
+        }
+        AtomicInteger primerRoto = new AtomicInteger(Integer.MAX_VALUE);
+        Tramo resultado = pool.invoke(new Verificacion(0, total, primerRoto));
+        return resultado.roto;
+    }
+
+    public int getParalelismo() {
+        return pool.getParallelism();
+    }
+
+    public void cerrar() {
+        pool.shutdown();
+    }
+
+    /**
+     * Resultado de verificar un tramo: primer bloque roto dentro de él (o -1) y los hashes
+     * de sus extremos para comprobar la frontera con el vecino.
+     */
+    private record Tramo(int desde, int roto, byte[] hashAnteriorPrimero, byte[] hashUltimo) {
+
+        private static final Tramo OMITIDO = new Tramo(-1, -1, null, null);
+
+        /**
+         * Junto este tramo con el que va justo detrás.
+         */
+        private Tramo unir(Tramo derecho) {
+            if (roto >= 0 || this == OMITIDO) {
+                return this;
+            }
+            if (derecho == OMITIDO) {
+                return new Tramo(desde, -1, hashAnteriorPrimero, null);
+            }
+            int rotoUnido;
+            if (hashUltimo == null) {
+                rotoUnido = derecho.roto;
+            } else if (!Arrays.equals(derecho.hashAnteriorPrimero, hashUltimo)) {
+                rotoUnido = derecho.desde;
+            } else {
+                rotoUnido = derecho.roto;
+            }
+            return new Tramo(desde, rotoUnido, hashAnteriorPrimero, derecho.hashUltimo);
+        }
+    }
+
+    private final class Verificacion extends RecursiveTask<Tramo> {
+
+        private final int desde;
+        private final int hasta;
+        private final AtomicInteger primerRoto;
+
+        private Verificacion(int desde, int hasta, AtomicInteger primerRoto) {
+            this.desde = desde;
+            this.hasta = hasta;
+            this.primerRoto = primerRoto;
+        }
+
+        @Override
+        protected Tramo compute() {
+            if (desde > primerRoto.get()) {
+                return Tramo.OMITIDO;
+            }
+            if (hasta - desde <= tamanoTramo) {
+                return verificarTramo();
+            }
+            int medio = (desde + hasta) >>> 1;
+            Verificacion izquierda = new Verificacion(desde, medio, primerRoto);
+            Verificacion derecha = new Verificacion(medio, hasta, primerRoto);
+            derecha.fork();
+            Tramo resultadoIzquierda = izquierda.compute();
+            Tramo resultadoDerecha = derecha.join();
+            Tramo unido = resultadoIzquierda.unir(resultadoDerecha);
+            if (unido.roto >= 0) {
+                primerRoto.accumulateAndGet(unido.roto, Math::min);
+            }
+            return unido;
+        }
+
+        /**
+         * Recorro el tramo en serie. El génesis no se comprueba contra su hash.
+         */
+        private Tramo verificarTramo() {
+            Bloque primero = registro.leer(desde);
+            Bloque anterior = primero;
+            int roto = -1;
+            if (desde > 0 && !ValidadorCadena.tieneHashValido(primero, dificultadMinima)) {
+                roto = desde;
+            }
+            for (int i = desde + 1; i < hasta && roto < 0; i++) {
+                Bloque actual = registro.leer(i);
+                if (!ValidadorCadena.esValido(actual, anterior, dificultadMinima)) {
+                    roto = i;
+                }
+                anterior = actual;
+            }
+            if (roto >= 0) {
+                primerRoto.accumulateAndGet(roto, Math::min);
+            }
+            return new Tramo(desde, roto, primero.getHashAnteriorBytes(), anterior.getHashBytes());
+        }
+    }
+}
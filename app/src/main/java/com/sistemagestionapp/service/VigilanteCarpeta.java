@@ -0,0 +1,150 @@
+package com.sistemagestionapp.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Vigila una carpeta (y sus subcarpetas) con un {@link WatchService} y avisa de qué
+ * rutas relativas han cambiado.
+ *
+ * Los eventos que llegan seguidos los agrupo: espero a que pase un rato sin cambios
+ * antes de avisar, para que guardar varios ficheros a la vez provoque una sola recarga.
+ * Si el sistema pierde eventos (OVERFLOW) pido una recarga completa.
+ */
+public class VigilanteCarpeta implements Closeable {
+
+    /**
+     * Recibe los cambios agrupados.
+     */
+    @FunctionalInterface
+    public interface Cambios {
+        /**
+         * @param rutas rutas relativas (con "/") que han cambiado.
+         * @param recargaCompleta true si se han perdido eventos y hay que recargar todo.
+         */
+        void aplicar(Set<String> rutas, boolean recargaCompleta) throws IOException;
+    }
+
+    private final Path raiz;
+    private final Predicate<String> ignorar;
+    private final Cambios cambios;
+    private final long esperaMs;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> carpetas = new HashMap<>();
+    private final Thread hilo;
+
+    public VigilanteCarpeta(Path raiz, Predicate<String> ignorar, Cambios cambios, long esperaMs) throws IOException {
+        this.raiz = raiz;
+        this.ignorar = ignorar;
+        this.cambios = cambios;
+        this.esperaMs = esperaMs;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        registrarArbol(raiz);
+
+        this.hilo = new Thread(this::bucle, "vigilante-" + raiz.getFileName());
+        this.hilo.setDaemon(true);
+    }
+
+    public void iniciar() {
+        hilo.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        hilo.interrupt();
+    }
+
+    private void bucle() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey clave = watchService.take();
+
+                Set<String> rutas = new HashSet<>();
+                boolean recargaCompleta = procesar(clave, rutas);
+
+                // Agrupo los eventos que sigan llegando hasta que haya un rato de calma
+                while ((clave = watchService.poll(esperaMs, TimeUnit.MILLISECONDS)) != null) {
+                    recargaCompleta |= procesar(clave, rutas);
+                }
+
+                if (!rutas.isEmpty() || recargaCompleta) {
+                    try {
+                        cambios.aplicar(rutas, recargaCompleta);
+                    } catch (IOException | RuntimeException e) {
+                        System.out.println("⚠️ [VIGILANTE] Error aplicando cambios de " + raiz + ": " + e.getMessage());
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Me están cerrando
+        }
+    }
+
+    /**
+     * Recojo las rutas de los eventos de una clave. Devuelvo true si se han perdido eventos.
+     */
+    private boolean procesar(WatchKey clave, Set<String> rutas) {
+        boolean perdidos = false;
+        Path carpeta = carpetas.get(clave);
+
+        for (WatchEvent<?> evento : clave.pollEvents()) {
+            if (evento.kind() == StandardWatchEventKinds.OVERFLOW || carpeta == null) {
+                perdidos = true;
+                continue;
+            }
+
+            Path ruta = carpeta.resolve((Path) evento.context());
+            String relativa = raiz.relativize(ruta).toString().replace("\\", "/");
+            if (ignorar.test(relativa)) {
+                continue;
+            }
+            rutas.add(relativa);
+
+            // Las carpetas nuevas también hay que vigilarlas
+            if (evento.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(ruta)) {
+                try {
+                    registrarArbol(ruta);
+                } catch (IOException e) {
+                    perdidos = true;
+                }
+            }
+        }
+
+        if (!clave.reset()) {
+            carpetas.remove(clave);
+        }
+        return perdidos;
+    }
+
+    private void registrarArbol(Path desde) throws IOException {
+        try (Stream<Path> recorrido = Files.walk(desde)) {
+            for (Path carpeta : recorrido.filter(Files::isDirectory).toList()) {
+                String relativa = raiz.relativize(carpeta).toString().replace("\\", "/");
+                if (!relativa.isEmpty() && ignorar.test(relativa)) {
+                    continue;
+                }
+                WatchKey clave = carpeta.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+                carpetas.put(clave, carpeta);
+            }
+        }
+    }
+}
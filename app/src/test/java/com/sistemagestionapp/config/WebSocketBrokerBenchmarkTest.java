@@ -0,0 +1,338 @@
+package com.sistemagestionapp.config;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Prueba de carga del broker de /topic tal como lo configura {@link WebSocketConfig}: el
+ * broker simple de Spring, el canal de salida con su propio pool y los límites de envío por
+ * sesión ({@link ConcurrentWebSocketSessionDecorator}, como hace Spring con cada sesión
+ * WebSocket). Miles de sesiones suscritas a /topic/chat y un publicador a ritmo constante.
+ *
+ * Compruebo que todas reciben todo, que el p99 de la latencia de entrega no pasa del
+ * objetivo con ninguna de las cargas, y que una sesión que deja de leer se cierra al pasar
+ * su límite sin frenar al resto.
+ */
+@Tag("benchmark")
+class WebSocketBrokerBenchmarkTest {
+
+    private static final String DESTINO = "/topic/chat";
+    private static final int MENSAJES = 100;
+    /** Objetivo de p99 de entrega, igual para todas las cargas. */
+    private static final double P99_OBJETIVO_MS = 100;
+    /** Límites por defecto de application.properties (websocket.envio.*). */
+    private static final int LIMITE_MS = 10_000;
+    private static final int LIMITE_BYTES = 512 * 1024;
+
+    @Test
+    void elP99SeMantieneConMilesDeSuscriptores() throws InterruptedException {
+        for (int sesiones : new int[]{1_000, 2_500, 5_000}) {
+            long[] latencias = cargar(sesiones);
+            double p99 = percentil(latencias, 99);
+            System.out.printf("[BENCH] broker simple, %d suscriptores x %d mensajes: p50 %.2f ms, p99 %.2f ms, máx %.2f ms%n",
+                    sesiones, MENSAJES, percentil(latencias, 50), p99, latencias[latencias.length - 1] / 1e6);
+            assertTrue(p99 <= P99_OBJETIVO_MS, "p99 de " + p99 + " ms con " + sesiones + " suscriptores");
+        }
+    }
+
+    @Test
+    void unaSesionQueNoLeeSeCierraSinFrenarAlResto() throws InterruptedException {
+        int sesiones = 200;
+        CountDownLatch rapidas = new CountDownLatch((sesiones - 1) * MENSAJES);
+        Receptor receptor = enviado -> rapidas.countDown();
+        // Límite de tiempo corto para no alargar la prueba; el de bytes, el de la aplicación
+        SesionFalsa lenta = new SesionFalsa("lenta", receptor, new CountDownLatch(1));
+        Banco banco = new Banco(200, LIMITE_BYTES, id -> "lenta".equals(id) ? lenta : new SesionFalsa(id, receptor, null));
+        banco.arrancar();
+        try {
+            banco.suscribir("lenta");
+            for (int i = 1; i < sesiones; i++) {
+                banco.suscribir("sesion-" + i);
+            }
+            for (int i = 0; i < MENSAJES; i++) {
+                banco.publicar(i);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+            }
+
+            assertTrue(rapidas.await(30, TimeUnit.SECONDS), "Las sesiones que leen no han recibido todos los mensajes");
+            assertFalse(lenta.isOpen());
+            assertTrue(banco.limitesSuperados.get() >= 1);
+        } finally {
+            lenta.close();
+            banco.parar();
+        }
+    }
+
+    /**
+     * Conecto y suscribo las sesiones, publico los mensajes con el instante de envío dentro
+     * y espero a que lleguen todos.
+     *
+     * @return latencias de entrega ordenadas, en nanosegundos.
+     */
+    private long[] cargar(int sesiones) throws InterruptedException {
+        int total = sesiones * MENSAJES;
+        long[] latencias = new long[total];
+        AtomicInteger recibidos = new AtomicInteger();
+        CountDownLatch completo = new CountDownLatch(total);
+        Receptor receptor = enviado -> {
+            latencias[recibidos.getAndIncrement()] = System.nanoTime() - enviado;
+            completo.countDown();
+        };
+        Banco banco = new Banco(LIMITE_MS, LIMITE_BYTES, id -> new SesionFalsa(id, receptor, null));
+        banco.arrancar();
+        try {
+            for (int i = 0; i < sesiones; i++) {
+                banco.suscribir("sesion-" + i);
+            }
+            for (int i = 0; i < MENSAJES; i++) {
+                banco.publicar(i);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+            }
+            assertTrue(completo.await(60, TimeUnit.SECONDS), "No han llegado todos los mensajes");
+            assertEquals(total, recibidos.get());
+        } finally {
+            banco.parar();
+        }
+        Arrays.sort(latencias);
+        return latencias;
+    }
+
+    private static double percentil(long[] ordenadas, int percentil) {
+        int posicion = (int) Math.ceil(percentil / 100.0 * ordenadas.length) - 1;
+        return ordenadas[Math.max(0, posicion)] / 1e6;
+    }
+
+    private interface Receptor {
+        void recibir(long enviado);
+    }
+
+    /**
+     * Broker simple, canales y sesiones montados como en la aplicación, sin servidor.
+     */
+    private static final class Banco {
+        private final int limiteMs;
+        private final int limiteBytes;
+        private final ExecutorSubscribableChannel entrada = new ExecutorSubscribableChannel();
+        private final ExecutorSubscribableChannel canalBroker = new ExecutorSubscribableChannel();
+        private final ThreadPoolTaskExecutor poolSalida = new ThreadPoolTaskExecutor();
+        private final ExecutorSubscribableChannel salida;
+        private final SimpleBrokerMessageHandler broker;
+        private final Map<String, WebSocketSession> decoradas = new ConcurrentHashMap<>();
+        private final AtomicInteger limitesSuperados = new AtomicInteger();
+        private final Function<String, SesionFalsa> sesiones;
+
+        private Banco(int limiteMs, int limiteBytes, Function<String, SesionFalsa> sesiones) {
+            this.limiteMs = limiteMs;
+            this.limiteBytes = limiteBytes;
+            this.sesiones = sesiones;
+            int hilos = WebSocketConfig.hilosSalida(0);
+            poolSalida.setCorePoolSize(hilos);
+            poolSalida.setMaxPoolSize(hilos);
+            poolSalida.setQueueCapacity(Integer.MAX_VALUE);
+            poolSalida.initialize();
+            salida = new ExecutorSubscribableChannel(poolSalida);
+            salida.subscribe(this::entregar);
+            broker = new SimpleBrokerMessageHandler(entrada, salida, canalBroker, List.of("/topic"));
+        }
+
+        private void arrancar() {
+            broker.start();
+        }
+
+        private void parar() {
+            broker.stop();
+            poolSalida.shutdown();
+        }
+
+        /**
+         * Lo que hace el SubProtocolWebSocketHandler con cada mensaje de salida: mandarlo por
+         * la sesión decorada con los límites de envío.
+         */
+        private void entregar(Message<?> mensaje) {
+            if (!SimpMessageType.MESSAGE.equals(SimpMessageHeaderAccessor.getMessageType(mensaje.getHeaders()))) {
+                return;
+            }
+            String id = SimpMessageHeaderAccessor.getSessionId(mensaje.getHeaders());
+            WebSocketSession sesion = decoradas.computeIfAbsent(id,
+                    s -> new ConcurrentWebSocketSessionDecorator(sesiones.apply(s), limiteMs, limiteBytes));
+            try {
+                sesion.sendMessage(new TextMessage((byte[]) mensaje.getPayload()));
+            } catch (SessionLimitExceededException e) {
+                // Como el SubProtocolWebSocketHandler: la sesión que pasa su límite se cierra
+                limitesSuperados.incrementAndGet();
+                try {
+                    sesion.close(e.getStatus());
+                } catch (IOException cierre) {
+                    throw new IllegalStateException(cierre);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void suscribir(String sesion) {
+            SimpMessageHeaderAccessor conexion = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+            conexion.setSessionId(sesion);
+            entrada.send(MessageBuilder.createMessage(new byte[0], conexion.getMessageHeaders()));
+
+            SimpMessageHeaderAccessor suscripcion = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+            suscripcion.setSessionId(sesion);
+            suscripcion.setSubscriptionId("sub-0");
+            suscripcion.setDestination(DESTINO);
+            entrada.send(MessageBuilder.createMessage(new byte[0], suscripcion.getMessageHeaders()));
+        }
+
+        private void publicar(int numero) {
+            SimpMessageHeaderAccessor cabeceras = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            cabeceras.setDestination(DESTINO);
+            String texto = System.nanoTime() + "|Mensaje " + numero;
+            canalBroker.send(MessageBuilder.createMessage(texto.getBytes(StandardCharsets.UTF_8), cabeceras.getMessageHeaders()));
+        }
+    }
+
+    /**
+     * Sesión WebSocket sin red: apunta cuándo le llega cada mensaje. Si está bloqueada, el
+     * envío se queda esperando, como con un cliente que no lee, hasta que se cierra.
+     */
+    private static final class SesionFalsa implements WebSocketSession {
+        private final String id;
+        private final Receptor receptor;
+        private final CountDownLatch bloqueada;
+        private volatile boolean abierta = true;
+
+        private SesionFalsa(String id, Receptor receptor, CountDownLatch bloqueada) {
+            this.id = id;
+            this.receptor = receptor;
+            this.bloqueada = bloqueada;
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> mensaje) {
+            if (bloqueada != null) {
+                try {
+                    bloqueada.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return;
+            }
+            String texto = ((TextMessage) mensaje).getPayload();
+            receptor.recibir(Long.parseLong(texto.substring(0, texto.indexOf('|'))));
+        }
+
+        @Override
+        public void close(CloseStatus estado) {
+            abierta = false;
+            if (bloqueada != null) {
+                bloqueada.countDown();
+            }
+        }
+
+        @Override
+        public void close() {
+            close(CloseStatus.NORMAL);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return abierta;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public URI getUri() {
+            return null;
+        }
+
+        @Override
+        public HttpHeaders getHandshakeHeaders() {
+            return new HttpHeaders();
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return Map.of();
+        }
+
+        @Override
+        public Principal getPrincipal() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return null;
+        }
+
+        @Override
+        public String getAcceptedProtocol() {
+            return null;
+        }
+
+        @Override
+        public void setTextMessageSizeLimit(int limite) {
+        }
+
+        @Override
+        public int getTextMessageSizeLimit() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void setBinaryMessageSizeLimit(int limite) {
+        }
+
+        @Override
+        public int getBinaryMessageSizeLimit() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public List<WebSocketExtension> getExtensions() {
+            return List.of();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.sistemagestionapp.controller;
+
+import com.sistemagestionapp.model.Aplicacion;
+import com.sistemagestionapp.service.AplicacionService;
+import com.sistemagestionapp.service.CacheZipProyectoService;
+import com.sistemagestionapp.service.EntradaZip;
+import com.sistemagestionapp.service.ProyectoZipPreparado;
+import com.sistemagestionapp.service.ProyectoZipService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Descarga del ZIP de una aplicación: ETag y 304, rangos (206 y 416) e If-Range, con la
+ * caché en disco activa y sin ella. El contenido que llega tiene que ser siempre el trozo
+ * exacto del ZIP.
+ */
+class AplicacionControllerTest {
+
+    @TempDir
+    Path directorio;
+
+    private ProyectoZipPreparado zip;
+    private byte[] completo;
+    private String etag;
+
+    @BeforeEach
+    void preparar() throws IOException {
+        EntradaZip entrada = EntradaZip.comprimir("src/App.java",
+                "class App {}\n".repeat(500).getBytes(StandardCharsets.UTF_8), 1_700_000_000_000L);
+        zip = new ProyectoZipPreparado("clave-app", "app.zip", List.of(entrada));
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        zip.escribir(salida);
+        completo = salida.toByteArray();
+        etag = "\"clave-app\"";
+    }
+
+    @Test
+    void sinRangoMandaElZipCompletoConEtag() throws Exception {
+        for (boolean cache : new boolean[]{true, false}) {
+            MvcResult resultado = descargar(mvc(cache), get("/aplicaciones/1/zip"));
+            assertEquals(200, resultado.getResponse().getStatus());
+            assertEquals(etag, resultado.getResponse().getHeader(HttpHeaders.ETAG));
+            assertEquals("bytes", resultado.getResponse().getHeader(HttpHeaders.ACCEPT_RANGES));
+            assertEquals(completo.length, resultado.getResponse().getContentLengthLong());
+            assertArrayEquals(completo, resultado.getResponse().getContentAsByteArray());
+        }
+    }
+
+    @Test
+    void conElMismoEtagResponde304() throws Exception {
+        MvcResult resultado = mvc(true).perform(get("/aplicaciones/1/zip")
+                .header(HttpHeaders.IF_NONE_MATCH, etag)).andReturn();
+        assertEquals(304, resultado.getResponse().getStatus());
+        assertEquals(0, resultado.getResponse().getContentAsByteArray().length);
+
+        MvcResult otro = descargar(mvc(true), get("/aplicaciones/1/zip").header(HttpHeaders.IF_NONE_MATCH, "\"otra\""));
+        assertEquals(200, otro.getResponse().getStatus());
+    }
+
+    @Test
+    void conUnRangoMandaSoloEseTrozo() throws Exception {
+        for (boolean cache : new boolean[]{true, false}) {
+            MockMvc mvc = mvc(cache);
+            MvcResult resultado = descargar(mvc, get("/aplicaciones/1/zip").header(HttpHeaders.RANGE, "bytes=10-99"));
+            assertEquals(206, resultado.getResponse().getStatus());
+            assertEquals("bytes 10-99/" + completo.length, resultado.getResponse().getHeader(HttpHeaders.CONTENT_RANGE));
+            assertEquals(90, resultado.getResponse().getContentLengthLong());
+            assertArrayEquals(Arrays.copyOfRange(completo, 10, 100), resultado.getResponse().getContentAsByteArray());
+
+            // Lo que falta para terminar una descarga cortada
+            MvcResult resto = descargar(mvc, get("/aplicaciones/1/zip").header(HttpHeaders.RANGE, "bytes=100-"));
+            assertArrayEquals(Arrays.copyOfRange(completo, 100, completo.length), resto.getResponse().getContentAsByteArray());
+
+            MvcResult sufijo = descargar(mvc, get("/aplicaciones/1/zip").header(HttpHeaders.RANGE, "bytes=-22"));
+            assertArrayEquals(Arrays.copyOfRange(completo, completo.length - 22, completo.length),
+                    sufijo.getResponse().getContentAsByteArray());
+        }
+    }
+
+    @Test
+    void unRangoFueraDelZipResponde416() throws Exception {
+        MvcResult resultado = mvc(true).perform(get("/aplicaciones/1/zip")
+                .header(HttpHeaders.RANGE, "bytes=" + completo.length + "-")).andReturn();
+        assertEquals(416, resultado.getResponse().getStatus());
+        assertEquals("bytes */" + completo.length, resultado.getResponse().getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void ifRangeDistintoOVariosRangosMandanElZipCompleto() throws Exception {
+        MockMvc mvc = mvc(true);
+        MvcResult mismo = descargar(mvc, get("/aplicaciones/1/zip")
+                .header(HttpHeaders.RANGE, "bytes=0-9").header(HttpHeaders.IF_RANGE, etag));
+        assertEquals(206, mismo.getResponse().getStatus());
+
+        MvcResult cambiado = descargar(mvc, get("/aplicaciones/1/zip")
+                .header(HttpHeaders.RANGE, "bytes=0-9").header(HttpHeaders.IF_RANGE, "\"version-anterior\""));
+        assertEquals(200, cambiado.getResponse().getStatus());
+        assertNull(cambiado.getResponse().getHeader(HttpHeaders.CONTENT_RANGE));
+        assertArrayEquals(completo, cambiado.getResponse().getContentAsByteArray());
+
+        MvcResult varios = descargar(mvc, get("/aplicaciones/1/zip").header(HttpHeaders.RANGE, "bytes=0-9,20-29"));
+        assertEquals(200, varios.getResponse().getStatus());
+        assertArrayEquals(completo, varios.getResponse().getContentAsByteArray());
+
+        MvcResult malFormado = descargar(mvc, get("/aplicaciones/1/zip").header(HttpHeaders.RANGE, "trozos=0-9"));
+        assertEquals(200, malFormado.getResponse().getStatus());
+    }
+
+    /**
+     * Monto el controlador solo, con la aplicación y el ZIP preparado simulados y una caché
+     * de verdad en una carpeta temporal (o deshabilitada).
+     */
+    private MockMvc mvc(boolean cache) throws IOException {
+        AplicacionService aplicacionService = mock(AplicacionService.class);
+        when(aplicacionService.obtenerPorId(1L)).thenReturn(new Aplicacion());
+        ProyectoZipService proyectoZipService = mock(ProyectoZipService.class);
+        when(proyectoZipService.prepararProyecto(any())).thenReturn(zip);
+        CacheZipProyectoService cacheZip = new CacheZipProyectoService(cache, directorio.toString(), 1 << 20);
+        cacheZip.inicializar();
+
+        AplicacionController controlador = new AplicacionController();
+        ReflectionTestUtils.setField(controlador, "aplicacionService", aplicacionService);
+        ReflectionTestUtils.setField(controlador, "proyectoZipService", proyectoZipService);
+        ReflectionTestUtils.setField(controlador, "cacheZipProyectoService", cacheZip);
+        return MockMvcBuilders.standaloneSetup(controlador).build();
+    }
+
+    /**
+     * El cuerpo es un StreamingResponseBody: hay que esperar al despacho asíncrono.
+     */
+    private static MvcResult descargar(MockMvc mvc, RequestBuilder peticion) throws Exception {
+        MvcResult inicial = mvc.perform(peticion).andReturn();
+        return mvc.perform(asyncDispatch(inicial)).andReturn();
+    }
+}
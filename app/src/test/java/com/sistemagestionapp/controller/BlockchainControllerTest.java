@@ -0,0 +1,89 @@
+package com.sistemagestionapp.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sistemagestionapp.model.Bloque;
+import com.sistemagestionapp.service.BlockchainService;
+import com.sistemagestionapp.service.IndiceBloques;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * API JSON de la cadena cuando se trunca a la vez (cambio de rama): las respuestas se quedan
+ * con lo que sigue existiendo en lugar de fallar.
+ */
+class BlockchainControllerTest {
+
+    private BlockchainService blockchainService;
+    private MockMvc mvc;
+
+    @BeforeEach
+    void preparar() {
+        blockchainService = mock(BlockchainService.class);
+        BlockchainController controlador = new BlockchainController();
+        ReflectionTestUtils.setField(controlador, "blockchainService", blockchainService);
+        ReflectionTestUtils.setField(controlador, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(controlador, "limiteMaximo", 500);
+        mvc = MockMvcBuilders.standaloneSetup(controlador).build();
+    }
+
+    @Test
+    void elNdjsonTerminaLimpioSiLaCadenaSeTruncaMientrasSeEnvia() throws Exception {
+        // Había 4 bloques al empezar, pero antes de leer el tercero la cadena se queda en 2
+        when(blockchainService.getTotalBloques()).thenReturn(4);
+        cadenaTruncadaEn(2);
+
+        MvcResult inicial = mvc.perform(get("/blockchain/bloques.ndjson")).andReturn();
+        MvcResult resultado = mvc.perform(asyncDispatch(inicial)).andReturn();
+
+        assertEquals(200, resultado.getResponse().getStatus());
+        String[] lineas = resultado.getResponse().getContentAsString().split("\n");
+        assertEquals(2, lineas.length);
+        assertEquals(1, new ObjectMapper().readTree(lineas[1]).get("indice").asInt());
+    }
+
+    @Test
+    void laBusquedaDescartaLosBloquesQueYaNoExisten() throws Exception {
+        // El índice devolvió los bloques 3 y 1, pero el 3 se ha ido con el truncado
+        when(blockchainService.buscar("datos", 20)).thenReturn(new IndiceBloques.Resultado(List.of(3, 1), 2, true));
+        cadenaTruncadaEn(2);
+
+        MvcResult resultado = mvc.perform(get("/blockchain/search").param("q", "datos")).andReturn();
+
+        assertEquals(200, resultado.getResponse().getStatus());
+        JsonNode bloques = new ObjectMapper().readTree(resultado.getResponse().getContentAsString()).get("bloques");
+        assertEquals(1, bloques.size());
+        assertEquals(1, bloques.get(0).get("indice").asInt());
+    }
+
+    /**
+     * Los bloques por debajo de {@code total} existen; los demás ya no.
+     */
+    private void cadenaTruncadaEn(int total) {
+        List<Bloque> bloques = new ArrayList<>();
+        for (int i = 0; i < total; i++) {
+            bloques.add(new Bloque(i, "datos " + i, new byte[Bloque.TAMANO_HASH]));
+        }
+        when(blockchainService.obtenerBloque(anyInt())).thenAnswer(invocacion -> {
+            int indice = invocacion.getArgument(0);
+            if (indice < 0 || indice >= bloques.size()) {
+                throw new IllegalArgumentException("No existe el bloque " + indice);
+            }
+            return bloques.get(indice);
+        });
+    }
+}
@@ -0,0 +1,132 @@
+package com.sistemagestionapp.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas del árbol de Merkle: caminos válidos para cada posición (también con niveles
+ * impares), y caminos con un hermano alterado o de otra posición que no verifican.
+ */
+class ArbolMerkleTest {
+
+    @Test
+    void todasLasPosicionesVerificanConCualquierNumeroDeEntradas() {
+        for (int n = 1; n <= 17; n++) {
+            List<String> entradas = entradas(n);
+            byte[] nodos = ArbolMerkle.construir(entradas);
+            byte[] raiz = ArbolMerkle.raiz(nodos);
+            assertEquals(ArbolMerkle.totalNodos(n) * ArbolMerkle.TAMANO_NODO, nodos.length);
+            assertTrue(ArbolMerkle.raizCoincide(entradas, raiz));
+
+            for (int posicion = 0; posicion < n; posicion++) {
+                Camino camino = camino(nodos, n, posicion);
+                assertTrue(ArbolMerkle.verificar(entradas.get(posicion), camino.hermanos, camino.izquierdos, raiz),
+                        n + " entradas, posición " + posicion);
+                assertTrue(ArbolMerkle.caminoCoincide(posicion, n, camino.izquierdos));
+            }
+        }
+    }
+
+    @Test
+    void elUltimoDeUnNivelImparSubeSinHermano() {
+        // Con 5 entradas la quinta sube sola dos niveles: su camino solo tiene un hermano
+        List<String> entradas = entradas(5);
+        byte[] nodos = ArbolMerkle.construir(entradas);
+        Camino camino = camino(nodos, 5, 4);
+        assertEquals(1, camino.hermanos.size());
+        assertEquals(List.of(true), camino.izquierdos);
+
+        // Y no es lo mismo que duplicarla: la raíz de 5 entradas no es la de 6 con la última repetida
+        List<String> duplicada = new ArrayList<>(entradas);
+        duplicada.add(entradas.get(4));
+        assertFalse(Arrays.equals(ArbolMerkle.raiz(nodos), ArbolMerkle.raiz(ArbolMerkle.construir(duplicada))));
+    }
+
+    @Test
+    void rechazaUnHermanoAlterado() {
+        List<String> entradas = entradas(7);
+        byte[] nodos = ArbolMerkle.construir(entradas);
+        byte[] raiz = ArbolMerkle.raiz(nodos);
+        Camino camino = camino(nodos, 7, 2);
+        for (int i = 0; i < camino.hermanos.size(); i++) {
+            List<byte[]> alterados = new ArrayList<>(camino.hermanos);
+            byte[] hermano = alterados.get(i).clone();
+            hermano[0] ^= 1;
+            alterados.set(i, hermano);
+            assertFalse(ArbolMerkle.verificar(entradas.get(2), alterados, camino.izquierdos, raiz));
+        }
+        assertFalse(ArbolMerkle.verificar("otra entrada", camino.hermanos, camino.izquierdos, raiz));
+        assertFalse(ArbolMerkle.verificar(entradas.get(2), camino.hermanos.subList(0, 2), camino.izquierdos, raiz));
+    }
+
+    @Test
+    void rechazaUnCaminoDeOtraPosicion() {
+        List<String> entradas = entradas(6);
+        byte[] nodos = ArbolMerkle.construir(entradas);
+        byte[] raiz = ArbolMerkle.raiz(nodos);
+        Camino camino = camino(nodos, 6, 3);
+
+        // Cambiar un lado es pedir otra posición: ni llega a la raíz ni es el camino de la 3
+        List<Boolean> cambiados = new ArrayList<>(camino.izquierdos);
+        cambiados.set(0, !cambiados.get(0));
+        assertFalse(ArbolMerkle.verificar(entradas.get(3), camino.hermanos, cambiados, raiz));
+        assertFalse(ArbolMerkle.caminoCoincide(3, 6, cambiados));
+
+        // El camino de la 3 no vale para ninguna otra posición ni para otro número de entradas
+        for (int posicion = 0; posicion < 6; posicion++) {
+            assertEquals(posicion == 3, ArbolMerkle.caminoCoincide(posicion, 6, camino.izquierdos));
+        }
+        assertFalse(ArbolMerkle.caminoCoincide(3, 4, camino.izquierdos));
+        assertFalse(ArbolMerkle.caminoCoincide(6, 6, camino.izquierdos));
+        assertFalse(ArbolMerkle.caminoCoincide(-1, 6, camino.izquierdos));
+    }
+
+    @Test
+    void codificaIgualQueGetBytes() {
+        for (String texto : List.of("", "despliegue", "Aplicación ñ €", "emoji 🚀 fin", "suelto \uD800 x", "final \uDC00")) {
+            byte[] destino = new byte[CodificadorUtf8.maximo(texto)];
+            int escritos = CodificadorUtf8.codificar(texto, destino);
+            assertArrayEquals(texto.getBytes(StandardCharsets.UTF_8), Arrays.copyOf(destino, escritos), texto);
+        }
+    }
+
+    private static List<String> entradas(int n) {
+        List<String> entradas = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            entradas.add("entrada " + i);
+        }
+        return entradas;
+    }
+
+    /**
+     * Saco el camino de una hoja del árbol aplanado, igual que lo lee el registro.
+     */
+    private static Camino camino(byte[] nodos, int n, int posicion) {
+        Camino camino = new Camino(new ArrayList<>(), new ArrayList<>());
+        int base = 0;
+        int actual = posicion;
+        for (int tamano = n; tamano > 1; tamano = (tamano + 1) / 2) {
+            int hermano = actual ^ 1;
+            if (hermano < tamano) {
+                int desde = (base + hermano) * ArbolMerkle.TAMANO_NODO;
+                camino.hermanos.add(Arrays.copyOfRange(nodos, desde, desde + ArbolMerkle.TAMANO_NODO));
+                camino.izquierdos.add(hermano < actual);
+            }
+            base += tamano;
+            actual >>= 1;
+        }
+        return camino;
+    }
+
+    private record Camino(List<byte[]> hermanos, List<Boolean> izquierdos) {
+    }
+}
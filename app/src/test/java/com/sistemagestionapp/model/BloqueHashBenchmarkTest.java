@@ -0,0 +1,106 @@
+package com.sistemagestionapp.model;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Benchmark del cálculo de hash de un bloque: la forma anterior (String concatenado,
+ * MessageDigest nuevo y String.format por byte) frente a la binaria con digest por hilo.
+ * Saco por consola hashes por segundo y bytes reservados por hash; solo compruebo que la
+ * binaria reserva mucho menos, que es lo que no depende de la máquina.
+ */
+@Tag("benchmark")
+class BloqueHashBenchmarkTest {
+
+    private static final int HASHES = 200_000;
+    private static final int RONDAS = 3;
+
+    @Test
+    void compararAnteriorYBinario() throws NoSuchAlgorithmException {
+        String datos = "Despliegue de la aplicación 42: paso BUILD en estado OK";
+        Bloque bloque = new Bloque(1_234, datos, Bloque.HASH_CERO);
+        String hashAnteriorTexto = "0";
+
+        // El hash binario debe ser el SHA-256 de índice + hash anterior + raíz de Merkle +
+        // dificultad + nonce, y con una sola entrada la raíz es su hoja: SHA-256(0x00 + datos)
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update((byte) 0x00);
+        byte[] raiz = digest.digest(datos.getBytes(StandardCharsets.UTF_8));
+        digest.update(new byte[]{0, 0, 0x04, (byte) 0xD2});
+        digest.update(Bloque.HASH_CERO);
+        digest.update(raiz);
+        digest.update(new byte[1 + 8]);
+        assertArrayEquals(digest.digest(), bloque.getHashBytes());
+
+        Medida anterior = null;
+        Medida binario = null;
+        for (int r = 0; r < RONDAS; r++) {
+            anterior = medir(() -> hashAnterior(1_234, datos, hashAnteriorTexto).length());
+            binario = medir(() -> bloque.tieneHashValido() ? 1 : 0);
+        }
+
+        System.out.printf("[BENCH] hash anterior: %.0f hashes/s, %.0f bytes/hash%n", anterior.porSegundo(), anterior.bytesPorHash());
+        System.out.printf("[BENCH] hash binario:  %.0f hashes/s, %.0f bytes/hash%n", binario.porSegundo(), binario.bytesPorHash());
+        assertTrue(binario.bytesPorHash() * 10 < anterior.bytesPorHash(),
+                "El hash binario debería reservar mucha menos memoria que el anterior");
+    }
+
+    @Test
+    void codificaUtf8IgualQueString() {
+        String datos = "ñandú € 😀 \uD800 fin";
+        Bloque bloque = new Bloque(7, datos, Bloque.HASH_CERO);
+        Bloque mismoContenido = new Bloque(7, new String(datos.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8),
+                Bloque.HASH_CERO);
+        assertArrayEquals(mismoContenido.getHashBytes(), bloque.getHashBytes());
+        assertTrue(bloque.tieneHashValido());
+    }
+
+    /**
+     * Cálculo de hash tal como estaba antes en Bloque.
+     */
+    private static String hashAnterior(int indice, String datos, String hashAnterior) {
+        try {
+            String contenido = indice + datos + hashAnterior;
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hashBytes = digest.digest(contenido.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : hashBytes) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    private static Medida medir(Calculo calculo) {
+        com.sun.management.ThreadMXBean hilos = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        long acumulado = 0;
+        long bytesAntes = hilos.getThreadAllocatedBytes(id);
+        long inicio = System.nanoTime();
+        for (int i = 0; i < HASHES; i++) {
+            acumulado += calculo.ejecutar();
+        }
+        long nanos = System.nanoTime() - inicio;
+        long bytes = hilos.getThreadAllocatedBytes(id) - bytesAntes;
+        assertTrue(acumulado >= 0);
+        return new Medida(HASHES / (nanos / 1e9), (double) bytes / HASHES);
+    }
+
+    @FunctionalInterface
+    private interface Calculo {
+        int ejecutar();
+    }
+
+    private record Medida(double porSegundo, double bytesPorHash) {
+    }
+}
@@ -0,0 +1,272 @@
+package com.sistemagestionapp.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sistemagestionapp.model.Aplicacion;
+import com.sistemagestionapp.model.ControlDespliegue;
+import com.sistemagestionapp.model.EstadoControl;
+import com.sistemagestionapp.model.PasoDespliegue;
+import com.sistemagestionapp.repository.ControlDespliegueRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Pruebas de la auditoría de despliegues: solo llegan a la cadena los cambios de
+ * transacciones confirmadas, los lotes se cierran por tamaño o por intervalo, con el búfer
+ * lleno se descarta y se cuenta, y el retraso medido es el de la espera en el búfer.
+ */
+class AuditoriaDespliegueServiceTest {
+
+    @TempDir
+    Path directorio;
+
+    private BlockchainService cadena;
+    private final List<AuditoriaDespliegueService> auditorias = new ArrayList<>();
+
+    @BeforeEach
+    void abrir() throws IOException {
+        cadena = new BlockchainService(directorio.toString(), 1024 * 1024, 64, 16, 1, 4096,
+                1024, 0, 1, "", "", 2, 1000);
+        cadena.abrir();
+    }
+
+    @AfterEach
+    void cerrar() throws IOException {
+        for (AuditoriaDespliegueService auditoria : auditorias) {
+            auditoria.cerrar();
+        }
+        cadena.cerrar();
+    }
+
+    @Test
+    void soloRegistraLosCambiosDeTransaccionesConfirmadas() {
+        Aplicacion aplicacion = new Aplicacion();
+        aplicacion.setId(1L);
+        // Cada lectura devuelve una entidad nueva, como haría JPA después de un rollback
+        ControlDespliegueRepository repositorio = mock(ControlDespliegueRepository.class);
+        when(repositorio.findByAplicacionAndPaso(any(), any())).thenAnswer(invocacion -> Optional.of(
+                control(invocacion.getArgument(1), invocacion.getArgument(1) == PasoDespliegue.SONAR_ANALISIS
+                        ? EstadoControl.OK : EstadoControl.PENDIENTE)));
+        when(repositorio.save(any())).thenAnswer(invocacion -> invocacion.getArgument(0));
+
+        AuditoriaDespliegueService auditoria = auditoria(1, 100, 100);
+        try (AnnotationConfigApplicationContext contexto = new AnnotationConfigApplicationContext()) {
+            contexto.register(ConfiguracionTransacciones.class);
+            contexto.registerBean(AuditoriaDespliegueService.class, () -> auditoria);
+            contexto.registerBean(ControlDespliegueService.class, () -> new ControlDespliegueService(repositorio, contexto));
+            contexto.refresh();
+            ControlDespliegueService controles = contexto.getBean(ControlDespliegueService.class);
+            TransactionTemplate transaccion = new TransactionTemplate(contexto.getBean(PlatformTransactionManager.class));
+
+            transaccion.executeWithoutResult(estado -> {
+                controles.registrarResultado(aplicacion, PasoDespliegue.IMAGEN_ECR, EstadoControl.OK, null);
+                // Dentro de la transacción todavía no ha llegado nada
+                assertEquals(0L, auditoria.getEstadisticas().get("recibidos"));
+            });
+            assertEquals(1L, auditoria.getEstadisticas().get("recibidos"));
+
+            transaccion.executeWithoutResult(estado -> {
+                controles.registrarResultado(aplicacion, PasoDespliegue.DESPLIEGUE_EC2, EstadoControl.KO, null);
+                estado.setRollbackOnly();
+            });
+            assertEquals(1L, auditoria.getEstadisticas().get("recibidos"));
+
+            // Guardar otra vez sin cambiar de estado no es un cambio
+            controles.registrarResultado(aplicacion, PasoDespliegue.SONAR_ANALISIS, EstadoControl.OK, null);
+            assertEquals(1L, auditoria.getEstadisticas().get("recibidos"));
+
+            // El cambio deshecho sigue pendiente: al repetirlo se registra
+            controles.registrarResultado(aplicacion, PasoDespliegue.DESPLIEGUE_EC2, EstadoControl.KO, null);
+            assertEquals(2L, auditoria.getEstadisticas().get("recibidos"));
+
+            esperar(() -> (long) auditoria.getEstadisticas().get("registrados") == 2);
+            List<String> entradas = new ArrayList<>();
+            for (int i = 1; i < cadena.getTotalBloques(); i++) {
+                entradas.addAll(cadena.obtenerBloque(i).getEntradas());
+            }
+            assertEquals(2, entradas.size());
+            assertTrue(entradas.get(0).contains("\"paso\":\"IMAGEN_ECR\""));
+            assertTrue(entradas.get(0).contains("\"anterior\":\"PENDIENTE\""));
+            assertTrue(entradas.get(0).contains("\"estado\":\"OK\""));
+            assertTrue(entradas.get(1).contains("\"paso\":\"DESPLIEGUE_EC2\""));
+        }
+    }
+
+    @Test
+    void cierraElLotePorTamano() {
+        // Con un intervalo de un minuto, solo el tamaño puede cerrar los lotes
+        AuditoriaDespliegueService auditoria = auditoria(60_000, 5, 100);
+        for (int i = 0; i < 12; i++) {
+            auditoria.registrar(evento("evento " + i));
+        }
+        auditoria.iniciar();
+
+        esperar(() -> (long) auditoria.getEstadisticas().get("registrados") == 10);
+        assertEquals(2L, auditoria.getEstadisticas().get("bloques"));
+        assertEquals(5, cadena.obtenerBloque(1).getEntradas().size());
+        assertEquals(5, cadena.obtenerBloque(2).getEntradas().size());
+        assertEquals(3, cadena.getTotalBloques());
+
+        // Los dos que quedan salen al cerrar, sin esperar al intervalo
+        auditoria.cerrar();
+        assertEquals(12L, auditoria.getEstadisticas().get("registrados"));
+        assertEquals(2, cadena.obtenerBloque(3).getEntradas().size());
+    }
+
+    @Test
+    void cierraElLotePorIntervaloYMideElRetraso() {
+        AuditoriaDespliegueService auditoria = auditoria(200, 100, 100);
+        auditoria.iniciar();
+        long inicio = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            auditoria.registrar(evento("evento " + i));
+        }
+
+        esperar(() -> (long) auditoria.getEstadisticas().get("bloques") == 1);
+        Map<String, Object> estadisticas = auditoria.getEstadisticas();
+        assertTrue(System.nanoTime() - inicio >= 200_000_000L);
+        assertEquals(3L, estadisticas.get("registrados"));
+        assertEquals(3, cadena.obtenerBloque(1).getEntradas().size());
+        // El primer evento ha esperado el intervalo entero en el búfer
+        assertTrue((long) estadisticas.get("retrasoUltimoMs") >= 200);
+        assertTrue((long) estadisticas.get("retrasoMaximoMs") >= (long) estadisticas.get("retrasoUltimoMs"));
+        assertEquals(0L, estadisticas.get("retrasoActualMs"));
+    }
+
+    @Test
+    void conElBuferLlenoDescartaYLoCuenta() {
+        AuditoriaDespliegueService auditoria = auditoria(1, 100, 3);
+        for (int i = 0; i < 5; i++) {
+            auditoria.registrar(evento("evento " + i));
+        }
+        Map<String, Object> estadisticas = auditoria.getEstadisticas();
+        assertEquals(5L, estadisticas.get("recibidos"));
+        assertEquals(3, estadisticas.get("enBufer"));
+        assertEquals(2L, estadisticas.get("descartados"));
+
+        auditoria.iniciar();
+        esperar(() -> (long) auditoria.getEstadisticas().get("registrados") == 3);
+        assertEquals(2L, auditoria.getEstadisticas().get("descartados"));
+        assertEquals(List.of("evento 0", "evento 1", "evento 2"), mensajes(cadena.obtenerBloque(1).getEntradas()));
+    }
+
+    /**
+     * Creo la auditoría sin arrancar el hilo escritor: cada prueba decide cuándo.
+     */
+    private AuditoriaDespliegueService auditoria(long intervaloMs, int tamanoLote, int capacidad) {
+        AuditoriaDespliegueService auditoria = new AuditoriaDespliegueService(cadena, new ObjectMapper(), true,
+                intervaloMs, tamanoLote, capacidad, 1024);
+        auditorias.add(auditoria);
+        return auditoria;
+    }
+
+    private static ControlDespliegue control(PasoDespliegue paso, EstadoControl estado) {
+        ControlDespliegue control = new ControlDespliegue();
+        ReflectionTestUtils.setField(control, "id", (long) paso.ordinal() + 1);
+        control.setPaso(paso);
+        control.setEstado(estado);
+        return control;
+    }
+
+    private static EventoDespliegue evento(String mensaje) {
+        return new EventoDespliegue(1L, 1L, PasoDespliegue.REPOSITORIO_GIT, EstadoControl.PENDIENTE,
+                EstadoControl.OK, mensaje, Instant.now(), System.nanoTime());
+    }
+
+    private static List<String> mensajes(List<String> entradas) {
+        ObjectMapper json = new ObjectMapper();
+        List<String> mensajes = new ArrayList<>();
+        for (String entrada : entradas) {
+            try {
+                mensajes.add(json.readTree(entrada).get("mensaje").asText());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return mensajes;
+    }
+
+    private static void esperar(BooleanSupplier condicion) {
+        long limite = System.nanoTime() + 10_000_000_000L;
+        while (!condicion.getAsBoolean()) {
+            assertTrue(System.nanoTime() < limite, "La condición no se ha cumplido a tiempo");
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Contexto mínimo para que los {@code @Transactional} y el listener de después del
+     * commit funcionen como en la aplicación.
+     */
+    @Configuration
+    @EnableTransactionManagement
+    static class ConfiguracionTransacciones {
+
+        @Bean
+        PlatformTransactionManager transactionManager() {
+            return new TransaccionesEnMemoria();
+        }
+    }
+
+    /**
+     * Gestor de transacciones sin recurso detrás: solo activa la sincronización, que es lo
+     * que usa Spring para entregar los eventos después del commit.
+     */
+    private static final class TransaccionesEnMemoria extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected boolean isExistingTransaction(Object transaction) {
+            // Sin esto, el @Transactional del servicio abriría otra transacción en vez de unirse
+            return TransactionSynchronizationManager.isActualTransactionActive();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
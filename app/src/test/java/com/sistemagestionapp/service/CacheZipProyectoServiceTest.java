@@ -0,0 +1,209 @@
+package com.sistemagestionapp.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Caché en disco de los ZIP de proyecto: artefactos de otras ejecuciones, expulsión de los
+ * menos usados, artefactos expulsados mientras se envían y claves que se vuelven a generar
+ * mientras tanto.
+ */
+class CacheZipProyectoServiceTest {
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void descartaUnArtefactoQueNoMideLoQueElZipDeSuClave() throws IOException {
+        ProyectoZipPreparado zip = zip("clave-a", "contenido del proyecto\n".repeat(100));
+        // Un fichero que quedó de otra ejecución con la misma clave pero otros bytes
+        Files.write(directorio.resolve("clave-a.zip"), new byte[(int) zip.getTamano() + 10]);
+
+        CacheZipProyectoService cache = new CacheZipProyectoService(true, directorio.toString(), 1 << 20);
+        cache.inicializar();
+        ArtefactoZip artefacto = cache.obtener(zip);
+
+        assertEquals(zip.getTamano(), artefacto.getTamano());
+        assertEquals(zip.getTamano(), Files.size(artefacto.getRuta()));
+        assertArrayEquals(bytes(zip), Files.readAllBytes(artefacto.getRuta()));
+        assertEquals(1, cache.getFallos());
+    }
+
+    @Test
+    void reutilizaUnArtefactoCorrectoDeOtraEjecucion() throws IOException {
+        ProyectoZipPreparado zip = zip("clave-b", "otro proyecto\n".repeat(100));
+        Files.write(directorio.resolve("clave-b.zip"), bytes(zip));
+
+        CacheZipProyectoService cache = new CacheZipProyectoService(true, directorio.toString(), 1 << 20);
+        cache.inicializar();
+        ArtefactoZip artefacto = cache.obtener(zip);
+
+        assertEquals(zip.getTamano(), artefacto.getTamano());
+        assertEquals(1, cache.getAciertos());
+        assertTrue(Files.exists(artefacto.getRuta()));
+    }
+
+    @Test
+    void expulsaLosMenosUsadosAlPasarDelPresupuesto() throws IOException {
+        ProyectoZipPreparado a = zip("clave-a", "proyecto a\n".repeat(100));
+        ProyectoZipPreparado b = zip("clave-b", "proyecto b\n".repeat(100));
+        ProyectoZipPreparado c = zip("clave-c", "proyecto c\n".repeat(100));
+        // Caben dos ZIP, no tres
+        CacheZipProyectoService cache = new CacheZipProyectoService(true, directorio.toString(),
+                a.getTamano() + b.getTamano() + c.getTamano() - 1);
+        cache.inicializar();
+
+        ArtefactoZip artefactoA = cache.obtener(a);
+        ArtefactoZip artefactoB = cache.obtener(b);
+        // Uso a otra vez: el menos usado pasa a ser b
+        assertEquals(artefactoA, cache.obtener(a));
+        cache.obtener(c);
+
+        assertEquals(1, cache.getExpulsiones());
+        assertFalse(Files.exists(artefactoB.getRuta()));
+        assertTrue(Files.exists(artefactoA.getRuta()));
+        assertEquals(a.getTamano() + c.getTamano(), cache.getBytesEnUso());
+        // b ya no está: se vuelve a generar
+        cache.obtener(b);
+        assertEquals(4, cache.getFallos());
+    }
+
+    @Test
+    void noBorraUnArtefactoMientrasSeEstaEnviando() throws IOException {
+        ProyectoZipPreparado a = zip("clave-a", "proyecto a\n".repeat(100));
+        ProyectoZipPreparado b = zip("clave-b", "proyecto b\n".repeat(100));
+        CacheZipProyectoService cache = new CacheZipProyectoService(true, directorio.toString(), a.getTamano());
+        cache.inicializar();
+        ArtefactoZip artefactoA = cache.obtener(a);
+
+        // Una descarga de a a medias cuando b lo expulsa
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        assertTrue(artefactoA.adquirir());
+        cache.obtener(b);
+        assertEquals(1, cache.getExpulsiones());
+        assertTrue(Files.exists(artefactoA.getRuta()));
+        assertFalse(cache.enviar(artefactoA, salida));
+
+        // El último lector en soltarlo es quien lo borra
+        assertTrue(artefactoA.liberar());
+        assertEquals(0, salida.size());
+        assertEquals(b.getTamano(), cache.getBytesEnUso());
+    }
+
+    @Test
+    void regenerarUnaClaveMientrasSeEnviaLaExpulsadaNoPierdeElFicheroNuevo() throws Exception {
+        ProyectoZipPreparado a = zip("clave-a", "proyecto a\n".repeat(100));
+        ProyectoZipPreparado b = zip("clave-b", "proyecto b\n".repeat(100));
+        CacheZipProyectoService cache = new CacheZipProyectoService(true, directorio.toString(), a.getTamano());
+        cache.inicializar();
+        ArtefactoZip viejo = cache.obtener(a);
+
+        // Una descarga de a se queda parada a mitad de escribir
+        CountDownLatch escribiendo = new CountDownLatch(1);
+        CountDownLatch seguir = new CountDownLatch(1);
+        ByteArrayOutputStream recibido = new ByteArrayOutputStream();
+        OutputStream lenta = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] datos, int desde, int longitud) throws IOException {
+                escribiendo.countDown();
+                try {
+                    seguir.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                recibido.write(datos, desde, longitud);
+            }
+        };
+        CompletableFuture<Boolean> descarga = CompletableFuture.supplyAsync(() -> {
+            try {
+                return cache.enviar(viejo, lenta);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        assertTrue(escribiendo.await(5, TimeUnit.SECONDS));
+
+        // b la expulsa y enseguida se vuelve a pedir a: se genera en otro fichero
+        cache.obtener(b);
+        ArtefactoZip nuevo = cache.obtener(a);
+        assertNotEquals(viejo.getRuta(), nuevo.getRuta());
+
+        // Al terminar la descarga se borra el fichero viejo, no el nuevo
+        seguir.countDown();
+        assertTrue(descarga.get(5, TimeUnit.SECONDS));
+        assertArrayEquals(bytes(a), recibido.toByteArray());
+        assertFalse(Files.exists(viejo.getRuta()));
+        assertTrue(Files.exists(nuevo.getRuta()));
+
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        assertTrue(cache.enviar(nuevo, salida));
+        assertArrayEquals(bytes(a), salida.toByteArray());
+        assertEquals(nuevo, cache.obtener(a));
+        assertEquals(3, cache.getFallos());
+    }
+
+    @Test
+    void alArrancarSeQuedaConUnFicheroPorClave() throws IOException {
+        ProyectoZipPreparado a = zip("clave-a", "proyecto a\n".repeat(100));
+        Path antiguo = Files.write(directorio.resolve("clave-a~1.zip"), bytes(a));
+        Path reciente = Files.write(directorio.resolve("clave-a~2.zip"), bytes(a));
+        Files.setLastModifiedTime(antiguo, FileTime.fromMillis(1_000));
+
+        CacheZipProyectoService cache = new CacheZipProyectoService(true, directorio.toString(), 1 << 20);
+        cache.inicializar();
+
+        assertEquals(reciente, cache.obtener(a).getRuta());
+        assertFalse(Files.exists(antiguo));
+        assertEquals(a.getTamano(), cache.getBytesEnUso());
+    }
+
+    @Test
+    void elUltimoGeneradoNoSeExpulsaAunqueNoQuepa() throws IOException {
+        ProyectoZipPreparado a = zip("clave-a", "proyecto a\n".repeat(100));
+        CacheZipProyectoService cache = new CacheZipProyectoService(true, directorio.toString(), 1);
+        cache.inicializar();
+        ArtefactoZip artefacto = cache.obtener(a);
+
+        assertTrue(Files.exists(artefacto.getRuta()));
+        assertEquals(0, cache.getExpulsiones());
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        assertTrue(cache.enviar(artefacto, salida, 5, 20));
+        assertArrayEquals(Arrays.copyOfRange(bytes(a), 5, 25), salida.toByteArray());
+    }
+
+    static ProyectoZipPreparado zip(String clave, String contenido) {
+        EntradaZip entrada = EntradaZip.comprimir("src/App.java", contenido.getBytes(), 1_700_000_000_000L);
+        return new ProyectoZipPreparado(clave, clave + ".zip", List.of(entrada));
+    }
+
+    static byte[] bytes(ProyectoZipPreparado zip) throws IOException {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        zip.escribir(salida);
+        return salida.toByteArray();
+    }
+}
@@ -0,0 +1,92 @@
+package com.sistemagestionapp.service;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Benchmark sencillo de compresión en serie frente a compresión en paralelo.
+ * No compruebo la aceleración (depende de los núcleos de la máquina), solo que las
+ * dos rutas producen las mismas entradas; los tiempos los saco por consola.
+ */
+@Tag("benchmark")
+class CompresorZipServiceBenchmarkTest {
+
+    private static final int FICHEROS = 48;
+    private static final int TAMANO_FICHERO = 256 * 1024;
+    private static final int RONDAS = 3;
+
+    @TempDir
+    Path plantilla;
+
+    @Test
+    void compararSerieYParalelo() throws IOException {
+        List<Path> ficheros = crearFicheros();
+        CompresorZipService compresor = new CompresorZipService(0, 0, PoliticaCompresionPorTipo.porDefecto());
+        try {
+            // Calentamiento para que el JIT no penalice a la primera ronda
+            compresor.comprimir(plantilla, ficheros, CompresorZipService.Modo.SERIE);
+            compresor.comprimir(plantilla, ficheros, CompresorZipService.Modo.PARALELO);
+
+            long mejorSerie = Long.MAX_VALUE;
+            long mejorParalelo = Long.MAX_VALUE;
+            List<EntradaZip> serie = null;
+            List<EntradaZip> paralelo = null;
+            for (int i = 0; i < RONDAS; i++) {
+                long inicio = System.nanoTime();
+                serie = compresor.comprimir(plantilla, ficheros, CompresorZipService.Modo.SERIE);
+                mejorSerie = Math.min(mejorSerie, System.nanoTime() - inicio);
+
+                inicio = System.nanoTime();
+                paralelo = compresor.comprimir(plantilla, ficheros, CompresorZipService.Modo.PARALELO);
+                mejorParalelo = Math.min(mejorParalelo, System.nanoTime() - inicio);
+            }
+
+            assertEquals(serie.size(), paralelo.size());
+            for (int i = 0; i < serie.size(); i++) {
+                assertEquals(serie.get(i).getNombre(), paralelo.get(i).getNombre());
+                assertEquals(serie.get(i).getCrc(), paralelo.get(i).getCrc());
+                assertEquals(serie.get(i).getTamanoComprimido(), paralelo.get(i).getTamanoComprimido());
+            }
+
+            double mb = FICHEROS * (double) TAMANO_FICHERO / (1024 * 1024);
+            System.out.printf("[BENCH] %d ficheros, %.1f MB, %d hilos: serie %.1f ms, paralelo %.1f ms, x%.2f%n",
+                    FICHEROS, mb, compresor.getParalelismo(),
+                    mejorSerie / 1e6, mejorParalelo / 1e6, (double) mejorSerie / mejorParalelo);
+        } finally {
+            compresor.cerrar();
+        }
+    }
+
+    /**
+     * Genero texto con bastante repetición, parecido a código fuente, para que DEFLATE trabaje.
+     */
+    private List<Path> crearFicheros() throws IOException {
+        String[] palabras = {"public", "class", "private", "return", "import", "static", "final", "void",
+                "String", "List", "new", "if", "for", "aplicacion", "plantilla", "servicio"};
+        Random random = new Random(42);
+        List<Path> ficheros = new ArrayList<>();
+        for (int f = 0; f < FICHEROS; f++) {
+            StringBuilder sb = new StringBuilder(TAMANO_FICHERO);
+            while (sb.length() < TAMANO_FICHERO) {
+                sb.append(palabras[random.nextInt(palabras.length)])
+                        .append(random.nextInt(10) == 0 ? ";\n" : " ");
+            }
+            Path fichero = plantilla.resolve(String.format("src/Fichero%02d.java", f));
+            Files.createDirectories(fichero.getParent());
+            Files.writeString(fichero, sb, StandardCharsets.UTF_8);
+            ficheros.add(fichero);
+        }
+        return ficheros;
+    }
+}
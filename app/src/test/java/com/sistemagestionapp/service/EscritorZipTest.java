@@ -0,0 +1,196 @@
+package com.sistemagestionapp.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas del escritor de ZIP: lo que escribe lo tiene que leer {@link java.util.zip} igual,
+ * tanto recorriéndolo ({@link ZipInputStream}) como por el directorio central
+ * ({@link ZipFile}), y {@link EscritorZip#calcularTamano} tiene que dar los bytes exactos,
+ * también cuando hace falta ZIP64.
+ */
+class EscritorZipTest {
+
+    private static final long FECHA = 1_700_000_000_000L;
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void loQueEscribeSeLeeConJavaUtilZip() throws IOException {
+        Map<String, byte[]> contenidos = new LinkedHashMap<>();
+        contenidos.put("README.md", "# Proyecto\n".repeat(200).getBytes(StandardCharsets.UTF_8));
+        contenidos.put("src/Aplicación.java", "class Aplicacion {}".getBytes(StandardCharsets.UTF_8));
+        contenidos.put("vacio.txt", new byte[0]);
+        List<EntradaZip> entradas = new ArrayList<>();
+        for (Map.Entry<String, byte[]> contenido : contenidos.entrySet()) {
+            entradas.add(EntradaZip.comprimir(contenido.getKey(), contenido.getValue(), FECHA));
+        }
+        entradas.add(EntradaZip.comprimir("sin-comprimir.bin", new byte[]{1, 2, 3}, FECHA, PoliticaCompresion.SIN_COMPRIMIR));
+        contenidos.put("sin-comprimir.bin", new byte[]{1, 2, 3});
+
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        EscritorZip escritor = new EscritorZip(salida);
+        for (EntradaZip entrada : entradas) {
+            escritor.escribir(entrada, "mi-app/");
+        }
+        escritor.finalizar();
+        byte[] zip = salida.toByteArray();
+
+        assertEquals(zip.length, escritor.getPosicion());
+        // Sin prefijo, el tamaño calculado es el de escribir las mismas entradas
+        assertEquals(bytes(entradas).length, EscritorZip.calcularTamano(entradas));
+
+        try (ZipInputStream lector = new ZipInputStream(new ByteArrayInputStream(zip), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, byte[]> contenido : contenidos.entrySet()) {
+                ZipEntry entrada = lector.getNextEntry();
+                assertEquals("mi-app/" + contenido.getKey(), entrada.getName());
+                assertArrayEquals(contenido.getValue(), lector.readAllBytes());
+            }
+            assertNull(lector.getNextEntry());
+        }
+
+        Path fichero = Files.write(directorio.resolve("proyecto.zip"), zip);
+        try (ZipFile lector = new ZipFile(fichero.toFile())) {
+            assertEquals(contenidos.size(), lector.size());
+            for (Map.Entry<String, byte[]> contenido : contenidos.entrySet()) {
+                ZipEntry entrada = lector.getEntry("mi-app/" + contenido.getKey());
+                assertEquals(contenido.getValue().length, entrada.getSize());
+                assertArrayEquals(contenido.getValue(), lector.getInputStream(entrada).readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    void conMasDe65535EntradasUsaZip64() throws IOException {
+        int total = 70_000;
+        List<EntradaZip> entradas = new ArrayList<>(total);
+        for (int i = 0; i < total; i++) {
+            entradas.add(EntradaZip.comprimir("f" + i + ".txt", ("fichero " + i).getBytes(StandardCharsets.UTF_8), FECHA));
+        }
+        byte[] zip = bytes(entradas);
+        assertEquals(zip.length, EscritorZip.calcularTamano(entradas));
+
+        Path fichero = Files.write(directorio.resolve("muchos.zip"), zip);
+        try (ZipFile lector = new ZipFile(fichero.toFile())) {
+            assertEquals(total, lector.size());
+            ZipEntry ultima = lector.getEntry("f" + (total - 1) + ".txt");
+            assertArrayEquals(("fichero " + (total - 1)).getBytes(StandardCharsets.UTF_8),
+                    lector.getInputStream(ultima).readAllBytes());
+        }
+    }
+
+    @Test
+    void conEntradasPasadosLos4GbUsaZip64() throws IOException {
+        // La misma entrada de 64 MB 65 veces: las últimas empiezan pasados los 4 GB. No guardo
+        // los datos, solo el final, donde van el directorio central y los registros ZIP64
+        EntradaZip grande = EntradaZip.comprimir("datos.bin", new byte[64 << 20], FECHA, PoliticaCompresion.SIN_COMPRIMIR);
+        List<EntradaZip> entradas = new ArrayList<>();
+        for (int i = 0; i < 65; i++) {
+            entradas.add(grande);
+        }
+        entradas.add(EntradaZip.comprimir("fin.txt", "fin".getBytes(StandardCharsets.UTF_8), FECHA));
+
+        SoloElFinal salida = new SoloElFinal(64 * 1024);
+        EscritorZip escritor = new EscritorZip(salida);
+        for (EntradaZip entrada : entradas) {
+            escritor.escribir(entrada);
+        }
+        escritor.finalizar();
+
+        long tamano = escritor.getPosicion();
+        assertTrue(tamano > 0xFFFFFFFFL);
+        assertEquals(tamano, salida.escritos);
+        assertEquals(tamano, EscritorZip.calcularTamano(entradas));
+
+        // Fin de directorio con los campos saturados, localizador y registro ZIP64 que apunta
+        // al directorio central
+        ByteBuffer fin = salida.finalConOrden();
+        int finDirectorio = fin.limit() - 22;
+        assertEquals(0x06054b50, fin.getInt(finDirectorio));
+        assertEquals(0xFFFFFFFF, fin.getInt(finDirectorio + 16));
+        int localizador = finDirectorio - 20;
+        assertEquals(0x07064b50, fin.getInt(localizador));
+        long finZip64 = fin.getLong(localizador + 8);
+        int registro = (int) (finZip64 - (tamano - fin.limit()));
+        assertEquals(0x06064b50, fin.getInt(registro));
+        assertEquals(entradas.size(), fin.getLong(registro + 32));
+        long inicioDirectorio = fin.getLong(registro + 48);
+        assertTrue(inicioDirectorio > 0xFFFFFFFFL);
+        assertEquals(0x02014b50, fin.getInt((int) (inicioDirectorio - (tamano - fin.limit()))));
+    }
+
+    @Test
+    void noSePuedeEscribirTrasFinalizar() throws IOException {
+        EscritorZip escritor = new EscritorZip(new ByteArrayOutputStream());
+        escritor.finalizar();
+        assertThrows(IllegalStateException.class,
+                () -> escritor.escribir(EntradaZip.comprimir("a.txt", new byte[1], FECHA)));
+    }
+
+    private static byte[] bytes(List<EntradaZip> entradas) throws IOException {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        EscritorZip escritor = new EscritorZip(salida);
+        for (EntradaZip entrada : entradas) {
+            escritor.escribir(entrada);
+        }
+        escritor.finalizar();
+        return salida.toByteArray();
+    }
+
+    /**
+     * Cuenta los bytes que recibe y guarda solo los últimos.
+     */
+    private static final class SoloElFinal extends OutputStream {
+        private final byte[] cola;
+        private long escritos;
+
+        private SoloElFinal(int capacidad) {
+            this.cola = new byte[capacidad];
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int desde, int longitud) {
+            for (int i = Math.max(0, longitud - cola.length); i < longitud; i++) {
+                cola[(int) ((escritos + i) % cola.length)] = b[desde + i];
+            }
+            escritos += longitud;
+        }
+
+        private ByteBuffer finalConOrden() {
+            byte[] ordenado = new byte[cola.length];
+            int inicio = (int) (escritos % cola.length);
+            System.arraycopy(cola, inicio, ordenado, 0, cola.length - inicio);
+            System.arraycopy(cola, 0, ordenado, cola.length - inicio, inicio);
+            return ByteBuffer.wrap(ordenado).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.sistemagestionapp.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas del espacio temporal: al arrancar solo se borran las carpetas de instancias que ya
+ * no están vivas, y un espacio que se está leyendo no se borra hasta que termina la lectura.
+ */
+class EspacioTemporalServiceTest {
+
+    @TempDir
+    Path base;
+
+    @Test
+    void alArrancarSoloBorraLasInstanciasAbandonadas() throws IOException {
+        EspacioTemporalService viva = servicio();
+        EspacioTrabajo suyo = viva.reservar("trabajo-", 10);
+        Files.writeString(suyo.getDirectorio().resolve("datos"), "en uso");
+
+        // Una instancia que se cayó sin llegar a crear su bloqueo y algo que no es de ninguna
+        Path abandonada = Files.createDirectories(base.resolve("instancia-1-caida").resolve("trabajo-1"));
+        Path ajeno = Files.createDirectories(base.resolve("otra-cosa"));
+
+        EspacioTemporalService nueva = servicio();
+        assertTrue(Files.exists(suyo.getDirectorio().resolve("datos")));
+        assertFalse(Files.exists(abandonada.getParent()));
+        assertTrue(Files.exists(ajeno));
+        assertEquals(1, nueva.getEspaciosRecuperados());
+
+        // Cuando la primera para, su carpeta desaparece y suelta el bloqueo
+        viva.cerrar();
+        assertFalse(Files.exists(viva.getDirectorioInstancia()));
+        nueva.cerrar();
+    }
+
+    @Test
+    void unaInstanciaParadaSinBorrarSeRecogeAlArrancarOtra() throws IOException {
+        EspacioTemporalService anterior = servicio();
+        Path carpeta = anterior.reservar("trabajo-", 10).getDirectorio();
+        // Simulo una caída: el bloqueo desaparece con el proceso, pero la carpeta se queda
+        Files.copy(carpeta, base.resolve("instancia-2-sin-bloqueo"));
+        anterior.cerrar();
+
+        EspacioTemporalService nueva = servicio();
+        assertFalse(Files.exists(base.resolve("instancia-2-sin-bloqueo")));
+        nueva.cerrar();
+    }
+
+    @Test
+    void unEspacioQueSeEstaLeyendoSeBorraAlTerminarLaLectura() throws IOException {
+        EspacioTemporalService servicio = servicio();
+        EspacioTrabajo espacio = servicio.reservar("trabajo-", 100, Duration.ofMinutes(1));
+        Path directorio = espacio.getDirectorio();
+
+        assertTrue(espacio.adquirir());
+        espacio.close();
+        assertTrue(espacio.estaLiberado());
+        assertFalse(espacio.adquirir());
+        assertTrue(Files.exists(directorio));
+        assertEquals(100, servicio.getBytesEnUso());
+
+        espacio.soltar();
+        assertFalse(Files.exists(directorio));
+        assertEquals(0, servicio.getBytesEnUso());
+        servicio.cerrar();
+    }
+
+    @Test
+    void sinLectoresSeBorraAlLiberar() throws IOException {
+        EspacioTemporalService servicio = servicio();
+        EspacioTrabajo espacio = servicio.reservar("trabajo-", 100);
+        assertTrue(espacio.adquirir());
+        espacio.soltar();
+        assertTrue(Files.exists(espacio.getDirectorio()));
+
+        espacio.close();
+        assertFalse(Files.exists(espacio.getDirectorio()));
+        assertEquals(0, servicio.getBytesEnUso());
+        servicio.cerrar();
+    }
+
+    private EspacioTemporalService servicio() throws IOException {
+        EspacioTemporalService servicio = new EspacioTemporalService(base.toString(), 1024 * 1024, 15, 1000);
+        servicio.inicializar();
+        return servicio;
+    }
+}
@@ -0,0 +1,120 @@
+package com.sistemagestionapp.service;
+
+import com.sistemagestionapp.model.Bloque;
+import com.sistemagestionapp.model.PruebaInclusion;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas de inclusión sacadas del formato del registro: verifican para cada entrada de
+ * bloques con un número par o impar de entradas, y no verifican si se altera la posición,
+ * un hermano, la entrada o la cabecera.
+ */
+class FormatoBloqueTest {
+
+    @Test
+    void laPruebaDeCadaEntradaVerifica() {
+        for (int n : new int[]{1, 2, 3, 5, 8, 13}) {
+            Bloque bloque = bloque(n);
+            for (int posicion = 0; posicion < n; posicion++) {
+                PruebaInclusion prueba = prueba(bloque, posicion);
+                assertTrue(prueba.verificar(), n + " entradas, posición " + posicion);
+                assertEquals(bloque.getEntradas().get(posicion), prueba.getEntrada());
+                assertEquals(n, prueba.getTotalEntradas());
+            }
+        }
+    }
+
+    @Test
+    void rechazaUnaPosicionCambiada() {
+        Bloque bloque = bloque(5);
+        PruebaInclusion prueba = prueba(bloque, 2);
+        for (int posicion = 0; posicion < 5; posicion++) {
+            assertEquals(posicion == 2, alterar(prueba, posicion, prueba.getTotalEntradas(),
+                    prueba.getEntrada(), -1).verificar());
+        }
+        assertFalse(alterar(prueba, 2, 3, prueba.getEntrada(), -1).verificar());
+
+        // La entrada de otra posición con el camino de la 2 tampoco
+        assertFalse(alterar(prueba, 3, 5, bloque.getEntradas().get(3), -1).verificar());
+    }
+
+    @Test
+    void rechazaUnHermanoOUnaEntradaAlterados() {
+        PruebaInclusion prueba = prueba(bloque(6), 4);
+        for (int i = 0; i < prueba.getCamino().size(); i++) {
+            assertFalse(alterar(prueba, 4, 6, prueba.getEntrada(), i).verificar());
+        }
+        assertFalse(alterar(prueba, 4, 6, prueba.getEntrada() + " ", -1).verificar());
+    }
+
+    @Test
+    void rechazaUnaCabeceraAlterada() {
+        PruebaInclusion prueba = prueba(bloque(3), 1);
+        HexFormat hex = HexFormat.of();
+        PruebaInclusion otroIndice = new PruebaInclusion(prueba.getIndiceBloque() + 1, 1, 3, prueba.getEntrada(),
+                hex.parseHex(prueba.getHashAnterior()), hex.parseHex(prueba.getRaizMerkle()), prueba.getDificultad(),
+                prueba.getNonce(), hex.parseHex(prueba.getHashBloque()), hermanos(prueba, -1), izquierdos(prueba));
+        assertFalse(otroIndice.verificar());
+    }
+
+    @Test
+    void noHayPruebaFueraDelBloque() {
+        Bloque bloque = bloque(3);
+        assertThrows(IllegalArgumentException.class, () -> prueba(bloque, 3));
+        assertThrows(IllegalArgumentException.class, () -> prueba(bloque, -1));
+    }
+
+    private static Bloque bloque(int n) {
+        List<String> entradas = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            entradas.add("{\"evento\":" + i + ",\"texto\":\"paso ñ " + i + "\"}");
+        }
+        return new Bloque(7, entradas, Bloque.HASH_CERO);
+    }
+
+    private static PruebaInclusion prueba(Bloque bloque, int posicion) {
+        byte[] bytes = FormatoBloque.codificar(bloque);
+        return FormatoBloque.prueba(ByteBuffer.wrap(bytes), 0, bytes.length, posicion);
+    }
+
+    /**
+     * Rehago la prueba con otra posición, total o entrada y, si alterado no es -1, con ese
+     * hermano del camino cambiado.
+     */
+    private static PruebaInclusion alterar(PruebaInclusion prueba, int posicion, int total, String entrada, int alterado) {
+        HexFormat hex = HexFormat.of();
+        return new PruebaInclusion(prueba.getIndiceBloque(), posicion, total, entrada,
+                hex.parseHex(prueba.getHashAnterior()), hex.parseHex(prueba.getRaizMerkle()), prueba.getDificultad(),
+                prueba.getNonce(), hex.parseHex(prueba.getHashBloque()), hermanos(prueba, alterado), izquierdos(prueba));
+    }
+
+    private static List<byte[]> hermanos(PruebaInclusion prueba, int alterado) {
+        List<byte[]> hermanos = new ArrayList<>();
+        for (int i = 0; i < prueba.getCamino().size(); i++) {
+            byte[] hash = HexFormat.of().parseHex(prueba.getCamino().get(i).hash());
+            if (i == alterado) {
+                hash[hash.length - 1] ^= 1;
+            }
+            hermanos.add(hash);
+        }
+        return hermanos;
+    }
+
+    private static List<Boolean> izquierdos(PruebaInclusion prueba) {
+        List<Boolean> izquierdos = new ArrayList<>();
+        for (PruebaInclusion.Paso paso : prueba.getCamino()) {
+            izquierdos.add("izquierda".equals(paso.lado()));
+        }
+        return izquierdos;
+    }
+}
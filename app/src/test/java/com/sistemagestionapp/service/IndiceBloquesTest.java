@@ -0,0 +1,62 @@
+package com.sistemagestionapp.service;
+
+import com.sistemagestionapp.model.Bloque;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas de la búsqueda por palabras: orden de los resultados, parada en el límite y total
+ * exacto o como cota inferior.
+ */
+class IndiceBloquesTest {
+
+    private IndiceBloques indice;
+
+    @BeforeEach
+    void crearIndice() {
+        indice = new IndiceBloques();
+        byte[] hashAnterior = Bloque.HASH_CERO;
+        for (int i = 0; i < 100; i++) {
+            // Todos tienen "despliegue"; los pares, además, "correcto"
+            String entrada = "despliegue " + (i % 2 == 0 ? "correcto" : "fallido") + " numero" + i;
+            Bloque bloque = new Bloque(i, entrada, hashAnterior);
+            indice.indexar(bloque);
+            hashAnterior = bloque.getHashBytes();
+        }
+    }
+
+    @Test
+    void seParaEnElLimiteYDaElTotalComoCotaInferior() {
+        IndiceBloques.Resultado resultado = indice.buscar("despliegue correcto", 3);
+        assertEquals(List.of(98, 96, 94), resultado.indices());
+        assertEquals(3, resultado.total());
+        assertFalse(resultado.exacto());
+    }
+
+    @Test
+    void daElTotalExactoSiLlegaAlFinal() {
+        IndiceBloques.Resultado resultado = indice.buscar("despliegue correcto", 80);
+        assertEquals(50, resultado.indices().size());
+        assertEquals(50, resultado.total());
+        assertTrue(resultado.exacto());
+
+        IndiceBloques.Resultado uno = indice.buscar("numero42", 10);
+        assertEquals(List.of(42), uno.indices());
+        assertTrue(uno.exacto());
+    }
+
+    @Test
+    void sinCoincidenciasElTotalEsCeroYExacto() {
+        IndiceBloques.Resultado resultado = indice.buscar("correcto fallido", 10);
+        assertEquals(List.of(), resultado.indices());
+        assertEquals(0, resultado.total());
+        assertTrue(resultado.exacto());
+        assertTrue(indice.buscar("inexistente", 10).exacto());
+    }
+}
@@ -0,0 +1,89 @@
+package com.sistemagestionapp.service;
+
+import com.sistemagestionapp.model.Bloque;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas del minero: el bloque minado cumple la dificultad y conserva todo menos el nonce,
+ * con un hilo encuentra el primer nonce válido, y parado no mina.
+ */
+class MineroBloquesTest {
+
+    private static final int DIFICULTAD = 10;
+
+    @Test
+    void elBloqueMinadoCumpleLaDificultadYSoloCambiaElNonce() {
+        Bloque candidato = new Bloque(3, List.of("a", "b", "c"), Bloque.HASH_CERO, DIFICULTAD);
+        MineroBloques minero = new MineroBloques(DIFICULTAD, 3);
+        try {
+            Bloque minado = minero.minar(candidato);
+
+            assertTrue(Bloque.cumpleDificultad(minado.getHashBytes(), DIFICULTAD));
+            assertArrayEquals(minado.calcularHash(), minado.getHashBytes());
+            assertEquals(candidato.getIndice(), minado.getIndice());
+            assertEquals(candidato.getEntradas(), minado.getEntradas());
+            assertArrayEquals(candidato.getHashAnteriorBytes(), minado.getHashAnteriorBytes());
+            assertArrayEquals(candidato.getRaizMerkleBytes(), minado.getRaizMerkleBytes());
+            assertEquals(1, minero.getBloques());
+            assertTrue(minero.getHashes() > 0);
+        } finally {
+            minero.cerrar();
+        }
+    }
+
+    @Test
+    void conUnHiloEncuentraElPrimerNonceValido() {
+        Bloque candidato = new Bloque(1, List.of("primero"), Bloque.HASH_CERO, DIFICULTAD);
+        MineroBloques minero = new MineroBloques(DIFICULTAD, 1);
+        try {
+            Bloque minado = minero.minar(candidato);
+            for (long nonce = 0; nonce < minado.getNonce(); nonce++) {
+                assertFalse(Bloque.cumpleDificultad(candidato.conNonce(nonce).getHashBytes(), DIFICULTAD));
+            }
+            // Un solo tramo que empieza en 0: los intentos son exactamente los nonces probados
+            assertEquals(minado.getNonce() + 1, minero.getHashes());
+        } finally {
+            minero.cerrar();
+        }
+    }
+
+    @Test
+    void sinDificultadDevuelveElMismoCandidato() {
+        Bloque candidato = new Bloque(1, List.of("libre"), Bloque.HASH_CERO);
+        MineroBloques minero = new MineroBloques(0, 2);
+        assertSame(candidato, minero.minar(candidato));
+        assertEquals(0, minero.getHashes());
+        minero.cerrar();
+    }
+
+    @Test
+    void paradoNoMinaYLaDificultadTieneLimites() {
+        MineroBloques minero = new MineroBloques(DIFICULTAD, 1);
+        minero.cerrar();
+        assertThrows(IllegalStateException.class,
+                () -> minero.minar(new Bloque(1, List.of("tarde"), Bloque.HASH_CERO, DIFICULTAD)));
+        assertThrows(IllegalArgumentException.class, () -> new MineroBloques(-1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new MineroBloques(Bloque.DIFICULTAD_MAXIMA + 1, 1));
+    }
+
+    @Test
+    void laDificultadCuentaBitsNoBytes() {
+        byte[] hash = new byte[Bloque.TAMANO_HASH];
+        Arrays.fill(hash, (byte) 0xFF);
+        hash[0] = 0;
+        hash[1] = 0x1F;
+        assertTrue(Bloque.cumpleDificultad(hash, 11));
+        assertFalse(Bloque.cumpleDificultad(hash, 12));
+        assertTrue(Bloque.cumpleDificultad(hash, 0));
+    }
+}
@@ -0,0 +1,84 @@
+package com.sistemagestionapp.service;
+
+import com.sistemagestionapp.model.Lenguaje;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * La versión de una plantilla tiene que cambiar con cualquier cosa que cambie los bytes de
+ * sus entradas en el ZIP, no solo con el contenido de los ficheros.
+ */
+class PlantillaProyectoTest {
+
+    private static final DefinicionPlantilla DEFINICION =
+            new DefinicionPlantilla(Lenguaje.JAVA, "demo", "config/app-config.properties", Set.of("target"));
+
+    @TempDir
+    Path raiz;
+
+    private CompresorZipService porDefecto;
+    private CompresorZipService sinComprimir;
+
+    @AfterEach
+    void cerrar() {
+        if (porDefecto != null) {
+            porDefecto.cerrar();
+        }
+        if (sinComprimir != null) {
+            sinComprimir.cerrar();
+        }
+    }
+
+    @Test
+    void laMismaPlantillaConLaMismaPoliticaTieneLaMismaVersion() throws IOException {
+        crearFicheros();
+        porDefecto = new CompresorZipService(1, Long.MAX_VALUE, PoliticaCompresionPorTipo.porDefecto());
+
+        assertEquals(PlantillaProyecto.cargar(raiz, DEFINICION, porDefecto).getVersion(),
+                PlantillaProyecto.cargar(raiz, DEFINICION, porDefecto).getVersion());
+    }
+
+    @Test
+    void cambiarLaPoliticaCambiaLaVersion() throws IOException {
+        crearFicheros();
+        porDefecto = new CompresorZipService(1, Long.MAX_VALUE, PoliticaCompresionPorTipo.porDefecto());
+        sinComprimir = new CompresorZipService(1, Long.MAX_VALUE,
+                new PoliticaCompresionPorTipo("", "", PoliticaCompresion.SIN_COMPRIMIR, 0, Long.MAX_VALUE, 1));
+
+        PlantillaProyecto comprimida = PlantillaProyecto.cargar(raiz, DEFINICION, porDefecto);
+        PlantillaProyecto guardada = PlantillaProyecto.cargar(raiz, DEFINICION, sinComprimir);
+
+        // Mismo contenido (nombres, CRC y tamaños) pero otros bytes en el ZIP
+        assertEquals(comprimida.getEntradas().get(0).getCrc(), guardada.getEntradas().get(0).getCrc());
+        assertNotEquals(comprimida.getVersion(), guardada.getVersion());
+        assertNotEquals(porDefecto.getHuellaPolitica(), sinComprimir.getHuellaPolitica());
+    }
+
+    @Test
+    void cambiarLaFechaDeUnFicheroCambiaLaVersion() throws IOException {
+        crearFicheros();
+        porDefecto = new CompresorZipService(1, Long.MAX_VALUE, PoliticaCompresionPorTipo.porDefecto());
+        String antes = PlantillaProyecto.cargar(raiz, DEFINICION, porDefecto).getVersion();
+
+        Path fichero = raiz.resolve("src/Main.java");
+        Files.setLastModifiedTime(fichero, java.nio.file.attribute.FileTime.fromMillis(
+                Files.getLastModifiedTime(fichero).toMillis() - 86_400_000L));
+
+        assertNotEquals(antes, PlantillaProyecto.cargar(raiz, DEFINICION, porDefecto).getVersion());
+    }
+
+    private void crearFicheros() throws IOException {
+        Files.createDirectories(raiz.resolve("src"));
+        Files.writeString(raiz.resolve("src/Main.java"), "public class Main {}\n".repeat(200));
+        Files.writeString(raiz.resolve("README.md"), "# Demo\n".repeat(50));
+    }
+}
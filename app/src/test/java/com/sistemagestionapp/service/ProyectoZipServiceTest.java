@@ -0,0 +1,101 @@
+package com.sistemagestionapp.service;
+
+import com.sistemagestionapp.model.Aplicacion;
+import com.sistemagestionapp.model.Lenguaje;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Pruebas de la exportación de varios proyectos en un ZIP: cada aplicación va en su propia
+ * carpeta aunque los nombres choquen, y el ZIP no repite entradas.
+ */
+class ProyectoZipServiceTest {
+
+    private static final DefinicionPlantilla DEFINICION =
+            new DefinicionPlantilla(Lenguaje.JAVA, "demo-java", "config/app-config.properties", Set.of("target"));
+
+    @TempDir
+    Path raiz;
+
+    private CompresorZipService compresor;
+    private ProyectoZipService servicio;
+
+    @BeforeEach
+    void preparar() throws IOException {
+        Files.createDirectories(raiz.resolve("src"));
+        Files.writeString(raiz.resolve("src/Main.java"), "public class Main {}\n");
+        Files.writeString(raiz.resolve("README.md"), "# Demo\n");
+
+        compresor = new CompresorZipService(1, Long.MAX_VALUE, PoliticaCompresionPorTipo.porDefecto());
+        PlantillaProyecto plantilla = PlantillaProyecto.cargar(raiz, DEFINICION, compresor);
+        PlantillaProyectoService plantillas = mock(PlantillaProyectoService.class);
+        when(plantillas.obtenerPlantilla(Lenguaje.JAVA)).thenReturn(plantilla);
+
+        servicio = new ProyectoZipService(plantillas, new PipelineCiService("", compresor), compresor);
+    }
+
+    @AfterEach
+    void cerrar() {
+        compresor.cerrar();
+    }
+
+    @Test
+    void conNombresQueChocanCadaAplicacionTieneSuCarpeta() throws IOException {
+        // "foo-7" es literalmente el nombre de una y el que saldría de "foo" con id 7
+        List<Aplicacion> aplicaciones = List.of(
+                aplicacion(1L, "foo-7"),
+                aplicacion(2L, "foo"),
+                aplicacion(7L, "foo"),
+                aplicacion(7L, "Foo"));
+
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        servicio.exportarProyectos(aplicaciones, salida);
+
+        List<String> nombres = leerNombres(salida.toByteArray());
+        assertEquals(nombres.size(), new TreeSet<>(nombres).size(), "Hay entradas repetidas: " + nombres);
+
+        Set<String> carpetas = new TreeSet<>();
+        for (String nombre : nombres) {
+            carpetas.add(nombre.substring(0, nombre.indexOf('/')));
+        }
+        assertEquals(Set.of("foo-7", "foo", "foo-7-2", "foo-7-3"), carpetas);
+        assertEquals(aplicaciones.size() * 3, nombres.size());
+    }
+
+    private static Aplicacion aplicacion(Long id, String nombre) {
+        Aplicacion aplicacion = new Aplicacion();
+        aplicacion.setId(id);
+        aplicacion.setNombre(nombre);
+        aplicacion.setLenguaje(Lenguaje.JAVA);
+        return aplicacion;
+    }
+
+    private static List<String> leerNombres(byte[] zip) throws IOException {
+        List<String> nombres = new ArrayList<>();
+        try (ZipInputStream lector = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            ZipEntry entrada;
+            while ((entrada = lector.getNextEntry()) != null) {
+                nombres.add(entrada.getName());
+            }
+        }
+        return nombres;
+    }
+}
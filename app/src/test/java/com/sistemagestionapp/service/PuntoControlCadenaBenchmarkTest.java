@@ -0,0 +1,100 @@
+package com.sistemagestionapp.service;
+
+import com.sistemagestionapp.model.Bloque;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Benchmark del arranque desde un punto de control con cadenas de distinto tamaño. Compruebo
+ * que los bloques que se vuelven a leer son siempre los de detrás del punto de control y que
+ * el arranque no crece con la cadena: con diez veces más bloques antes del punto de control
+ * tiene que tardar prácticamente lo mismo (dejo un margen amplio para el ruido de la
+ * máquina). Los tiempos, también los del arranque sin punto de control, salen por consola.
+ */
+@Tag("benchmark")
+class PuntoControlCadenaBenchmarkTest {
+
+    private static final int DESPUES = 500;
+    private static final int RONDAS = 5;
+    private static final byte[] CLAVE = "clave-de-prueba".getBytes();
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void elArranqueNoDependeDeLaLongitudDeLaCadena() throws IOException {
+        int[] tamanos = {10_000, 100_000};
+        long[] mejores = new long[tamanos.length];
+        for (int t = 0; t < tamanos.length; t++) {
+            int bloques = tamanos[t];
+            Path carpeta = directorio.resolve("cadena-" + bloques);
+            PuntoControlCadena puntoControl = new PuntoControlCadena(carpeta.resolve("puntos-control"), CLAVE, 2);
+            crearCadena(carpeta, puntoControl, bloques);
+
+            long completa = arrancar(carpeta, null, bloques + DESPUES).nanos();
+            mejores[t] = Long.MAX_VALUE;
+            for (int i = 0; i < RONDAS; i++) {
+                PuntoControlCadena.Recuperacion recuperacion = arrancar(carpeta, puntoControl, bloques + DESPUES);
+                assertEquals(bloques, recuperacion.desdePuntoControl());
+                assertEquals(DESPUES, recuperacion.reproducidos());
+                mejores[t] = Math.min(mejores[t], recuperacion.nanos());
+            }
+            System.out.printf("[BENCH] %d bloques: arranque completo %.1f ms, desde punto de control %.1f ms (%d reproducidos)%n",
+                    bloques + DESPUES, completa / 1e6, mejores[t] / 1e6, DESPUES);
+        }
+        // Un arranque O(cadena) tardaría unas diez veces más con la cadena grande
+        assertTrue(mejores[1] < mejores[0] * 3 + 5_000_000L,
+                "El arranque crece con la cadena: " + mejores[0] / 1e6 + " ms frente a " + mejores[1] / 1e6 + " ms");
+    }
+
+    /**
+     * Abro el registro recuperando el estado (con o sin punto de control), mido solo eso y
+     * después compruebo que el índice, ya cargado, queda completo.
+     */
+    private static PuntoControlCadena.Recuperacion arrancar(Path carpeta, PuntoControlCadena puntoControl,
+                                                            int esperados) throws IOException {
+        PuntoControlCadena recuperador = puntoControl != null ? puntoControl
+                : new PuntoControlCadena(carpeta.resolve("sin-puntos-control"), CLAVE, 1);
+        IndiceBloques indice = new IndiceBloques();
+        try (RegistroBloques registro = new RegistroBloques(carpeta, 64 * 1024 * 1024, Integer.MAX_VALUE)) {
+            PuntoControlCadena.Recuperacion recuperacion = recuperador.recuperar(registro, indice);
+            indice.getCarga().join();
+            assertEquals(esperados, registro.getTotal());
+            assertEquals(esperados, indice.getBloques());
+            assertEquals(List.of(esperados - 1), indice.buscar("evento " + (esperados - 1), 10).indices());
+            assertEquals(List.of(77), indice.buscar("evento 77", 10).indices());
+            Bloque ultimo = registro.leer(esperados - 1);
+            assertEquals(esperados - 1, indice.buscarHash(ultimo.getHashBytes(), i -> i == esperados - 1));
+            return recuperacion;
+        }
+    }
+
+    /**
+     * Creo una cadena, guardo un punto de control con los primeros bloques y añado
+     * {@link #DESPUES} bloques más, como si el proceso hubiera seguido tras guardarlo.
+     */
+    private static void crearCadena(Path carpeta, PuntoControlCadena puntoControl, int bloques) throws IOException {
+        IndiceBloques indice = new IndiceBloques();
+        try (RegistroBloques registro = new RegistroBloques(carpeta, 64 * 1024 * 1024, Integer.MAX_VALUE)) {
+            registro.abrir();
+            byte[] hashAnterior = Bloque.HASH_CERO;
+            for (int i = 0; i < bloques + DESPUES; i++) {
+                if (i == bloques) {
+                    assertEquals(bloques, puntoControl.guardar(registro, indice, bloques));
+                }
+                Bloque bloque = new Bloque(i, "evento " + i, hashAnterior);
+                registro.anadir(bloque);
+                indice.indexar(bloque);
+                hashAnterior = bloque.getHashBytes();
+            }
+        }
+    }
+}
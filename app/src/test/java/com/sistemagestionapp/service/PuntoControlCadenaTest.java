@@ -0,0 +1,163 @@
+package com.sistemagestionapp.service;
+
+import com.sistemagestionapp.model.Bloque;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Pruebas de los puntos de control: qué pasa si el fichero está alterado (en la cabecera o en
+ * el volcado del índice), si se firmó con otra clave y si la cadena se trunca entre que se
+ * captura y se escribe.
+ */
+class PuntoControlCadenaTest {
+
+    private static final int BLOQUES = 300;
+    private static final int DESPUES = 50;
+    private static final byte[] CLAVE = "clave-de-prueba".getBytes();
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void arrancaDesdeElPuntoControlYCargaSuIndice() throws IOException {
+        PuntoControlCadena puntoControl = puntoControl(CLAVE);
+        crearCadena(puntoControl, BLOQUES);
+
+        PuntoControlCadena.Recuperacion recuperacion = arrancar(puntoControl);
+        assertEquals(BLOQUES, recuperacion.desdePuntoControl());
+        assertEquals(DESPUES, recuperacion.reproducidos());
+    }
+
+    @Test
+    void descartaUnPuntoControlConLaCabeceraAlterada() throws IOException {
+        PuntoControlCadena puntoControl = puntoControl(CLAVE);
+        crearCadena(puntoControl, BLOQUES);
+        alterar(masReciente(), 10);
+
+        PuntoControlCadena.Recuperacion recuperacion = arrancar(puntoControl);
+        assertEquals(0, recuperacion.desdePuntoControl());
+        assertEquals(BLOQUES + DESPUES, recuperacion.reproducidos());
+    }
+
+    @Test
+    void reconstruyeElIndiceSiElVolcadoEstaAlterado() throws IOException {
+        PuntoControlCadena puntoControl = puntoControl(CLAVE);
+        crearCadena(puntoControl, BLOQUES);
+        Path fichero = masReciente();
+        alterar(fichero, (int) Files.size(fichero) - 5);
+
+        // La cabecera sigue siendo válida: el registro se abre desde el punto de control y el
+        // índice de esos bloques se reconstruye leyéndolos, así que las búsquedas los encuentran
+        PuntoControlCadena.Recuperacion recuperacion = arrancar(puntoControl);
+        assertEquals(BLOQUES, recuperacion.desdePuntoControl());
+    }
+
+    @Test
+    void usaElAnteriorSiElMasRecienteEstaAlterado() throws IOException {
+        PuntoControlCadena puntoControl = puntoControl(CLAVE);
+        crearCadena(puntoControl, 100, BLOQUES);
+        alterar(masReciente(), 20);
+
+        PuntoControlCadena.Recuperacion recuperacion = arrancar(puntoControl);
+        assertEquals(100, recuperacion.desdePuntoControl());
+        assertEquals(BLOQUES + DESPUES - 100, recuperacion.reproducidos());
+    }
+
+    @Test
+    void conOtraClaveRecorreLaCadenaEntera() throws IOException {
+        crearCadena(puntoControl(CLAVE), BLOQUES);
+
+        assertEquals(0, arrancar(puntoControl("otra".getBytes())).desdePuntoControl());
+    }
+
+    @Test
+    void noEscribeUnPuntoControlCapturadoAntesDeTruncar() throws IOException {
+        PuntoControlCadena puntoControl = puntoControl(CLAVE);
+        try (RegistroBloques registro = new RegistroBloques(directorio, 64 * 1024, Integer.MAX_VALUE)) {
+            registro.abrir();
+            IndiceBloques indice = new IndiceBloques();
+            anadir(registro, indice, BLOQUES);
+
+            PuntoControlCadena.Captura captura = puntoControl.capturar(registro, indice, BLOQUES);
+            puntoControl.descartarDesde(BLOQUES / 2);
+            assertEquals(0, puntoControl.escribir(captura));
+            assertEquals(BLOQUES, puntoControl.guardar(registro, indice, BLOQUES));
+        }
+    }
+
+    private PuntoControlCadena puntoControl(byte[] clave) {
+        return new PuntoControlCadena(directorio.resolve("puntos-control"), clave, 2);
+    }
+
+    /**
+     * Abro la cadena con el punto de control y compruebo que, cargado el índice, encuentra
+     * bloques de antes y de después de él.
+     */
+    private PuntoControlCadena.Recuperacion arrancar(PuntoControlCadena puntoControl) throws IOException {
+        IndiceBloques indice = new IndiceBloques();
+        try (RegistroBloques registro = new RegistroBloques(directorio, 64 * 1024, Integer.MAX_VALUE)) {
+            PuntoControlCadena.Recuperacion recuperacion = puntoControl.recuperar(registro, indice);
+            indice.getCarga().join();
+            int total = BLOQUES + DESPUES;
+            assertEquals(total, registro.getTotal());
+            assertEquals(total, indice.getBloques());
+            assertEquals(List.of(17), indice.buscar("evento 17", 10).indices());
+            assertEquals(List.of(total - 1), indice.buscar("evento " + (total - 1), 10).indices());
+            Bloque bloque = registro.leer(42);
+            assertEquals(42, indice.buscarHash(bloque.getHashBytes(), i -> i == 42));
+            return recuperacion;
+        }
+    }
+
+    /**
+     * Creo una cadena de {@link #BLOQUES} + {@link #DESPUES} bloques con un punto de control
+     * en cada uno de los tamaños indicados. El índice va siempre por delante del punto de
+     * control, como en el servicio.
+     */
+    private void crearCadena(PuntoControlCadena puntoControl, int... puntos) throws IOException {
+        try (RegistroBloques registro = new RegistroBloques(directorio, 64 * 1024, Integer.MAX_VALUE)) {
+            registro.abrir();
+            IndiceBloques indice = new IndiceBloques();
+            int escritos = 0;
+            for (int punto : puntos) {
+                anadir(registro, indice, punto + 10 - escritos);
+                escritos = punto + 10;
+                assertEquals(punto, puntoControl.guardar(registro, indice, punto));
+            }
+            anadir(registro, indice, BLOQUES + DESPUES - escritos);
+        }
+    }
+
+    private static void anadir(RegistroBloques registro, IndiceBloques indice, int cuantos) throws IOException {
+        byte[] hashAnterior = registro.getTotal() == 0 ? Bloque.HASH_CERO
+                : registro.leer(registro.getTotal() - 1).getHashBytes();
+        for (int n = 0; n < cuantos; n++) {
+            int i = registro.getTotal();
+            Bloque bloque = new Bloque(i, "evento " + i, hashAnterior);
+            registro.anadir(bloque);
+            indice.indexar(bloque);
+            hashAnterior = bloque.getHashBytes();
+        }
+    }
+
+    private Path masReciente() throws IOException {
+        try (Stream<Path> ficheros = Files.list(directorio.resolve("puntos-control"))) {
+            return ficheros.filter(p -> p.getFileName().toString().endsWith(".pc"))
+                    .max(Path::compareTo).orElseThrow();
+        }
+    }
+
+    private static void alterar(Path fichero, int posicion) throws IOException {
+        byte[] contenido = Files.readAllBytes(fichero);
+        contenido[posicion] ^= 1;
+        Files.write(fichero, contenido);
+    }
+}
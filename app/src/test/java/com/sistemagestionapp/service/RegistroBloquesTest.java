@@ -0,0 +1,261 @@
+package com.sistemagestionapp.service;
+
+import com.sistemagestionapp.model.Bloque;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas del registro de bloques con segmentos pequeños (unos 25 bloques cada uno): la
+ * recuperación tras una escritura a medias o un registro roto, la apertura con los bloques
+ * de un punto de control y el truncado, también con lectores leyendo a la vez.
+ */
+class RegistroBloquesTest {
+
+    private static final int TAMANO_SEGMENTO = 4096;
+    private static final int BLOQUES = 100;
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void recuperaTrasUnaEscrituraAMedias() throws IOException {
+        try (RegistroBloques registro = abrir()) {
+            anadir(registro, BLOQUES);
+        }
+        // Una caída a mitad del siguiente registro: la longitud escrita, pero no el CRC ni el contenido
+        Path ultimo = segmentos().get(segmentos().size() - 1);
+        try (FileChannel canal = FileChannel.open(ultimo, StandardOpenOption.WRITE)) {
+            canal.write(ByteBuffer.allocate(4).putInt(0, 200), finDe(ultimo));
+        }
+
+        try (RegistroBloques registro = abrir()) {
+            assertEquals(BLOQUES, registro.getTotal());
+            assertTrue(registro.getBytesTruncados() > 0);
+            anadir(registro, 1);
+        }
+        try (RegistroBloques registro = abrir()) {
+            assertEquals(BLOQUES + 1, registro.getTotal());
+            assertEquals(List.of("evento " + BLOQUES), registro.leer(BLOQUES).getEntradas());
+        }
+    }
+
+    @Test
+    void descartaLoQueHayDetrasDeUnRegistroRoto() throws IOException {
+        try (RegistroBloques registro = abrir()) {
+            anadir(registro, BLOQUES);
+        }
+        // Cambio un byte del contenido del primer bloque del segundo segmento: su CRC ya no cuadra
+        Path segundo = segmentos().get(1);
+        int primero = primerIndice(segundo);
+        try (FileChannel canal = FileChannel.open(segundo, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer octeto = ByteBuffer.allocate(1);
+            canal.read(octeto, 60);
+            octeto.put(0, (byte) (octeto.get(0) ^ 1)).rewind();
+            canal.write(octeto, 60);
+        }
+
+        try (RegistroBloques registro = abrir()) {
+            assertEquals(primero, registro.getTotal());
+            assertEquals(2, registro.getSegmentos());
+        }
+        try (Stream<Path> ficheros = Files.list(directorio)) {
+            assertTrue(ficheros.anyMatch(p -> p.getFileName().toString().endsWith(".descartado")));
+        }
+    }
+
+    @Test
+    void abreConLosBloquesConocidosSinRecorrerlos() throws IOException {
+        byte[] hash;
+        try (RegistroBloques registro = abrir()) {
+            anadir(registro, BLOQUES);
+            hash = registro.leer(59).getHashBytes();
+        }
+
+        try (RegistroBloques registro = new RegistroBloques(directorio, TAMANO_SEGMENTO, Integer.MAX_VALUE)) {
+            assertTrue(registro.abrir(new RegistroBloques.BloquesConocidos(60, hash)));
+            assertEquals(BLOQUES, registro.getTotal());
+            for (int i = 0; i < BLOQUES; i++) {
+                assertEquals(i, registro.leer(i).getIndice());
+            }
+            anadir(registro, 1);
+            assertEquals(BLOQUES, registro.leer(BLOQUES).getIndice());
+        }
+    }
+
+    @Test
+    void recorreElRegistroSiLosBloquesConocidosNoCuadran() throws IOException {
+        try (RegistroBloques registro = abrir()) {
+            anadir(registro, BLOQUES);
+        }
+
+        try (RegistroBloques registro = new RegistroBloques(directorio, TAMANO_SEGMENTO, Integer.MAX_VALUE)) {
+            assertFalse(registro.abrir(new RegistroBloques.BloquesConocidos(60, new byte[Bloque.TAMANO_HASH])));
+            assertEquals(BLOQUES, registro.getTotal());
+        }
+        try (RegistroBloques registro = new RegistroBloques(directorio, TAMANO_SEGMENTO, Integer.MAX_VALUE)) {
+            assertFalse(registro.abrir(new RegistroBloques.BloquesConocidos(BLOQUES + 10, new byte[Bloque.TAMANO_HASH])));
+            assertEquals(BLOQUES, registro.getTotal());
+        }
+    }
+
+    @Test
+    void unIndiceDePosicionesAlteradoNoHaceLeerOtroBloque() throws IOException {
+        byte[] hash;
+        try (RegistroBloques registro = abrir()) {
+            anadir(registro, BLOQUES);
+            hash = registro.leer(BLOQUES - 1).getHashBytes();
+        }
+        // El bloque 3 apunta a la posición del 4
+        Path posiciones = directorio.resolve(segmentos().get(0).getFileName().toString().replace(".log", ".idx"));
+        try (FileChannel canal = FileChannel.open(posiciones, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer posicion = ByteBuffer.allocate(4);
+            canal.read(posicion, 4 * 4);
+            canal.write(posicion.flip(), 3 * 4);
+        }
+
+        try (RegistroBloques registro = new RegistroBloques(directorio, TAMANO_SEGMENTO, Integer.MAX_VALUE)) {
+            assertTrue(registro.abrir(new RegistroBloques.BloquesConocidos(BLOQUES, hash)));
+            assertThrows(IllegalStateException.class, () -> registro.leer(3));
+            assertEquals(4, registro.leer(4).getIndice());
+        }
+        // Sin punto de control se recorre el segmento y el índice de posiciones se rehace
+        try (RegistroBloques registro = abrir()) {
+            assertEquals(3, registro.leer(3).getIndice());
+        }
+    }
+
+    @Test
+    void truncarQuitaLosBloquesYSusSegmentos() throws IOException {
+        try (RegistroBloques registro = abrir()) {
+            anadir(registro, BLOQUES);
+            int segmentos = registro.getSegmentos();
+            registro.truncar(30);
+            assertEquals(30, registro.getTotal());
+            assertTrue(registro.getSegmentos() < segmentos);
+            assertThrows(IllegalArgumentException.class, () -> registro.leer(30));
+            assertThrows(IllegalArgumentException.class, () -> registro.truncar(0));
+            anadir(registro, 5);
+        }
+        try (RegistroBloques registro = abrir()) {
+            assertEquals(35, registro.getTotal());
+            Bloque anterior = registro.leer(29);
+            assertArrayEquals(anterior.getHashBytes(), registro.leer(30).getHashAnteriorBytes());
+        }
+    }
+
+    @Test
+    void losLectoresNoVenUnBloqueAMedioTruncar() throws Exception {
+        try (RegistroBloques registro = abrir()) {
+            anadir(registro, BLOQUES);
+            AtomicBoolean seguir = new AtomicBoolean(true);
+            AtomicReference<Throwable> error = new AtomicReference<>();
+            AtomicLong leidos = new AtomicLong();
+            List<Thread> lectores = new ArrayList<>();
+            for (int t = 0; t < 2; t++) {
+                Thread lector = new Thread(() -> {
+                    ThreadLocalRandom azar = ThreadLocalRandom.current();
+                    while (seguir.get()) {
+                        int indice = azar.nextInt(BLOQUES);
+                        try {
+                            Bloque bloque = registro.leer(indice);
+                            if (bloque.getIndice() != indice || !ValidadorCadena.tieneHashValido(bloque, 0)) {
+                                error.compareAndSet(null, new AssertionError("Bloque " + indice + " incoherente"));
+                            }
+                            leidos.incrementAndGet();
+                        } catch (IllegalArgumentException e) {
+                            // Ya no existe: lo han truncado y aún no se ha vuelto a escribir
+                        } catch (RuntimeException e) {
+                            error.compareAndSet(null, e);
+                        }
+                    }
+                });
+                lector.start();
+                lectores.add(lector);
+            }
+
+            // Cambio muchas veces la segunda mitad de la cadena por otra con otro contenido
+            for (int ronda = 0; ronda < 50; ronda++) {
+                registro.truncar(BLOQUES / 2);
+                byte[] hashAnterior = registro.leer(BLOQUES / 2 - 1).getHashBytes();
+                for (int i = BLOQUES / 2; i < BLOQUES; i++) {
+                    Bloque bloque = new Bloque(i, "ronda " + ronda + " evento " + i, hashAnterior);
+                    registro.anadir(bloque);
+                    hashAnterior = bloque.getHashBytes();
+                }
+                Thread.yield();
+            }
+            seguir.set(false);
+            for (Thread lector : lectores) {
+                lector.join();
+            }
+            if (error.get() != null) {
+                throw new AssertionError("Un lector ha fallado durante un truncado", error.get());
+            }
+            assertTrue(leidos.get() > 0);
+            assertEquals(List.of("ronda 49 evento " + (BLOQUES - 1)), registro.leer(BLOQUES - 1).getEntradas());
+        }
+    }
+
+    private RegistroBloques abrir() throws IOException {
+        RegistroBloques registro = new RegistroBloques(directorio, TAMANO_SEGMENTO, Integer.MAX_VALUE);
+        registro.abrir();
+        return registro;
+    }
+
+    /**
+     * Añado bloques enlazados a continuación de los que ya haya.
+     */
+    private static void anadir(RegistroBloques registro, int cuantos) throws IOException {
+        byte[] hashAnterior = registro.getTotal() == 0 ? Bloque.HASH_CERO
+                : registro.leer(registro.getTotal() - 1).getHashBytes();
+        for (int n = 0; n < cuantos; n++) {
+            int i = registro.getTotal();
+            Bloque bloque = new Bloque(i, "evento " + i, hashAnterior);
+            registro.anadir(bloque);
+            hashAnterior = bloque.getHashBytes();
+        }
+    }
+
+    private List<Path> segmentos() throws IOException {
+        try (Stream<Path> ficheros = Files.list(directorio)) {
+            return ficheros.filter(p -> p.getFileName().toString().endsWith(".log")).sorted().toList();
+        }
+    }
+
+    /**
+     * @return posición donde acaba el último registro del segmento (la primera longitud 0).
+     */
+    private static int finDe(Path segmento) throws IOException {
+        ByteBuffer contenido = ByteBuffer.wrap(Files.readAllBytes(segmento));
+        int posicion = 0;
+        while (contenido.getInt(posicion) != 0) {
+            posicion += 8 + contenido.getInt(posicion);
+        }
+        return posicion;
+    }
+
+    private static int primerIndice(Path segmento) {
+        String nombre = segmento.getFileName().toString();
+        return Integer.parseInt(nombre.substring("segmento-".length(), nombre.length() - ".log".length()));
+    }
+}
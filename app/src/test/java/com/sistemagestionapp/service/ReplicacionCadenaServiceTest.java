@@ -0,0 +1,199 @@
+package com.sistemagestionapp.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sistemagestionapp.model.Bloque;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Replicación entre dos nodos de verdad (cada uno con su registro), hablando por HTTP con un
+ * servidor mínimo que sirve las mismas rutas que {@link com.sistemagestionapp.controller.ReplicacionController}:
+ * ponerse al día, bifurcaciones y empates. En todos los casos los dos nodos tienen que acabar
+ * con la misma cadena y sin perder entradas.
+ */
+class ReplicacionCadenaServiceTest {
+
+    private static final String TOKEN = "token-de-prueba";
+
+    @TempDir
+    Path directorio;
+
+    private final List<Nodo> nodos = new ArrayList<>();
+
+    @AfterEach
+    void parar() throws IOException {
+        for (Nodo nodo : nodos) {
+            nodo.servidor.stop(0);
+            nodo.cadena.cerrar();
+        }
+    }
+
+    @Test
+    void seTraeLosBloquesQueLeFaltan() throws Exception {
+        Nodo a = nodo("a");
+        Nodo b = nodo("b");
+        for (int i = 0; i < 30; i++) {
+            b.cadena.añadirBloque("evento " + i);
+        }
+
+        assertEquals(30, sincronizar(a, b));
+        assertMismaCadena(a, b);
+        assertEquals(0, sincronizar(a, b));
+        // Para b, la cadena de a es la suya: no hay nada que traer
+        assertEquals(0, sincronizar(b, a));
+    }
+
+    @Test
+    void enUnaBifurcacionGanaLaRamaConMasTrabajoEnLosDosNodos() throws Exception {
+        Nodo a = nodo("a");
+        Nodo b = nodo("b");
+        a.cadena.añadirBloque("comun");
+        sincronizar(b, a);
+
+        EnvioBloque a1 = a.cadena.enviarBloque("solo en a 1");
+        EnvioBloque a2 = a.cadena.enviarBloque("solo en a 2");
+        a1.join();
+        a2.join();
+        for (int i = 0; i < 3; i++) {
+            b.cadena.añadirBloque("solo en b " + i);
+        }
+
+        // a no gana nada trayéndose su propia rama a b; b sí se la lleva a a
+        assertEquals(0, sincronizar(b, a));
+        assertEquals(3, sincronizar(a, b));
+        assertTrue(a1.estaDescartado() && a2.estaDescartado());
+        // Las entradas de a vuelven a la cadena detrás de la rama de b
+        a1.getReenvio().join().join();
+        a2.getReenvio().join().join();
+        sincronizar(b, a);
+
+        assertMismaCadena(a, b);
+        assertEquals(List.of("Bloque principal", "comun", "solo en b 0", "solo en b 1", "solo en b 2",
+                "solo en a 1", "solo en a 2"), entradas(a));
+    }
+
+    @Test
+    void enUnEmpateLosDosNodosEligenLaMismaRama() throws Exception {
+        Nodo a = nodo("a");
+        Nodo b = nodo("b");
+        EnvioBloque enA = a.cadena.enviarBloque("en a");
+        EnvioBloque enB = b.cadena.enviarBloque("en b");
+        Bloque bloqueA = enA.join();
+        Bloque bloqueB = enB.join();
+        Bloque ganador = Arrays.compareUnsigned(bloqueA.getHashBytes(), bloqueB.getHashBytes()) < 0 ? bloqueA : bloqueB;
+        EnvioBloque perdedor = ganador == bloqueA ? enB : enA;
+
+        // Mismo trabajo: solo cambia de rama el nodo con el hash de cabeza mayor
+        assertEquals(ganador == bloqueA ? 0 : 1, sincronizar(a, b));
+        assertEquals(ganador == bloqueB ? 0 : 1, sincronizar(b, a));
+        assertArrayEquals(ganador.getHashBytes(), a.cadena.obtenerBloque(1).getHashBytes());
+        assertArrayEquals(ganador.getHashBytes(), b.cadena.obtenerBloque(1).getHashBytes());
+
+        perdedor.getReenvio().join().join();
+        sincronizar(a, b);
+        sincronizar(b, a);
+        assertMismaCadena(a, b);
+        assertEquals(3, a.cadena.getTotalBloques());
+        assertTrue(entradas(a).containsAll(List.of("en a", "en b")));
+    }
+
+    private static int sincronizar(Nodo nodo, Nodo par) throws IOException, InterruptedException {
+        return nodo.replicacion.sincronizar(par.url);
+    }
+
+    private static void assertMismaCadena(Nodo a, Nodo b) {
+        int total = a.cadena.getTotalBloques();
+        assertEquals(total, b.cadena.getTotalBloques());
+        assertArrayEquals(a.cadena.obtenerHashCabeza(total), b.cadena.obtenerHashCabeza(total));
+    }
+
+    private static List<String> entradas(Nodo nodo) {
+        List<String> entradas = new ArrayList<>();
+        for (int i = 0; i < nodo.cadena.getTotalBloques(); i++) {
+            entradas.addAll(nodo.cadena.obtenerBloque(i).getEntradas());
+        }
+        return entradas;
+    }
+
+    /**
+     * Arranco un nodo con su cadena en una carpeta propia y un servidor HTTP con las rutas de
+     * replicación. Su servicio de replicación no tiene pares: en las pruebas le digo a quién
+     * preguntar.
+     */
+    private Nodo nodo(String nombre) throws IOException {
+        Path carpeta = directorio.resolve(nombre);
+        BlockchainService cadena = new BlockchainService(carpeta.toString(), 1024 * 1024, 64, 16, 1, 4096,
+                1024, 0, 1, "", "", 2, 1000);
+        cadena.abrir();
+        HttpServer servidor = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        ObjectMapper json = new ObjectMapper();
+        servidor.createContext("/blockchain/replicacion/cabeza", intercambio -> {
+            Map<String, String> parametros = parametros(intercambio);
+            int total = cadena.getTotalBloques();
+            int prefijo = parametros.containsKey("bloques") ? Integer.parseInt(parametros.get("bloques")) : total;
+            Map<String, Object> cabeza = Map.of("bloques", prefijo,
+                    "hash", HexFormat.of().formatHex(cadena.obtenerHashCabeza(prefijo)));
+            responder(intercambio, json.writeValueAsBytes(cabeza));
+        });
+        servidor.createContext("/blockchain/replicacion/bloques", intercambio -> {
+            Map<String, String> parametros = parametros(intercambio);
+            int desde = Integer.parseInt(parametros.get("desde"));
+            int hasta = Math.min(Integer.parseInt(parametros.get("hasta")), cadena.getTotalBloques());
+            ByteArrayOutputStream cuerpo = new ByteArrayOutputStream();
+            cadena.exportarBloques(desde, hasta, cuerpo);
+            responder(intercambio, cuerpo.toByteArray());
+        });
+        servidor.start();
+
+        ReplicacionCadenaService replicacion = new ReplicacionCadenaService(cadena, json, List.of(), 8, 1000, TOKEN, 5000);
+        Nodo nodo = new Nodo(cadena, replicacion, servidor, "http://127.0.0.1:" + servidor.getAddress().getPort());
+        nodos.add(nodo);
+        return nodo;
+    }
+
+    private static Map<String, String> parametros(HttpExchange intercambio) {
+        Map<String, String> parametros = new HashMap<>();
+        String consulta = intercambio.getRequestURI().getRawQuery();
+        if (consulta != null) {
+            for (String parametro : consulta.split("&")) {
+                String[] partes = parametro.split("=", 2);
+                parametros.put(partes[0], partes[1]);
+            }
+        }
+        return parametros;
+    }
+
+    private static void responder(HttpExchange intercambio, byte[] cuerpo) throws IOException {
+        boolean autorizado = TOKEN.equals(intercambio.getRequestHeaders().getFirst(ReplicacionCadenaService.CABECERA_TOKEN));
+        if (!autorizado) {
+            cuerpo = "sin token".getBytes(StandardCharsets.UTF_8);
+        }
+        intercambio.sendResponseHeaders(autorizado ? 200 : 401, cuerpo.length);
+        try (OutputStream salida = intercambio.getResponseBody()) {
+            salida.write(cuerpo);
+        }
+    }
+
+    private record Nodo(BlockchainService cadena, ReplicacionCadenaService replicacion, HttpServer servidor, String url) {
+    }
+}
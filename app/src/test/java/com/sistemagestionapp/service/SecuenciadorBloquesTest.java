@@ -0,0 +1,198 @@
+package com.sistemagestionapp.service;
+
+import com.sistemagestionapp.model.Bloque;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas del cambio de rama en el secuenciador: qué rama gana (por trabajo y, en empate, por
+ * hash), qué entradas de la rama local descartada se vuelven a encolar y cómo se avisa a
+ * quien las envió. También que al cerrarlo no se queda ningún envío sin respuesta.
+ */
+class SecuenciadorBloquesTest {
+
+    @TempDir
+    Path directorio;
+
+    private RegistroBloques registro;
+    private MineroBloques minero;
+    private SecuenciadorBloques secuenciador;
+    private Bloque genesis;
+
+    @BeforeEach
+    void abrir() throws IOException {
+        registro = new RegistroBloques(directorio, 64 * 1024, Integer.MAX_VALUE);
+        registro.abrir();
+        genesis = new Bloque(0, "Bloque principal", Bloque.HASH_CERO);
+        registro.anadir(genesis);
+        minero = new MineroBloques(0, 1);
+        secuenciador = new SecuenciadorBloques(registro, 16, minero, bloque -> { }, total -> { });
+    }
+
+    @AfterEach
+    void cerrar() throws IOException {
+        secuenciador.close();
+        minero.cerrar();
+        registro.close();
+    }
+
+    @Test
+    void unaRamaMasCortaConMasTrabajoGanaYAvisaALosEnvios() throws Exception {
+        List<EnvioBloque> envios = List.of(secuenciador.enviar("a"), secuenciador.enviar("b"), secuenciador.enviar("c"));
+        for (EnvioBloque envio : envios) {
+            envio.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(4, registro.getTotal());
+
+        // Un solo bloque de dificultad 8 pesa más que tres de dificultad 0
+        Bloque remoto = minar(new Bloque(1, List.of("remoto"), genesis.getHashBytes(), 8));
+        assertEquals(2, (int) secuenciador.replicar(1, List.of(remoto)).get(5, TimeUnit.SECONDS));
+        assertEquals(3, secuenciador.getDescartados());
+
+        // Cada envío descartado recibe el que lleva ahora sus entradas, detrás de la rama nueva
+        List<String> reencoladas = new ArrayList<>();
+        for (EnvioBloque envio : envios) {
+            assertTrue(envio.estaDescartado());
+            Bloque nuevo = envio.getReenvio().get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS);
+            assertTrue(nuevo.getIndice() >= 2);
+            reencoladas.addAll(nuevo.getEntradas());
+        }
+        assertEquals(List.of("a", "b", "c"), reencoladas);
+        assertArrayEquals(remoto.getHashBytes(), registro.leer(1).getHashBytes());
+        assertEquals(5, registro.getTotal());
+    }
+
+    @Test
+    void soloReencolaLasEntradasQueNoEstanEnLaRamaGanadora() throws Exception {
+        EnvioBloque a = secuenciador.enviar(List.of("a", "comun"));
+        EnvioBloque b = secuenciador.enviar("b");
+        a.get(5, TimeUnit.SECONDS);
+        b.get(5, TimeUnit.SECONDS);
+
+        // La otra rama ya tiene "b" y "comun", y es más larga
+        Bloque r1 = new Bloque(1, List.of("b"), genesis.getHashBytes(), 0);
+        Bloque r2 = new Bloque(2, List.of("comun", "x"), r1.getHashBytes(), 0);
+        Bloque r3 = new Bloque(3, List.of("y"), r2.getHashBytes(), 0);
+        secuenciador.replicar(1, List.of(r1, r2, r3)).get(5, TimeUnit.SECONDS);
+
+        // De "a" solo se reencola "a"; "b" ya está en el bloque 1 de la rama nueva y no se repite
+        Bloque nuevoA = a.getReenvio().get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("a"), nuevoA.getEntradas());
+        assertEquals(4, nuevoA.getIndice());
+        Bloque nuevoB = b.getReenvio().get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS);
+        assertArrayEquals(r1.getHashBytes(), nuevoB.getHashBytes());
+        assertEquals(5, registro.getTotal());
+    }
+
+    @Test
+    void rechazaUnaRamaConMenosTrabajo() throws Exception {
+        secuenciador.enviar("a").get(5, TimeUnit.SECONDS);
+        secuenciador.enviar("b").get(5, TimeUnit.SECONDS);
+
+        Bloque remoto = new Bloque(1, List.of("remoto"), genesis.getHashBytes(), 0);
+        CompletionException error = assertThrows(CompletionException.class,
+                () -> secuenciador.replicar(1, List.of(remoto)).join());
+        assertInstanceOf(IllegalStateException.class, error.getCause());
+        assertEquals(3, registro.getTotal());
+        assertEquals(0, secuenciador.getDescartados());
+    }
+
+    @Test
+    void enEmpateGanaElHashMenor() throws Exception {
+        Bloque local = secuenciador.enviar("local").get(5, TimeUnit.SECONDS);
+        Bloque remoto = new Bloque(1, List.of("remoto"), genesis.getHashBytes(), 0);
+        boolean remotoGana = Arrays.compareUnsigned(remoto.getHashBytes(), local.getHashBytes()) < 0;
+
+        assertEquals(remotoGana, SecuenciadorBloques.esMejor(BigInteger.ONE, remoto.getHashBytes(),
+                BigInteger.ONE, local.getHashBytes()));
+        assertFalse(SecuenciadorBloques.esMejor(BigInteger.ONE, local.getHashBytes(),
+                BigInteger.ONE, local.getHashBytes()));
+
+        if (remotoGana) {
+            secuenciador.replicar(1, List.of(remoto)).get(5, TimeUnit.SECONDS);
+            assertArrayEquals(remoto.getHashBytes(), registro.leer(1).getHashBytes());
+        } else {
+            assertThrows(CompletionException.class, () -> secuenciador.replicar(1, List.of(remoto)).join());
+            assertArrayEquals(local.getHashBytes(), registro.leer(1).getHashBytes());
+        }
+    }
+
+    @Test
+    void elTrabajoEsLaSumaDeDosElevadoALaDificultad() {
+        Bloque facil = new Bloque(1, List.of("a"), genesis.getHashBytes(), 0);
+        Bloque dificil = new Bloque(1, List.of("a"), genesis.getHashBytes(), 64);
+        assertEquals(BigInteger.valueOf(2), SecuenciadorBloques.trabajo(List.of(facil, facil)));
+        assertEquals(BigInteger.ONE.shiftLeft(64).add(BigInteger.ONE), SecuenciadorBloques.trabajo(List.of(facil, dificil)));
+    }
+
+    @Test
+    void alCerrarTodosLosEnviosTerminan() throws Exception {
+        // Muchos hilos enviando mientras se cierra: ningún futuro se puede quedar sin completar
+        List<EnvioBloque> envios = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch empezar = new CountDownLatch(1);
+        List<Thread> hilos = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int hilo = t;
+            Thread emisor = new Thread(() -> {
+                try {
+                    empezar.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 2000; i++) {
+                    envios.add(secuenciador.enviar("hilo " + hilo + " evento " + i));
+                }
+            });
+            emisor.start();
+            hilos.add(emisor);
+        }
+        empezar.countDown();
+        Thread.sleep(5);
+        secuenciador.close();
+        for (Thread emisor : hilos) {
+            emisor.join();
+        }
+
+        int escritos = 0;
+        for (EnvioBloque envio : envios) {
+            try {
+                envio.get(5, TimeUnit.SECONDS);
+                escritos++;
+            } catch (ExecutionException e) {
+                assertInstanceOf(IllegalStateException.class, e.getCause());
+            }
+        }
+        assertEquals(escritos + 1, registro.getTotal());
+        assertTrue(secuenciador.enSecuencia(() -> 1).isCompletedExceptionally());
+    }
+
+    private static Bloque minar(Bloque candidato) {
+        MineroBloques minero = new MineroBloques(candidato.getDificultad(), 1);
+        try {
+            return minero.minar(candidato);
+        } finally {
+            minero.cerrar();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.sistemagestionapp.service;
+
+import com.sistemagestionapp.model.Aplicacion;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Pruebas de los trabajos de ZIP en segundo plano: encolar, progreso por STOMP, terminar bien
+ * o con error, rechazar con la cola llena y purgar los terminados aunque no llegue ninguno nuevo.
+ */
+class TrabajoZipServiceTest {
+
+    private static final String PROPIETARIO = "ana@example.com";
+
+    @TempDir
+    Path directorio;
+
+    private ProyectoZipPreparado zip;
+    private byte[] completo;
+    private ProyectoZipService proyectoZipService;
+    private EspacioTemporalService espacioTemporalService;
+    private final List<Message<?>> enviados = new CopyOnWriteArrayList<>();
+    private final List<TrabajoZipService> servicios = new ArrayList<>();
+
+    @BeforeEach
+    void preparar() throws IOException {
+        EntradaZip entrada = EntradaZip.comprimir("src/App.java",
+                "class App {}\n".repeat(500).getBytes(StandardCharsets.UTF_8), 1_700_000_000_000L);
+        zip = new ProyectoZipPreparado("clave-app", "app.zip", List.of(entrada));
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        zip.escribir(salida);
+        completo = salida.toByteArray();
+
+        proyectoZipService = mock(ProyectoZipService.class);
+        espacioTemporalService = new EspacioTemporalService(directorio.resolve("espacio").toString(), 1 << 20, 15, 1000);
+        espacioTemporalService.inicializar();
+    }
+
+    @AfterEach
+    void cerrar() throws IOException {
+        for (TrabajoZipService servicio : servicios) {
+            servicio.cerrar();
+        }
+        espacioTemporalService.cerrar();
+    }
+
+    @Test
+    void encolaYCompletaPublicandoElProgreso() throws Exception {
+        when(proyectoZipService.prepararProyecto(any())).thenReturn(zip);
+        TrabajoZipService servicio = servicio(false, 2, 10, 30);
+
+        TrabajoZip trabajo = servicio.encolar(aplicacion(1L), PROPIETARIO);
+        String id = trabajo.getId();
+        esperarFin(servicio, id);
+
+        assertEquals(EstadoTrabajoZip.COMPLETADO, trabajo.getEstado());
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        servicio.enviarResultado(servicio.obtener(id, PROPIETARIO), salida);
+        assertArrayEquals(completo, salida.toByteArray());
+
+        // Primero aviso de que empieza, con los totales; al final, todo escrito
+        List<Map<?, ?>> avisos = avisos(id);
+        assertTrue(avisos.size() >= 2);
+        assertEquals("EN_CURSO", avisos.get(0).get("estado"));
+        assertEquals(zip.getTamano(), avisos.get(0).get("totalBytes"));
+        Map<?, ?> ultimo = avisos.get(avisos.size() - 1);
+        assertEquals("COMPLETADO", ultimo.get("estado"));
+        assertEquals(ultimo.get("totalBytes"), ultimo.get("bytesEscritos"));
+
+        // Solo lo ve quien lo pidió
+        assertThrows(IllegalArgumentException.class, () -> servicio.obtener(id, "otro@example.com"));
+    }
+
+    @Test
+    void unErrorAlGenerarDejaElTrabajoFallido() throws Exception {
+        when(proyectoZipService.prepararProyecto(any())).thenThrow(new IOException("plantilla ilegible"));
+        TrabajoZipService servicio = servicio(false, 1, 10, 30);
+
+        TrabajoZip trabajo = servicio.encolar(aplicacion(1L), PROPIETARIO);
+        esperarFin(servicio, trabajo.getId());
+
+        assertEquals(EstadoTrabajoZip.ERROR, trabajo.getEstado());
+        List<Map<?, ?>> avisos = avisos(trabajo.getId());
+        assertEquals("ERROR", avisos.get(avisos.size() - 1).get("estado"));
+        assertEquals("plantilla ilegible", avisos.get(avisos.size() - 1).get("error"));
+        assertThrows(IllegalStateException.class, () -> servicio.enviarResultado(trabajo, new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void conLaColaLlenaRechazaElTrabajo() throws Exception {
+        CountDownLatch soltar = new CountDownLatch(1);
+        when(proyectoZipService.prepararProyecto(any())).thenAnswer(invocacion -> {
+            soltar.await(10, TimeUnit.SECONDS);
+            return zip;
+        });
+        // Un hilo ocupado y un hueco en la cola: el tercero no cabe
+        TrabajoZipService servicio = servicio(true, 1, 1, 30);
+        TrabajoZip primero = servicio.encolar(aplicacion(1L), PROPIETARIO);
+        TrabajoZip segundo = servicio.encolar(aplicacion(2L), PROPIETARIO);
+        assertThrows(IllegalStateException.class, () -> servicio.encolar(aplicacion(3L), PROPIETARIO));
+
+        soltar.countDown();
+        esperarFin(servicio, primero.getId());
+        esperarFin(servicio, segundo.getId());
+        assertEquals(EstadoTrabajoZip.COMPLETADO, segundo.getEstado());
+    }
+
+    @Test
+    void laPurgaPeriodicaOlvidaLosTerminadosYLiberaSuEspacio() throws Exception {
+        when(proyectoZipService.prepararProyecto(any())).thenReturn(zip);
+        // Sin retención: en cuanto termina, el trabajo ya se puede purgar
+        TrabajoZipService servicio = servicio(false, 1, 10, 0);
+
+        TrabajoZip trabajo = servicio.encolar(aplicacion(1L), PROPIETARIO);
+        esperarFin(servicio, trabajo.getId());
+        assertTrue(espacioTemporalService.getBytesEnUso() > 0);
+        Thread.sleep(5);
+
+        // Sin encolar nada más: lo hace el método programado
+        servicio.purgarTerminados();
+        assertThrows(IllegalArgumentException.class, () -> servicio.obtener(trabajo.getId(), PROPIETARIO));
+        assertTrue(trabajo.getEspacio().estaLiberado());
+        assertEquals(0, espacioTemporalService.getBytesEnUso());
+    }
+
+    @Test
+    void laPurgaNoTocaLosTrabajosDentroDeLaRetencion() throws Exception {
+        when(proyectoZipService.prepararProyecto(any())).thenReturn(zip);
+        TrabajoZipService servicio = servicio(false, 1, 10, 30);
+
+        TrabajoZip trabajo = servicio.encolar(aplicacion(1L), PROPIETARIO);
+        esperarFin(servicio, trabajo.getId());
+
+        servicio.purgarTerminados();
+        assertEquals(trabajo, servicio.obtener(trabajo.getId(), PROPIETARIO));
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        servicio.enviarResultado(trabajo, salida);
+        assertArrayEquals(completo, salida.toByteArray());
+    }
+
+    /**
+     * Monto el servicio con la caché en disco de verdad (en una carpeta temporal) o sin ella,
+     * y con un canal STOMP que solo guarda lo que se envía.
+     */
+    private TrabajoZipService servicio(boolean cache, int concurrencia, int cola, long retencionMinutos) throws IOException {
+        CacheZipProyectoService cacheZip = new CacheZipProyectoService(cache, directorio.resolve("cache").toString(), 1 << 20);
+        cacheZip.inicializar();
+        SimpMessagingTemplate mensajeria = new SimpMessagingTemplate((mensaje, espera) -> enviados.add(mensaje));
+        TrabajoZipService servicio = new TrabajoZipService(proyectoZipService, cacheZip, espacioTemporalService,
+                mensajeria, concurrencia, cola, retencionMinutos);
+        servicios.add(servicio);
+        return servicio;
+    }
+
+    private List<Map<?, ?>> avisos(String id) {
+        List<Map<?, ?>> avisos = new ArrayList<>();
+        for (Message<?> mensaje : enviados) {
+            if ((TrabajoZipService.DESTINO_PROGRESO + id).equals(mensaje.getHeaders().get("simpDestination"))) {
+                avisos.add((Map<?, ?>) mensaje.getPayload());
+            }
+        }
+        return avisos;
+    }
+
+    private boolean avisoFinal(String id) {
+        List<Map<?, ?>> avisos = avisos(id);
+        return !avisos.isEmpty() && !"EN_CURSO".equals(avisos.get(avisos.size() - 1).get("estado"));
+    }
+
+    private static Aplicacion aplicacion(Long id) {
+        Aplicacion aplicacion = new Aplicacion();
+        aplicacion.setId(id);
+        return aplicacion;
+    }
+
+    /**
+     * Espero a que el trabajo termine y a que se haya publicado el aviso final.
+     */
+    private void esperarFin(TrabajoZipService servicio, String id) throws InterruptedException {
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (servicio.obtener(id, PROPIETARIO).getTerminado() == null || !avisoFinal(id)) {
+            assertTrue(System.nanoTime() < limite, "El trabajo no ha terminado a tiempo");
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.sistemagestionapp.service;
+
+import com.sistemagestionapp.model.Bloque;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas de la validación de la cadena con prueba de trabajo: mino bloques con dificultad
+ * mayor que 0 y compruebo que un bloque rebajado a otra dificultad (con su hash recalculado
+ * y bien enlazado) no pasa ni la validación incremental ni la completa.
+ */
+class ValidadorCadenaTest {
+
+    private static final int DIFICULTAD = 8;
+
+    @TempDir
+    Path directorio;
+
+    private MineroBloques minero;
+    private RegistroBloques registro;
+    private VerificadorParaleloCadena verificador;
+
+    @BeforeEach
+    void abrir() throws IOException {
+        minero = new MineroBloques(DIFICULTAD, 2);
+        registro = new RegistroBloques(directorio, 1024 * 1024, Integer.MAX_VALUE);
+        registro.abrir();
+        verificador = new VerificadorParaleloCadena(registro, 2, 4, DIFICULTAD);
+    }
+
+    @AfterEach
+    void cerrar() throws IOException {
+        verificador.cerrar();
+        minero.cerrar();
+        registro.close();
+    }
+
+    @Test
+    void aceptaLosBloquesMinadosConLaDificultadConfigurada() throws IOException {
+        Bloque ultimo = minarCadena(10);
+
+        assertTrue(Bloque.cumpleDificultad(ultimo.getHashBytes(), DIFICULTAD));
+        assertEquals(DIFICULTAD, ultimo.getDificultad());
+        assertTrue(ultimo.tieneHashValido());
+        ValidadorCadena validador = new ValidadorCadena(registro, verificador, DIFICULTAD);
+        assertTrue(validador.validarIncremental());
+        assertEquals(-1, validador.validarCompleta());
+    }
+
+    @Test
+    void rechazaUnBloqueConLaDificultadRebajada() throws IOException {
+        Bloque anterior = minarCadena(10);
+        // El bloque cumple la dificultad que declara (0) y enlaza bien, pero no la configurada
+        Bloque rebajado = new Bloque(10, List.of("evento 10"), anterior.getHashBytes(), 0);
+        assertTrue(rebajado.tieneHashValido());
+        registro.anadir(rebajado);
+        Bloque siguiente = minero.minar(new Bloque(11, List.of("evento 11"), rebajado.getHashBytes(), DIFICULTAD));
+        registro.anadir(siguiente);
+
+        ValidadorCadena validador = new ValidadorCadena(registro, verificador, DIFICULTAD);
+        assertFalse(validador.validarIncremental());
+        assertEquals(10, validador.getPrimerRoto());
+        assertEquals(10, validador.validarCompleta());
+        assertFalse(ValidadorCadena.esValido(rebajado, anterior, DIFICULTAD));
+        // Con la dificultad mínima a 0 el mismo bloque sí vale
+        assertTrue(ValidadorCadena.esValido(rebajado, anterior, 0));
+    }
+
+    @Test
+    void rechazaElPrimerBloqueDeUnTramoRebajado() throws IOException {
+        // Tramos de 4 bloques: el bloque 8 es el primero de su tramo y no se comprueba su enlace dentro de él
+        Bloque anterior = minarCadena(8);
+        Bloque rebajado = new Bloque(8, List.of("evento 8"), anterior.getHashBytes(), DIFICULTAD - 1);
+        registro.anadir(rebajado.conNonce(buscarNonce(rebajado)));
+
+        assertEquals(8, verificador.verificar(registro.getTotal()));
+    }
+
+    /**
+     * Escribo el génesis y minero bloques hasta tener el total indicado.
+     *
+     * @return el último bloque.
+     */
+    private Bloque minarCadena(int total) throws IOException {
+        Bloque anterior = new Bloque(0, "Bloque principal", Bloque.HASH_CERO);
+        registro.anadir(anterior);
+        for (int i = 1; i < total; i++) {
+            anterior = minero.minar(new Bloque(i, List.of("evento " + i), anterior.getHashBytes(), DIFICULTAD));
+            registro.anadir(anterior);
+        }
+        return anterior;
+    }
+
+    /**
+     * Busco en serie un nonce con el que el bloque cumpla la dificultad que declara.
+     */
+    private static long buscarNonce(Bloque candidato) {
+        for (long nonce = 0; ; nonce++) {
+            Bloque bloque = candidato.conNonce(nonce);
+            if (bloque.tieneHashValido()) {
+                return nonce;
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.sistemagestionapp.service;
+
+import com.sistemagestionapp.model.Bloque;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Benchmark de la verificación completa de la cadena con 1, 4 y todos los núcleos.
+ * Como en el de compresión, no compruebo la aceleración (depende de la máquina), solo que
+ * todas dan el mismo resultado; los bloques por segundo los saco por consola.
+ */
+@Tag("benchmark")
+class VerificadorParaleloCadenaBenchmarkTest {
+
+    private static final int BLOQUES = 100_000;
+    private static final int RONDAS = 3;
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void compararHilos() throws IOException {
+        try (RegistroBloques registro = crearCadena(directorio.resolve("valida"), BLOQUES, -1, false)) {
+            int nucleos = Runtime.getRuntime().availableProcessors();
+            for (int hilos : new int[]{1, 4, nucleos}) {
+                VerificadorParaleloCadena verificador = new VerificadorParaleloCadena(registro, hilos, 4096, 0);
+                try {
+                    verificador.verificar(registro.getTotal());
+                    long mejor = Long.MAX_VALUE;
+                    for (int i = 0; i < RONDAS; i++) {
+                        long inicio = System.nanoTime();
+                        assertEquals(-1, verificador.verificar(registro.getTotal()));
+                        mejor = Math.min(mejor, System.nanoTime() - inicio);
+                    }
+                    System.out.printf("[BENCH] %d bloques, %d hilos: %.1f ms, %.0f bloques/s%n",
+                            BLOQUES, hilos, mejor / 1e6, BLOQUES / (mejor / 1e9));
+                } finally {
+                    verificador.cerrar();
+                }
+            }
+        }
+    }
+
+    @Test
+    void encuentraElPrimerBloqueRoto() throws IOException {
+        // Un hash alterado dentro de un tramo
+        try (RegistroBloques registro = crearCadena(directorio.resolve("hash"), 5_000, 1_234, false)) {
+            assertEquals(1_234, verificar(registro));
+        }
+        // Un enlace roto justo en la frontera entre dos tramos
+        try (RegistroBloques registro = crearCadena(directorio.resolve("enlace"), 5_000, 64 * 10, true)) {
+            assertEquals(64 * 10, verificar(registro));
+        }
+    }
+
+    private static int verificar(RegistroBloques registro) {
+        VerificadorParaleloCadena verificador = new VerificadorParaleloCadena(registro, 4, 64, 0);
+        try {
+            return verificador.verificar(registro.getTotal());
+        } finally {
+            verificador.cerrar();
+        }
+    }
+
+    /**
+     * Creo una cadena de prueba. Si me indican un bloque roto, le pongo un hash que no es
+     * el suyo o, si romperEnlace es true, lo enlazo con un hash anterior que no existe.
+     */
+    private static RegistroBloques crearCadena(Path carpeta, int bloques, int roto, boolean romperEnlace) throws IOException {
+        RegistroBloques registro = new RegistroBloques(carpeta, 64 * 1024 * 1024, Integer.MAX_VALUE);
+        registro.abrir();
+        byte[] hashAnterior = Bloque.HASH_CERO;
+        for (int i = 0; i < bloques; i++) {
+            Bloque bloque;
+            if (i == roto && romperEnlace) {
+                bloque = new Bloque(i, "evento " + i, new byte[Bloque.TAMANO_HASH]);
+            } else if (i == roto) {
+                Bloque valido = new Bloque(i, "evento " + i, hashAnterior);
+                bloque = new Bloque(i, valido.getEntradas(), hashAnterior, valido.getRaizMerkleBytes(), 0, 0L, new byte[Bloque.TAMANO_HASH]);
+            } else {
+                bloque = new Bloque(i, "evento " + i, hashAnterior);
+            }
+            registro.anadir(bloque);
+            hashAnterior = bloque.getHashBytes();
+        }
+        return registro;
+    }
+}